@@ -0,0 +1,21 @@
+package com.tw.shopping.main.cache;
+
+import java.io.Serializable;
+
+/**
+ * 快取值的外層包裝，L1、Redis 都存這個
+ * 多記「什麼時候算好的」、「算了多久」，提前更新 (XFetch) 要靠這兩個數字決定何時重算
+ *
+ * @param value         真正的快取值 (可以是 null)
+ * @param loadedAt      算好的時間 (epoch 毫秒)，0 代表不知道 (例如舊格式的資料)
+ * @param computeMillis 算一次花了多久 (毫秒)
+ */
+public record CacheEnvelope(Object value, long loadedAt, long computeMillis) implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // 舊格式 (沒包裝) 的 Redis 資料：當成不知道時間，不做提前更新
+    static CacheEnvelope of(Object stored) {
+        return stored instanceof CacheEnvelope envelope ? envelope : new CacheEnvelope(stored, 0L, 0L);
+    }
+}
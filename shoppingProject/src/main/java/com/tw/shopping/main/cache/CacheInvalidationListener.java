@@ -0,0 +1,23 @@
+package com.tw.shopping.main.cache;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+/**
+ * 訂閱 Redis 的快取失效頻道，把其他節點發出的失效通知轉給 TwoLevelCacheManager
+ */
+public class CacheInvalidationListener implements MessageListener {
+
+    private final TwoLevelCacheManager cacheManager;
+
+    public CacheInvalidationListener(TwoLevelCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        cacheManager.onRemoteInvalidation(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+}
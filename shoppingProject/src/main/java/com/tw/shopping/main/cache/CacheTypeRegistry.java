@@ -0,0 +1,44 @@
+package com.tw.shopping.main.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * 快取名稱 -> 快取值型別 的登記表
+ * 有登記的快取用 Smile 存，沒登記的維持 JDK 序列化
+ */
+public class CacheTypeRegistry {
+
+    private final ObjectMapper smileMapper = TypedSmileRedisSerializer.createMapper();
+    private final Map<String, JavaType> types = new LinkedHashMap<>();
+
+    public CacheTypeRegistry register(String cacheName, Class<?> valueType) {
+        types.put(cacheName, typeFactory().constructType(valueType));
+        return this;
+    }
+
+    public CacheTypeRegistry registerList(String cacheName, Class<?> elementType) {
+        types.put(cacheName, typeFactory().constructCollectionType(List.class, elementType));
+        return this;
+    }
+
+    public Map<String, JavaType> getTypes() {
+        return Collections.unmodifiableMap(types);
+    }
+
+    // 沒登記回傳 null
+    public TypedSmileRedisSerializer serializerFor(String cacheName) {
+        JavaType type = types.get(cacheName);
+        return type != null ? new TypedSmileRedisSerializer(smileMapper, type) : null;
+    }
+
+    private TypeFactory typeFactory() {
+        return smileMapper.getTypeFactory();
+    }
+}
@@ -0,0 +1,290 @@
+package com.tw.shopping.main.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 兩層快取：先查本機 L1 (Caffeine)，沒有再查 L2 (Redis)，L2 命中會回填 L1
+ * 寫入 / 刪除會同時動兩層；put / evict / clear (資料有變) 才透過 pub/sub 通知其他節點丟掉自己的 L1，
+ * miss 後從 L2 或 loader 回填不發通知
+ *
+ * 防快取雪崩 (@Cacheable 要加 sync = true 才會走 get(key, Callable))：
+ * 1. single-flight：同一個 key 同時 miss，只有一條執行緒去算，其他的等它的結果
+ * 2. 提前更新 (XFetch)：命中時依「算一次要多久」跟「離過期還多久」機率性地重算，
+ *    熱門 key 在過期前就換新，不會在同一瞬間一起 miss
+ *    重算在抽中的那個呼叫者自己的執行緒上跑：valueLoader 是 Spring 攔截到的方法呼叫，
+ *    只能在呼叫者的執行緒、交易內執行，不能丟到背景執行緒；同一時間其他呼叫者照樣拿舊值
+ */
+public class TwoLevelCache implements Cache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoLevelCache.class);
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> l1;
+    private final Cache l2;
+    private final TwoLevelCacheManager manager;
+
+    // Redis 的存活時間 (毫秒)，用來推算 entry 何時過期
+    private final long redisTtlMillis;
+    // XFetch 的 beta，越大越早重算
+    private final double earlyRefreshBeta;
+
+    // 正在計算中的 key (single-flight)
+    private final ConcurrentMap<String, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    private final Counter l2Hits;
+    private final Counter l2Misses;
+    private final Counter coalescedLoads;
+    private final Counter earlyRefreshes;
+
+    TwoLevelCache(String name,
+                  com.github.benmanes.caffeine.cache.Cache<String, Object> l1,
+                  Cache l2,
+                  TwoLevelCacheManager manager,
+                  long redisTtlMillis,
+                  double earlyRefreshBeta,
+                  MeterRegistry meterRegistry) {
+        this.name = name;
+        this.l1 = l1;
+        this.l2 = l2;
+        this.manager = manager;
+        this.redisTtlMillis = redisTtlMillis;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+
+        this.l2Hits = Counter.builder("cache.l2.gets").tag("cache", name).tag("result", "hit")
+                .description("L1 沒有、Redis 有").register(meterRegistry);
+        this.l2Misses = Counter.builder("cache.l2.gets").tag("cache", name).tag("result", "miss")
+                .description("L1、Redis 都沒有").register(meterRegistry);
+        this.coalescedLoads = Counter.builder("cache.loads.coalesced").tag("cache", name)
+                .description("miss 時等待別人算好的次數 (single-flight)").register(meterRegistry);
+        this.earlyRefreshes = Counter.builder("cache.refresh.early").tag("cache", name)
+                .description("過期前提前重算的次數").register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return l2.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheEnvelope envelope = lookup(key, localKey(key));
+        return envelope != null ? new SimpleValueWrapper(envelope.value()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("快取 [" + name + "] 的值不是 " + type.getName() + ": " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        CacheEnvelope envelope = lookup(key, localKey);
+        if (envelope != null) {
+            return (T) refreshEarlyIfDue(key, localKey, envelope, valueLoader);
+        }
+        return (T) load(key, localKey, valueLoader);
+    }
+
+    // 明確寫入 (@CachePut) 代表資料改了，其他節點的 L1 要丟掉
+    @Override
+    public void put(Object key, Object value) {
+        String localKey = localKey(key);
+        store(key, localKey, new CacheEnvelope(value, System.currentTimeMillis(), 0L));
+        manager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        CacheEnvelope envelope = new CacheEnvelope(value, System.currentTimeMillis(), 0L);
+        ValueWrapper existing = l2.putIfAbsent(key, envelope);
+        CacheEnvelope current = existing != null ? CacheEnvelope.of(existing.get()) : envelope;
+        l1.put(localKey(key), current);
+        return existing != null ? new SimpleValueWrapper(current.value()) : null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        l2.evict(key);
+        String localKey = localKey(key);
+        l1.invalidate(localKey);
+        manager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = l2.evictIfPresent(key);
+        String localKey = localKey(key);
+        l1.invalidate(localKey);
+        manager.publishEvict(name, localKey);
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        l2.clear();
+        l1.invalidateAll();
+        manager.publishClear(name);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = l2.invalidate();
+        l1.invalidateAll();
+        manager.publishClear(name);
+        return present;
+    }
+
+    // ---------------- 只動本機 L1 (收到其他節點的失效通知時用) ----------------
+
+    void evictLocal(String localKey) {
+        l1.invalidate(localKey);
+    }
+
+    void clearLocal() {
+        l1.invalidateAll();
+    }
+
+    // L1 的 key 用字串，失效通知才能跨節點對得上
+    static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    // ---------------- 內部 ----------------
+
+    // 先 L1 再 Redis，都沒有回傳 null
+    private CacheEnvelope lookup(Object key, String localKey) {
+        Object local = l1.getIfPresent(localKey);
+        if (local != null) {
+            return (CacheEnvelope) local;
+        }
+
+        ValueWrapper remote = l2.get(key);
+        if (remote == null) {
+            l2Misses.increment();
+            return null;
+        }
+        l2Hits.increment();
+        CacheEnvelope envelope = CacheEnvelope.of(remote.get());
+        l1.put(localKey, envelope);
+        return envelope;
+    }
+
+    // miss：同一個 key 只讓一條執行緒算，其他的等結果
+    private Object load(Object key, String localKey, Callable<?> valueLoader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inflight.putIfAbsent(localKey, mine);
+        if (running != null) {
+            coalescedLoads.increment();
+            return await(key, valueLoader, running);
+        }
+
+        try {
+            // 前一個計算可能剛好在我們查完快取之後才結束
+            Object local = l1.getIfPresent(localKey);
+            if (local != null) {
+                Object value = ((CacheEnvelope) local).value();
+                mine.complete(value);
+                return value;
+            }
+
+            Object value = compute(key, localKey, valueLoader);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(localKey, mine);
+        }
+    }
+
+    // 命中：依 XFetch 判斷要不要提前重算，要的話在目前的執行緒上算，回傳要給呼叫者的值
+    private Object refreshEarlyIfDue(Object key, String localKey, CacheEnvelope envelope, Callable<?> valueLoader) {
+        if (earlyRefreshBeta <= 0 || envelope.loadedAt() <= 0 || inflight.containsKey(localKey)) {
+            return envelope.value();
+        }
+        long expiresAt = envelope.loadedAt() + redisTtlMillis;
+        long delta = Math.max(envelope.computeMillis(), 1L);
+        // now - delta * beta * ln(rand) >= expiry 就重算 (ln(rand) < 0)
+        double gap = delta * earlyRefreshBeta * -Math.log(ThreadLocalRandom.current().nextDouble());
+        if (System.currentTimeMillis() + gap < expiresAt) {
+            return envelope.value();
+        }
+
+        // 已經有人在算 (提前更新或 miss) 就直接用舊值
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        if (inflight.putIfAbsent(localKey, mine) != null) {
+            return envelope.value();
+        }
+        try {
+            Object value = compute(key, localKey, valueLoader);
+            earlyRefreshes.increment();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            // 舊值還沒過期，這次先用舊值，等正常過期後再算
+            logger.warn("快取 [{}] key={} 提前更新失敗，先回傳舊值: {}", name, localKey, e.getMessage());
+            mine.complete(envelope.value());
+            return envelope.value();
+        } finally {
+            inflight.remove(localKey, mine);
+        }
+    }
+
+    private Object compute(Object key, String localKey, Callable<?> valueLoader) {
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        long computeMillis = (System.nanoTime() - start) / 1_000_000L;
+        store(key, localKey, new CacheEnvelope(value, System.currentTimeMillis(), computeMillis));
+        return value;
+    }
+
+    // miss 後回填只寫兩層，不發失效通知 (資料沒變，通知只會把其他節點的 L1 清掉)
+    private void store(Object key, String localKey, CacheEnvelope envelope) {
+        l2.put(key, envelope);
+        l1.put(localKey, envelope);
+    }
+
+    private Object await(Object key, Callable<?> valueLoader, CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ValueRetrievalException retrieval) {
+                throw retrieval;
+            }
+            throw new ValueRetrievalException(key, valueLoader, cause);
+        }
+    }
+}
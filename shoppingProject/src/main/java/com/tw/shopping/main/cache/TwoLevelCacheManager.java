@@ -0,0 +1,152 @@
+package com.tw.shopping.main.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tw.shopping.main.config.TwoLevelCacheProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * 兩層快取的 CacheManager：每個快取名稱對應一個 L1 (Caffeine) + 一個 L2 (Redis)
+ *
+ * 指標 (/actuator/metrics)：
+ * - cache.gets / cache.evictions / cache.size，tag cache=快取名稱、level=l1 (Caffeine 內建統計)
+ * - cache.l2.gets，tag cache=快取名稱、result=hit|miss
+ * - cache.loads.coalesced：miss 時等別人算好的次數
+ * - cache.refresh.early：過期前提前重算的次數
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoLevelCacheManager.class);
+
+    // 失效通知格式：節點id|快取名稱|E|key 或 節點id|快取名稱|C
+    static final String SEPARATOR = "|";
+    static final String OP_EVICT = "E";
+    static final String OP_CLEAR = "C";
+
+    private final CacheManager redisCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final TwoLevelCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    // 本節點的 id，收到自己發出的通知時略過
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    // 快取內容被換掉時要通知的對象 (參數是快取名稱)，本機或其他節點造成的都會通知
+    private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    public TwoLevelCacheManager(
+            CacheManager redisCacheManager,
+            StringRedisTemplate redisTemplate,
+            TwoLevelCacheProperties properties,
+            MeterRegistry meterRegistry) {
+
+        this.redisCacheManager = redisCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // 由快取組出來的衍生資料 (例如整包首頁回應) 用這個得知要重建
+    public void addInvalidationListener(Consumer<String> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    private TwoLevelCache createCache(String name) {
+        Cache l2 = redisCacheManager.getCache(name);
+
+        com.github.benmanes.caffeine.cache.Cache<String, Object> l1 = Caffeine.newBuilder()
+                .maximumSize(properties.l1MaxSizeOf(name))
+                .expireAfterWrite(properties.l1TtlOf(name))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, l1, name, "level", "l1");
+
+        return new TwoLevelCache(name, l1, l2, this,
+                properties.redisTtlOf(name).toMillis(),
+                properties.getEarlyRefreshBeta(),
+                meterRegistry);
+    }
+
+    // ---------------- 跨節點失效通知 ----------------
+
+    void publishEvict(String cacheName, String localKey) {
+        notifyInvalidated(cacheName);
+        publish(nodeId + SEPARATOR + cacheName + SEPARATOR + OP_EVICT + SEPARATOR + localKey);
+    }
+
+    void publishClear(String cacheName) {
+        notifyInvalidated(cacheName);
+        publish(nodeId + SEPARATOR + cacheName + SEPARATOR + OP_CLEAR);
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(properties.getInvalidationChannel(), message);
+        } catch (RuntimeException e) {
+            // 通知失敗時其他節點的 L1 最多舊到 l1-ttl 過期
+            logger.warn("快取失效通知發送失敗: {}", e.getMessage());
+        }
+    }
+
+    // 收到其他節點的通知：只丟掉本機 L1，Redis 那邊發送端已經處理過
+    void onRemoteInvalidation(String message) {
+        String[] parts = message.split("\\" + SEPARATOR, 4);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[1]);
+        if (cache == null) {
+            return;
+        }
+        if (OP_CLEAR.equals(parts[2])) {
+            cache.clearLocal();
+        } else if (OP_EVICT.equals(parts[2]) && parts.length == 4) {
+            cache.evictLocal(parts[3]);
+        } else {
+            return;
+        }
+        notifyInvalidated(parts[1]);
+    }
+
+    private void notifyInvalidated(String cacheName) {
+        for (Consumer<String> listener : invalidationListeners) {
+            try {
+                listener.accept(cacheName);
+            } catch (RuntimeException e) {
+                logger.warn("快取失效通知處理失敗: cache={}, {}", cacheName, e.getMessage());
+            }
+        }
+    }
+}
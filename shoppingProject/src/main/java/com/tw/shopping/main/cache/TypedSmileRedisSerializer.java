@@ -0,0 +1,87 @@
+package com.tw.shopping.main.cache;
+
+import java.io.IOException;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Redis 快取值的序列化：Smile (二進位 JSON) + 事先登記好的型別
+ * 不像 JDK 序列化要寫類別描述，也不用在資料裡帶型別資訊，體積小、編解碼快
+ * 一個快取一個實例，型別由 CacheTypeRegistry 提供
+ */
+public class TypedSmileRedisSerializer implements RedisSerializer<Object> {
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+
+    public TypedSmileRedisSerializer(ObjectMapper smileMapper, JavaType valueType) {
+        JavaType wireType = smileMapper.getTypeFactory().constructParametricType(Wire.class, valueType);
+        this.writer = smileMapper.writerFor(wireType);
+        this.reader = smileMapper.readerFor(wireType);
+    }
+
+    // 所有快取共用的 Smile ObjectMapper
+    public static ObjectMapper createMapper() {
+        SmileFactory factory = SmileFactory.builder()
+                // 重複出現的字串值 (顏色、分類名稱) 只存一次
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        ObjectMapper mapper = new ObjectMapper(factory);
+        mapper.registerModule(new JavaTimeModule());
+        // DTO 之後加欄位時，舊資料還讀得回來
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return mapper;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        CacheEnvelope envelope = CacheEnvelope.of(value);
+        try {
+            return writer.writeValueAsBytes(new Wire<>(envelope.value(), envelope.loadedAt(), envelope.computeMillis()));
+        } catch (IOException e) {
+            throw new SerializationException("快取值序列化失敗", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            Wire<?> wire = reader.readValue(bytes);
+            return new CacheEnvelope(wire.v, wire.t, wire.c);
+        } catch (IOException e) {
+            throw new SerializationException("快取值反序列化失敗", e);
+        }
+    }
+
+    /**
+     * 實際寫進 Redis 的結構 (欄位名取短一點，每筆都會存)
+     * v = 值、t = 算好的時間、c = 算了多久
+     */
+    public static final class Wire<T> {
+        public T v;
+        public long t;
+        public long c;
+
+        public Wire() {
+        }
+
+        Wire(T v, long t, long c) {
+            this.v = v;
+            this.t = t;
+            this.c = c;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.tw.shopping.main.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 後台訂單 / 商品匯出 (CSV、NDJSON)
+ * 匯出時一邊從 DB 串流讀、一邊寫給瀏覽器，下載多久就佔住一條 DB 連線，所以限制同時匯出的數量
+ */
+@Component
+@ConfigurationProperties(prefix = "admin-export")
+@Data
+public class AdminExportProperties {
+
+    // 每個節點同時進行中的匯出上限，超過的直接拒絕
+    private int maxConcurrent = 2;
+}
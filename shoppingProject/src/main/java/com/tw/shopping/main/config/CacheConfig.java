@@ -0,0 +1,103 @@
+package com.tw.shopping.main.config;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+
+import com.tw.shopping.main.cache.CacheInvalidationListener;
+import com.tw.shopping.main.cache.CacheTypeRegistry;
+import com.tw.shopping.main.cache.TwoLevelCacheManager;
+import com.tw.shopping.main.cache.TypedSmileRedisSerializer;
+import com.tw.shopping.main.dto.CategoryDto;
+import com.tw.shopping.main.dto.ProductDetailDto;
+import com.tw.shopping.main.dto.ProductDetailDto.RelatedProductDto;
+import com.tw.shopping.main.dto.ProductDto;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 快取設定：@Cacheable 一律走兩層快取 (本機 Caffeine + Redis)
+ * Redis 的存活時間、L1 大小都在 application.properties 的 app.cache.* 設定
+ * 快取值一律是 DTO，型別登記在 cacheTypeRegistry()，Redis 裡用 Smile 格式存
+ */
+@Configuration
+public class CacheConfig {
+
+    // 新增 @Cacheable 時記得在這裡登記回傳型別，沒登記的會退回 JDK 序列化
+    @Bean
+    public CacheTypeRegistry cacheTypeRegistry() {
+        return new CacheTypeRegistry()
+                .register("product_detail", ProductDetailDto.class)
+                .registerList("related_products", RelatedProductDto.class)
+                .registerList("home_seven_products", ProductDto.class)
+                .registerList("home_featured_products", ProductDto.class)
+                .registerList("home_all_products", ProductDto.class)
+                .registerList("home_categories", CategoryDto.class)
+                .registerList("mainCategories", CategoryDto.class)
+                .register("product_search_count", Long.class);
+    }
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(
+            RedisConnectionFactory connectionFactory,
+            StringRedisTemplate redisTemplate,
+            TwoLevelCacheProperties properties,
+            CacheTypeRegistry cacheTypeRegistry,
+            MeterRegistry meterRegistry) {
+
+        return new TwoLevelCacheManager(redisCacheManager(connectionFactory, properties, cacheTypeRegistry), redisTemplate, properties, meterRegistry);
+    }
+
+    // 訂閱跨節點的快取失效通知
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(
+            RedisConnectionFactory connectionFactory,
+            TwoLevelCacheManager cacheManager,
+            TwoLevelCacheProperties properties) {
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(new CacheInvalidationListener(cacheManager), new ChannelTopic(properties.getInvalidationChannel()));
+        return container;
+    }
+
+    // L2：原本的 Redis 快取 (不註冊成 Bean，避免跟兩層快取搶 CacheManager)
+    private CacheManager redisCacheManager(RedisConnectionFactory connectionFactory, TwoLevelCacheProperties properties, CacheTypeRegistry cacheTypeRegistry) {
+        String keyVersion = properties.getKeyVersion();
+        RedisCacheConfiguration defaults = RedisCacheConfiguration.defaultCacheConfig(getClass().getClassLoader())
+                .entryTtl(properties.getRedisTtl())
+                .computePrefixWith(cacheName -> keyVersion + ":" + cacheName + "::");
+
+        Set<String> names = new HashSet<>(properties.getCaches().keySet());
+        names.addAll(cacheTypeRegistry.getTypes().keySet());
+
+        Map<String, RedisCacheConfiguration> perCache = new HashMap<>();
+        for (String name : names) {
+            RedisCacheConfiguration config = defaults.entryTtl(properties.redisTtlOf(name));
+            TypedSmileRedisSerializer serializer = cacheTypeRegistry.serializerFor(name);
+            if (serializer != null) {
+                config = config.serializeValuesWith(SerializationPair.fromSerializer(serializer));
+            }
+            perCache.put(name, config);
+        }
+
+        RedisCacheManager manager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(defaults)
+                .withInitialCacheConfigurations(perCache)
+                .build();
+        manager.afterPropertiesSet();
+        return manager;
+    }
+}
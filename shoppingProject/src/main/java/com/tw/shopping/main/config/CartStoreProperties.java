@@ -0,0 +1,40 @@
+package com.tw.shopping.main.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 購物車儲存方式
+ * store=jpa (預設)：每次操作直接讀寫 cart 表
+ * store=redis：購物車放在 Redis hash，異動定期批次寫回 cart 表
+ */
+@Component
+@ConfigurationProperties(prefix = "cart")
+@Data
+public class CartStoreProperties {
+
+    // jpa 或 redis
+    private String store = "jpa";
+
+    // 寫回 DB 的間隔 (毫秒)，@Scheduled 直接讀 cart.flush-interval-ms
+    private long flushIntervalMs = 2000;
+
+    // 每批寫回幾個會員的購物車
+    private int flushBatchSize = 200;
+
+    // 每次排程最多處理幾批，剩下的留到下一輪
+    private int flushMaxBatches = 20;
+
+    // 購物車沒有任何操作多久後從 Redis 移除 (已寫回 DB，下次用到再載入)
+    private Duration idleTtl = Duration.ofDays(7);
+
+    // jpa 模式購物車件數快取 (cart:count:{userid}) 的存活時間
+    private Duration countTtl = Duration.ofMinutes(30);
+
+    // 寫回的分散式鎖存活時間，同一時間只有一個節點在寫回
+    private Duration flushLockTtl = Duration.ofSeconds(30);
+}
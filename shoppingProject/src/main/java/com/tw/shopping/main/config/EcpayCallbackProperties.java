@@ -0,0 +1,36 @@
+package com.tw.shopping.main.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 綠界付款通知收件匣 (ecpay_callback_inbox)
+ * 通知驗完 CheckMacValue 寫進收件匣就回 1|OK，訂單由背景 worker 更新
+ */
+@Component
+@ConfigurationProperties(prefix = "ecpay-callback")
+@Data
+public class EcpayCallbackProperties {
+
+    // 同時處理通知的 worker 數
+    private int workerThreads = 4;
+
+    // 沒有新通知時多久檢查一次收件匣 (毫秒)，@Scheduled 直接讀 ecpay-callback.poll-interval-ms
+    private long pollIntervalMs = 1_000;
+
+    // 處理失敗幾次後放棄 (status = FAILED，要人工處理)
+    private int maxAttempts = 8;
+
+    // 失敗後第一次重試的間隔，之後每次加倍
+    private Duration retryBackoff = Duration.ofSeconds(5);
+
+    // 重試間隔上限
+    private Duration maxRetryBackoff = Duration.ofMinutes(10);
+
+    // 處理完的通知保留多久 (之後刪掉，重送的通知在這段時間內都能去重)
+    private Duration retention = Duration.ofDays(30);
+}
@@ -0,0 +1,39 @@
+package com.tw.shopping.main.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 限時搶購設定
+ * 搶購商品的庫存預先放進 Redis，下單時在 Redis 原子扣減，訂單先寫進本機日誌再由背景批次寫進 DB
+ */
+@Component
+@ConfigurationProperties(prefix = "flash-sale")
+@Data
+public class FlashSaleProperties {
+
+    // 已接受、還沒寫進 DB 的搶購訂單日誌 (每個節點自己一份，重啟後從這裡補寫)
+    private String journalDir = "data/flash-sale";
+
+    // 日誌裡的訂單都寫完後，檔案超過這個大小就清空重來
+    private long journalCompactBytes = 1024 * 1024;
+
+    // 背景寫 DB 的間隔 (毫秒)，@Scheduled 直接讀 flash-sale.worker-interval-ms
+    private long workerIntervalMs = 200;
+
+    // 每批最多寫幾筆訂單 (一個交易)
+    private int batchSize = 100;
+
+    // 寫 DB 失敗幾次後放棄，退回 Redis 庫存並標記失敗
+    private int maxAttempts = 5;
+
+    // 訂單狀態 (token) 在 Redis 保留多久
+    private Duration statusTtl = Duration.ofHours(1);
+
+    // 狀態串流 (SSE) 最多等多久
+    private Duration streamTimeout = Duration.ofSeconds(30);
+}
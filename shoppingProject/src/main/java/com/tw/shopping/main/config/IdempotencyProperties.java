@@ -0,0 +1,34 @@
+package com.tw.shopping.main.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 結帳的 Idempotency-Key 設定
+ * 同一個 key 第一次的結果 (訂單編號或錯誤) 存在 Redis，重送時直接回同一個結果，不會再建一張訂單
+ */
+@Component
+@ConfigurationProperties(prefix = "idempotency")
+@Data
+public class IdempotencyProperties {
+
+    // 結果保留多久，這段時間內用同一個 key 重送都拿到同一個結果
+    private Duration ttl = Duration.ofHours(24);
+
+    // 處理中的佔位存活時間，要比一次結帳最久的時間長 (節點當掉時佔位過期，重送才能再執行)
+    private Duration inflightTtl = Duration.ofSeconds(60);
+
+    // 結帳交易的逾時秒數 (OrderService.createOrder)，超過就中斷 SQL 並回滾；
+    // 要比 inflight-ttl 短，不然鎖等待 (innodb_lock_wait_timeout 預設 50 秒) 還沒結束佔位就過期，重送會再建一張訂單
+    private int checkoutTimeoutSeconds = 20;
+
+    // 別的節點正在處理同一個 key 時，最多等多久
+    private Duration waitTimeout = Duration.ofSeconds(10);
+
+    // 等別的節點時多久查一次 Redis
+    private Duration pollInterval = Duration.ofMillis(100);
+}
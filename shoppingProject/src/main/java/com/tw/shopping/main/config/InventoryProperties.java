@@ -0,0 +1,38 @@
+package com.tw.shopping.main.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 扣庫存方式 (InventoryReservationStrategy)
+ * strategy=atomic (預設)：UPDATE ... WHERE stock >= ?
+ * strategy=pessimistic：SELECT ... FOR UPDATE 鎖住商品列再扣
+ * strategy=optimistic：讀 stock_version，UPDATE 時比對版本，衝突就重讀重試
+ * strategy=striped：熱門商品的庫存拆成多個 bucket 列，分散同一列的鎖競爭
+ * 各種方式的效能差異見 InventoryStrategyBenchmarkTest
+ */
+@Component
+@ConfigurationProperties(prefix = "inventory")
+@Data
+public class InventoryProperties {
+
+    // atomic / pessimistic / optimistic / striped
+    private String strategy = "atomic";
+
+    // optimistic：版本衝突最多重試幾次，超過就請使用者稍後再試
+    private int optimisticMaxRetries = 5;
+
+    // striped：每個熱門商品拆成幾個 bucket
+    private int stripedBuckets = 8;
+
+    // striped：要拆 bucket 的熱門商品 (啟動時還沒拆的會自動拆)
+    private List<Integer> hotProducts = new ArrayList<>();
+
+    // striped：bucket 加總回寫 product.stock 的間隔 (毫秒)，@Scheduled 直接讀 inventory.rollup-interval-ms
+    private long rollupIntervalMs = 1000;
+}
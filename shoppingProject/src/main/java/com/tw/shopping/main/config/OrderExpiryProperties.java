@@ -0,0 +1,35 @@
+package com.tw.shopping.main.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 逾時未付款訂單的自動取消
+ * 結帳時庫存就扣了，綠界付款通知一直沒來的話，超過 pendingTimeout 就取消訂單並回補庫存
+ */
+@Component
+@ConfigurationProperties(prefix = "order-expiry")
+@Data
+public class OrderExpiryProperties {
+
+    private boolean enabled = true;
+
+    // 未付款 (PENDING) 超過多久取消
+    private Duration pendingTimeout = Duration.ofMinutes(30);
+
+    // 檢查間隔 (毫秒)，@Scheduled 直接讀 order-expiry.interval-ms
+    private long intervalMs = 60_000;
+
+    // 每批 (一個交易) 取消幾張訂單
+    private int batchSize = 200;
+
+    // 每次排程最多處理幾批，剩下的留到下一輪，不一次佔住 DB
+    private int maxBatchesPerRun = 10;
+
+    // 批與批之間休息多久，讓結帳的交易先過
+    private Duration pauseBetweenBatches = Duration.ofMillis(50);
+}
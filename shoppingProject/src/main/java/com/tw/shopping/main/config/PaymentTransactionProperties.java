@@ -0,0 +1,28 @@
+package com.tw.shopping.main.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 付款交易紀錄 (payment_transaction)
+ * 最近產生的 MerchantTradeNo → 訂單 id 放在本機快取，付款通知不用查 DB 就知道是哪張訂單
+ * MerchantTradeNo 由 MerchantTradeNoGenerator 產生 (時間 + 節點編號 + 序號)
+ */
+@Component
+@ConfigurationProperties(prefix = "payment.transaction")
+@Data
+public class PaymentTransactionProperties {
+
+    // 本機快取最多幾筆
+    private long recentCacheSize = 100_000;
+
+    // 放多久 (綠界通知通常幾分鐘內就來，重送最多幾天)
+    private Duration recentCacheTtl = Duration.ofDays(3);
+
+    // 節點編號 0~1023，必填，多台機器時每台要設不同的值 (沒設 MerchantTradeNoGenerator 不會啟動)
+    private Integer nodeId;
+}
@@ -187,6 +187,7 @@ public class SecurityConfig {
                             "/home",
                             "/api/ecpay/**",
                             "/api/orders/**",
+                            "/api/flash-sale/**",
                             "/api/products/**",
                             "/auth/line",
                             "/favicon.ico",
@@ -206,6 +207,10 @@ public class SecurityConfig {
                     // 這裡會自動對應資料庫裡的 "ROLE_ADMIN"
                     .requestMatchers("/dashboard.html","/api/admin/**").hasRole("ADMIN")
 
+                    // 監控：健康檢查公開，其餘指標只給管理員
+                    .requestMatchers("/actuator/health").permitAll()
+                    .requestMatchers("/actuator/**").hasRole("ADMIN")
+
                     // 1. 放行 Swagger 的核心 JSON 資料
                     .requestMatchers("/v3/api-docs/**").permitAll()
                     // 2. 放行 Swagger UI 的靜態資源 (HTML, CSS, JS)
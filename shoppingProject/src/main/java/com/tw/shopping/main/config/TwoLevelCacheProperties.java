@@ -0,0 +1,63 @@
+package com.tw.shopping.main.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 兩層快取設定 (L1 = 本機 Caffeine，L2 = Redis)
+ * 沒有在 caches 裡個別設定的快取，一律用最外層的預設值
+ */
+@Component
+@ConfigurationProperties(prefix = "app.cache")
+@Data
+public class TwoLevelCacheProperties {
+
+    // L1 每個快取最多幾筆
+    private long l1MaxSize = 1000;
+
+    // L1 存活時間，要比 Redis 短，其他節點漏收失效通知時最多舊這麼久
+    private Duration l1Ttl = Duration.ofSeconds(60);
+
+    // Redis 存活時間
+    private Duration redisTtl = Duration.ofHours(1);
+
+    // 提前更新 (XFetch) 的 beta，1.0 是論文建議值，越大越早重算，0 代表關閉
+    private double earlyRefreshBeta = 1.0;
+
+    // Redis key 的版本前綴，快取值格式改變時換版本，新舊格式不會互相讀到
+    private String keyVersion = "v2";
+
+    // 跨節點失效通知的 Redis pub/sub 頻道
+    private String invalidationChannel = "cache:invalidate";
+
+    // 個別快取的設定，key = 快取名稱
+    private Map<String, CacheSpec> caches = new HashMap<>();
+
+    public long l1MaxSizeOf(String cacheName) {
+        CacheSpec spec = caches.get(cacheName);
+        return spec != null && spec.getL1MaxSize() != null ? spec.getL1MaxSize() : l1MaxSize;
+    }
+
+    public Duration l1TtlOf(String cacheName) {
+        CacheSpec spec = caches.get(cacheName);
+        return spec != null && spec.getL1Ttl() != null ? spec.getL1Ttl() : l1Ttl;
+    }
+
+    public Duration redisTtlOf(String cacheName) {
+        CacheSpec spec = caches.get(cacheName);
+        return spec != null && spec.getRedisTtl() != null ? spec.getRedisTtl() : redisTtl;
+    }
+
+    @Data
+    public static class CacheSpec {
+        private Long l1MaxSize;
+        private Duration l1Ttl;
+        private Duration redisTtl;
+    }
+}
@@ -0,0 +1,37 @@
+package com.tw.shopping.main.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.tw.shopping.main.service.flashsale.FlashSaleService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/admin/flash-sale")
+@Tag(name = "後臺管理系統", description = "限時搶購開關")
+public class AdminFlashSaleController {
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+
+    @PostMapping("/products/{productId}")
+    @Operation(summary = "開始限時搶購", description = "把商品目前庫存放進 Redis，之後只能從搶購下單")
+    public ResponseEntity<Map<String, Integer>> enable(@PathVariable Integer productId) {
+        return ResponseEntity.ok(Map.of("stock", flashSaleService.enable(productId)));
+    }
+
+    @DeleteMapping("/products/{productId}")
+    @Operation(summary = "結束限時搶購", description = "回傳搶購剩餘數量")
+    public ResponseEntity<Map<String, Integer>> disable(@PathVariable Integer productId) {
+        return ResponseEntity.ok(Map.of("remaining", flashSaleService.disable(productId)));
+    }
+}
@@ -1,5 +1,7 @@
 package com.tw.shopping.main.controller;
 
+import java.io.IOException;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -10,9 +12,12 @@ import org.springframework.web.bind.annotation.*;
 import com.tw.shopping.main.entity.OrderEntity;
 import com.tw.shopping.main.enums.OrderStatus;
 import com.tw.shopping.main.repository.OrderRepository;
+import com.tw.shopping.main.service.export.AdminExportService;
+import com.tw.shopping.main.service.export.ExportFormat;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/api/admin/orders")
@@ -22,6 +27,9 @@ public class AdminOrderController {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private AdminExportService adminExportService;
+
     @GetMapping
     @Operation(summary = "取得訂單", description = "抓取所有訂單")
     public Page<OrderEntity> getOrders(
@@ -53,4 +61,17 @@ public class AdminOrderController {
         Pageable pageable = PageRequest.of(page, size, sort);
         return orderRepository.searchOrders(keyword, orderStatus, pageable);
     }
+
+    // 匯出訂單：一邊從 DB 讀一邊寫給瀏覽器，不分頁，篩選條件跟列表一樣
+    @GetMapping("/export")
+    @Operation(summary = "匯出訂單", description = "依關鍵字、狀態篩選，format=csv (預設) 或 ndjson")
+    public void exportOrders(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Integer status,
+            @RequestParam(required = false) String format,
+            HttpServletResponse response
+    ) throws IOException {
+        adminExportService.exportOrders(keyword, status, ExportFormat.fromString(format),
+                ExportAttachment.to(response, "orders"));
+    }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.tw.shopping.main.controller;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,9 +13,13 @@ import org.springframework.web.bind.annotation.*;
 
 import com.tw.shopping.main.entity.ProductEntity;
 import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.service.AdminProductService;
+import com.tw.shopping.main.service.export.AdminExportService;
+import com.tw.shopping.main.service.export.ExportFormat;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/api/admin/products")
@@ -24,6 +29,13 @@ public class AdminProductController {
     @Autowired
     private ProductRepository productRepository;
 
+    // 新增、修改、刪除要順便更新搜尋索引，統一交給 Service
+    @Autowired
+    private AdminProductService adminProductService;
+
+    @Autowired
+    private AdminExportService adminExportService;
+
     // 1. 取得商品列表 (支援搜尋、過濾、排序)
     @GetMapping
     @Operation(summary = "取得商品資料", description = "抓取所有商品")
@@ -59,17 +71,16 @@ public class AdminProductController {
     public ProductEntity createProduct(@RequestBody ProductEntity product) {
         // 實際專案中，這裡通常會處理圖片上傳 (MultipartFile)，
         // 目前先假設前端傳來的是圖片 URL 字串
-        return productRepository.save(product);
+        return adminProductService.createProduct(product);
     }
 
     // 3. 刪除商品
     @DeleteMapping("/{id}")
     @Operation(summary = "刪除商品", description = "根據id刪除商品")
     public ResponseEntity<?> deleteProduct(@PathVariable Integer id) {
-        if (!productRepository.existsById(id)) {
+        if (!adminProductService.deleteProduct(id)) {
             return ResponseEntity.notFound().build();
         }
-        productRepository.deleteById(id);
         return ResponseEntity.ok().build();
     }
     
@@ -77,16 +88,21 @@ public class AdminProductController {
     @PutMapping("/{id}")
     @Operation(summary = "更新商品", description = "根據id更新商品")
     public ResponseEntity<ProductEntity> updateProduct(@PathVariable Integer id, @RequestBody ProductEntity productDetails) {
-         return productRepository.findById(id).map(product -> {
-            product.setPname(productDetails.getPname());
-            product.setPrice(productDetails.getPrice());
-            product.setStock(productDetails.getStock());
-            product.setCategory(productDetails.getCategory());
-            product.setColor(productDetails.getColor());
-            product.setSpecification(productDetails.getSpecification());
-            product.setDescription(productDetails.getDescription());
-            // ...其他欄位
-            return ResponseEntity.ok(productRepository.save(product));
-        }).orElse(ResponseEntity.notFound().build());
+         return adminProductService.updateProduct(id, productDetails)
+                 .map(ResponseEntity::ok)
+                 .orElse(ResponseEntity.notFound().build());
+    }
+
+    // 5. 匯出商品：一邊從 DB 讀一邊寫給瀏覽器，不分頁，篩選條件跟列表一樣
+    @GetMapping("/export")
+    @Operation(summary = "匯出商品", description = "依關鍵字、分類篩選，format=csv (預設) 或 ndjson")
+    public void exportProducts(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) String format,
+            HttpServletResponse response
+    ) throws IOException {
+        adminExportService.exportProducts(keyword, categoryId, ExportFormat.fromString(format),
+                ExportAttachment.to(response, "products"));
     }
 }
\ No newline at end of file
@@ -1,21 +1,24 @@
 package com.tw.shopping.main.controller;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.tw.shopping.main.dto.CategoryDto;
 import com.tw.shopping.main.dto.HomeDataResponseDto;
-import com.tw.shopping.main.dto.ProductDto;
-import com.tw.shopping.main.entity.CategoryEntity;
-import com.tw.shopping.main.entity.ProductEntity;
-import com.tw.shopping.main.service.HomeService;
+import com.tw.shopping.main.service.home.HomePayload;
+import com.tw.shopping.main.service.home.HomePayloadService;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 
@@ -26,69 +29,40 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 public class Controller {
 
     @Autowired
-    private HomeService service;
+    private HomePayloadService homePayloadService;
 
     /**
      * 【統一 API】取得首頁所有資料 (本月主打、推薦熱點、產品系列)
+     * 回應是事先算好的 JSON (有 gzip 版本)，帶 ETag；瀏覽器帶 If-None-Match 且內容沒變時回 304
      */
     @GetMapping
-    @Operation(summary = "首頁資料", description = "至資料庫抓取資料")
-    public HomeDataResponseDto getHomeDate() {
-
-        // 1. 從 Service 取得所有 Entity 資料
-        List<ProductEntity> mainProductEntities = service.getSevenProduct();
-        List<ProductEntity> pdProductEntities = service.getpdProduct();
-        List<CategoryEntity> categoryEntities = service.getCategory();
-
-        // 2. 將 Entity 轉換為 DTO
-        List<ProductDto> mainProductDtos = mainProductEntities.stream()
-                .map(this::convertToProductDto)
-                .collect(Collectors.toList());
-
-        List<ProductDto> pdProductDtos = pdProductEntities.stream()
-                .map(this::convertToProductDto)
-                .collect(Collectors.toList());
-
-        List<CategoryDto> categoryDtos = categoryEntities.stream()
-                .map(this::convertToCategoryDto)
-                .collect(Collectors.toList());
-
-        // 3. 封裝結果並返回
-        HomeDataResponseDto response = new HomeDataResponseDto();
-        response.setMainProducts(mainProductDtos);
-        response.setFeaturedProducts(pdProductDtos);
-        response.setCategories(categoryDtos);
-
-        return response;
-    }
-
-    /**
-     * Product Entity 轉 Product DTO
-     */
-    private ProductDto convertToProductDto(ProductEntity entity) {
-        ProductDto dto = new ProductDto();
-
-        dto.setProductid(entity.getProductid());
-        dto.setPname(entity.getPname());
-        dto.setDescription(entity.getDescription());
-        dto.setPrice(entity.getPrice());
-        dto.setColor(entity.getColor());
-        dto.setProductimage(entity.getProductimage());
-
-        return dto;
-    }
-
-    /**
-     * Category Entity 轉 Category DTO
-     */
-    private CategoryDto convertToCategoryDto(CategoryEntity entity) {
-        CategoryDto dto = new CategoryDto();
-
-        dto.setCategoryid(entity.getCategoryid());
-        dto.setCname(entity.getCname());
-        dto.setCategoryimage(entity.getCategoryimage());
-        dto.setCode(entity.getCode());
-
-        return dto;
+    @Operation(summary = "首頁資料", description = "回傳預先算好的首頁資料，支援 ETag / If-None-Match")
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+            schema = @Schema(implementation = HomeDataResponseDto.class)))
+    @ApiResponse(responseCode = "304", description = "內容沒有變")
+    public ResponseEntity<byte[]> getHomeDate(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        HomePayload payload = homePayloadService.getPayload();
+
+        // 內容沒變只回 304；no-cache = 瀏覽器每次都要回來確認
+        if (payload.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(payload.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(payload.etag())
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(payload.gzip());
+        }
+        return builder.body(payload.json());
     }
-}
\ No newline at end of file
+}
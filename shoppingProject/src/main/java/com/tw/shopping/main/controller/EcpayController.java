@@ -3,9 +3,9 @@ package com.tw.shopping.main.controller;
 import org.springframework.web.bind.annotation.*;
 
 import com.tw.shopping.main.config.EcpayProperties;
-import com.tw.shopping.main.entity.OrderEntity;
-import com.tw.shopping.main.repository.OrderRepository;
 import com.tw.shopping.main.service.EcpayService;
+import com.tw.shopping.main.service.payment.EcpayCallbackInbox;
+import com.tw.shopping.main.service.payment.EcpayCallbackProcessor;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -13,7 +13,6 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Map;
 import java.io.IOException;
@@ -32,20 +31,18 @@ public class EcpayController {
     @Autowired
     private EcpayProperties ecpayProperties;
 
-    // 2. 注入 OrderRepository
     @Autowired
-    private OrderRepository orderRepository; 
+    private EcpayCallbackInbox callbackInbox;
+
+    @Autowired
+    private EcpayCallbackProcessor callbackProcessor;
 
     @PostMapping("/checkout/{orderId}")
     @Operation(summary = "抓取訂單", description = "抓取訂單資料")
     public Map<String, String> checkout(@PathVariable("orderId") Integer orderId) {
         
-        // 3. 【修正】：從資料庫讀取真實訂單，而不是 new 一個假的
-        OrderEntity order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new RuntimeException("找不到訂單 ID: " + orderId));
-
-        // 4. 傳入真實的 order 物件給 Service
-        Map<String, String> ecpayParams = ecpayService.prepareCheckoutForm(order);
+        // Service 用一句 JOIN 讀訂單跟明細 (找不到會丟例外)，這裡不用先查一次訂單
+        Map<String, String> ecpayParams = ecpayService.prepareCheckoutForm(orderId);
         
     
         
@@ -56,11 +53,12 @@ public class EcpayController {
     /**
      * [POST /api/ecpay/callback] 
      * 接收綠界支付結果的幕後通知 (ReturnURL)
+     * 驗完 CheckMacValue 寫進收件匣就回覆，訂單由 EcpayCallbackProcessor 在背景更新，DB 忙的時候綠界也不會一直重送
+     * 寫不進收件匣 (DB 掛了) 就讓請求失敗，綠界之後會重送
      * * @param allParams 綠界 POST 回傳的所有參數 (使用 HashMap 接收所有 @RequestParam)
      * @return 必須回傳 "1|OK" 給綠界，否則綠界會不斷重送
      */
     @PostMapping("/callback")
-    @Transactional // 確保資料庫更新成功後才回覆
     @Operation(summary = "回傳訂單", description = "回傳綠界訂單明細")
     public ResponseEntity<String> ecpayCallback(@RequestParam Map<String, String> allParams) {
         
@@ -71,19 +69,16 @@ public class EcpayController {
             System.out.println("【ECPay 驗證失敗】: HashMacValue 不符，拒絕處理!");
             return ResponseEntity.badRequest().body("0|Hash Check Failed");
         }
-        
-        // 2. 驗證成功，處理訂單狀態更新
+
         String orderId = allParams.get("MerchantTradeNo");
-        String rtnCode = allParams.get("RtnCode");
+        if (orderId == null || orderId.isBlank()) {
+            return ResponseEntity.badRequest().body("0|MerchantTradeNo Missing");
+        }
         
-        if ("1".equals(rtnCode)) {
-            // 付款成功
-            System.out.println("【ECPay 成功通知】: 訂單 " + orderId + " 付款成功，準備更新DB。");
-            ecpayService.handlePaymentSuccess(orderId, allParams); // 處理DB更新邏輯
-        } else {
-            // 付款失敗或處理中
-            System.out.println("【ECPay 失敗通知】: 訂單 " + orderId + " 交易失敗，RtnCode: " + rtnCode);
-            ecpayService.handlePaymentFailure(orderId, allParams); // 處理失敗邏輯
+        // 2. 寫進收件匣 (重送的通知會被忽略)，有新的就叫醒背景 worker
+        if (callbackInbox.append(allParams)) {
+            System.out.println("【ECPay 通知】: 訂單 " + orderId + " RtnCode: " + allParams.get("RtnCode") + "，已排入處理。");
+            callbackProcessor.wakeUp();
         }
         
         // 3. 必須回傳 "1|OK" 給綠界
@@ -0,0 +1,32 @@
+package com.tw.shopping.main.controller;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+
+import com.tw.shopping.main.service.export.ExportTarget;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 後台匯出的下載回應 (訂單、商品共用)
+ * 查到資料才設定下載的檔名跟格式 (在那之前出錯還是一般的錯誤回應)，檔名是 {name}-yyyyMMdd-HHmmss.{副檔名}
+ */
+final class ExportAttachment {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private ExportAttachment() {
+    }
+
+    static ExportTarget to(HttpServletResponse response, String name) {
+        return format -> {
+            String filename = name + "-" + LocalDateTime.now().format(TIMESTAMP) + "." + format.getExtension();
+            response.setContentType(format.getContentType());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString());
+            return response.getOutputStream();
+        };
+    }
+}
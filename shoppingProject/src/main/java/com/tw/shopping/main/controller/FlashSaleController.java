@@ -0,0 +1,48 @@
+package com.tw.shopping.main.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.tw.shopping.main.dto.FlashSaleOrderRequestDto;
+import com.tw.shopping.main.dto.FlashSaleStatusDto;
+import com.tw.shopping.main.service.flashsale.FlashSaleService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+
+@RestController
+@RequestMapping("/api/flash-sale")
+@Tag(name = "限時搶購", description = "搶購下單、查詢訂單結果")
+public class FlashSaleController {
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+
+    // 搶到就回 202 + token，訂單在背景建立
+    @PostMapping("/orders")
+    @Operation(summary = "搶購下單", description = "Redis 扣庫存成功即受理，回傳 token 供查詢訂單結果")
+    public ResponseEntity<FlashSaleStatusDto> placeOrder(@Valid @RequestBody FlashSaleOrderRequestDto request) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(flashSaleService.placeOrder(request));
+    }
+
+    @GetMapping("/orders/{token}")
+    @Operation(summary = "查詢搶購訂單", description = "QUEUED / CREATED (附 orderId) / FAILED")
+    public FlashSaleStatusDto getStatus(@PathVariable String token) {
+        return flashSaleService.getStatus(token);
+    }
+
+    @GetMapping("/orders/{token}/stream")
+    @Operation(summary = "等待搶購訂單結果 (SSE)", description = "訂單成立或失敗時推送 status 事件")
+    public SseEmitter streamStatus(@PathVariable String token) {
+        return flashSaleService.streamStatus(token);
+    }
+}
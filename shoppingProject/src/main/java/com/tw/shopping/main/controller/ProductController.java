@@ -8,8 +8,10 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.tw.shopping.main.dto.ProductDto;
+import com.tw.shopping.main.dto.ProductScrollResponseDto;
 import com.tw.shopping.main.entity.ProductEntity;
 import com.tw.shopping.main.service.ProductService;
+import com.tw.shopping.main.service.search.ProductScrollSlice;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -52,6 +54,33 @@ public class ProductController {
 
     }
 
+    // 無限捲動用的游標分頁，網址範例: /api/products/search/scroll?keyword=刀&size=12&cursor=xxx
+    @GetMapping("/search/scroll")
+    @Operation(summary = "搜尋商品 (游標分頁)", description = "以 nextCursor 取得下一頁，深頁數不會變慢；withTotal=true 才回傳總筆數估計")
+    public ProductScrollResponseDto scroll(
+        @RequestParam(required = false) String mainCategory,
+        @RequestParam(required = false) String subCategory,
+        @RequestParam(required = false) Integer maxPrice,
+        @RequestParam(required = false) Integer minPrice,
+        @RequestParam(required = false) String keyword,
+        // 上一頁回傳的 nextCursor，第一頁不用帶
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "12") Integer size,
+        // 有帶 cursor 時以 cursor 內的排序為準
+        @RequestParam(defaultValue = "default") String sort,
+        @RequestParam(defaultValue = "false") boolean withTotal
+    ) {
+
+        ProductScrollSlice result = productService.scrollProducts(mainCategory, subCategory, maxPrice, minPrice, keyword, cursor, size, sort, withTotal);
+
+        ProductScrollResponseDto response = new ProductScrollResponseDto();
+        response.setContent(result.slice().map(this::convertToProductDto).getContent());
+        response.setNextCursor(result.nextCursor());
+        response.setHasNext(result.slice().hasNext());
+        response.setEstimatedTotal(result.estimatedTotal());
+        return response;
+    }
+
     private ProductDto convertToProductDto(ProductEntity entity) {
         ProductDto dto = new ProductDto();
         
@@ -2,7 +2,7 @@ package com.tw.shopping.main.dto;
 
 public interface CartItemView {
 	 Long getUserid();
-	 Integer getCartid();
+	 Long getCartid();
 	 Integer getQuantity();
 	 Integer getProductid();
 	 String getPname();
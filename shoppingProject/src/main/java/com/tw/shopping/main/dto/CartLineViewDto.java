@@ -0,0 +1,21 @@
+package com.tw.shopping.main.dto;
+
+import lombok.Data;
+
+/**
+ * 購物車頁的一筆資料 (redis 模式自己組，欄位跟 CartItemView 的原生查詢一樣)
+ */
+@Data
+public class CartLineViewDto implements CartItemView {
+	private Long userid;
+	private Long cartid;
+	private Integer quantity;
+	private Integer productid;
+	private String pname;
+	private String description;
+	private Integer price;
+	private String productimage;
+	private String color;
+	private String specification;
+	private String address;
+}
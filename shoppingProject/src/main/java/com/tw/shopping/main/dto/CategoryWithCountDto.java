@@ -3,9 +3,11 @@ package com.tw.shopping.main.dto;
 import java.io.Serializable;
 
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 // 專門給前端次分類顯示數量所設計的(UI用)
 @Data
+@NoArgsConstructor // 快取反序列化用
 public class CategoryWithCountDto implements Serializable{
     private static final long serialVersionUID = 1L;
     private String code;
@@ -0,0 +1,9 @@
+package com.tw.shopping.main.dto;
+
+// 產生綠界表單用：訂單 + 明細 + 商品名稱一句查回來 (一筆明細一列)
+public interface CheckoutLineView {
+	 Integer getOrderId();
+	 Integer getTotalAmount();
+	 String getPname();
+	 Integer getQuantity();
+}
@@ -0,0 +1,22 @@
+package com.tw.shopping.main.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 限時搶購下單：收件 / 物流欄位跟一般結帳一樣，另外指定商品跟數量 (不經過購物車)
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class FlashSaleOrderRequestDto extends CheckoutRequestDto {
+
+    @NotNull(message = "商品ID不能為空")
+    private Integer productId;
+
+    @Min(value = 1, message = "購買數量至少為 1")
+    @Max(value = 5, message = "搶購商品每人最多 5 件")
+    private int quantity = 1;
+}
@@ -0,0 +1,23 @@
+package com.tw.shopping.main.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 限時搶購訂單狀態
+ * QUEUED = 已搶到，訂單排隊寫入中；CREATED = 訂單已成立 (orderId 有值)；FAILED = 失敗 (message 說明原因)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlashSaleStatusDto {
+    private String token;
+    private String status;
+    private Integer orderId;
+    private String message;
+
+    public boolean isFinished() {
+        return !"QUEUED".equals(status);
+    }
+}
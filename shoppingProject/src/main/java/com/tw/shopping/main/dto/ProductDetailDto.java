@@ -14,6 +14,7 @@ public class ProductDetailDto implements Serializable{
 	private Integer productid;
 	private String pname, description,specification, productimage, color, shipping;
 	private Integer price, stock, categoryid;
+	private Integer seriesId;
 	private List<RatingDto> review;
 	private Options options;
     private Images images;
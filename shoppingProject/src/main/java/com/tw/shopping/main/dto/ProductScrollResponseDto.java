@@ -0,0 +1,16 @@
+package com.tw.shopping.main.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+// 無限捲動用的分頁回應：只給下一頁游標，不回傳總頁數
+@Data
+public class ProductScrollResponseDto {
+	private List<ProductDto> content;
+	// 下一頁的游標，null 代表沒有下一頁
+	private String nextCursor;
+	private boolean hasNext;
+	// 總筆數估計值，只有 withTotal=true 時才有
+	private Long estimatedTotal;
+}
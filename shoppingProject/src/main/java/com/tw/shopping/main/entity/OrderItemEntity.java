@@ -44,7 +44,7 @@ public class OrderItemEntity {
 
 
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name ="orderid", nullable = false)
     @JsonIgnore
     private OrderEntity order; // 有做修改
@@ -53,7 +53,8 @@ public class OrderItemEntity {
     
     //----------------------------------------
     //賴 加的
-    @ManyToOne(fetch = FetchType.EAGER)
+    // LAZY：需要商品資料時用 OrderItemRepository.findByOrderIdFetchProduct 一次 JOIN 抓
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "productid", referencedColumnName = "productid", insertable = false, updatable = false)
     @JsonIgnore
     private ProductEntity product;
@@ -0,0 +1,55 @@
+package com.tw.shopping.main.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+// 一次到綠界付款的嘗試 (一個 MerchantTradeNo)，見 db/05_payment_transaction.sql
+@Entity
+@Table(name = "payment_transaction")
+@Data
+public class PaymentTransactionEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Column(name = "merchant_trade_no", nullable = false)
+    private String merchantTradeNo;
+
+    // 只存 id，付款通知找訂單時不用載入整張訂單
+    @Column(name = "orderid", nullable = false)
+    private Integer orderId;
+
+    @Column(name = "amount", nullable = false)
+    private Integer amount;
+
+    // CREATED / PAID / FAILED / REFUND_PENDING
+    @Column(name = "status", nullable = false)
+    private String status;
+
+    @Column(name = "ecpay_trade_no")
+    private String ecpayTradeNo;
+
+    @Column(name = "rtn_code")
+    private String rtnCode;
+
+    @Column(name = "rtn_msg")
+    private String rtnMsg;
+
+    @Column(name = "payment_type")
+    private String paymentType;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
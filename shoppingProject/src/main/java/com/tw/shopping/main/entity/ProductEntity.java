@@ -9,11 +9,13 @@ import org.hibernate.annotations.UpdateTimestamp;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -23,6 +25,7 @@ import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Entity
 @Table(name = "product")
@@ -37,6 +40,10 @@ public class ProductEntity implements Serializable{
     private String pname, description ,color, specification,  productimage;
     
     private Integer price, rating, stock;
+
+    // 商品系列 (同商品的不同顏色 / 規格共用)，由後台新增 / 修改商品時維護
+    @Column(name = "series_id")
+    private Integer seriesId;
     
     @CreationTimestamp
 	@Column(name = "createdat", updatable = false)
@@ -50,12 +57,17 @@ public class ProductEntity implements Serializable{
 
     //	---------------------------------------------
 
-    @ManyToOne
+    // LAZY：列表、搜尋只需要 categoryid (代理物件取 id 不會查 DB)，要分類明細的地方用 EntityGraph 抓
+    @ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "categoryid")
 	@JsonBackReference
+	@ToString.Exclude
 	private CategoryEntity category;
 
+    // 不輸出到 JSON，否則後台商品列表每一列都會多查一次購物車
     @OneToMany(mappedBy = "product", cascade = CascadeType.ALL)
+    @JsonIgnore
+    @ToString.Exclude
     private Set<CartEntity> cartItems;
     
     // 賴 新增的 11/30 
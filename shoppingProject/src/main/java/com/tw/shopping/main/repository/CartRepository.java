@@ -1,5 +1,6 @@
 package com.tw.shopping.main.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,7 +14,7 @@ import com.tw.shopping.main.entity.ProductEntity;
 import com.tw.shopping.main.entity.UserEntity;
 
 
-public interface CartRepository extends JpaRepository<CartEntity, Long>{
+public interface CartRepository extends JpaRepository<CartEntity, Long>, CartRepositoryCustom {
 	Optional<CartEntity> findByUserAndProduct(UserEntity user, ProductEntity product);
 	@Query("SELECT SUM(c.quantity) FROM CartEntity c WHERE c.user.userid = :userId")
     Long countTotalItemsByUserId(Long userId);
@@ -49,6 +50,14 @@ public interface CartRepository extends JpaRepository<CartEntity, Long>{
 	
 	@Query("SELECT c FROM CartEntity c JOIN FETCH c.product WHERE c.user = :user")
     List<CartEntity> findByUserWithProducts(UserEntity user);
+
+	// Redis 購物車用：只要 productid 跟數量，不載入商品
+	@Query("SELECT c FROM CartEntity c WHERE c.user.userid = :userId")
+	List<CartEntity> findByUserId(@Param("userId") Long userId);
+
+	// Redis 購物車批次寫回：一次撈出多個會員的購物車
+	@Query("SELECT c FROM CartEntity c WHERE c.user.userid IN :userIds")
+	List<CartEntity> findByUserIdIn(@Param("userIds") Collection<Long> userIds);
 }
 
 
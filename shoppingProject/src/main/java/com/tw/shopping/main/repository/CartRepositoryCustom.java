@@ -0,0 +1,18 @@
+package com.tw.shopping.main.repository;
+
+/**
+ * CartRepository 裡 Spring Data 寫不出來的 SQL (實作在 CartRepositoryCustomImpl，用 JdbcTemplate)
+ */
+public interface CartRepositoryCustom {
+
+	/**
+	 * 加入購物車：一句 INSERT ... ON DUPLICATE KEY UPDATE 完成 (靠 uk_user_product)，不先查再寫
+	 * 商品不存在或庫存小於這次要加的數量時不寫入，回傳 null
+	 * 會員不存在會因為外鍵丟 DataIntegrityViolationException
+	 */
+	CartUpsertResult upsertQuantity(Long userId, Integer productId, int quantity);
+
+	// cartId = 新增或更新到的那一筆，quantity = 寫入後的數量
+	record CartUpsertResult(Long cartId, int quantity) {
+	}
+}
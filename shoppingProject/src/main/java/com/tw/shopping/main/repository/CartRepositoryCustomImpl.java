@@ -0,0 +1,58 @@
+package com.tw.shopping.main.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class CartRepositoryCustomImpl implements CartRepositoryCustom {
+
+	// 商品存在且庫存夠才 SELECT 出一列來插入；重複 (同會員同商品) 就加數量
+	// cartid = LAST_INSERT_ID(cartid) 讓更新時也拿得到那一筆的 id，寫入後的數量再用主鍵查回來 (該列已被這句鎖住)
+	// 要在 READ COMMITTED 的交易裡跑 (JpaCartStore.add)：REPEATABLE READ 下 INSERT ... SELECT 會對 product 那一列加共享鎖，
+	// 熱門商品加入購物車跟結帳扣庫存會互相卡住
+	private static final String UPSERT_SQL = """
+			INSERT INTO cart (userid, productid, quantity, addtime)
+			SELECT ?, p.productid, ?, NOW()
+			FROM product p
+			WHERE p.productid = ? AND p.stock >= ?
+			ON DUPLICATE KEY UPDATE
+			    cartid = LAST_INSERT_ID(cartid),
+			    quantity = quantity + ?,
+			    addtime = NOW()
+			""";
+
+	private static final String LAST_RESULT_SQL = "SELECT cartid, quantity FROM cart WHERE cartid = LAST_INSERT_ID()";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public CartRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public CartUpsertResult upsertQuantity(Long userId, Integer productId, int quantity) {
+		// LAST_INSERT_ID 是連線層級的，兩句一定要在同一條連線上跑
+		return jdbcTemplate.execute((ConnectionCallback<CartUpsertResult>) connection -> {
+			int affected;
+			try (PreparedStatement upsert = connection.prepareStatement(UPSERT_SQL)) {
+				upsert.setLong(1, userId);
+				upsert.setInt(2, quantity);
+				upsert.setInt(3, productId);
+				upsert.setInt(4, quantity);
+				upsert.setInt(5, quantity);
+				affected = upsert.executeUpdate();
+			}
+			// 0 = 沒寫入 (商品不存在或庫存不足)、1 = 新增、2 = 已存在所以加數量
+			if (affected == 0) {
+				return null;
+			}
+			try (PreparedStatement select = connection.prepareStatement(LAST_RESULT_SQL);
+					ResultSet rs = select.executeQuery()) {
+				rs.next();
+				return new CartUpsertResult(rs.getLong(1), rs.getInt(2));
+			}
+		});
+	}
+}
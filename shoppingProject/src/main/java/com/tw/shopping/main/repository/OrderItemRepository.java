@@ -6,10 +6,17 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import com.tw.shopping.main.dto.CheckoutLineView;
 import com.tw.shopping.main.entity.OrderItemEntity;
 
 public interface OrderItemRepository extends JpaRepository<OrderItemEntity, Integer>{
 
 	@Query("SELECT oi FROM OrderItemEntity oi JOIN FETCH oi.product WHERE oi.order.id = :orderId")
     List<OrderItemEntity> findByOrderIdFetchProduct(@Param("orderId") Integer orderId);
+
+	// 產生綠界表單：訂單金額 + 每筆明細的商品名稱 / 數量，一句 JOIN，不載入 Entity
+	@Query("SELECT o.orderId AS orderId, o.totalAmount AS totalAmount, p.pname AS pname, oi.quantity AS quantity "
+			+ "FROM OrderItemEntity oi JOIN oi.order o JOIN oi.product p "
+			+ "WHERE o.orderId = :orderId ORDER BY oi.itemId")
+	List<CheckoutLineView> findCheckoutLines(@Param("orderId") Integer orderId);
 }
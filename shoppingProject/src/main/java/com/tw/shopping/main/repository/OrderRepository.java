@@ -5,18 +5,42 @@ import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import com.tw.shopping.main.entity.OrderEntity;
 import com.tw.shopping.main.enums.OrderStatus;
 
-public interface OrderRepository extends JpaRepository<OrderEntity, Integer>{
+import jakarta.persistence.LockModeType;
+
+public interface OrderRepository extends JpaRepository<OrderEntity, Integer>, OrderRepositoryCustom {
 	Optional<OrderEntity> findById(Integer orderId);
 	
 	
 	// 賴 新增的 11/29
 	Optional<OrderEntity> findByEcpaytradeno(String ecpaytradeno);
+
+	// 付款通知用：鎖住訂單列，跟逾時取消 (OrderExpiryService) 不會同時改到同一張訂單
+	// 一般用 payment_transaction 找到訂單 id 後走主鍵；ByEcpaytradeno 只給付款交易表建立之前的舊交易用
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT o FROM OrderEntity o WHERE o.orderId = :orderId")
+	Optional<OrderEntity> findByIdForUpdate(@Param("orderId") Integer orderId);
+
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT o FROM OrderEntity o WHERE o.ecpaytradeno = :ecpaytradeno")
+	Optional<OrderEntity> findByEcpaytradenoForUpdate(@Param("ecpaytradeno") String ecpaytradeno);
+
+	// 只改交易編號一個欄位 (產生綠界表單時)，不用先載入整張訂單再 save
+	@Modifying
+	@Query("UPDATE OrderEntity o SET o.ecpaytradeno = :ecpaytradeno WHERE o.orderId = :orderId")
+	int updateEcpaytradeno(@Param("orderId") Integer orderId, @Param("ecpaytradeno") String ecpaytradeno);
+
+	// 狀態還是 from 才改成 to；回傳 0 代表已經被別的請求改掉 (例如重複取消)，不可以再回補一次庫存
+	@Modifying
+	@Query("UPDATE OrderEntity o SET o.orderStatus = :to WHERE o.orderId = :orderId AND o.orderStatus = :from")
+	int updateStatusIfCurrent(@Param("orderId") Integer orderId, @Param("from") OrderStatus from, @Param("to") OrderStatus to);
 	// 【新增】後台訂單搜尋與分頁
     // 邏輯：
     // 1. keyword 為 null 時忽略，否則將 orderId 轉字串比對
@@ -0,0 +1,37 @@
+package com.tw.shopping.main.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+
+/**
+ * OrderRepository 裡要用 JDBC 執行的批次操作 (實作在 OrderRepositoryCustomImpl)
+ * 逾時未付款訂單的取消 (OrderExpiryService) 用
+ */
+public interface OrderRepositoryCustom {
+
+	/**
+	 * 鎖住最多 limit 筆在 before 之前成立、還沒付款 (PENDING) 的訂單，回傳 orderid
+	 * 走 idx_order_status_orderdate；SKIP LOCKED：付款通知正在處理的訂單直接跳過，不會卡住
+	 * 要在交易裡呼叫，鎖到 commit
+	 */
+	List<Integer> lockExpiredPending(LocalDateTime before, int limit);
+
+	/**
+	 * 還是 PENDING 的才改成 CANCELLED (payment_status 記 EXPIRED)，回傳實際取消的筆數
+	 */
+	int cancelExpired(List<Integer> orderIds);
+
+	/**
+	 * 這些訂單每個商品加總的數量，依 productid 排序 (回補庫存用)
+	 */
+	List<StockChange> sumItemQuantities(List<Integer> orderIds);
+
+	/**
+	 * 這些訂單依成立日 (orderdate) 分組的筆數 (每日銷售彙總用)
+	 */
+	Map<LocalDate, Integer> countByOrderDay(List<Integer> orderIds);
+}
@@ -0,0 +1,76 @@
+package com.tw.shopping.main.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.tw.shopping.main.enums.OrderStatus;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+
+public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
+
+	private static final String LOCK_EXPIRED_SQL =
+			"SELECT orderid FROM `order` WHERE status = ? AND orderdate < ? ORDER BY orderdate LIMIT ? FOR UPDATE SKIP LOCKED";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public OrderRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public List<Integer> lockExpiredPending(LocalDateTime before, int limit) {
+		return jdbcTemplate.queryForList(LOCK_EXPIRED_SQL, Integer.class,
+				OrderStatus.PENDING.ordinal(), Timestamp.valueOf(before), limit);
+	}
+
+	@Override
+	public int cancelExpired(List<Integer> orderIds) {
+		if (orderIds.isEmpty()) {
+			return 0;
+		}
+		List<Object> args = new ArrayList<>();
+		args.add(OrderStatus.CANCELLED.ordinal());
+		args.addAll(orderIds);
+		args.add(OrderStatus.PENDING.ordinal());
+		return jdbcTemplate.update("UPDATE `order` SET status = ?, payment_status = 'EXPIRED' WHERE orderid IN ("
+				+ placeholders(orderIds.size()) + ") AND status = ?", args.toArray());
+	}
+
+	@Override
+	public List<StockChange> sumItemQuantities(List<Integer> orderIds) {
+		if (orderIds.isEmpty()) {
+			return List.of();
+		}
+		return jdbcTemplate.query("SELECT productid, SUM(quantity) AS quantity FROM orderitem WHERE orderid IN ("
+				+ placeholders(orderIds.size()) + ") GROUP BY productid ORDER BY productid",
+				(rs, rowNum) -> new StockChange(rs.getInt("productid"), rs.getInt("quantity")),
+				orderIds.toArray());
+	}
+
+	@Override
+	public Map<LocalDate, Integer> countByOrderDay(List<Integer> orderIds) {
+		Map<LocalDate, Integer> counts = new HashMap<>();
+		if (orderIds.isEmpty()) {
+			return counts;
+		}
+		jdbcTemplate.query("SELECT DATE(orderdate) AS day, COUNT(*) AS cnt FROM `order` WHERE orderid IN ("
+				+ placeholders(orderIds.size()) + ") GROUP BY DATE(orderdate)",
+				rs -> {
+					counts.put(rs.getDate("day").toLocalDate(), rs.getInt("cnt"));
+				},
+				orderIds.toArray());
+		return counts;
+	}
+
+	private static String placeholders(int count) {
+		return String.join(",", Collections.nCopies(count, "?"));
+	}
+}
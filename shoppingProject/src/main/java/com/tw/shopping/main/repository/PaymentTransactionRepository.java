@@ -0,0 +1,31 @@
+package com.tw.shopping.main.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.tw.shopping.main.entity.PaymentTransactionEntity;
+
+public interface PaymentTransactionRepository extends JpaRepository<PaymentTransactionEntity, Long> {
+
+	// merchant_trade_no 有唯一索引
+	Optional<PaymentTransactionEntity> findByMerchantTradeNo(String merchantTradeNo);
+
+	// 記下綠界通知的結果 (一個 UPDATE，不先查再存)
+	@Modifying
+	@Query("UPDATE PaymentTransactionEntity t SET t.status = :status, t.ecpayTradeNo = :ecpayTradeNo, "
+			+ "t.rtnCode = :rtnCode, t.rtnMsg = :rtnMsg, t.paymentType = :paymentType, t.updatedAt = :updatedAt "
+			+ "WHERE t.merchantTradeNo = :merchantTradeNo")
+	int updateResult(
+			@Param("merchantTradeNo") String merchantTradeNo,
+			@Param("status") String status,
+			@Param("ecpayTradeNo") String ecpayTradeNo,
+			@Param("rtnCode") String rtnCode,
+			@Param("rtnMsg") String rtnMsg,
+			@Param("paymentType") String paymentType,
+			@Param("updatedAt") LocalDateTime updatedAt);
+}
@@ -1,9 +1,12 @@
 package com.tw.shopping.main.repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
@@ -12,7 +15,29 @@ import org.springframework.data.repository.query.Param;
 
 import com.tw.shopping.main.entity.ProductEntity;
 
-public interface ProductRepository extends JpaRepository<ProductEntity, Integer>, JpaSpecificationExecutor<ProductEntity>{
+public interface ProductRepository extends JpaRepository<ProductEntity, Integer>, JpaSpecificationExecutor<ProductEntity>, ProductRepositoryCustom {
+
+	// 商品詳細頁用：category 是 LAZY，這裡一次 JOIN 抓回來，避免離開 Session 後才載入
+	@EntityGraph(attributePaths = "category")
+	Optional<ProductEntity> findWithCategoryByProductid(Integer productid);
+
+	// 同系列的所有商品 (走 series_id 索引)
+	List<ProductEntity> findBySeriesId(Integer seriesId);
+
+	// 後台新增 / 修改商品時，找出名稱、描述相同的既有商品來決定系列
+	Optional<ProductEntity> findFirstByPnameAndDescriptionAndProductidNotOrderByProductidAsc(String pname, String description, Integer productid);
+
+	// 系列中除了自己以外最小的商品 (系列代表商品被移出系列時用)
+	Optional<ProductEntity> findFirstBySeriesIdAndProductidNotOrderByProductidAsc(Integer seriesId, Integer productid);
+
+	// 把某個系列的其他商品改掛到新的系列 id
+	@Modifying(clearAutomatically = true)
+	@Query("UPDATE ProductEntity p SET p.seriesId = :newSeriesId WHERE p.seriesId = :oldSeriesId AND p.productid <> :excludeId")
+	int reassignSeries(@Param("oldSeriesId") Integer oldSeriesId, @Param("newSeriesId") Integer newSeriesId, @Param("excludeId") Integer excludeId);
+	
+	// 傳入的 id 中還存在的商品 (購物車寫回 DB 前過濾已刪除的商品)
+	@Query("SELECT p.productid FROM ProductEntity p WHERE p.productid IN :ids")
+	List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
 	
 	//  // 賴 新增的 11/30 
 	// 【新增】後台搜尋專用查詢
@@ -33,6 +58,10 @@ public interface ProductRepository extends JpaRepository<ProductEntity, Integer>
     @Query("SELECT p.category.categoryid, COUNT(p) FROM ProductEntity p GROUP BY p.category.categoryid")
     List<Object[]> countProductsGroupByCategory();
 
+    // 庫存快取對帳用：只撈 id 跟庫存兩欄
+    @Query("SELECT p.productid, p.stock FROM ProductEntity p")
+    List<Object[]> findAllStock();
+
 	// ========================================================================
     // 🔥【重點修改】使用 SQL 原子更新來扣減庫存
     // 不需要 @Lock，直接利用 UPDATE 語句的原子性。
@@ -0,0 +1,27 @@
+package com.tw.shopping.main.repository;
+
+import java.util.List;
+
+/**
+ * ProductRepository 裡要用 JDBC 批次執行的庫存操作 (實作在 ProductRepositoryCustomImpl)
+ */
+public interface ProductRepositoryCustom {
+
+	/**
+	 * 一次 JDBC batch 扣多個商品的庫存 (UPDATE ... WHERE stock >= ?)
+	 * 依傳入順序執行，呼叫端要先依 productid 排好，多筆交易同時扣才不會互相死鎖
+	 * 回傳每一筆是否扣成功 (false = 庫存不足或商品不存在)；不會清掉持久化內容，已載入的商品不用重查
+	 */
+	boolean[] decreaseStockBatch(List<StockChange> changes);
+
+	/**
+	 * 把庫存加回去 (取消 / 退貨 / 逾時取消共用)，一句 UPDATE ... CASE 一次送出，所有商品在同一句裡原子生效
+	 * 直接在 DB 上加，不先讀出來再寫回，不會蓋掉同時間別的交易扣掉的庫存
+	 * 同一個商品出現多次會先加總；回傳實際更新的商品數 (商品已刪除就不算)
+	 */
+	int increaseStock(List<StockChange> changes);
+
+	// 一個商品要增減的數量
+	record StockChange(Integer productId, int quantity) {
+	}
+}
@@ -0,0 +1,65 @@
+package com.tw.shopping.main.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+	private static final String DECREASE_STOCK_SQL =
+			"UPDATE product SET stock = stock - ? WHERE productid = ? AND stock >= ?";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public ProductRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public boolean[] decreaseStockBatch(List<StockChange> changes) {
+		boolean[] succeeded = new boolean[changes.size()];
+		if (changes.isEmpty()) {
+			return succeeded;
+		}
+		// 連線字串有 rewriteBatchedStatements=true，整批一次送出
+		int[][] counts = jdbcTemplate.batchUpdate(DECREASE_STOCK_SQL, changes, changes.size(), (ps, change) -> {
+			ps.setInt(1, change.quantity());
+			ps.setInt(2, change.productId());
+			ps.setInt(3, change.quantity());
+		});
+		int[] rows = counts[0];
+		for (int i = 0; i < succeeded.length; i++) {
+			succeeded[i] = rows[i] > 0;
+		}
+		return succeeded;
+	}
+
+	@Override
+	public int increaseStock(List<StockChange> changes) {
+		// 同一個商品加總，依 productid 排序 (跟扣庫存同一個順序上鎖)
+		Map<Integer, Integer> deltas = new TreeMap<>();
+		for (StockChange change : changes) {
+			deltas.merge(change.productId(), change.quantity(), Integer::sum);
+		}
+		if (deltas.isEmpty()) {
+			return 0;
+		}
+		// UPDATE product SET stock = stock + CASE productid WHEN ? THEN ? ... END WHERE productid IN (...)
+		StringBuilder sql = new StringBuilder("UPDATE product SET stock = stock + CASE productid");
+		List<Object> args = new ArrayList<>();
+		deltas.forEach((productId, quantity) -> {
+			sql.append(" WHEN ? THEN ?");
+			args.add(productId);
+			args.add(quantity);
+		});
+		sql.append(" END WHERE productid IN (")
+				.append(String.join(",", Collections.nCopies(deltas.size(), "?")))
+				.append(")");
+		args.addAll(deltas.keySet());
+		return jdbcTemplate.update(sql.toString(), args.toArray());
+	}
+}
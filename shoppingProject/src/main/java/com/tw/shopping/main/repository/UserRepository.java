@@ -35,6 +35,10 @@ public interface UserRepository extends JpaRepository<UserEntity, Long>{
     @EntityGraph(attributePaths = {"name", "phone", "birthday", "gender", "email", "address"}) 
 	Optional<UserEntity> findById(Long id);
     Optional<UserEntity>findByIcon(byte[] icon);
+
+    // 購物車頁只需要地址，不載入整個會員
+    @Query("SELECT u.address FROM UserEntity u WHERE u.userid = :userId")
+    Optional<String> findAddressByUserid(@Param("userId") Long userId);
     
 	}
 
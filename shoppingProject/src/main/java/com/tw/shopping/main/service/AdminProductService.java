@@ -0,0 +1,178 @@
+package com.tw.shopping.main.service;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.service.category.CategoryCountTree;
+import com.tw.shopping.main.service.home.HomePayloadService;
+import com.tw.shopping.main.service.inventory.InventoryReservationStrategy;
+import com.tw.shopping.main.service.search.ProductSearchEngine;
+import com.tw.shopping.main.service.stock.ProductStockCache;
+import com.tw.shopping.main.util.AfterCommit;
+
+/**
+ * 後台商品的新增 / 修改 / 刪除
+ * 商品資料異動後，要同步通知的衍生資料 (搜尋索引、分類商品數等) 都集中在這裡處理
+ */
+@Service
+public class AdminProductService {
+
+	private final ProductRepository productRepository;
+	private final ProductSearchEngine searchEngine;
+	private final ProductStockCache stockCache;
+	private final CacheManager cacheManager;
+	private final HomePayloadService homePayloadService;
+	private final CategoryCountTree categoryCountTree;
+	private final InventoryReservationStrategy inventoryStrategy;
+
+	public AdminProductService(
+			
+			ProductRepository productRepository,
+			ProductSearchEngine searchEngine,
+			ProductStockCache stockCache,
+			CacheManager cacheManager,
+			HomePayloadService homePayloadService,
+			CategoryCountTree categoryCountTree,
+			InventoryReservationStrategy inventoryStrategy) {
+		
+		this.productRepository = productRepository;
+		this.searchEngine = searchEngine;
+		this.stockCache = stockCache;
+		this.cacheManager = cacheManager;
+		this.homePayloadService = homePayloadService;
+		this.categoryCountTree = categoryCountTree;
+		this.inventoryStrategy = inventoryStrategy;
+	}
+//	--------------------------------
+
+//  新增商品
+	@Transactional
+	public ProductEntity createProduct(ProductEntity product) {
+		// 系列 id 可能要用到自己的 productid，所以先存一次拿到 id
+		product.setSeriesId(null);
+		ProductEntity saved = productRepository.save(product);
+		assignSeries(saved);
+		saved = productRepository.save(saved);
+		indexAfterCommit(saved);
+		stockCache.setAfterCommit(saved.getProductid(), saved.getStock());
+		categoryCountTree.adjustAfterCommit(saved.getCategoryidView(), 1);
+		// 同系列商品頁的規格選項多了一個
+		evictProductCachesAfterCommit(seriesMembers(saved.getSeriesId()));
+		return saved;
+	}
+
+//  更新商品 (找不到回傳 empty)
+	@Transactional
+	public Optional<ProductEntity> updateProduct(Integer id, ProductEntity productDetails) {
+		return productRepository.findById(id).map(product -> {
+			// 原系列跟新系列的商品頁都會受影響
+			Set<Integer> affected = seriesMembers(product.getSeriesId());
+			affected.add(id);
+			Integer oldCategoryId = product.getCategoryidView();
+			// 庫存有改才通知扣庫存的實作 (沒改的話不要拿表單上的舊數字蓋掉這段時間賣掉的)
+			boolean stockChanged = productDetails.getStock() != null
+					&& !Objects.equals(product.getStock(), productDetails.getStock());
+			boolean seriesChanged = product.getSeriesId() == null
+					|| !Objects.equals(product.getPname(), productDetails.getPname())
+					|| !Objects.equals(product.getDescription(), productDetails.getDescription());
+			product.setPname(productDetails.getPname());
+			product.setPrice(productDetails.getPrice());
+			product.setStock(productDetails.getStock());
+			product.setCategory(productDetails.getCategory());
+			product.setColor(productDetails.getColor());
+			product.setSpecification(productDetails.getSpecification());
+			product.setDescription(productDetails.getDescription());
+			// ...其他欄位
+			if (seriesChanged) {
+				assignSeries(product);
+			}
+			ProductEntity saved = productRepository.save(product);
+			if (stockChanged) {
+				inventoryStrategy.overwrite(id, saved.getStock());
+			}
+			indexAfterCommit(saved);
+			stockCache.setAfterCommit(saved.getProductid(), saved.getStock());
+			categoryCountTree.moveAfterCommit(oldCategoryId, saved.getCategoryidView());
+			affected.addAll(seriesMembers(saved.getSeriesId()));
+			evictProductCachesAfterCommit(affected);
+			return saved;
+		});
+	}
+
+//  決定商品的系列：名稱、描述相同的既有商品就併入它的系列，沒有就自己開一個 (系列 id = 自己的 productid)
+	private void assignSeries(ProductEntity product) {
+		Integer productid = product.getProductid();
+		Integer oldSeriesId = product.getSeriesId();
+
+		Optional<ProductEntity> sameSeries = productRepository
+				.findFirstByPnameAndDescriptionAndProductidNotOrderByProductidAsc(product.getPname(), product.getDescription(), productid);
+		Integer newSeriesId = sameSeries
+				.map(p -> p.getSeriesId() != null ? p.getSeriesId() : p.getProductid())
+				.orElse(productid);
+
+		// 自己原本是系列代表 (系列 id = 自己) 卻要離開：剩下的商品改用其中最小的 productid 當系列 id
+		if (productid.equals(oldSeriesId) && (sameSeries.isEmpty() || !newSeriesId.equals(oldSeriesId))) {
+			productRepository.findFirstBySeriesIdAndProductidNotOrderByProductidAsc(oldSeriesId, productid)
+					.ifPresent(next -> productRepository.reassignSeries(oldSeriesId, next.getProductid(), productid));
+		}
+		product.setSeriesId(newSeriesId);
+	}
+
+//  刪除商品 (找不到回傳 false)
+	@Transactional
+	public boolean deleteProduct(Integer id) {
+		Optional<ProductEntity> existing = productRepository.findById(id);
+		if (existing.isEmpty()) {
+			return false;
+		}
+		Set<Integer> affected = seriesMembers(existing.get().getSeriesId());
+		affected.add(id);
+
+		productRepository.deleteById(id);
+		AfterCommit.run(() -> searchEngine.remove(id));
+		stockCache.evictAfterCommit(id);
+		categoryCountTree.adjustAfterCommit(existing.get().getCategoryidView(), -1);
+		evictProductCachesAfterCommit(affected);
+		return true;
+	}
+
+//  搜尋索引是所有請求共用的記憶體，交易 rollback 時不能留下改到一半的資料，commit 後才更新
+	private void indexAfterCommit(ProductEntity saved) {
+		AfterCommit.run(() -> searchEngine.index(saved));
+	}
+
+//  同系列所有商品的 id
+	private Set<Integer> seriesMembers(Integer seriesId) {
+		Set<Integer> ids = new HashSet<>();
+		if (seriesId != null) {
+			productRepository.findBySeriesId(seriesId).forEach(p -> ids.add(p.getProductid()));
+		}
+		return ids;
+	}
+
+//  商品頁快取 (含同系列的規格選項) 逐筆清掉，推薦商品整個清掉，首頁上的商品有動到就重建首頁；commit 後才清，避免清完又被讀回舊資料
+//  兩層快取會透過 pub/sub 通知其他節點一起清
+	private void evictProductCachesAfterCommit(Set<Integer> productIds) {
+		Runnable evict = () -> {
+			Cache detail = cacheManager.getCache("product_detail");
+			if (detail != null) {
+				productIds.forEach(detail::evict);
+			}
+			Cache related = cacheManager.getCache("related_products");
+			if (related != null) {
+				related.clear();
+			}
+			homePayloadService.invalidateProducts(productIds);
+		};
+		AfterCommit.run(evict);
+	}
+}
@@ -1,6 +1,5 @@
 package com.tw.shopping.main.service;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -12,28 +11,24 @@ import com.tw.shopping.main.dto.CategoryDto;
 import com.tw.shopping.main.dto.CategoryWithCountDto;
 import com.tw.shopping.main.entity.CategoryEntity;
 import com.tw.shopping.main.repository.CategoryRepository;
+import com.tw.shopping.main.service.category.CategoryCountTree;
 
 @Service
 public class CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
-    @Cacheable(value = "subCategories", key = "#mainCategoryCode")
-    public List<CategoryWithCountDto> getSubCategoriesByMainCategory(String mainCategoryCode){
-        // 先找出大分類的實體，為了拿到它的 ID
-        CategoryEntity mainCategory = categoryRepository.findByCode(mainCategoryCode);
-
-        // 如果找不到 ID 回傳空字串
-        if (mainCategory == null) {
-            return Collections.emptyList();
-        }
+    @Autowired
+    private CategoryCountTree categoryCountTree;
 
-        // 傳入大分類的 ID (parentid)，取得帶有數量的子分類列表
-        return categoryRepository.findSubCategoriesWithCount(mainCategory.getCategoryid());
+    // 子分類跟商品數直接從記憶體裡的分類樹拿 (商品異動時就更新)，不用再快取
+    public List<CategoryWithCountDto> getSubCategoriesByMainCategory(String mainCategoryCode){
+        // 找不到大分類回傳空的
+        return categoryCountTree.subCategories(mainCategoryCode);
     }
 
     // 取得所有 parentId 是 null (大分類)的
-    @Cacheable(value = "mainCategories")
+    @Cacheable(value = "mainCategories", sync = true)
     public List<CategoryDto> getMainCategories() {
         List<CategoryEntity> entities = categoryRepository.findByParentid(null);
         
@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,10 +17,17 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional; // 確保有這個 import
 
 import com.tw.shopping.main.config.EcpayProperties;
+import com.tw.shopping.main.dto.CheckoutLineView;
 import com.tw.shopping.main.entity.OrderEntity;
 import com.tw.shopping.main.entity.OrderItemEntity;
 import com.tw.shopping.main.enums.OrderStatus;
+import com.tw.shopping.main.repository.OrderItemRepository;
 import com.tw.shopping.main.repository.OrderRepository;
+import com.tw.shopping.main.service.expiry.OrderExpiryService;
+import com.tw.shopping.main.service.payment.MerchantTradeNoGenerator;
+import com.tw.shopping.main.service.payment.PaymentTransactionService;
+import com.tw.shopping.main.service.stats.SalesDailyRollup;
+import com.tw.shopping.main.util.EcpayCheckMacEncoder;
 import com.tw.shopping.main.util.EcpayUtil;
 
 // @Transactional 可以加在 Class 上，但為了精確控制，我們只加在需要的方法上
@@ -31,6 +39,21 @@ public class EcpayService {
 
     @Autowired
     private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private OrderExpiryService orderExpiryService;
+
+    @Autowired
+    private PaymentTransactionService paymentTransactionService;
+
+    @Autowired
+    private MerchantTradeNoGenerator merchantTradeNoGenerator;
+
+    @Autowired
+    private SalesDailyRollup salesRollup;
     
     
     // 定義綠界使用的日期格式
@@ -56,27 +79,24 @@ public class EcpayService {
 
     /**
      * 根據訂單資訊，準備綠界金流 AIO CheckOut 的參數，並計算 CheckMacValue。
-     * @param order 剛建立並儲存到資料庫的 OrderEntity
+     * 整個流程 3 句 SQL：訂單 + 明細 + 商品名稱一句查回來、新增付款交易、只更新訂單的交易編號欄位
+     * @param orderId 剛建立並儲存到資料庫的訂單 ID
      * @return 綠界所需的參數 Map
      */
-    // 【關鍵修正】：加上 @Transactional 以開啟 JPA Session，允許 Lazy Loading
     @Transactional 
-    public Map<String, String> prepareCheckoutForm(OrderEntity order) {
+    public Map<String, String> prepareCheckoutForm(Integer orderId) {
         
-        // 【關鍵修正】：重新載入 OrderEntity
-        // 確保我們操作的是一個與當前 @Transactional Session 綁定的 Managed Entity
-        OrderEntity managedOrder = orderRepository.findById(order.getOrderId()).orElseThrow(
-            () -> new RuntimeException("ECPay 處理：找不到訂單 ID: " + order.getOrderId())
-        );
+        // 訂單金額跟明細 (商品名稱、數量) 一次 JOIN 抓回來，不載入 Entity
+        List<CheckoutLineView> lines = orderItemRepository.findCheckoutLines(orderId);
+        if (lines.isEmpty()) {
+            throw new RuntimeException("ECPay 處理：找不到訂單 ID: " + orderId);
+        }
+        Integer totalAmount = lines.get(0).getTotalAmount();
         
         // 1. 準備商品名稱字串 (綠界 ItemName)
         // 格式: 商品A x 數量A#商品B x 數量B
-        // 這裡調用 managedOrder.getOrderItems() 會安全地觸發 Lazy Loading
-        String itemName = managedOrder.getOrderItems().stream()
-            .map(item -> {
-                // item.getProduct() 現在應該不會是 null
-                return item.getProduct().getPname() + " x " + item.getQuantity();
-            })
+        String itemName = lines.stream()
+            .map(line -> line.getPname() + " x " + line.getQuantity())
             .collect(Collectors.joining("#"));
 
         // 2. 設定綠界交易參數
@@ -85,9 +105,8 @@ public class EcpayService {
         // 從 application.properties 讀取
         ecpayParams.put("MerchantID", ecpayProperties.getMerchantId()); 
         
-        // 訂單編號 (唯一性)：使用 OrderId 加上時間戳確保唯一，並符合綠界 20 碼限制
-        // 這裡使用 managedOrder.getOrderId()
-        String merchantTradeNo = "TW" + managedOrder.getOrderId() + System.currentTimeMillis() % 10000;
+        // 訂單編號 (唯一性)：時間 + 節點編號 + 序號，每次結帳都是新的號碼，多台機器也不會撞號 (15 碼，符合綠界 20 碼限制)
+        String merchantTradeNo = merchantTradeNoGenerator.next();
         ecpayParams.put("MerchantTradeNo", merchantTradeNo);
         
         // 交易時間 (yyyy/MM/dd HH:mm:ss)
@@ -95,7 +114,7 @@ public class EcpayService {
         ecpayParams.put("MerchantTradeDate", tradeDate);
         
         // 交易總金額
-        ecpayParams.put("TotalAmount", managedOrder.getTotalAmount().toString());
+        ecpayParams.put("TotalAmount", totalAmount.toString());
         
         // 商品名稱 (已在上面處理 ItemName)
         ecpayParams.put("ItemName", itemName);
@@ -129,9 +148,9 @@ public class EcpayService {
 
         ecpayParams.put("CheckMacValue", checkMacValue);
 
-        // 4. 更新訂單中的 MerchantTradeNo (用於綠界回傳時的比對)
-        managedOrder.setEcpaytradeno(merchantTradeNo);
-        orderRepository.save(managedOrder); // 更新訂單
+        // 4. 記一筆付款交易 (綠界回傳時用 MerchantTradeNo 找訂單)，訂單上也留一份最近一次的 MerchantTradeNo
+        paymentTransactionService.start(orderId, totalAmount, merchantTradeNo);
+        orderRepository.updateEcpaytradeno(orderId, merchantTradeNo);
         
         return ecpayParams;
     }
@@ -140,20 +159,12 @@ public class EcpayService {
      * 驗證綠界回傳參數的 CheckMacValue
      */
     public boolean verifyCheckMacValue(Map<String, String> params) {
-        String receivedCheckMacValue = params.get("CheckMacValue");
-        
-        // 綠界規定：回傳時需移除 CheckMacValue 欄位後再計算
-        Map<String, String> cleanParams = new HashMap<>(params);
-        cleanParams.remove("CheckMacValue"); 
-
-        String calculatedCheckMacValue = EcpayUtil.generateCheckMacValue(
-            cleanParams, 
+        // 綠界規定：回傳時需移除 CheckMacValue 欄位後再計算 (encoder 會略過這個欄位)，用固定時間比較結果
+        return EcpayCheckMacEncoder.verify(
+            params, 
             ecpayProperties.getHashKey(), 
             ecpayProperties.getHashIV()
         );
-
-        // 比較計算結果與收到的結果
-        return calculatedCheckMacValue.equals(receivedCheckMacValue);
     }
 
     /**
@@ -164,18 +175,36 @@ public class EcpayService {
     @Transactional
     public void handlePaymentSuccess(String merchantTradeNo, Map<String, String> ecpayResult) {
         
-        // 1. 【核心修正】直接用交易編號字串查詢，不再進行 Long.parseLong() 轉換
-        OrderEntity order = orderRepository.findByEcpaytradeno(merchantTradeNo)
-                .orElseThrow(() -> new RuntimeException("找不到訂單，綠界交易編號: " + merchantTradeNo));
+        // 1. 用交易編號找到訂單並鎖住訂單列，避免跟逾時取消 (OrderExpiryService) 同時處理同一張訂單
+        OrderEntity order = lockOrderByMerchantTradeNo(merchantTradeNo);
         
         System.out.println("處理成功訂單，資料庫 ID: " + order.getOrderId());
 
         // 2. 判斷是否為重複通知 (避免重複處理)
-        if ("PAID".equals(order.getPaymentstatus())) {
+        if ("PAID".equals(order.getPaymentstatus()) || "REFUND_PENDING".equals(order.getPaymentstatus())) {
             System.out.println("訂單 " + order.getOrderId() + " 已支付過，忽略重複通知。");
             return; 
         }
 
+        // 付款通知晚到，訂單已經取消：
+        // 只有逾時自動取消 (OrderExpiryService，payment_status = EXPIRED) 的訂單能救回來，庫存還夠就重新扣回來，照常改成已付款；
+        // 其他原因取消的 (使用者或後台取消) 不能因為付款通知就復活，直接等退款
+        boolean wasCancelled = order.getOrderStatus() == OrderStatus.CANCELLED;
+        if (wasCancelled) {
+            boolean expired = "EXPIRED".equals(order.getPaymentstatus());
+            if (!expired || !orderExpiryService.reserveForLatePayment(order)) {
+                // 訂單維持取消，記下付款結果等退款
+                order.setPaymentstatus("REFUND_PENDING");
+                order.setEcpayrtncode(ecpayResult.get("RtnCode"));
+                order.setEcpayrtnmsg(ecpayResult.get("RtnMsg"));
+                orderRepository.save(order);
+                paymentTransactionService.recordResult(merchantTradeNo, PaymentTransactionService.STATUS_REFUND_PENDING, ecpayResult);
+                System.out.println("DB 訂單 " + order.getOrderId()
+                        + (expired ? " 已逾時取消且庫存不足" : " 已取消") + "，標記為待退款。");
+                return;
+            }
+        }
+
         // 3. 更新訂單狀態和綠界回傳資訊
         order.setPaymentstatus("PAID"); // 狀態改為 PAID
         order.setOrderStatus(OrderStatus.PAID);
@@ -192,30 +221,53 @@ public class EcpayService {
         }
         
         // 更新綠界回傳的其他資訊
-        order.setEcpaytradeno(ecpayResult.get("TradeNo")); // 綠界那邊的流水號 (不同於 MerchantTradeNo)
+        // 綠界那邊的流水號 (TradeNo) 記在付款交易裡，訂單上的 MerchantTradeNo 不覆蓋，重送的通知才找得到訂單
         order.setEcpayrtncode(ecpayResult.get("RtnCode"));
         order.setEcpayrtnmsg(ecpayResult.get("RtnMsg"));
 
         // 4. 儲存變更
         orderRepository.save(order);
+        paymentTransactionService.recordResult(merchantTradeNo, PaymentTransactionService.STATUS_PAID, ecpayResult);
+        // 後台每日銷售彙總 (差額跟訂單在同一個交易裡記)
+        salesRollup.orderPaid(order);
+        if (wasCancelled) {
+            salesRollup.orderRevived(order);
+        }
         System.out.println("DB 訂單 " + order.getOrderId() + " 已更新為 PAID。");
     }
 
+    /**
+     * 用 MerchantTradeNo 找訂單並鎖住訂單列
+     * 先查付款交易 (本機快取 / 唯一索引)，再用主鍵鎖訂單；付款交易表建立之前的舊交易才退回用訂單上的 ecpay_trade_no 找
+     */
+    private OrderEntity lockOrderByMerchantTradeNo(String merchantTradeNo) {
+        Optional<OrderEntity> order = paymentTransactionService.findOrderId(merchantTradeNo)
+                .flatMap(orderRepository::findByIdForUpdate)
+                .or(() -> orderRepository.findByEcpaytradenoForUpdate(merchantTradeNo));
+        return order.orElseThrow(() -> new RuntimeException("找不到訂單，綠界交易編號: " + merchantTradeNo));
+    }
+
     /**
      * 處理付款失敗通知
      */
     @Transactional
     public void handlePaymentFailure(String merchantTradeNo, Map<String, String> ecpayResult) {
         
-        // 1. 【核心修正】一樣改用 findByEcpaytradeno
-        OrderEntity order = orderRepository.findByEcpaytradeno(merchantTradeNo)
-             .orElseThrow(() -> new RuntimeException("找不到訂單，綠界交易編號: " + merchantTradeNo));
+        // 1. 一樣用交易編號找訂單並上鎖
+        OrderEntity order = lockOrderByMerchantTradeNo(merchantTradeNo);
              
         // 2. 取得失敗原因
         String rtnMsg = ecpayResult.getOrDefault("RtnMsg", "交易失敗，無詳細訊息");
         String rtnCode = ecpayResult.getOrDefault("RtnCode", "N/A");
         
         System.out.println("處理失敗訂單 ID: " + order.getOrderId() + ", 原因: " + rtnMsg);
+        paymentTransactionService.recordResult(merchantTradeNo, PaymentTransactionService.STATUS_FAILED, ecpayResult);
+
+        // 同一張訂單可能付款好幾次 (每次一個 MerchantTradeNo)，舊的那次失敗通知晚到，不能把已付款改回失敗
+        if ("PAID".equals(order.getPaymentstatus()) || "REFUND_PENDING".equals(order.getPaymentstatus())) {
+            System.out.println("訂單 " + order.getOrderId() + " 已支付過，只記錄這次交易失敗。");
+            return;
+        }
         
         // 3. 更新訂單狀態
         order.setPaymentstatus("FAILED"); 
@@ -1,13 +1,17 @@
 package com.tw.shopping.main.service;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
 
+import com.tw.shopping.main.dto.CategoryDto;
+import com.tw.shopping.main.dto.ProductDto;
 import com.tw.shopping.main.entity.CategoryEntity;
 import com.tw.shopping.main.entity.ProductEntity;
 import com.tw.shopping.main.repository.CartRepository;
@@ -28,43 +32,79 @@ public class HomeService {
 	private final List<Integer> SEVEN_PRODUCT_IDS = Arrays.asList(470, 358, 1305, 4, 2, 1178, 17);
 	private final List<Integer> PD_PRODUCT_IDS = Arrays.asList(1281, 1282, 1283);
 	
+	// 首頁會出現的商品快取 (這些商品異動時要清掉)
+	public static final List<String> PRODUCT_CACHE_NAMES = Arrays.asList("home_seven_products", "home_featured_products", "home_all_products");
+	public static final String CATEGORY_CACHE_NAME = "home_categories";
+	
+	// 首頁會出現的所有商品 id
+	public Set<Integer> getHomeProductIds() {
+		Set<Integer> ids = new HashSet<>(SEVEN_PRODUCT_IDS);
+		ids.addAll(PD_PRODUCT_IDS);
+		return ids;
+	}
+	
 	// 本月主打 七筆資料
     // 快取名稱: home_seven_products
-	@Cacheable(value = "home_seven_products", unless = "#result == null") 
-	public List<ProductEntity> getSevenProduct() {
+	@Cacheable(value = "home_seven_products", sync = true) 
+	public List<ProductDto> getSevenProduct() {
         System.out.println("快取未命中：查詢本月主打商品..."); // 測試用，上線可拿掉
-		return productRepository.findAllById(SEVEN_PRODUCT_IDS);
+		return toProductDtos(productRepository.findAllById(SEVEN_PRODUCT_IDS));
 	}
 
 	// 推薦熱點系列資料
     // 快取名稱: home_featured_products
-	@Cacheable(value = "home_featured_products", unless = "#result == null")
-	public List<ProductEntity> getpdProduct() {
+	@Cacheable(value = "home_featured_products", sync = true)
+	public List<ProductDto> getpdProduct() {
         System.out.println("快取未命中：查詢推薦熱點商品...");
-		return productRepository.findAllById(PD_PRODUCT_IDS);
+		return toProductDtos(productRepository.findAllById(PD_PRODUCT_IDS));
 	}
 	
 	/**
 	 * 取得所有產品資料 (包含本月主打和推薦熱點)
      * 快取名稱: home_all_products
 	 */
-	@Cacheable(value = "home_all_products", unless = "#result == null")
-	public List<ProductEntity> getAllProductsData() {
+	@Cacheable(value = "home_all_products", sync = true)
+	public List<ProductDto> getAllProductsData() {
         System.out.println("快取未命中：查詢所有首頁商品...");
 		// 結合兩個 ID 列表並去重，然後一次性查詢資料庫
 		List<Integer> allIds = Stream.concat(SEVEN_PRODUCT_IDS.stream(), PD_PRODUCT_IDS.stream())
                 .distinct()
                 .collect(Collectors.toList());
 		
-		return productRepository.findAllById(allIds);
+		return toProductDtos(productRepository.findAllById(allIds));
 	}
 	
     // 產品分類
     // 快取名稱: home_categories
-	@Cacheable(value = "home_categories", unless = "#result == null")
-	public List<CategoryEntity> getCategory() {
+	@Cacheable(value = "home_categories", sync = true)
+	public List<CategoryDto> getCategory() {
         System.out.println("快取未命中：查詢分類...");
 		List<Integer> ids = Arrays.asList(1, 2, 3, 4);
-		return categoryRepository.findAllById(ids);
+		return toCategoryDtos(categoryRepository.findAllById(ids));
+	}
+
+	// 快取裡只放 DTO，不放 Entity (Entity 會帶著關聯一起被序列化)
+	private List<ProductDto> toProductDtos(List<ProductEntity> entities) {
+		return entities.stream().map(entity -> {
+			ProductDto dto = new ProductDto();
+			dto.setProductid(entity.getProductid());
+			dto.setPname(entity.getPname());
+			dto.setDescription(entity.getDescription());
+			dto.setPrice(entity.getPrice());
+			dto.setColor(entity.getColor());
+			dto.setProductimage(entity.getProductimage());
+			return dto;
+		}).collect(Collectors.toList());
+	}
+
+	private List<CategoryDto> toCategoryDtos(List<CategoryEntity> entities) {
+		return entities.stream().map(entity -> {
+			CategoryDto dto = new CategoryDto();
+			dto.setCategoryid(entity.getCategoryid());
+			dto.setCname(entity.getCname());
+			dto.setCategoryimage(entity.getCategoryimage());
+			dto.setCode(entity.getCode());
+			return dto;
+		}).collect(Collectors.toList());
 	}
-}
\ No newline at end of file
+}
@@ -1,5 +1,7 @@
 package com.tw.shopping.main.service;
 
+import java.util.List;
+
 
 import org.springframework.stereotype.Service;
 
@@ -8,14 +10,16 @@ import com.tw.shopping.main.dto.OrderResponseDto;
 import com.tw.shopping.main.dto.OrderUpdateRequestDto;
 
 import com.tw.shopping.main.entity.OrderEntity;
-import com.tw.shopping.main.entity.OrderItemEntity;
-import com.tw.shopping.main.entity.ProductEntity;
 import com.tw.shopping.main.enums.OrderStatus;
+import com.tw.shopping.main.exception.BusinessValidationException;
 import com.tw.shopping.main.mapper.OrderMapStruct;
 import com.tw.shopping.main.repository.OrderRepository;
-import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
 import com.tw.shopping.main.service.helper.OrderValidationHelper;
+import com.tw.shopping.main.service.stock.ProductStockCache;
 import com.tw.shopping.main.service.helper.OrderValidationHelper.OrderValidationResult;
+import com.tw.shopping.main.service.inventory.InventoryReservationStrategy;
+import com.tw.shopping.main.service.stats.SalesDailyRollup;
 import jakarta.transaction.Transactional;
 
 @Service
@@ -23,21 +27,27 @@ public class OrderCommandService {
 //  0=CREATED;1=PAID ;2=CANCELLED;3=REFUNDED 
 	
 	private final OrderRepository oRepo;
-	private final ProductRepository productRepo;
+	private final ProductStockCache stockCache;
+	private final InventoryReservationStrategy inventoryStrategy;
 	private final OrderMapStruct mapper;
 	private final OrderValidationHelper helper;
+	private final SalesDailyRollup salesRollup;
 	
 	public OrderCommandService (
 			
 			OrderRepository oRepo, 
-			ProductRepository productRepo,
+			ProductStockCache stockCache,
+			InventoryReservationStrategy inventoryStrategy,
 			OrderMapStruct mapper,
-			OrderValidationHelper helper) {
+			OrderValidationHelper helper,
+			SalesDailyRollup salesRollup) {
 		
 		this.oRepo = oRepo;
-		this.productRepo = productRepo;
+		this.stockCache = stockCache;
+		this.inventoryStrategy = inventoryStrategy;
 		this.mapper = mapper ;
 		this.helper = helper;
+		this.salesRollup = salesRollup;
 	}
 //	--------------------------------
 
@@ -69,12 +79,21 @@ public class OrderCommandService {
 		helper.ensureIsModifiable(result);
 		
 		OrderEntity canceledO = result.order();
+		//先用條件式 UPDATE 搶到這次狀態變更，同時送出兩次取消只有一次會回補庫存
+		if (oRepo.updateStatusIfCurrent(orderId, canceledO.getOrderStatus(), OrderStatus.CANCELLED) == 0) {
+			throw new BusinessValidationException("訂單狀態已變更，請重新整理後再試");
+		}
 		//直接回補(預設不論有無付款皆扣庫存)
 		replenishStock(canceledO);
+		salesRollup.orderCancelled(canceledO);
 		
 		//付錢了就退款，沒付就
 		if (canceledO.getOrderStatus() == OrderStatus.PAID) {
-	       //還沒寫
+	       //退款還沒寫：先標記待退款，每日銷售彙總扣掉這筆已付款金額
+			if ("PAID".equals(canceledO.getPaymentstatus())) {
+				canceledO.setPaymentstatus("REFUND_PENDING");
+				salesRollup.orderRefunded(canceledO);
+			}
 	    }
 		
 		//更改資料庫內訂單狀態為已取消
@@ -115,13 +134,15 @@ public class OrderCommandService {
 	
 //  庫存回補用
 	private void replenishStock(OrderEntity order) {
-	   
 	    
 	    // 在 @Transactional 內操作，確保原子性
-	    for (OrderItemEntity item : order.getOrderItems()) {
-	        ProductEntity product = item.getProduct(); 
-	        product.setStock(product.getStock() + item.getQuantity());
-	        productRepo.save(product); 
+	    // 直接在 DB 上加回去 (方式見 inventory.strategy，預設是 ProductRepository.increaseStock 一句 UPDATE)
+	    // 不先讀商品再整列寫回，不會蓋掉同時間別人扣的庫存；退貨、逾時取消也是同一個做法
+	    // 明細依商品加總 (已依 productid 排序)，不載入商品
+	    List<StockChange> changes = oRepo.sumItemQuantities(List.of(order.getOrderId()));
+	    inventoryStrategy.release(changes);
+	    for (StockChange change : changes) {
+	        stockCache.increaseAfterCommit(change.productId(), change.quantity());
 	    }
 	}
 	
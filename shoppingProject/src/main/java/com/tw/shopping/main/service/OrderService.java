@@ -2,26 +2,35 @@ package com.tw.shopping.main.service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.tw.shopping.main.dto.CheckoutRequestDto;
-import com.tw.shopping.main.entity.CartEntity;
 import com.tw.shopping.main.entity.OrderEntity;
 import com.tw.shopping.main.entity.OrderItemEntity;
 import com.tw.shopping.main.entity.ProductEntity;
 import com.tw.shopping.main.entity.UserEntity;
 import com.tw.shopping.main.enums.OrderStatus;
+import com.tw.shopping.main.exception.BusinessValidationException;
 import com.tw.shopping.main.exception.StockNotEnoughException;
-import com.tw.shopping.main.repository.CartRepository;
 import com.tw.shopping.main.repository.OrderItemRepository;
 import com.tw.shopping.main.repository.OrderRepository;
 import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
 import com.tw.shopping.main.repository.UserRepository;
+import com.tw.shopping.main.service.cart.CartLine;
+import com.tw.shopping.main.service.cart.CartStore;
+import com.tw.shopping.main.service.flashsale.FlashSaleStore;
+import com.tw.shopping.main.service.inventory.InventoryReservationStrategy;
+import com.tw.shopping.main.service.stats.SalesDailyRollup;
+import com.tw.shopping.main.service.stock.ProductStockCache;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -30,7 +39,7 @@ import jakarta.persistence.PersistenceContext;
 public class OrderService {
 
     @Autowired
-    private CartRepository cartRepository;
+    private CartStore cartStore;
     
     @Autowired
     private OrderRepository orderRepository;
@@ -44,31 +53,122 @@ public class OrderService {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductStockCache stockCache;
+
+    @Autowired
+    private InventoryReservationStrategy inventoryStrategy;
+
+    @Autowired
+    private FlashSaleStore flashSaleStore;
+
+    @Autowired
+    private SalesDailyRollup salesRollup;
+
     @PersistenceContext
     private EntityManager entityManager;
 
-    @Transactional
+    // READ COMMITTED：optimistic 扣庫存衝突後重讀要看得到別人剛 commit 的版本
+    // 逾時：剩餘時間會設成每個 SQL 的 query timeout，鎖等待也會被中斷，整筆結帳一定在 Idempotency-Key 佔位過期前結束
+    @Transactional(isolation = Isolation.READ_COMMITTED, timeoutString = "${idempotency.checkout-timeout-seconds:20}")
     public OrderEntity createOrder(CheckoutRequestDto request) {
         // 1. 驗證用戶
         UserEntity user = userRepository.findById(request.getUserId())
                 .orElseThrow(() -> new RuntimeException("用戶不存在"));
 
-        // 2. 獲取購物車項目
-        List<CartEntity> cartItems = cartRepository.findByUserWithProducts(user);
+        // 2. 獲取購物車項目 (整份購物車的快照，已依 productid 排序)
+        List<CartLine> cartItems = cartStore.snapshot(user.getUserid());
         
         if (cartItems.isEmpty()) {
             throw new RuntimeException("購物車為空，無法結帳");
         }
 
+        // 購物車裡的商品一次查回來
+        Map<Integer, ProductEntity> cartProducts = productRepository.findAllById(
+                cartItems.stream().map(CartLine::productId).toList())
+                .stream()
+                .collect(Collectors.toMap(ProductEntity::getProductid, Function.identity()));
+        for (CartLine item : cartItems) {
+            if (!cartProducts.containsKey(item.productId())) {
+                throw new RuntimeException("商品異常消失");
+            }
+        }
+
+        // 限時搶購中的商品只能從搶購下單 (庫存在 Redis 那邊扣)
+        if (flashSaleStore.anyOnSale(cartProducts.keySet())) {
+            throw new BusinessValidationException("購物車內有限時搶購中的商品，請從搶購頁面下單");
+        }
+
         // 3. 計算總金額
         int totalAmount = cartItems.stream()
-                .mapToInt(item -> item.getProduct().getPrice() * item.getQuantity())
+                .mapToInt(item -> cartProducts.get(item.productId()).getPrice() * item.quantity())
                 .sum();
         
         // TODO: 這裡可以加上運費計算邏輯
         // totalAmount += 150; 
 
         // 4. 建立訂單主檔 (OrderEntity)
+        OrderEntity order = newOrder(request, user, totalAmount);
+
+        // 先儲存 Order 以取得 OrderId
+        OrderEntity savedOrder = orderRepository.save(order);
+
+        // 5. ★ 處理庫存鎖定：整台購物車一次扣 (方式見 inventory.strategy，預設 UPDATE ... WHERE stock >= ?)
+        // 防止死鎖，依照 Product ID 的順序扣 (snapshot 已經排好)
+        List<StockChange> changes = cartItems.stream()
+                .map(item -> new StockChange(item.productId(), item.quantity()))
+                .toList();
+        boolean[] decreased = inventoryStrategy.reserve(changes);
+
+        List<String> outOfStock = new ArrayList<>();
+        for (int i = 0; i < decreased.length; i++) {
+            if (!decreased[i]) {
+                outOfStock.add(cartProducts.get(cartItems.get(i).productId()).getPname());
+            }
+        }
+        if (!outOfStock.isEmpty()) {
+            // WHERE 條件不成立 (stock < 購買數量)，拋出異常，觸發 @Transactional 全部回滾
+            throw new StockNotEnoughException("商品 " + outOfStock + " 庫存不足，無法結帳！");
+        }
+
+        // --- 執行到這裡代表庫存已經扣成功了 ---
+
+        // 6. 建立訂單明細 (OrderItemEntity)：直接用前面查回來的商品，batch 不會清掉持久化內容，不用再逐筆重查
+        List<OrderItemEntity> orderItems = new ArrayList<>();
+        for (CartLine cartItem : cartItems) {
+            ProductEntity product = cartProducts.get(cartItem.productId());
+
+            // 商品頁的庫存快取等交易 commit 後再扣
+            stockCache.decreaseAfterCommit(product.getProductid(), cartItem.quantity());
+
+            OrderItemEntity orderItem = new OrderItemEntity();
+            orderItem.setOrder(savedOrder); // 設定關聯
+            orderItem.setProductId(product.getProductid().longValue());
+            orderItem.setQuantity(cartItem.quantity());
+            orderItem.setUnitPrice(product.getPrice());
+            orderItem.setDiscount(java.math.BigDecimal.ZERO); // 預設無折扣
+            orderItem.setProduct(product); // 設定商品關聯
+            
+            orderItems.add(orderItem);
+        }
+        
+        // 批次儲存明細
+        orderItemRepository.saveAll(orderItems);
+        
+        // 將明細設回訂單物件 (為了後續 ECPay 顯示商品名稱)
+        savedOrder.setOrderItems(orderItems);
+
+        // 後台每日銷售彙總 (差額跟訂單在同一個交易裡記)
+        salesRollup.orderCreated(savedOrder);
+
+        // 7. 清空購物車 (只扣掉這次下單的項目)
+        cartStore.removeOrdered(user.getUserid(), cartItems);
+
+        return savedOrder;
+    }
+
+    // 建立訂單主檔 (還沒存)，一般結帳跟限時搶購共用
+    public OrderEntity newOrder(CheckoutRequestDto request, UserEntity user, int totalAmount) {
         OrderEntity order = new OrderEntity();
         order.setOrderDate(LocalDateTime.now());
         order.setTotalAmount(totalAmount);
@@ -107,62 +207,7 @@ public class OrderService {
         order.setUserid(user); 
         order.setOrderStatus(OrderStatus.PENDING);
         order.setPaymentmethods("1");
-        
-        // 先儲存 Order 以取得 OrderId
-        OrderEntity savedOrder = orderRepository.save(order);
-
-        // 防止死鎖，所以在進入迴圈前，強制將購物車項目依照 Product ID 排序
-        cartItems.sort(Comparator.comparing(item -> item.getProduct().getProductid()));
-
-        // 5. 建立訂單明細 (OrderItemEntity) & ★ 處理庫存鎖定 (這是我臣又貝修改的地方)
-        List<OrderItemEntity> orderItems = new ArrayList<>();
-        
-        for (CartEntity cartItem : cartItems) {
-            // 接下來是加上原子更新的修改後的程式碼
-            // 1. 獲取商品ID
-            Integer productid = cartItem.getProduct().getProductid();
-            Integer buyQuantity = cartItem.getQuantity();
-
-            // 🔥【關鍵修改】直接嘗試在資料庫扣庫存
-            // SQL: UPDATE product SET stock = stock - ? WHERE id = ? AND stock >= ?
-            int updateCount = productRepository.decreaseStock(productid, buyQuantity);
-            
-            if (updateCount == 0) {
-                // 如果回傳 0，代表 WHERE 條件不成立 (stock < buyQuantity)，也就是庫存不足
-                // 拋出異常，觸發 @Transactional 全部回滾
-                throw new StockNotEnoughException("商品 [" + cartItem.getProduct().getPname() + "] 庫存不足，無法結帳！");
-            }
-
-            // --- 執行到這裡代表庫存已經扣成功了 ---
-
-            // 因為 decreaseStock 只是執行 SQL，沒有回傳 Entity，
-            // 所以我們需要重新讀取一次商品資訊來建立訂單明細
-            // (這時候讀到的庫存會是扣除後的，但沒關係，訂單明細重點是價格)
-            ProductEntity product = productRepository.findById(productid)
-                    .orElseThrow(() -> new RuntimeException("商品異常消失"));
 
-            // 2. 建立訂單明細 (這裡建議使用 lockedProduct，確保資料最新)
-            // 先前的我是使用 cartItem.getProduct()，但那可能不是最新的庫存資料
-            OrderItemEntity orderItem = new OrderItemEntity();
-            orderItem.setOrder(savedOrder); // 設定關聯
-            orderItem.setProductId(product.getProductid().longValue());
-            orderItem.setQuantity(buyQuantity);
-            orderItem.setUnitPrice(product.getPrice());
-            orderItem.setDiscount(java.math.BigDecimal.ZERO); // 預設無折扣
-            orderItem.setProduct(product); // 設定商品關聯
-            
-            orderItems.add(orderItem);
-        }
-        
-        // 批次儲存明細
-        orderItemRepository.saveAll(orderItems);
-        
-        // 將明細設回訂單物件 (為了後續 ECPay 顯示商品名稱)
-        savedOrder.setOrderItems(orderItems);
-
-        // 6. 清空購物車
-        cartRepository.deleteAll(cartItems);
-
-        return savedOrder;
+        return order;
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package com.tw.shopping.main.service;
 
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,8 +10,8 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
 
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
@@ -30,9 +31,9 @@ import com.tw.shopping.main.entity.CategoryEntity;
 import com.tw.shopping.main.entity.ProductEntity;
 import com.tw.shopping.main.repository.CategoryRepository;
 import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.service.stock.ProductStockCache;
 
-import jakarta.persistence.criteria.Root;
-import jakarta.persistence.criteria.Subquery;
+import jakarta.persistence.criteria.Predicate;
 
 
 @Service
@@ -44,14 +45,20 @@ public class ProductDetailService {
 	private CategoryRepository categoryRepo;
 	@Autowired
     private ObjectProvider<ProductDetailService> selfProvider;
+	@Autowired
+	private ProductStockCache stockCache;
 	// 建立一個固定10條執行緒的池子 (數量依CPU核心數調整，例如10~20)
 	private final ExecutorService taskExecutor = Executors.newFixedThreadPool(10);	
 	
 
 
 
-	// 共用邏輯 -> 取得同系列(pname跟description)
+	// 共用邏輯 -> 取得同系列 (走 series_id 索引)
 	private List<ProductEntity> findSameSeries(ProductEntity product) {
+		if (product.getSeriesId() != null) {
+			return productRepo.findBySeriesId(product.getSeriesId());
+		}
+		// 還沒回填 series_id 的舊資料才退回字串比對
 		return productRepo.findAll((root, query, cb) -> cb.and(
 			cb.equal(root.get("pname"),product.getPname()),
 			cb.equal(root.get("description"),product.getDescription())
@@ -145,23 +152,26 @@ public class ProductDetailService {
 
 
 
-	// 共用邏輯 -> 推薦商品查詢 Specification
-    private Specification<ProductEntity> buildRelatedSpec(Integer categoryId, String pname, String description){
+	// 共用邏輯 -> 推薦商品查詢 Specification (同分類、不同系列)
+    private Specification<ProductEntity> buildRelatedSpec(Integer categoryId, ProductEntity current){
 		return (root, query, cb) -> {
 
-			Subquery<Integer> sub = query.subquery(Integer.class);
-			Root<ProductEntity> subRoot = sub.from(ProductEntity.class);
+			Predicate sameCategory = cb.equal(root.get("category").get("categoryid"), categoryId);
 
-			sub.select(cb.literal(1));
-			sub.where(
-				cb.equal(subRoot.get("pname"), pname),
-				cb.equal(subRoot.get("description"), description),
-				cb.equal(subRoot.get("productid"), root.get("productid"))
-			);
+			if (current.getSeriesId() != null) {
+				return cb.and(
+					sameCategory,
+					cb.or(cb.isNull(root.get("seriesId")), cb.notEqual(root.get("seriesId"), current.getSeriesId()))
+				);
+			}
 
+			// 還沒回填 series_id 的舊資料才退回字串比對
 			return cb.and(
-				cb.equal(root.get("category").get("categoryid"), categoryId),
-				cb.not(cb.exists(sub))
+				sameCategory,
+				cb.not(cb.and(
+					cb.equal(root.get("pname"), current.getPname()),
+					cb.equal(root.get("description"), current.getDescription())
+				))
 			);
 		};
 	}
@@ -198,11 +208,14 @@ public class ProductDetailService {
     // ==========================================================
     public ProductDetailDto getProductDetail(Integer productId) {
         
-        // 1. 先拿 靜態資料(Redis快取)
-        ProductDetailDto dto = selfProvider.getObject().getCachedStaticData(productId);
+        // 1. 先拿 靜態資料(本機 / Redis 快取)
+        ProductDetailDto cached = selfProvider.getObject().getCachedStaticData(productId);
 
         // 如果是空商品直接回傳
-        if (dto.getProductid() == -1) return dto;
+        if (cached.getProductid() == -1) return cached;
+
+        // 本機快取的物件是所有請求共用的，要先複製再改庫存
+        ProductDetailDto dto = copyForStockOverlay(cached);
 
         // 2.即時更新庫存(直接查DB)
         syncRealTimeStock(dto);
@@ -213,10 +226,11 @@ public class ProductDetailService {
     // ==========================================================
     //  靜態資料來源 (有快取，負責很重的查詢)
     // ==========================================================
-    @Cacheable(value = "product_detail", key = "#productId") 
+    @Cacheable(value = "product_detail", key = "#productId", sync = true) 
     public ProductDetailDto getCachedStaticData(Integer productId) {
         
-        ProductEntity product = productRepo.findById(productId).orElse(null);
+        // 分類要在另一條執行緒讀，先用 EntityGraph 一起抓回來
+        ProductEntity product = productRepo.findWithCategoryByProductid(productId).orElse(null);
         if(product == null) {
             ProductDetailDto dummy = new ProductDetailDto();
             dummy.setProductid(-1);
@@ -225,6 +239,7 @@ public class ProductDetailService {
 
         ProductDetailDto dto = new ProductDetailDto();
         dto.setProductid(product.getProductid());
+        dto.setSeriesId(product.getSeriesId());
         dto.setPname(product.getPname());
         dto.setSpecification(product.getSpecification());
         dto.setPrice(product.getPrice());
@@ -274,18 +289,40 @@ public class ProductDetailService {
 
 
 
+    //  Helper: 複製會被改到庫存的部分 (主商品、規格選項)，其餘唯讀欄位共用
+    private ProductDetailDto copyForStockOverlay(ProductDetailDto cached) {
+        ProductDetailDto dto = new ProductDetailDto();
+        BeanUtils.copyProperties(cached, dto);
+
+        if (cached.getOptions() != null && cached.getOptions().getColor() != null) {
+            List<ColorOption> colors = new ArrayList<>(cached.getOptions().getColor().size());
+            for (ColorOption source : cached.getOptions().getColor()) {
+                ColorOption copy = new ColorOption();
+                BeanUtils.copyProperties(source, copy);
+                colors.add(copy);
+            }
+            Options options = new Options();
+            options.setColor(colors);
+            dto.setOptions(options);
+        }
+        return dto;
+    }
+
+
+
+
     //  Helper: 庫存同步邏輯 (私有方法)
     private void syncRealTimeStock(ProductDetailDto dto) {
-        // 利用索引快速重查一次 DB，抓出同系列最新庫存
-        ProductEntity probe = new ProductEntity();
-        probe.setPname(dto.getPname());
-        probe.setDescription(dto.getDescription());
-        
-        List<ProductEntity> freshVariants = findSameSeries(probe);
+        // 主商品 + 各規格選項的 id，一次從庫存快取讀 (快取沒有的才查 DB)
+        Set<Integer> ids = new HashSet<>();
+        ids.add(dto.getProductid());
+        if (dto.getOptions() != null && dto.getOptions().getColor() != null) {
+            for (ColorOption opt : dto.getOptions().getColor()) {
+                ids.add(opt.getProductid());
+            }
+        }
 
-        // 轉成 Map 方便比對
-        Map<Integer, Integer> stockMap = freshVariants.stream()
-            .collect(Collectors.toMap(ProductEntity::getProductid, ProductEntity::getStock));
+        Map<Integer, Integer> stockMap = stockCache.getStocks(ids);
 
         // 更新 "主商品" 庫存
         if (stockMap.containsKey(dto.getProductid())) {
@@ -306,7 +343,7 @@ public class ProductDetailService {
 
 
     // getRelatedProducts 使用共用邏輯(去除重複)
-	@Cacheable(value = "related_products", key = "{#categoryid, #excludeId, #limit}")
+	@Cacheable(value = "related_products", key = "{#categoryid, #excludeId, #limit}", sync = true)
     public List<RelatedProductDto> getRelatedProducts(Integer categoryid,
                                                       Integer excludeId,
                                                       int limit){
@@ -318,8 +355,7 @@ public class ProductDetailService {
 
        	Specification<ProductEntity> spec = buildRelatedSpec(
 				current.getCategory().getCategoryid(),
-				current.getPname(),
-				current.getDescription()
+				current
 		);
 
         Pageable pageable = PageRequest.of(0, limit);
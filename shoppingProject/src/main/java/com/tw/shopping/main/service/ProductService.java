@@ -1,14 +1,21 @@
 package com.tw.shopping.main.service;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
@@ -18,7 +25,19 @@ import com.tw.shopping.main.entity.CategoryEntity;
 import com.tw.shopping.main.entity.ProductEntity;
 import com.tw.shopping.main.repository.CategoryRepository;
 import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.service.search.ProductScrollSlice;
+import com.tw.shopping.main.service.search.ProductSearchCriteria;
+import com.tw.shopping.main.service.search.ProductSearchCursor;
+import com.tw.shopping.main.service.search.ProductSearchEngine;
+import com.tw.shopping.main.service.search.ProductSearchEngine.SearchHits;
+import com.tw.shopping.main.service.search.ProductSearchEngine.SearchWindow;
+import com.tw.shopping.main.service.search.ProductSearchSort;
 
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
 
 @Service
@@ -33,24 +52,205 @@ public class ProductService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    // 記憶體倒排索引 (關鍵字 + 分類 + 價格 + 排序都在這裡做完)
+    @Autowired
+    private ProductSearchEngine searchEngine;
+
+    // 呼叫自己有 @Cacheable 的方法要透過代理
+    @Autowired
+    private ObjectProvider<ProductService> selfProvider;
+
+    // 游標分頁每次最多回傳的筆數
+    private static final int MAX_SCROLL_SIZE = 100;
+
     public Page<ProductEntity> searchProducts(String mainCategoryCode, String subCategoryCode, Integer maxPrice, Integer minPrice, String keyword, Integer page, Integer size, String sort){
 
         // 設定那些排序
-        Sort sortOption = switch (sort) {
-            case "latest" -> Sort.by("createdAt").descending();
-            case "priceAsc" -> Sort.by("price").ascending();
-            case "priceDesc" -> Sort.by("price").descending();
-            case "ratingAsc" -> Sort.by("rating").ascending();
-            case "ratingDesc" -> Sort.by("rating").descending();
-            default -> Sort.unsorted();
-        };
+        ProductSearchSort searchSort = ProductSearchSort.fromParam(sort);
+        Sort sortOption = searchSort.toSort();
 
         // 建立 Pageable 物件
         // PageRequest.of(頁碼, 每頁大小)
         // Spring Data JPA 的頁碼從 0 開始 每頁 12 筆資料
         Pageable pageable = PageRequest.of(page, size, sortOption);
 
-        Specification<ProductEntity> spec = (root, query, cb) -> {
+        Page<ProductEntity> result = searchEngine.isReady()
+                ? searchWithIndex(mainCategoryCode, subCategoryCode, maxPrice, minPrice, keyword, pageable, searchSort)
+                : searchWithDatabase(mainCategoryCode, subCategoryCode, maxPrice, minPrice, keyword, pageable, searchSort);
+
+        // 商業邏輯監控：紀錄搜尋無結果的關鍵字
+        // 條件：使用者有關鍵字搜尋 + 結果數量為 0
+        if (StringUtils.hasText(keyword) && result.getTotalElements() == 0) {
+            // 使用 WARN 層級，方便在大量 Log 中一眼看到
+            logger.warn("🛑 [潛在商機流失] 使用者搜尋關鍵字: '{}'，但系統中無此商品。", keyword);
+        }
+
+        return result;
+    }
+
+    // 走倒排索引：索引算出這一頁的 productid，再用主鍵撈這一頁的商品
+    private Page<ProductEntity> searchWithIndex(String mainCategoryCode, String subCategoryCode, Integer maxPrice, Integer minPrice, String keyword, Pageable pageable, ProductSearchSort searchSort) {
+        Integer categoryId = null;
+        Integer parentCategoryId = null;
+
+        if (StringUtils.hasText(subCategoryCode)) {
+            CategoryEntity subCat = searchEngine.findCategoryByCode(subCategoryCode);
+            // 小分類 code 不存在 -> 跟原本 SQL 一樣查不到任何東西
+            if (subCat == null) {
+                return Page.empty(pageable);
+            }
+            categoryId = subCat.getCategoryid();
+        } else if (StringUtils.hasText(mainCategoryCode)) {
+            CategoryEntity mainCat = searchEngine.findCategoryByCode(mainCategoryCode);
+            if (mainCat != null) {
+                parentCategoryId = mainCat.getCategoryid();
+            }
+        }
+
+        ProductSearchCriteria criteria = new ProductSearchCriteria(keyword, categoryId, parentCategoryId, minPrice, maxPrice);
+        SearchHits hits = searchEngine.search(criteria, searchSort, (int) pageable.getOffset(), pageable.getPageSize());
+
+        List<ProductEntity> content = new ArrayList<>(productRepository.findAllById(hits.productIds()));
+        // findAllById 不保證順序，照索引排好的順序放回去
+        content.sort(Comparator.comparingInt(p -> hits.productIds().indexOf(p.getProductid())));
+
+        return new PageImpl<>(content, pageable, hits.total());
+    }
+
+    // 索引還沒準備好時的備援：原本的 JPA Specification 查詢
+    private Page<ProductEntity> searchWithDatabase(String mainCategoryCode, String subCategoryCode, Integer maxPrice, Integer minPrice, String keyword, Pageable pageable, ProductSearchSort searchSort) {
+        Specification<ProductEntity> spec = buildSpecification(mainCategoryCode, subCategoryCode, maxPrice, minPrice, keyword);
+        // 同分時用 productid 排，跟索引的順序一致
+        Sort.Direction idDirection = ProductSearchCursor.isDescending(searchSort) ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Pageable stable = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+                pageable.getSort().and(Sort.by(idDirection, "productid")));
+        return productRepository.findAll(spec, stable);
+    }
+
+    // ==========================================================
+    //  游標分頁 (無限捲動用)：不用 OFFSET，也不跑 COUNT(*)
+    // ==========================================================
+    public ProductScrollSlice scrollProducts(String mainCategoryCode, String subCategoryCode, Integer maxPrice, Integer minPrice, String keyword, String cursor, Integer size, String sort, boolean withTotal) {
+
+        // 有游標就以游標裡的排序為準，避免前端換了排序卻帶舊游標
+        ProductSearchCursor after = StringUtils.hasText(cursor) ? ProductSearchCursor.decode(cursor) : null;
+        ProductSearchSort searchSort = after != null ? after.sort() : ProductSearchSort.fromParam(sort);
+        int limit = Math.max(1, Math.min(size, MAX_SCROLL_SIZE));
+
+        ProductScrollSlice result = searchEngine.isReady()
+                ? scrollWithIndex(mainCategoryCode, subCategoryCode, maxPrice, minPrice, keyword, after, limit, searchSort, withTotal)
+                : scrollWithDatabase(mainCategoryCode, subCategoryCode, maxPrice, minPrice, keyword, after, limit, searchSort, withTotal);
+
+        if (StringUtils.hasText(keyword) && after == null && result.slice().getContent().isEmpty()) {
+            logger.warn("🛑 [潛在商機流失] 使用者搜尋關鍵字: '{}'，但系統中無此商品。", keyword);
+        }
+        return result;
+    }
+
+    private ProductScrollSlice scrollWithIndex(String mainCategoryCode, String subCategoryCode, Integer maxPrice, Integer minPrice, String keyword, ProductSearchCursor after, int limit, ProductSearchSort searchSort, boolean withTotal) {
+        Integer categoryId = null;
+        Integer parentCategoryId = null;
+
+        if (StringUtils.hasText(subCategoryCode)) {
+            CategoryEntity subCat = searchEngine.findCategoryByCode(subCategoryCode);
+            if (subCat == null) {
+                return new ProductScrollSlice(new SliceImpl<>(List.of(), PageRequest.ofSize(limit), false), null, withTotal ? 0L : null);
+            }
+            categoryId = subCat.getCategoryid();
+        } else if (StringUtils.hasText(mainCategoryCode)) {
+            CategoryEntity mainCat = searchEngine.findCategoryByCode(mainCategoryCode);
+            if (mainCat != null) {
+                parentCategoryId = mainCat.getCategoryid();
+            }
+        }
+
+        ProductSearchCriteria criteria = new ProductSearchCriteria(keyword, categoryId, parentCategoryId, minPrice, maxPrice);
+        SearchWindow window = searchEngine.searchAfter(criteria, searchSort, after, limit);
+
+        List<ProductEntity> content = new ArrayList<>(productRepository.findAllById(window.productIds()));
+        content.sort(Comparator.comparingInt(p -> window.productIds().indexOf(p.getProductid())));
+
+        // 索引本來就知道命中筆數，不用另外 COUNT
+        return toScrollSlice(content, window.hasNext(), limit, searchSort, withTotal ? window.total() : null);
+    }
+
+    private ProductScrollSlice scrollWithDatabase(String mainCategoryCode, String subCategoryCode, Integer maxPrice, Integer minPrice, String keyword, ProductSearchCursor after, int limit, ProductSearchSort searchSort, boolean withTotal) {
+        Specification<ProductEntity> filter = buildSpecification(mainCategoryCode, subCategoryCode, maxPrice, minPrice, keyword);
+        Specification<ProductEntity> spec = filter.and(keyset(searchSort, after));
+
+        // 多抓一筆用來判斷還有沒有下一頁 (ORDER BY 在 keyset 裡)
+        List<ProductEntity> rows = productRepository.findBy(spec, q -> q.limit(limit + 1).all());
+        boolean hasNext = rows.size() > limit;
+        List<ProductEntity> content = hasNext ? rows.subList(0, limit) : rows;
+
+        Long estimatedTotal = null;
+        if (withTotal) {
+            String countKey = String.join("|", String.valueOf(mainCategoryCode), String.valueOf(subCategoryCode),
+                    String.valueOf(minPrice), String.valueOf(maxPrice), String.valueOf(keyword));
+            estimatedTotal = selfProvider.getObject().estimateCount(countKey, filter);
+        }
+        return toScrollSlice(content, hasNext, limit, searchSort, estimatedTotal);
+    }
+
+    /**
+     * 篩選條件的總筆數估計值 (有快取)
+     * 只有前端明確要求 withTotal 時才會呼叫，無限捲動的請求不會觸發 COUNT
+     */
+    @Cacheable(value = "product_search_count", key = "#countKey", sync = true)
+    public Long estimateCount(String countKey, Specification<ProductEntity> spec) {
+        return productRepository.count(spec);
+    }
+
+    private ProductScrollSlice toScrollSlice(List<ProductEntity> content, boolean hasNext, int limit, ProductSearchSort searchSort, Long estimatedTotal) {
+        String nextCursor = hasNext && !content.isEmpty()
+                ? ProductSearchCursor.after(content.get(content.size() - 1), searchSort).encode()
+                : null;
+        Slice<ProductEntity> slice = new SliceImpl<>(content, PageRequest.ofSize(limit), hasNext);
+        return new ProductScrollSlice(slice, nextCursor, estimatedTotal);
+    }
+
+    // ORDER BY (排序鍵, productid)，有游標時加上 WHERE (排序鍵, productid) 排在游標之後
+    // 排序鍵用 COALESCE 把 NULL 換成游標用的預設值，NULL 的商品才不會被跳過或重複
+    private Specification<ProductEntity> keyset(ProductSearchSort sort, ProductSearchCursor after) {
+        return (root, query, cb) -> {
+            boolean desc = ProductSearchCursor.isDescending(sort);
+            Path<Integer> id = root.get("productid");
+
+            return switch (sort) {
+                case LATEST -> seek(query, cb, cb.coalesce(root.<LocalDateTime>get("createdAt"), ProductSearchCursor.NULL_CREATED_AT),
+                        after != null ? after.createdAt() : null, id, after, desc);
+                case PRICE_ASC, PRICE_DESC -> seek(query, cb, cb.coalesce(root.<Integer>get("price"), 0),
+                        after != null ? (int) after.sortKey() : null, id, after, desc);
+                case RATING_ASC, RATING_DESC -> seek(query, cb, cb.coalesce(root.<Integer>get("rating"), 0),
+                        after != null ? (int) after.sortKey() : null, id, after, desc);
+                case DEFAULT -> seek(query, cb, null, null, id, after, desc);
+            };
+        };
+    }
+
+    private static <Y extends Comparable<? super Y>> Predicate seek(CriteriaQuery<?> query, CriteriaBuilder cb,
+            Expression<Y> key, Y value, Path<Integer> id, ProductSearchCursor after, boolean desc) {
+        List<Order> orders = new ArrayList<>();
+        if (key != null) {
+            orders.add(desc ? cb.desc(key) : cb.asc(key));
+        }
+        orders.add(desc ? cb.desc(id) : cb.asc(id));
+        query.orderBy(orders);
+
+        if (after == null) {
+            return cb.conjunction();
+        }
+        Predicate idAfter = desc ? cb.lessThan(id, after.productid()) : cb.greaterThan(id, after.productid());
+        if (key == null) {
+            return idAfter;
+        }
+        Predicate keyAfter = desc ? cb.lessThan(key, value) : cb.greaterThan(key, value);
+        return cb.or(keyAfter, cb.and(cb.equal(key, value), idAfter));
+    }
+
+    // 分類、價格、關鍵字的 JPA 條件 (分頁與游標兩種查詢共用)
+    private Specification<ProductEntity> buildSpecification(String mainCategoryCode, String subCategoryCode, Integer maxPrice, Integer minPrice, String keyword) {
+        return (root, query, cb) -> {
             List<Predicate> predicates = new ArrayList<>();
 
             // 當使用者選了小分類的篩選
@@ -80,25 +280,17 @@ public class ProductService {
                 predicates.add(cb.lessThanOrEqualTo(root.get("price"), maxPrice));
             }
 
-            // Keyword 搜尋
+            // Keyword 搜尋：比對的欄位跟倒排索引一樣 (名稱、描述、顏色、規格)
             if (StringUtils.hasText(keyword)) {
                 String likePattern = "%" + keyword + "%";
-                Predicate nameLike = cb.like(root.get("pname"), likePattern);
-                Predicate descLike = cb.like(root.get("description"), likePattern);
-                predicates.add(cb.or(nameLike, descLike));
+                List<Predicate> likes = new ArrayList<>();
+                for (String field : ProductSearchEngine.KEYWORD_FIELDS) {
+                    likes.add(cb.like(root.get(field), likePattern));
+                }
+                predicates.add(cb.or(likes.toArray(new Predicate[0])));
             }
 
             return cb.and(predicates.toArray(new Predicate[0]));
         };
-        Page<ProductEntity> result = productRepository.findAll(spec, pageable);
-
-        // 商業邏輯監控：紀錄搜尋無結果的關鍵字
-        // 條件：使用者有關鍵字搜尋 + 結果數量為 0
-        if (StringUtils.hasText(keyword) && result.getTotalElements() == 0) {
-            // 使用 WARN 層級，方便在大量 Log 中一眼看到
-            logger.warn("🛑 [潛在商機流失] 使用者搜尋關鍵字: '{}'，但系統中無此商品。", keyword);
-        }
-
-        return result;
     }
 }
@@ -0,0 +1,119 @@
+package com.tw.shopping.main.service.cart;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import com.tw.shopping.main.config.CartStoreProperties;
+import com.tw.shopping.main.util.AfterCommit;
+
+/**
+ * 每個會員購物車的商品總件數 (Redis: cart:count:{userid})，給 header 徽章用，一次 GET 就好
+ *
+ * 維護規則 (jpa 模式)：
+ * 1. 加入購物車 -> commit 後 +數量 (key 在才加，不在就等下次讀取時重算)
+ * 2. 改數量、刪除、結帳 -> commit 後刪掉 key，下次讀取重算
+ * 3. 每次異動 (1、2) 都會把版本號 cart:count:ver:{userid} +1；讀取時從 DB 重算的值，
+ *    只有在版本號跟開始重算前一樣時才寫回，重算途中有異動就丟掉，不會把舊的件數寫進去
+ * 4. key 有存活時間 (cart.count-ttl)，就算漏算最多錯這麼久
+ * Redis 掛掉時直接回 DB 算
+ */
+@Component
+public class CartCountCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartCountCache.class);
+
+    private static final String KEY_PREFIX = "cart:count:";
+    private static final String VERSION_PREFIX = "cart:count:ver:";
+
+    // KEYS[1] = 件數、KEYS[2] = 版本號；ARGV[1] = 數量、ARGV[2] = 版本號存活毫秒
+    private static final DefaultRedisScript<Long> INCREMENT_IF_PRESENT = new DefaultRedisScript<>(
+            "local count = nil "
+                    + "if redis.call('EXISTS', KEYS[1]) == 1 then count = redis.call('INCRBY', KEYS[1], ARGV[1]) end "
+                    + "redis.call('INCR', KEYS[2]) redis.call('PEXPIRE', KEYS[2], ARGV[2]) "
+                    + "return count",
+            Long.class);
+
+    // KEYS[1] = 件數、KEYS[2] = 版本號；ARGV[1] = 版本號存活毫秒
+    private static final DefaultRedisScript<Long> EVICT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) "
+                    + "redis.call('INCR', KEYS[2]) redis.call('PEXPIRE', KEYS[2], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    // KEYS[1] = 件數、KEYS[2] = 版本號；ARGV[1] = 件數、ARGV[2] = 重算前讀到的版本號 (沒有是空字串)、ARGV[3] = 存活毫秒
+    // 版本號沒變才寫；已經有人先寫了 (可能還加過數量) 也不蓋掉
+    private static final DefaultRedisScript<Long> FILL_IF_UNCHANGED = new DefaultRedisScript<>(
+            "local version = redis.call('GET', KEYS[2]) or '' "
+                    + "if version ~= ARGV[2] then return 0 end "
+                    + "if redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3], 'NX') then return 1 end "
+                    + "return 0",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final CartStoreProperties properties;
+
+    public CartCountCache(
+            StringRedisTemplate redisTemplate,
+            CartStoreProperties properties) {
+
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+    }
+//  --------------------------------
+
+    // 讀件數，沒有就用 loader 從 DB 算，版本號沒變才寫回
+    public long get(Long userId, Supplier<Long> loader) {
+        String key = KEY_PREFIX + userId;
+        String versionKey = VERSION_PREFIX + userId;
+        String version;
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(List.of(key, versionKey));
+            if (values.get(0) != null) {
+                return Long.parseLong(values.get(0));
+            }
+            version = values.get(1) != null ? values.get(1) : "";
+        } catch (RuntimeException e) {
+            logger.warn("讀取購物車件數快取失敗，改查 DB: {}", e.getMessage());
+            return loader.get();
+        }
+
+        long count = loader.get();
+        try {
+            redisTemplate.execute(FILL_IF_UNCHANGED, List.of(key, versionKey),
+                    String.valueOf(count), version, ttlMillis());
+        } catch (RuntimeException e) {
+            logger.warn("寫入購物車件數快取失敗: {}", e.getMessage());
+        }
+        return count;
+    }
+
+    public void incrementAfterCommit(Long userId, int delta) {
+        afterCommit(() -> redisTemplate.execute(INCREMENT_IF_PRESENT, List.of(KEY_PREFIX + userId, VERSION_PREFIX + userId),
+                String.valueOf(delta), ttlMillis()));
+    }
+
+    public void evictAfterCommit(Long userId) {
+        afterCommit(() -> redisTemplate.execute(EVICT, List.of(KEY_PREFIX + userId, VERSION_PREFIX + userId), ttlMillis()));
+    }
+
+    private String ttlMillis() {
+        return String.valueOf(properties.getCountTtl().toMillis());
+    }
+
+    private void afterCommit(Runnable action) {
+        Runnable safe = () -> {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.warn("更新購物車件數快取失敗: {}", e.getMessage());
+            }
+        };
+        AfterCommit.run(safe);
+    }
+}
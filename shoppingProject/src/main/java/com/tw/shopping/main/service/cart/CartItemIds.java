@@ -0,0 +1,30 @@
+package com.tw.shopping.main.service.cart;
+
+/**
+ * redis 模式的購物車項目 id
+ * 還沒寫回 DB 的項目沒有 cartid，改用 -(userid * 10^7 + productid) 當 id，前端照樣拿來更新 / 刪除
+ * 負數不會跟 DB 的 cartid 撞到；userid 在 9 億以內都不會超過 JavaScript 的安全整數
+ */
+final class CartItemIds {
+
+    private static final long PRODUCT_RANGE = 10_000_000L;
+
+    private CartItemIds() {
+    }
+
+    static long encode(Long userId, Integer productId) {
+        return -(userId * PRODUCT_RANGE + productId);
+    }
+
+    static boolean isEncoded(Long cartId) {
+        return cartId != null && cartId < 0;
+    }
+
+    static long userId(Long cartId) {
+        return -cartId / PRODUCT_RANGE;
+    }
+
+    static int productId(Long cartId) {
+        return (int) (-cartId % PRODUCT_RANGE);
+    }
+}
@@ -0,0 +1,10 @@
+package com.tw.shopping.main.service.cart;
+
+import java.time.LocalDateTime;
+
+/**
+ * 購物車裡的一項商品
+ * cartId：jpa 模式是 cart 表的 cartid；redis 模式是 CartItemIds 編出來的負數 id
+ */
+public record CartLine(Long cartId, Integer productId, int quantity, LocalDateTime addtime) {
+}
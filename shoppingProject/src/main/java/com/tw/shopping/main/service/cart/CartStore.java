@@ -0,0 +1,34 @@
+package com.tw.shopping.main.service.cart;
+
+import java.util.List;
+
+import com.tw.shopping.main.dto.CartItemView;
+
+/**
+ * 購物車的儲存方式 (cart.store 決定用哪一個實作)
+ * JpaCartStore：直接讀寫 cart 表
+ * RedisCartStore：Redis hash + 定期批次寫回 cart 表
+ * 找不到會員 / 商品 / 項目、庫存不足一律丟 RuntimeException (訊息直接顯示給前端)
+ */
+public interface CartStore {
+
+    // 加入購物車 (已有就加數量)，回傳加完後的項目
+    CartLine add(Long userId, Integer productId, int quantity);
+
+    // 購物車商品總件數 (header 徽章)
+    long totalQuantity(Long userId);
+
+    // 購物車頁的資料
+    List<CartItemView> items(Long userId);
+
+    // 改數量，<= 0 代表刪除
+    void updateQuantity(Long cartId, int quantity);
+
+    void remove(Long cartId);
+
+    // 結帳用：某個時間點的完整購物車，依 productid 排序
+    List<CartLine> snapshot(Long userId);
+
+    // 結帳成功後扣掉已下單的項目 (在結帳交易裡呼叫)
+    void removeOrdered(Long userId, List<CartLine> ordered);
+}
@@ -0,0 +1,128 @@
+package com.tw.shopping.main.service.cart;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tw.shopping.main.dto.CartItemView;
+import com.tw.shopping.main.entity.CartEntity;
+import com.tw.shopping.main.repository.CartRepository;
+import com.tw.shopping.main.repository.CartRepositoryCustom.CartUpsertResult;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.UserRepository;
+
+/**
+ * 購物車直接存在 cart 表 (預設)
+ * 加入購物車是一句 upsert；件數走 CartCountCache
+ */
+@Component
+@ConditionalOnProperty(name = "cart.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaCartStore implements CartStore {
+
+    private final CartRepository cartRepository;
+    private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+    private final CartCountCache countCache;
+
+    public JpaCartStore(
+            CartRepository cartRepository,
+            UserRepository userRepository,
+            ProductRepository productRepository,
+            CartCountCache countCache) {
+
+        this.cartRepository = cartRepository;
+        this.userRepository = userRepository;
+        this.productRepository = productRepository;
+        this.countCache = countCache;
+    }
+//  --------------------------------
+
+    // 一句 upsert 完成，連點兩下也不會撞 uk_user_product
+    // READ COMMITTED：upsert 裡查庫存的 SELECT 是不上鎖的一致性讀取，不會跟結帳扣同一個商品的 UPDATE 互等
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public CartLine add(Long userId, Integer productId, int quantity) {
+        CartUpsertResult result;
+        try {
+            result = cartRepository.upsertQuantity(userId, productId, quantity);
+        } catch (DataIntegrityViolationException e) {
+            // fk_cart_user
+            throw new RuntimeException("用戶不存在");
+        }
+
+        // 沒寫入：這時才查是哪一種原因
+        if (result == null) {
+            if (!productRepository.existsById(productId)) {
+                throw new RuntimeException("商品不存在");
+            }
+            // 這是防止超賣的最後一道防線
+            throw new RuntimeException("商品庫存不足，無法加入購物車");
+        }
+
+        countCache.incrementAfterCommit(userId, quantity);
+        return new CartLine(result.cartId(), productId, result.quantity(), LocalDateTime.now());
+    }
+
+    @Override
+    public long totalQuantity(Long userId) {
+        return countCache.get(userId, () -> {
+            Long totalQuantity = cartRepository.countTotalItemsByUserId(userId);
+            if (totalQuantity == null && !userRepository.existsById(userId)) {
+                throw new RuntimeException("用戶不存在");
+            }
+            return totalQuantity != null ? totalQuantity : 0L;
+        });
+    }
+
+    @Override
+    public List<CartItemView> items(Long userId) {
+        return cartRepository.findCartItemByUserId(userId);
+    }
+
+    @Override
+    @Transactional
+    public void updateQuantity(Long cartId, int quantity) {
+        CartEntity cartItem = cartRepository.findById(cartId)
+                .orElseThrow(() -> new RuntimeException("找不到 Cart ID: " + cartId));
+
+        countCache.evictAfterCommit(cartItem.getUser().getUserid());
+
+        // 數量 <= 0 就刪除該項目
+        if (quantity <= 0) {
+            cartRepository.delete(cartItem);
+            return;
+        }
+        cartItem.setQuantity(quantity);
+        cartItem.setAddtime(LocalDateTime.now());
+        cartRepository.save(cartItem);
+    }
+
+    @Override
+    @Transactional
+    public void remove(Long cartId) {
+        CartEntity cartItem = cartRepository.findById(cartId)
+                .orElseThrow(() -> new RuntimeException("找不到 Cart ID: " + cartId + "，無法刪除"));
+        countCache.evictAfterCommit(cartItem.getUser().getUserid());
+        cartRepository.delete(cartItem);
+    }
+
+    @Override
+    public List<CartLine> snapshot(Long userId) {
+        return cartRepository.findByUserId(userId).stream()
+                .map(c -> new CartLine(c.getCartid(), c.getProduct().getProductid(), c.getQuantity(), c.getAddtime()))
+                .sorted(Comparator.comparing(CartLine::productId))
+                .toList();
+    }
+
+    @Override
+    public void removeOrdered(Long userId, List<CartLine> ordered) {
+        cartRepository.deleteAllByIdInBatch(ordered.stream().map(CartLine::cartId).toList());
+        countCache.evictAfterCommit(userId);
+    }
+}
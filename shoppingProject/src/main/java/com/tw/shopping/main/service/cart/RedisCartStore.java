@@ -0,0 +1,439 @@
+package com.tw.shopping.main.service.cart;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.config.CartStoreProperties;
+import com.tw.shopping.main.dto.CartItemView;
+import com.tw.shopping.main.dto.CartLineViewDto;
+import com.tw.shopping.main.entity.CartEntity;
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.repository.CartRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.UserRepository;
+import com.tw.shopping.main.service.stock.ProductStockCache;
+import com.tw.shopping.main.util.AfterCommit;
+
+/**
+ * 購物車放在 Redis (cart.store=redis)
+ *
+ * 資料結構：
+ * - cart:{userid}  hash，field = productid，value = "數量|加入時間(epoch 毫秒)"，另有 field "_" 代表已從 DB 載入
+ * - cart:dirty     set，有異動、還沒寫回 DB 的 userid
+ * 所有異動都用 Lua 一次做完 (改 hash + 標記 dirty)，讀取是一次 HGETALL，不會讀到改一半的購物車
+ *
+ * 寫回 DB：排程每 cart.flush-interval-ms 從 cart:dirty 取一批會員，把 Redis 的購物車整份覆蓋到 cart 表
+ * (多的刪、少的補、不同的改)，一批一個交易；失敗就把會員放回 cart:dirty 下一輪再試
+ * 同一時間只有一個節點在寫回 (cart:flush:lock)
+ */
+@Component
+@ConditionalOnProperty(name = "cart.store", havingValue = "redis")
+public class RedisCartStore implements CartStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCartStore.class);
+
+    private static final String CART_KEY_PREFIX = "cart:";
+    private static final String DIRTY_KEY = "cart:dirty";
+    private static final String FLUSH_LOCK_KEY = "cart:flush:lock";
+    private static final String LOADED_FIELD = "_";
+
+    // 腳本回傳：還沒從 DB 載入
+    private static final long NOT_LOADED = -2L;
+    // 腳本回傳：購物車裡沒有這個商品
+    private static final long NO_SUCH_ITEM = -1L;
+
+    // 加數量，回傳加完的數量
+    // KEYS: cart, dirty；ARGV: productid, 數量, 時間, ttl 秒, userid
+    private static final DefaultRedisScript<Long> ADD = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], '_') == 0 then return -2 end "
+                    + "local qty = tonumber(ARGV[2]) "
+                    + "local cur = redis.call('HGET', KEYS[1], ARGV[1]) "
+                    + "if cur then qty = qty + tonumber(string.match(cur, '^(%d+)')) end "
+                    + "redis.call('HSET', KEYS[1], ARGV[1], qty .. '|' .. ARGV[3]) "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[4]) "
+                    + "redis.call('SADD', KEYS[2], ARGV[5]) "
+                    + "return qty",
+            Long.class);
+
+    // 設定數量 (<= 0 刪除)，商品不在購物車回傳 -1
+    // KEYS: cart, dirty；ARGV: productid, 數量, 時間, ttl 秒, userid
+    private static final DefaultRedisScript<Long> SET_QUANTITY = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], '_') == 0 then return -2 end "
+                    + "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return -1 end "
+                    + "if tonumber(ARGV[2]) <= 0 then redis.call('HDEL', KEYS[1], ARGV[1]) "
+                    + "else redis.call('HSET', KEYS[1], ARGV[1], ARGV[2] .. '|' .. ARGV[3]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[4]) "
+                    + "redis.call('SADD', KEYS[2], ARGV[5]) "
+                    + "return 1",
+            Long.class);
+
+    // 結帳後扣掉已下單的數量 (結帳途中又加的數量會留著)
+    // KEYS: cart, dirty；ARGV: ttl 秒, userid, 之後每兩個一組 productid, 數量
+    private static final DefaultRedisScript<Long> SUBTRACT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], '_') == 0 then return -2 end "
+                    + "for i = 3, #ARGV, 2 do "
+                    + "  local cur = redis.call('HGET', KEYS[1], ARGV[i]) "
+                    + "  if cur then "
+                    + "    local left = tonumber(string.match(cur, '^(%d+)')) - tonumber(ARGV[i + 1]) "
+                    + "    if left <= 0 then redis.call('HDEL', KEYS[1], ARGV[i]) "
+                    + "    else redis.call('HSET', KEYS[1], ARGV[i], left .. string.match(cur, '(|.*)$')) end "
+                    + "  end "
+                    + "end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+                    + "redis.call('SADD', KEYS[2], ARGV[2]) "
+                    + "return 1",
+            Long.class);
+
+    // 從 DB 載入：key 已經存在 (別人先載入了) 就不動
+    // KEYS: cart；ARGV: ttl 秒, 之後每兩個一組 field, value
+    private static final DefaultRedisScript<Long> LOAD = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end "
+                    + "redis.call('HSET', KEYS[1], unpack(ARGV, 2)) "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    // 只釋放自己拿到的鎖
+    private static final DefaultRedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final CartRepository cartRepository;
+    private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+    private final ProductStockCache stockCache;
+    private final CartStoreProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    public RedisCartStore(
+            StringRedisTemplate redisTemplate,
+            CartRepository cartRepository,
+            UserRepository userRepository,
+            ProductRepository productRepository,
+            ProductStockCache stockCache,
+            CartStoreProperties properties,
+            PlatformTransactionManager transactionManager) {
+
+        this.redisTemplate = redisTemplate;
+        this.cartRepository = cartRepository;
+        this.userRepository = userRepository;
+        this.productRepository = productRepository;
+        this.stockCache = stockCache;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+//  --------------------------------
+
+    @Override
+    public CartLine add(Long userId, Integer productId, int quantity) {
+        // 庫存走 Redis 的讀取模型，不用回 DB 查商品
+        Integer stock = stockCache.getStocks(List.of(productId)).get(productId);
+        if (stock == null) {
+            throw new RuntimeException("商品不存在");
+        }
+        if (stock < quantity) {
+            throw new RuntimeException("商品庫存不足，無法加入購物車");
+        }
+
+        long now = System.currentTimeMillis();
+        long newQuantity = runLoaded(userId, () -> redisTemplate.execute(ADD, List.of(cartKey(userId), DIRTY_KEY),
+                productId.toString(), String.valueOf(quantity), String.valueOf(now), ttlSeconds(), userId.toString()));
+        return new CartLine(CartItemIds.encode(userId, productId), productId, (int) newQuantity, toDateTime(now));
+    }
+
+    @Override
+    public long totalQuantity(Long userId) {
+        return readLines(userId).stream().mapToLong(CartLine::quantity).sum();
+    }
+
+    @Override
+    public List<CartItemView> items(Long userId) {
+        List<CartLine> lines = readLines(userId);
+        if (lines.isEmpty()) {
+            return List.of();
+        }
+        Map<Integer, ProductEntity> products = productRepository.findAllById(lines.stream().map(CartLine::productId).toList())
+                .stream()
+                .collect(Collectors.toMap(ProductEntity::getProductid, Function.identity()));
+        String address = userRepository.findAddressByUserid(userId).orElse(null);
+
+        // 跟原本一樣新加入的在前面
+        List<CartItemView> views = new ArrayList<>();
+        lines.stream()
+                .sorted(Comparator.comparing(CartLine::addtime).reversed())
+                .forEach(line -> {
+                    ProductEntity product = products.get(line.productId());
+                    if (product == null) {
+                        return; // 商品已下架，下次寫回時會從購物車移除
+                    }
+                    CartLineViewDto view = new CartLineViewDto();
+                    view.setUserid(userId);
+                    view.setCartid(line.cartId());
+                    view.setQuantity(line.quantity());
+                    view.setProductid(product.getProductid());
+                    view.setPname(product.getPname());
+                    view.setDescription(product.getDescription());
+                    view.setPrice(product.getPrice());
+                    view.setProductimage(product.getProductimage());
+                    view.setColor(product.getColor());
+                    view.setSpecification(product.getSpecification());
+                    view.setAddress(address);
+                    views.add(view);
+                });
+        return views;
+    }
+
+    @Override
+    public void updateQuantity(Long cartId, int quantity) {
+        setQuantity(cartId, quantity, "找不到 Cart ID: " + cartId);
+    }
+
+    @Override
+    public void remove(Long cartId) {
+        setQuantity(cartId, 0, "找不到 Cart ID: " + cartId + "，無法刪除");
+    }
+
+    @Override
+    public List<CartLine> snapshot(Long userId) {
+        return readLines(userId).stream()
+                .sorted(Comparator.comparing(CartLine::productId))
+                .toList();
+    }
+
+    // 結帳交易 commit 之後才扣，交易回滾購物車就不動
+    @Override
+    public void removeOrdered(Long userId, List<CartLine> ordered) {
+        List<String> args = new ArrayList<>();
+        args.add(ttlSeconds());
+        args.add(userId.toString());
+        for (CartLine line : ordered) {
+            args.add(line.productId().toString());
+            args.add(String.valueOf(line.quantity()));
+        }
+        AfterCommit.run(() -> redisTemplate.execute(SUBTRACT, List.of(cartKey(userId), DIRTY_KEY), args.toArray()));
+    }
+
+    // ---------------- 寫回 DB ----------------
+
+    @Scheduled(fixedDelayString = "${cart.flush-interval-ms:2000}")
+    public void flushDirty() {
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(FLUSH_LOCK_KEY, token, properties.getFlushLockTtl());
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            for (int batch = 0; batch < properties.getFlushMaxBatches(); batch++) {
+                List<String> userIds = redisTemplate.opsForSet().pop(DIRTY_KEY, properties.getFlushBatchSize());
+                if (userIds == null || userIds.isEmpty()) {
+                    break;
+                }
+                flushBatch(userIds);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("購物車寫回失敗: {}", e.getMessage());
+        } finally {
+            redisTemplate.execute(RELEASE_LOCK, List.of(FLUSH_LOCK_KEY), token);
+        }
+    }
+
+    private void flushBatch(List<String> rawUserIds) {
+        List<Long> userIds = rawUserIds.stream().map(Long::valueOf).toList();
+
+        // 一次 pipeline 把這批會員的購物車都讀回來
+        List<Object> hashes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                connection.hashCommands().hGetAll(bytes(cartKey(userId)));
+            }
+            return null;
+        });
+
+        Map<Long, List<CartLine>> carts = new HashMap<>();
+        Set<Integer> productIds = new HashSet<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> hash = (Map<Object, Object>) hashes.get(i);
+            // key 已經過期 (很久沒動) 就不寫，避免把 DB 的購物車清空
+            if (hash == null || !hash.containsKey(LOADED_FIELD)) {
+                continue;
+            }
+            List<CartLine> lines = toLines(userIds.get(i), hash);
+            lines.forEach(line -> productIds.add(line.productId()));
+            carts.put(userIds.get(i), lines);
+        }
+        if (carts.isEmpty()) {
+            return;
+        }
+
+        // 已經被刪除的商品不寫進 DB (外鍵)，順便從 Redis 移除
+        Set<Integer> existing = productIds.isEmpty() ? Set.of() : new HashSet<>(productRepository.findExistingIds(productIds));
+        carts.forEach((userId, lines) -> {
+            List<CartLine> gone = lines.stream().filter(line -> !existing.contains(line.productId())).toList();
+            if (!gone.isEmpty()) {
+                redisTemplate.opsForHash().delete(cartKey(userId), gone.stream().map(line -> line.productId().toString()).toArray());
+                lines.removeAll(gone);
+            }
+        });
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeCarts(carts));
+        } catch (RuntimeException e) {
+            // 下一輪再試
+            redisTemplate.opsForSet().add(DIRTY_KEY, rawUserIds.toArray(new String[0]));
+            throw e;
+        }
+    }
+
+    // 把每個會員在 cart 表的資料改成跟 Redis 一樣
+    private void writeCarts(Map<Long, List<CartLine>> carts) {
+        Map<Long, Map<Integer, CartEntity>> rows = new HashMap<>();
+        for (CartEntity row : cartRepository.findByUserIdIn(carts.keySet())) {
+            rows.computeIfAbsent(row.getUser().getUserid(), k -> new HashMap<>())
+                    .put(row.getProduct().getProductid(), row);
+        }
+
+        List<CartEntity> toSave = new ArrayList<>();
+        List<CartEntity> toDelete = new ArrayList<>();
+        carts.forEach((userId, lines) -> {
+            Map<Integer, CartEntity> userRows = rows.getOrDefault(userId, new HashMap<>());
+            for (CartLine line : lines) {
+                CartEntity row = userRows.remove(line.productId());
+                if (row == null) {
+                    row = new CartEntity(userRepository.getReferenceById(userId),
+                            productRepository.getReferenceById(line.productId()), line.quantity());
+                    row.setAddtime(line.addtime());
+                    toSave.add(row);
+                } else if (row.getQuantity() != line.quantity()
+                        || !row.getAddtime().withNano(0).equals(line.addtime().withNano(0))) {
+                    row.setQuantity(line.quantity());
+                    row.setAddtime(line.addtime());
+                    toSave.add(row);
+                }
+            }
+            toDelete.addAll(userRows.values());
+        });
+
+        if (!toDelete.isEmpty()) {
+            cartRepository.deleteAllInBatch(toDelete);
+        }
+        cartRepository.saveAll(toSave);
+    }
+
+    // ---------------- 內部 ----------------
+
+    // 讀整份購物車；還沒載入就先從 DB 載入
+    private List<CartLine> readLines(Long userId) {
+        Map<Object, Object> hash = redisTemplate.opsForHash().entries(cartKey(userId));
+        if (!hash.containsKey(LOADED_FIELD)) {
+            load(userId);
+            hash = redisTemplate.opsForHash().entries(cartKey(userId));
+        }
+        return toLines(userId, hash);
+    }
+
+    // 執行要求「已載入」的腳本，回傳 NOT_LOADED 就載入後再跑一次
+    private long runLoaded(Long userId, Supplier<Long> script) {
+        Long result = script.get();
+        if (result != null && result == NOT_LOADED) {
+            load(userId);
+            result = script.get();
+        }
+        if (result == null || result == NOT_LOADED) {
+            throw new RuntimeException("購物車暫時無法使用，請稍後再試");
+        }
+        return result;
+    }
+
+    private void load(Long userId) {
+        List<CartEntity> rows = cartRepository.findByUserId(userId);
+        if (rows.isEmpty() && !userRepository.existsById(userId)) {
+            throw new RuntimeException("用戶不存在");
+        }
+        List<String> args = new ArrayList<>();
+        args.add(ttlSeconds());
+        args.add(LOADED_FIELD);
+        args.add("1");
+        for (CartEntity row : rows) {
+            args.add(row.getProduct().getProductid().toString());
+            args.add(row.getQuantity() + "|" + row.getAddtime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        redisTemplate.execute(LOAD, List.of(cartKey(userId)), args.toArray());
+    }
+
+    private void setQuantity(Long cartId, int quantity, String notFoundMessage) {
+        long userId;
+        int productId;
+        if (CartItemIds.isEncoded(cartId)) {
+            userId = CartItemIds.userId(cartId);
+            productId = CartItemIds.productId(cartId);
+        } else {
+            // 切換成 redis 模式前就打開的頁面，拿到的還是 DB 的 cartid
+            CartEntity row = cartRepository.findById(cartId).orElseThrow(() -> new RuntimeException(notFoundMessage));
+            userId = row.getUser().getUserid();
+            productId = row.getProduct().getProductid();
+        }
+
+        Long user = userId;
+        long result = runLoaded(user, () -> redisTemplate.execute(SET_QUANTITY, List.of(cartKey(user), DIRTY_KEY),
+                String.valueOf(productId), String.valueOf(quantity), String.valueOf(System.currentTimeMillis()),
+                ttlSeconds(), user.toString()));
+        if (result == NO_SUCH_ITEM) {
+            throw new RuntimeException(notFoundMessage);
+        }
+    }
+
+    private List<CartLine> toLines(Long userId, Map<Object, Object> hash) {
+        List<CartLine> lines = new ArrayList<>();
+        hash.forEach((field, value) -> {
+            if (LOADED_FIELD.equals(field)) {
+                return;
+            }
+            Integer productId = Integer.valueOf(field.toString());
+            String[] parts = value.toString().split("\\|", 2);
+            lines.add(new CartLine(CartItemIds.encode(userId, productId), productId,
+                    Integer.parseInt(parts[0]), toDateTime(Long.parseLong(parts[1]))));
+        });
+        return lines;
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private String ttlSeconds() {
+        return String.valueOf(properties.getIdleTtl().toSeconds());
+    }
+
+    private static String cartKey(Long userId) {
+        return CART_KEY_PREFIX + userId;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
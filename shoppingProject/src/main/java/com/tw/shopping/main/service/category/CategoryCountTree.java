@@ -0,0 +1,272 @@
+package com.tw.shopping.main.service.category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.tw.shopping.main.dto.CategoryWithCountDto;
+import com.tw.shopping.main.entity.CategoryEntity;
+import com.tw.shopping.main.repository.CategoryRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.util.AfterCommit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 分類樹 + 每個分類的商品數 (放在記憶體)
+ * 前台的子分類側欄、後台的熱銷分類圖表都從這裡讀，成本跟分類數成正比，不再掃 product 表
+ *
+ * 每個節點記兩個數字：直接掛在這個分類的商品數 (own)、含所有子孫分類的商品數 (total)
+ * 後台新增 / 換分類 / 刪除商品時，交易 commit 後把自己跟所有上層分類 ±1
+ * 定期整棵重建一次 (分類表 + 一次 GROUP BY)，修正其他節點改的商品、直接改 DB 的資料；
+ * 碰到樹裡沒有的分類 (剛新增的) 也會馬上重建
+ * 重建途中的 ±1 先照常加在舊的那棵，同時記下來，換上新的那棵之前再套用一次，不會跟著舊的那棵一起丟掉
+ *
+ * metrics：category.count_tree.rebuild (重建耗時)、category.count_tree.drift (重建時數字對不上的分類數)
+ */
+@Component
+public class CategoryCountTree {
+
+    private static final Logger logger = LoggerFactory.getLogger(CategoryCountTree.class);
+
+    private final CategoryRepository categoryRepository;
+    private final ProductRepository productRepository;
+
+    private final Timer rebuildTimer;
+    private final Counter drift;
+
+    // 整棵換掉，讀的人拿到的一定是完整的一棵
+    private volatile Snapshot snapshot;
+    private final Object rebuildLock = new Object();
+    // 換 snapshot 跟 ±1 互斥；replay 不是 null 代表正在重建，±1 要記下來
+    private final Object adjustLock = new Object();
+    private List<Adjustment> replay;
+
+    public CategoryCountTree(
+            CategoryRepository categoryRepository,
+            ProductRepository productRepository,
+            MeterRegistry meterRegistry) {
+
+        this.categoryRepository = categoryRepository;
+        this.productRepository = productRepository;
+        this.rebuildTimer = meterRegistry.timer("category.count_tree.rebuild");
+        this.drift = meterRegistry.counter("category.count_tree.drift");
+    }
+//  --------------------------------
+
+    // 大分類底下的子分類跟各自的商品數 (依 categoryid 排序)，找不到大分類回傳空的
+    public List<CategoryWithCountDto> subCategories(String parentCode) {
+        Node parent = current().byCode.get(parentCode);
+        if (parent == null) {
+            return Collections.emptyList();
+        }
+        List<CategoryWithCountDto> result = new ArrayList<>(parent.children.size());
+        for (Node child : parent.children) {
+            result.add(new CategoryWithCountDto(child.code, child.cname, child.own.get()));
+        }
+        return result;
+    }
+
+    // 分類本身加上所有子孫分類的商品數，沒有這個分類回傳 0
+    public long totalCount(Integer categoryId) {
+        Node node = current().byId.get(categoryId);
+        return node != null ? node.total.get() : 0L;
+    }
+
+    // 分類名稱，沒有這個分類回傳 null
+    public String name(Integer categoryId) {
+        Node node = current().byId.get(categoryId);
+        return node != null ? node.cname : null;
+    }
+
+    // 商品新增 (+1) / 刪除 (-1)，交易 commit 後才生效
+    public void adjustAfterCommit(Integer categoryId, int delta) {
+        if (categoryId == null) {
+            return;
+        }
+        AfterCommit.run(() -> adjust(categoryId, delta));
+    }
+
+    // 商品換分類，交易 commit 後才生效
+    public void moveAfterCommit(Integer fromCategoryId, Integer toCategoryId) {
+        if (fromCategoryId == null ? toCategoryId == null : fromCategoryId.equals(toCategoryId)) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            if (fromCategoryId != null) {
+                adjust(fromCategoryId, -1);
+            }
+            if (toCategoryId != null) {
+                adjust(toCategoryId, 1);
+            }
+        });
+    }
+
+    /**
+     * 依分類表跟商品表整棵重建
+     * 重建途中 commit 的商品異動會在新的那棵上再套用一次；
+     * 只有 commit 在 GROUP BY 之前、afterCommit 卻晚到的那一點點時間差可能算兩次，下一次重建就會修正
+     */
+    @Scheduled(fixedDelayString = "${category-count.rebuild-interval-ms:600000}",
+            initialDelayString = "${category-count.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            rebuildTimer.record(() -> {
+                synchronized (adjustLock) {
+                    replay = new ArrayList<>();
+                }
+                Snapshot next;
+                try {
+                    next = load();
+                } catch (RuntimeException e) {
+                    synchronized (adjustLock) {
+                        replay = null;
+                    }
+                    throw e;
+                }
+                synchronized (adjustLock) {
+                    for (Adjustment adjustment : replay) {
+                        apply(next, adjustment.categoryId(), adjustment.delta());
+                    }
+                    replay = null;
+                    Snapshot previous = snapshot;
+                    if (previous != null) {
+                        long changed = next.byId.values().stream()
+                                .filter(node -> {
+                                    Node old = previous.byId.get(node.id);
+                                    return old == null || old.own.get() != node.own.get();
+                                })
+                                .count();
+                        if (changed > 0) {
+                            drift.increment(changed);
+                            logger.info("分類商品數重建，{} 個分類的數字有修正", changed);
+                        }
+                    }
+                    snapshot = next;
+                }
+            });
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            synchronized (rebuildLock) {
+                if (snapshot == null) {
+                    snapshot = load();
+                }
+                s = snapshot;
+            }
+        }
+        return s;
+    }
+
+    private void adjust(Integer categoryId, int delta) {
+        current();
+        synchronized (adjustLock) {
+            if (apply(snapshot, categoryId, delta)) {
+                if (replay != null) {
+                    replay.add(new Adjustment(categoryId, delta));
+                }
+                return;
+            }
+        }
+        // 剛新增的分類：重建一次就會有 (這次的異動也會一起算進去)
+        rebuild();
+    }
+
+    // 自己跟所有上層分類 ±delta，樹裡沒有這個分類回傳 false
+    private static boolean apply(Snapshot target, Integer categoryId, int delta) {
+        Node node = target.byId.get(categoryId);
+        if (node == null) {
+            return false;
+        }
+        node.own.addAndGet(delta);
+        for (Node n = node; n != null; n = n.parent) {
+            n.total.addAndGet(delta);
+        }
+        return true;
+    }
+
+    private Snapshot load() {
+        Map<Integer, Node> byId = new HashMap<>();
+        Map<String, Node> byCode = new HashMap<>();
+        List<CategoryEntity> categories = categoryRepository.findAll();
+        for (CategoryEntity category : categories) {
+            Node node = new Node(category.getCategoryid(), category.getCode(), category.getCname());
+            byId.put(node.id, node);
+            if (node.code != null) {
+                byCode.put(node.code, node);
+            }
+        }
+
+        // 接上父節點；parentid 指到不存在的分類就當成最上層，繞成一圈的那一條斷開
+        for (CategoryEntity category : categories) {
+            Node node = byId.get(category.getCategoryid());
+            Node parent = category.getParentid() != null ? byId.get(category.getParentid()) : null;
+            if (parent != null && !isAncestor(node, parent)) {
+                node.parent = parent;
+                parent.children.add(node);
+            }
+        }
+        for (Node node : byId.values()) {
+            node.children.sort(Comparator.comparing(n -> n.id));
+        }
+
+        for (Object[] row : productRepository.countProductsGroupByCategory()) {
+            Node node = byId.get((Integer) row[0]);
+            if (node == null) {
+                continue;
+            }
+            long count = (Long) row[1];
+            node.own.set(count);
+            for (Node n = node; n != null; n = n.parent) {
+                n.total.addAndGet(count);
+            }
+        }
+        return new Snapshot(byId, byCode);
+    }
+
+    // node 是不是 candidate 的祖先 (含自己)
+    private static boolean isAncestor(Node node, Node candidate) {
+        for (Node n = candidate; n != null; n = n.parent) {
+            if (n == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+        final Integer id;
+        final String code;
+        final String cname;
+        final List<Node> children = new ArrayList<>();
+        final AtomicLong own = new AtomicLong();
+        final AtomicLong total = new AtomicLong();
+        Node parent;
+
+        Node(Integer id, String code, String cname) {
+            this.id = id;
+            this.code = code;
+            this.cname = cname;
+        }
+    }
+
+    private record Snapshot(Map<Integer, Node> byId, Map<String, Node> byCode) {
+    }
+
+    private record Adjustment(Integer categoryId, int delta) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.tw.shopping.main.service.expiry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.config.OrderExpiryProperties;
+import com.tw.shopping.main.entity.OrderEntity;
+import com.tw.shopping.main.repository.OrderRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+import com.tw.shopping.main.service.inventory.InventoryReservationStrategy;
+import com.tw.shopping.main.service.stats.SalesDailyRollup;
+import com.tw.shopping.main.service.stock.ProductStockCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 逾時未付款訂單的自動取消
+ * 每批一個交易：用 (status, orderdate) 索引找出逾時的 PENDING 訂單並上鎖 (SKIP LOCKED) →
+ * 條件式改成 CANCELLED → 這批訂單的明細依商品加總，一次回補庫存
+ *
+ * 跟綠界付款通知的競爭：付款通知也會先鎖訂單列 (findByIdForUpdate)
+ * - 付款通知先鎖到：這邊 SKIP LOCKED 跳過，之後它已經是 PAID，不會再被選到
+ * - 這邊先取消：付款通知等鎖之後看到 CANCELLED，呼叫 reserveForLatePayment 重新扣庫存讓訂單成立；
+ *   庫存已經被買走就標記待退款 (REFUND_PENDING)
+ *
+ * metrics：order.expiry.cancelled、order.expiry.batch (每批耗時)、order.expiry.late_payment{result=revived|refund}
+ */
+@Service
+public class OrderExpiryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderExpiryService.class);
+
+    private final OrderRepository orderRepository;
+    private final InventoryReservationStrategy inventoryStrategy;
+    private final ProductStockCache stockCache;
+    private final SalesDailyRollup salesRollup;
+    private final OrderExpiryProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter cancelled;
+    private final Timer batchTimer;
+    private final Counter latePaymentRevived;
+    private final Counter latePaymentRefund;
+
+    // 上一輪結束時是否還有沒處理完的 (處理到批數上限)，1 = 有
+    private final AtomicInteger backlogged = new AtomicInteger();
+
+    public OrderExpiryService(
+            OrderRepository orderRepository,
+            InventoryReservationStrategy inventoryStrategy,
+            ProductStockCache stockCache,
+            SalesDailyRollup salesRollup,
+            OrderExpiryProperties properties,
+            MeterRegistry meterRegistry,
+            PlatformTransactionManager transactionManager) {
+
+        this.orderRepository = orderRepository;
+        this.inventoryStrategy = inventoryStrategy;
+        this.stockCache = stockCache;
+        this.salesRollup = salesRollup;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // 跟結帳一樣用 READ COMMITTED (optimistic 扣庫存重試要看得到最新版本)
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+
+        this.cancelled = meterRegistry.counter("order.expiry.cancelled");
+        this.batchTimer = meterRegistry.timer("order.expiry.batch");
+        this.latePaymentRevived = meterRegistry.counter("order.expiry.late_payment", "result", "revived");
+        this.latePaymentRefund = meterRegistry.counter("order.expiry.late_payment", "result", "refund");
+        meterRegistry.gauge("order.expiry.backlogged", backlogged);
+    }
+//  --------------------------------
+
+    @Scheduled(fixedDelayString = "${order-expiry.interval-ms:60000}")
+    public void expirePendingOrders() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minus(properties.getPendingTimeout());
+        int total = 0;
+        for (int batch = 0; batch < properties.getMaxBatchesPerRun(); batch++) {
+            int expired;
+            try {
+                expired = batchTimer.record(() -> expireBatch(before));
+            } catch (RuntimeException e) {
+                logger.warn("逾時訂單取消失敗，下一輪再試: {}", e.getMessage());
+                return;
+            }
+            total += expired;
+            if (expired < properties.getBatchSize()) {
+                backlogged.set(0);
+                logResult(total);
+                return;
+            }
+            pause();
+        }
+        // 批數用完還有剩，留到下一輪
+        backlogged.set(1);
+        logResult(total);
+    }
+
+    // 一批：鎖 → 條件式取消 → 依商品加總回補，回傳取消幾張
+    int expireBatch(LocalDateTime before) {
+        Integer expired = transactionTemplate.execute(status -> {
+            List<Integer> orderIds = orderRepository.lockExpiredPending(before, properties.getBatchSize());
+            if (orderIds.isEmpty()) {
+                return 0;
+            }
+            // 上面已經鎖住，這些一定還是 PENDING
+            int count = orderRepository.cancelExpired(orderIds);
+
+            List<StockChange> changes = orderRepository.sumItemQuantities(orderIds);
+            inventoryStrategy.release(changes);
+            for (StockChange change : changes) {
+                stockCache.increaseAfterCommit(change.productId(), change.quantity());
+            }
+            salesRollup.ordersCancelled(orderRepository.countByOrderDay(orderIds));
+            return count;
+        });
+        cancelled.increment(expired);
+        return expired;
+    }
+
+    /**
+     * 付款通知晚到、訂單已經被逾時取消 (庫存已回補) 時呼叫，要在付款通知的交易裡 (訂單列已鎖)
+     * 庫存全部扣得回來就回傳 true (訂單照常改成已付款)；有任何一項不夠就全部不扣，回傳 false (需要退款)
+     */
+    public boolean reserveForLatePayment(OrderEntity order) {
+        List<StockChange> changes = orderRepository.sumItemQuantities(List.of(order.getOrderId()));
+        boolean[] reserved = inventoryStrategy.reserve(changes);
+
+        List<StockChange> succeeded = new ArrayList<>();
+        for (int i = 0; i < reserved.length; i++) {
+            if (reserved[i]) {
+                succeeded.add(changes.get(i));
+            }
+        }
+        if (succeeded.size() == changes.size()) {
+            succeeded.forEach(change -> stockCache.decreaseAfterCommit(change.productId(), change.quantity()));
+            latePaymentRevived.increment();
+            logger.info("訂單 {} 逾時取消後收到付款，已重新扣庫存", order.getOrderId());
+            return true;
+        }
+
+        // 部分扣到的還回去
+        inventoryStrategy.release(succeeded);
+        latePaymentRefund.increment();
+        logger.warn("訂單 {} 逾時取消後收到付款，但庫存不足，需要退款", order.getOrderId());
+        return false;
+    }
+
+    private void logResult(int total) {
+        if (total > 0) {
+            logger.info("已取消 {} 張逾時未付款訂單{}", total, backlogged.get() == 1 ? " (還有剩，下一輪繼續)" : "");
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(properties.getPauseBetweenBatches().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
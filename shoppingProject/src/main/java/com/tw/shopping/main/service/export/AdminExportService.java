@@ -0,0 +1,190 @@
+package com.tw.shopping.main.service.export;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.tw.shopping.main.config.AdminExportProperties;
+import com.tw.shopping.main.enums.OrderStatus;
+import com.tw.shopping.main.exception.BusinessValidationException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 後台訂單 / 商品匯出
+ * 用 MySQL 的串流結果集 (fetchSize = Integer.MIN_VALUE，只能往前讀) 一列一列讀，讀一列就寫一列到輸出串流，
+ * 不分頁、不建 Entity、不載入關聯，記憶體用量跟筆數無關
+ * 篩選條件跟後台列表一樣 (訂單：編號關鍵字、狀態；商品：名稱關鍵字、分類)，依主鍵排序
+ *
+ * 串流讀取時整條連線都被佔住 (下載多久就佔多久)，同時匯出的數量用 admin-export.max-concurrent 限制
+ *
+ * metrics：admin.export.rows{type=order|product}、admin.export{type=order|product} (耗時)、admin.export.rejected
+ */
+@Service
+public class AdminExportService {
+
+    static final String[] ORDER_COLUMNS = {
+            "orderId", "orderDate", "userId", "totalAmount", "status", "paymentStatus",
+            "paymentMethod", "merchantTradeNo", "paymentConfirmDate", "logisticsType", "orderAddress" };
+
+    static final String[] PRODUCT_COLUMNS = {
+            "productId", "name", "categoryId", "price", "stock", "rating",
+            "color", "specification", "seriesId", "createdAt", "updatedAt" };
+
+    private static final String ORDER_SQL =
+            "SELECT orderid, orderdate, userid, totalamount, status, payment_status, "
+            + "paymentmethods, ecpay_trade_no, payment_confirm_date, logistics_type, orderaddress FROM `order`";
+
+    private static final String PRODUCT_SQL =
+            "SELECT productid, pname, categoryid, price, stock, rating, "
+            + "color, specification, series_id, createdat, updatedat FROM product";
+
+    // 訂單的 status 欄位 (第 5 欄) 存的是 OrderStatus 的順序
+    private static final int ORDER_STATUS_INDEX = 4;
+
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final Semaphore permits;
+
+    private final Counter orderRows;
+    private final Counter productRows;
+    private final Timer orderTimer;
+    private final Timer productTimer;
+    private final Counter rejected;
+
+    public AdminExportService(
+            DataSource dataSource,
+            AdminExportProperties properties,
+            MeterRegistry meterRegistry) {
+
+        // MySQL Connector/J：fetchSize = Integer.MIN_VALUE (搭配預設的 TYPE_FORWARD_ONLY / CONCUR_READ_ONLY) 才會一列一列串流，
+        // 其他值都會先把整個結果集讀進記憶體
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+        this.permits = new Semaphore(properties.getMaxConcurrent());
+
+        this.orderRows = meterRegistry.counter("admin.export.rows", "type", "order");
+        this.productRows = meterRegistry.counter("admin.export.rows", "type", "product");
+        this.orderTimer = meterRegistry.timer("admin.export", "type", "order");
+        this.productTimer = meterRegistry.timer("admin.export", "type", "product");
+        this.rejected = meterRegistry.counter("admin.export.rejected");
+    }
+//  --------------------------------
+
+    /**
+     * 匯出訂單，status 是 OrderStatus 的順序 (超出範圍就不篩選，跟後台列表一樣)，回傳匯出幾筆
+     */
+    public long exportOrders(String keyword, Integer status, ExportFormat format, ExportTarget target) throws IOException {
+        StringBuilder sql = new StringBuilder(ORDER_SQL);
+        List<Object> args = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (keyword != null) {
+            conditions.add("CAST(orderid AS CHAR) LIKE ?");
+            args.add("%" + keyword + "%");
+        }
+        if (status != null && status >= 0 && status < OrderStatus.values().length) {
+            conditions.add("status = ?");
+            args.add(status);
+        }
+        appendWhere(sql, conditions);
+        sql.append(" ORDER BY orderid");
+
+        return export(sql.toString(), args, ORDER_COLUMNS, ORDER_STATUS_INDEX, format, target, orderRows, orderTimer);
+    }
+
+    /**
+     * 匯出商品 (categoryId 只比對商品直接掛的分類，跟後台列表一樣)，回傳匯出幾筆
+     */
+    public long exportProducts(String keyword, Integer categoryId, ExportFormat format, ExportTarget target) throws IOException {
+        StringBuilder sql = new StringBuilder(PRODUCT_SQL);
+        List<Object> args = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (keyword != null) {
+            conditions.add("pname LIKE ?");
+            args.add("%" + keyword + "%");
+        }
+        if (categoryId != null) {
+            conditions.add("categoryid = ?");
+            args.add(categoryId);
+        }
+        appendWhere(sql, conditions);
+        sql.append(" ORDER BY productid");
+
+        return export(sql.toString(), args, PRODUCT_COLUMNS, -1, format, target, productRows, productTimer);
+    }
+
+    private long export(String sql, List<Object> args, String[] columns, int statusIndex,
+            ExportFormat format, ExportTarget target, Counter rows, Timer timer) throws IOException {
+
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new BusinessValidationException("目前匯出的人太多，請稍後再試");
+        }
+        Timer.Sample sample = Timer.start();
+        try {
+            // 第一列讀到才開始寫 (見 ExportTarget)
+            ExportWriter[] writer = { null };
+            Object[] values = new Object[columns.length];
+            long[] count = { 0 };
+            try {
+                streamingJdbcTemplate.query(sql, rs -> {
+                    readRow(rs, values, statusIndex);
+                    try {
+                        if (writer[0] == null) {
+                            writer[0] = format.open(target.open(format), columns);
+                        }
+                        writer[0].write(values);
+                    } catch (IOException e) {
+                        // 瀏覽器中途取消下載之類的，停止讀取
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                }, args.toArray());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (writer[0] == null) {
+                // 沒有資料：只有欄位名稱
+                writer[0] = format.open(target.open(format), columns);
+            }
+            writer[0].finish();
+            rows.increment(count[0]);
+            return count[0];
+        } finally {
+            sample.stop(timer);
+            permits.release();
+        }
+    }
+
+    // 時間欄位轉成 LocalDateTime，訂單狀態轉成名稱，其他照 JDBC 的型別
+    private static void readRow(ResultSet rs, Object[] values, int statusIndex) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            Object value = rs.getObject(i + 1);
+            if (value instanceof Timestamp timestamp) {
+                value = timestamp.toLocalDateTime();
+            }
+            if (i == statusIndex && value instanceof Number ordinal) {
+                int n = ordinal.intValue();
+                value = n >= 0 && n < OrderStatus.values().length ? OrderStatus.values()[n].name() : value;
+            }
+            values[i] = value;
+        }
+    }
+
+    private static void appendWhere(StringBuilder sql, List<String> conditions) {
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+    }
+}
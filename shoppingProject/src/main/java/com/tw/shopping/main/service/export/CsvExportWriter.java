@@ -0,0 +1,85 @@
+package com.tw.shopping.main.service.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * CSV (RFC 4180)：逗號分隔、CRLF 換行，含逗號 / 雙引號 / 換行的欄位用雙引號包起來
+ * 文字欄位開頭是 = + - @ 的前面補一個 '，避免 Excel 當成公式執行
+ */
+final class CsvExportWriter implements ExportWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Writer writer;
+
+    CsvExportWriter(OutputStream out, String[] columns) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write('\uFEFF');
+        write(columns);
+    }
+
+    @Override
+    public void write(Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeValue(values[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            DATE_TIME.formatTo(dateTime, writer);
+            return;
+        }
+        if (!(value instanceof String text)) {
+            writer.write(value.toString());
+            return;
+        }
+        if (text.isEmpty()) {
+            return;
+        }
+
+        boolean formula = "=+-@".indexOf(text.charAt(0)) >= 0;
+        boolean quote = formula;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(text);
+            return;
+        }
+
+        writer.write('"');
+        if (formula) {
+            writer.write('\'');
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
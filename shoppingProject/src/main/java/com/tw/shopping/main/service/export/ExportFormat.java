@@ -0,0 +1,57 @@
+package com.tw.shopping.main.service.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.tw.shopping.main.exception.BusinessValidationException;
+
+/**
+ * 匯出格式
+ * CSV：UTF-8 + BOM (Excel 直接開中文不會亂碼)，第一列是欄位名稱
+ * NDJSON：一列一個 JSON 物件，用換行分隔
+ */
+public enum ExportFormat {
+
+    CSV("text/csv; charset=UTF-8", "csv") {
+        @Override
+        public ExportWriter open(OutputStream out, String[] columns) throws IOException {
+            return new CsvExportWriter(out, columns);
+        }
+    },
+    NDJSON("application/x-ndjson", "ndjson") {
+        @Override
+        public ExportWriter open(OutputStream out, String[] columns) throws IOException {
+            return new NdjsonExportWriter(out, columns);
+        }
+    };
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public abstract ExportWriter open(OutputStream out, String[] columns) throws IOException;
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    // 前端傳來的格式字串 (不分大小寫)，沒給就用 CSV
+    public static ExportFormat fromString(String format) {
+        if (format == null || format.isBlank()) {
+            return CSV;
+        }
+        try {
+            return ExportFormat.valueOf(format.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BusinessValidationException("不支援的匯出格式: " + format);
+        }
+    }
+}
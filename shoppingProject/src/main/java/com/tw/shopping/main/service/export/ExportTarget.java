@@ -0,0 +1,15 @@
+package com.tw.shopping.main.service.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 匯出檔要寫到哪裡 (通常是 HTTP 回應)
+ * 查到第一列 (或確定沒有資料) 才會呼叫，controller 可以在這裡才設定 Content-Type / 檔名：
+ * 在那之前失敗 (例如匯出太多人、DB 錯誤) 都還能照一般的錯誤回應處理
+ */
+@FunctionalInterface
+public interface ExportTarget {
+
+    OutputStream open(ExportFormat format) throws IOException;
+}
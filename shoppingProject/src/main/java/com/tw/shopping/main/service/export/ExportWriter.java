@@ -0,0 +1,16 @@
+package com.tw.shopping.main.service.export;
+
+import java.io.IOException;
+
+/**
+ * 匯出檔一列一列寫出去 (CSV / NDJSON)，只有緩衝區大小的記憶體，不會把整份資料留在記憶體裡
+ * 欄位值可以是 null、String、Number、Boolean、LocalDateTime
+ */
+public interface ExportWriter {
+
+    // 一列；values 的順序跟開檔時的欄位名稱一樣，呼叫完就可以重複使用同一個陣列
+    void write(Object[] values) throws IOException;
+
+    // 把緩衝區的內容送出去 (不會關掉底下的 OutputStream)
+    void finish() throws IOException;
+}
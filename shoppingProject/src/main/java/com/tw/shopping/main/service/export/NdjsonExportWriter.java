@@ -0,0 +1,75 @@
+package com.tw.shopping.main.service.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * NDJSON：一列一個 JSON 物件 + 換行，欄位名稱就是開檔時給的欄位名稱
+ * 時間寫成 ISO-8601 字串 (2024-05-01T12:30:45)
+ */
+final class NdjsonExportWriter implements ExportWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final JsonGenerator generator;
+    private final SerializedString[] names;
+
+    NdjsonExportWriter(OutputStream out, String[] columns) throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // 物件之間不要預設的空白，換行自己寫
+        generator.setRootValueSeparator(null);
+        this.names = new SerializedString[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = new SerializedString(columns[i]);
+        }
+    }
+
+    @Override
+    public void write(Object[] values) throws IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < names.length; i++) {
+            generator.writeFieldName(names[i]);
+            writeValue(values[i]);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void finish() throws IOException {
+        generator.flush();
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String text) {
+            generator.writeString(text);
+        } else if (value instanceof Integer n) {
+            generator.writeNumber(n);
+        } else if (value instanceof Long n) {
+            generator.writeNumber(n);
+        } else if (value instanceof BigDecimal n) {
+            generator.writeNumber(n);
+        } else if (value instanceof Number n) {
+            generator.writeNumber(n.doubleValue());
+        } else if (value instanceof Boolean b) {
+            generator.writeBoolean(b);
+        } else if (value instanceof LocalDateTime dateTime) {
+            generator.writeString(DATE_TIME.format(dateTime));
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.tw.shopping.main.service.flashsale;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tw.shopping.main.config.FlashSaleProperties;
+
+/**
+ * 已接受的搶購訂單日誌 (本機檔案，fsync 之後才回應)
+ * 在 Redis 扣到庫存後先寫進這裡才回應前端，節點當機重啟也能從日誌把還沒寫進 DB 的訂單補寫
+ *
+ * 群組提交：append 只把這筆交給寫入執行緒然後等著，寫入執行緒把等在佇列裡的全部寫進去、fsync 一次，
+ * 再一起叫醒這一批的呼叫端；搶購尖峰時一次 fsync 就能確認幾十、幾百筆，不用每個請求排隊各 fsync 一次
+ *
+ * 格式一行一筆：
+ *   A {json}  接受了一筆訂單
+ *   D token   這筆已經處理完 (寫進 DB 或確定失敗)
+ * 啟動時重放整個檔案，只留下還沒 D 的，重寫成新檔
+ */
+@Component
+public class FlashSaleJournal implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlashSaleJournal.class);
+
+    private static final String FILE_NAME = "journal.log";
+
+    // 寫入執行緒多久檢查一次要不要結束 (毫秒)
+    private static final long POLL_MS = 100;
+
+    private final ObjectMapper objectMapper;
+    private final FlashSaleProperties properties;
+
+    // token -> 還沒處理完的訂單 (依接受順序)
+    private final Map<String, FlashSaleTicket> pending = new LinkedHashMap<>();
+
+    // 等著寫進檔案的 append
+    private final LinkedBlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+
+    private FileChannel channel;
+
+    private volatile boolean running = true;
+    private Thread writer;
+
+    public FlashSaleJournal(
+            ObjectMapper objectMapper,
+            FlashSaleProperties properties) {
+
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        try {
+            open();
+        } catch (IOException e) {
+            // 日誌開不起來就不受理搶購 (append 會失敗)，其他功能照常
+            logger.error("搶購日誌無法開啟，限時搶購暫停受理: {}", e.getMessage());
+            return;
+        }
+        writer = new Thread(this::writeLoop, "flash-sale-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+//  --------------------------------
+
+    // 等到這筆所在的那一批 fsync 完才回來，回來之後這筆訂單就不會因為當機而遺失
+    public void append(FlashSaleTicket ticket) throws IOException {
+        Append append = new Append(ticket, "A " + objectMapper.writeValueAsString(ticket) + "\n", new CompletableFuture<>());
+        synchronized (this) {
+            // 在鎖裡放進佇列，destroy 之後就不會再有人排進來沒人處理
+            if (channel == null) {
+                throw new IOException("搶購日誌無法使用");
+            }
+            appends.add(append);
+        }
+        try {
+            // 不能被中斷：中斷後回去退庫存，這筆卻還是寫進日誌的話，重啟時會多建一張訂單
+            append.synced().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    public synchronized void markDone(Collection<String> tokens) {
+        if (tokens.isEmpty() || channel == null) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        tokens.forEach(token -> lines.append("D ").append(token).append('\n'));
+        try {
+            write(lines.toString());
+            tokens.forEach(pending::remove);
+            if (pending.isEmpty() && channel.size() > properties.getJournalCompactBytes()) {
+                channel.truncate(0);
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            // 沒標記成功的話重啟後會再處理一次，寫入端用 token 判斷是否已成立
+            logger.warn("搶購日誌標記完成失敗: {}", e.getMessage());
+        }
+    }
+
+    // 還沒處理完的訂單 (啟動時交給背景寫入)
+    public synchronized List<FlashSaleTicket> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    // 先讓寫入執行緒把手上的寫完再關檔，還在佇列裡的都當作寫入失敗
+    @Override
+    public void destroy() throws IOException, InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join();
+        }
+        synchronized (this) {
+            List<Append> rejected = new ArrayList<>();
+            appends.drainTo(rejected);
+            IOException closed = new IOException("搶購日誌已關閉");
+            rejected.forEach(append -> append.synced().completeExceptionally(closed));
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    // 寫入執行緒：一次拿走佇列裡所有的 append，寫一次、fsync 一次
+    // 不用 interrupt 停止 (FileChannel 寫到一半被中斷會直接關檔)，改成定時檢查 running
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>();
+        while (running || !appends.isEmpty()) {
+            try {
+                Append first = appends.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            appends.drainTo(batch);
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Append> batch) {
+        StringBuilder lines = new StringBuilder();
+        batch.forEach(append -> lines.append(append.line()));
+        synchronized (this) {
+            try {
+                write(lines.toString());
+                batch.forEach(append -> pending.put(append.ticket().token(), append.ticket()));
+            } catch (IOException e) {
+                // 這一批全部回報失敗，呼叫端會退回 Redis 庫存
+                logger.error("搶購日誌寫入失敗 ({} 筆): {}", batch.size(), e.getMessage());
+                batch.forEach(append -> append.synced().completeExceptionally(e));
+                return;
+            }
+        }
+        batch.forEach(append -> append.synced().complete(null));
+    }
+
+    private void write(String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    // 重放舊檔，只留下還沒處理完的寫成新檔 (先寫暫存檔再換名，避免換到一半當機)
+    private void open() throws IOException {
+        Path dir = Paths.get(properties.getJournalDir());
+        Files.createDirectories(dir);
+        Path file = dir.resolve(FILE_NAME);
+
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                try {
+                    if (line.startsWith("A ")) {
+                        FlashSaleTicket ticket = objectMapper.readValue(line.substring(2), FlashSaleTicket.class);
+                        pending.put(ticket.token(), ticket);
+                    } else if (line.startsWith("D ")) {
+                        pending.remove(line.substring(2).trim());
+                    }
+                } catch (IOException e) {
+                    // 當機時寫到一半的最後一行
+                    logger.warn("略過無法解析的搶購日誌: {}", line);
+                }
+            }
+            Path tmp = dir.resolve(FILE_NAME + ".tmp");
+            StringBuilder rewritten = new StringBuilder();
+            for (FlashSaleTicket ticket : pending.values()) {
+                rewritten.append("A ").append(objectMapper.writeValueAsString(ticket)).append('\n');
+            }
+            Files.writeString(tmp, rewritten, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!pending.isEmpty()) {
+                logger.info("搶購日誌有 {} 筆訂單尚未寫入 DB，將重新處理", pending.size());
+            }
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // 一筆等著寫進日誌的訂單，synced 在它所在的那一批 fsync 完成 (或失敗) 時結束
+    private record Append(FlashSaleTicket ticket, String line, CompletableFuture<Void> synced) {
+    }
+}
@@ -0,0 +1,315 @@
+package com.tw.shopping.main.service.flashsale;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.config.FlashSaleProperties;
+import com.tw.shopping.main.dto.FlashSaleOrderRequestDto;
+import com.tw.shopping.main.entity.OrderEntity;
+import com.tw.shopping.main.entity.OrderItemEntity;
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.entity.UserEntity;
+import com.tw.shopping.main.repository.OrderItemRepository;
+import com.tw.shopping.main.repository.OrderRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+import com.tw.shopping.main.repository.UserRepository;
+import com.tw.shopping.main.service.OrderService;
+import com.tw.shopping.main.service.inventory.InventoryReservationStrategy;
+import com.tw.shopping.main.service.stats.SalesDailyRollup;
+import com.tw.shopping.main.service.stock.ProductStockCache;
+
+/**
+ * 把已經在 Redis 扣到庫存的搶購訂單批次寫進 DB
+ * 一批一個交易：同一個商品的數量先加總，整批一次扣庫存 (依 productid 排序，方式見 inventory.strategy)，
+ * 再一次 saveAll 訂單 / 明細，熱門商品那一列每批只鎖一次
+ *
+ * commit 之後才更新狀態、標記日誌完成；交易失敗整批放回佇列重試，超過次數就退回 Redis 庫存
+ *
+ * 每張搶購單的結果跟訂單在同一個交易裡寫進 flash_sale_order (見 db/07_flash_sale_order.sql)，
+ * 日誌重播時先用 token 查這張表，寫過的不再建訂單、扣庫存；Redis 的狀態只給前端查詢用
+ */
+@Component
+public class FlashSaleOrderWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlashSaleOrderWorker.class);
+
+    // 每次排程最多處理幾批，剩下的留到下一輪
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    private static final String RECORD_SQL =
+            "INSERT INTO flash_sale_order (token, orderid, message, created_at) VALUES (?, ?, ?, ?)";
+
+    private final FlashSaleJournal journal;
+    private final FlashSaleStore flashSaleStore;
+    private final FlashSaleProperties properties;
+    private final OrderService orderService;
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+    private final ProductStockCache stockCache;
+    private final InventoryReservationStrategy inventoryStrategy;
+    private final SalesDailyRollup salesRollup;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final LinkedBlockingQueue<FlashSaleTicket> queue = new LinkedBlockingQueue<>();
+
+    // token -> 已經失敗幾次
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+
+    public FlashSaleOrderWorker(
+            FlashSaleJournal journal,
+            FlashSaleStore flashSaleStore,
+            FlashSaleProperties properties,
+            OrderService orderService,
+            OrderRepository orderRepository,
+            OrderItemRepository orderItemRepository,
+            UserRepository userRepository,
+            ProductRepository productRepository,
+            ProductStockCache stockCache,
+            InventoryReservationStrategy inventoryStrategy,
+            SalesDailyRollup salesRollup,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+
+        this.journal = journal;
+        this.flashSaleStore = flashSaleStore;
+        this.properties = properties;
+        this.orderService = orderService;
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.userRepository = userRepository;
+        this.productRepository = productRepository;
+        this.stockCache = stockCache;
+        this.inventoryStrategy = inventoryStrategy;
+        this.salesRollup = salesRollup;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // 跟一般結帳一樣用 READ COMMITTED (optimistic 扣庫存重試要看得到最新版本)
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+
+        // 上次關機 / 當機時還沒寫進 DB 的
+        queue.addAll(journal.pending());
+    }
+//  --------------------------------
+
+    public void enqueue(FlashSaleTicket ticket) {
+        queue.add(ticket);
+    }
+
+    // 還在排隊的筆數
+    public int backlog() {
+        return queue.size();
+    }
+
+    @Scheduled(fixedDelayString = "${flash-sale.worker-interval-ms:200}")
+    public void drain() {
+        for (int round = 0; round < MAX_BATCHES_PER_RUN; round++) {
+            List<FlashSaleTicket> batch = new ArrayList<>();
+            queue.drainTo(batch, properties.getBatchSize());
+            if (batch.isEmpty()) {
+                return;
+            }
+            process(batch);
+        }
+    }
+
+    private void process(List<FlashSaleTicket> batch) {
+        Map<String, Outcome> outcomes;
+        try {
+            outcomes = transactionTemplate.execute(status -> writeOrders(batch));
+        } catch (RuntimeException e) {
+            logger.warn("搶購訂單寫入失敗 ({} 筆)，稍後重試: {}", batch.size(), e.getMessage());
+            retryOrGiveUp(batch);
+            return;
+        }
+
+        // --- 已經 commit ---
+        for (FlashSaleTicket ticket : batch) {
+            Outcome outcome = outcomes.get(ticket.token());
+            if (outcome.orderId() != null) {
+                flashSaleStore.saveStatus(ticket.token(), FlashSaleStore.STATUS_CREATED, outcome.orderId(), null);
+            } else if (outcome.replayed()) {
+                // 上次已經判定失敗 (Redis 庫存可能已經還過了)，只補狀態
+                flashSaleStore.saveStatus(ticket.token(), FlashSaleStore.STATUS_FAILED, null, outcome.message());
+            } else {
+                fail(ticket, outcome.message());
+            }
+            attempts.remove(ticket.token());
+        }
+        journal.markDone(batch.stream().map(FlashSaleTicket::token).toList());
+    }
+
+    // 在交易裡：整批扣庫存 + 建訂單，回傳每個 token 的結果
+    private Map<String, Outcome> writeOrders(List<FlashSaleTicket> tickets) {
+        // 日誌重播：已經寫過 DB 的 token 直接回傳當時的結果 (這個查詢跟下面的寫入在同一個交易)
+        Map<String, Outcome> outcomes = findRecorded(tickets);
+        List<FlashSaleTicket> batch = tickets.stream().filter(t -> !outcomes.containsKey(t.token())).toList();
+        if (batch.isEmpty()) {
+            return outcomes;
+        }
+
+        Map<Long, UserEntity> users = userRepository.findAllById(
+                batch.stream().map(t -> t.order().getUserId()).distinct().toList())
+                .stream()
+                .collect(Collectors.toMap(UserEntity::getUserid, Function.identity()));
+        Map<Integer, ProductEntity> products = productRepository.findAllById(
+                batch.stream().map(t -> t.order().getProductId()).distinct().toList())
+                .stream()
+                .collect(Collectors.toMap(ProductEntity::getProductid, Function.identity()));
+
+        // 這一批每張搶購單的結果 (成立或失敗)，最後一起記進 flash_sale_order
+        Map<String, Outcome> written = new HashMap<>();
+
+        // 同一個商品的數量加總 (TreeMap：依 productid 排序扣，避免死鎖)
+        Map<Integer, List<FlashSaleTicket>> byProduct = new TreeMap<>();
+        for (FlashSaleTicket ticket : batch) {
+            FlashSaleOrderRequestDto order = ticket.order();
+            if (!users.containsKey(order.getUserId()) || !products.containsKey(order.getProductId())) {
+                written.put(ticket.token(), Outcome.failed("會員或商品不存在"));
+                continue;
+            }
+            byProduct.computeIfAbsent(order.getProductId(), k -> new ArrayList<>()).add(ticket);
+        }
+
+        List<Integer> productIds = new ArrayList<>(byProduct.keySet());
+        List<StockChange> changes = productIds.stream()
+                .map(id -> new StockChange(id,
+                        byProduct.get(id).stream().mapToInt(t -> t.order().getQuantity()).sum()))
+                .toList();
+        boolean[] decreased = inventoryStrategy.reserve(changes);
+
+        List<FlashSaleTicket> accepted = new ArrayList<>();
+        List<FlashSaleTicket> retryOneByOne = new ArrayList<>();
+        for (int i = 0; i < decreased.length; i++) {
+            (decreased[i] ? accepted : retryOneByOne).addAll(byProduct.get(productIds.get(i)));
+        }
+
+        // 加總扣不下去 (DB 庫存比 Redis 少，例如後台改過庫存)：改成一筆一筆扣，能成立幾筆算幾筆
+        if (!retryOneByOne.isEmpty()) {
+            boolean[] single = inventoryStrategy.reserve(retryOneByOne.stream()
+                    .map(t -> new StockChange(t.order().getProductId(), t.order().getQuantity()))
+                    .toList());
+            for (int i = 0; i < single.length; i++) {
+                FlashSaleTicket ticket = retryOneByOne.get(i);
+                if (single[i]) {
+                    accepted.add(ticket);
+                } else {
+                    logger.warn("搶購商品 DB 庫存不足: productid={}, token={}",
+                            ticket.order().getProductId(), ticket.token());
+                    written.put(ticket.token(), Outcome.failed("商品已搶購一空"));
+                }
+            }
+        }
+
+        Map<String, OrderEntity> orders = new LinkedHashMap<>();
+        List<OrderItemEntity> orderItems = new ArrayList<>();
+        for (FlashSaleTicket ticket : accepted) {
+            FlashSaleOrderRequestDto request = ticket.order();
+            ProductEntity product = products.get(request.getProductId());
+
+            OrderEntity order = orderService.newOrder(request, users.get(request.getUserId()),
+                    product.getPrice() * request.getQuantity());
+
+            OrderItemEntity orderItem = new OrderItemEntity();
+            orderItem.setOrder(order);
+            orderItem.setProductId(product.getProductid().longValue());
+            orderItem.setQuantity(request.getQuantity());
+            orderItem.setUnitPrice(product.getPrice());
+            orderItem.setDiscount(BigDecimal.ZERO);
+            orderItem.setProduct(product);
+            order.getOrderItems().add(orderItem);
+
+            orders.put(ticket.token(), order);
+            orderItems.add(orderItem);
+
+            // 商品頁的庫存快取等交易 commit 後再扣
+            stockCache.decreaseAfterCommit(product.getProductid(), request.getQuantity());
+        }
+
+        orderRepository.saveAll(orders.values());
+        orderItemRepository.saveAll(orderItems);
+        salesRollup.ordersCreated(orders.values());
+
+        orders.forEach((token, order) -> written.put(token, new Outcome(order.getOrderId(), null, false)));
+
+        // token 是主鍵：同一張搶購單被兩條路徑同時寫，後面那個交易會失敗 rollback，重試時就查得到
+        record(written);
+        outcomes.putAll(written);
+        return outcomes;
+    }
+
+    private Map<String, Outcome> findRecorded(List<FlashSaleTicket> tickets) {
+        Map<String, Outcome> recorded = new HashMap<>();
+        if (tickets.isEmpty()) {
+            return recorded;
+        }
+        String sql = "SELECT token, orderid, message FROM flash_sale_order WHERE token IN ("
+                + String.join(",", Collections.nCopies(tickets.size(), "?")) + ")";
+        jdbcTemplate.query(sql, rs -> {
+            Integer orderId = rs.getObject("orderid", Integer.class);
+            recorded.put(rs.getString("token"), new Outcome(orderId, rs.getString("message"), true));
+        }, tickets.stream().map(FlashSaleTicket::token).toArray());
+        return recorded;
+    }
+
+    private void record(Map<String, Outcome> outcomes) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = outcomes.entrySet().stream()
+                .map(e -> new Object[] { e.getKey(), e.getValue().orderId(), e.getValue().message(), now })
+                .toList();
+        jdbcTemplate.batchUpdate(RECORD_SQL, rows);
+    }
+
+    private void retryOrGiveUp(List<FlashSaleTicket> batch) {
+        List<String> givenUp = new ArrayList<>();
+        for (FlashSaleTicket ticket : batch) {
+            int failed = attempts.merge(ticket.token(), 1, Integer::sum);
+            if (failed >= properties.getMaxAttempts()) {
+                fail(ticket, "訂單建立失敗，請稍後再試");
+                attempts.remove(ticket.token());
+                givenUp.add(ticket.token());
+            } else {
+                queue.add(ticket);
+            }
+        }
+        journal.markDone(givenUp);
+    }
+
+    // 訂單沒成立：Redis 的庫存跟購買資格還回去
+    private void fail(FlashSaleTicket ticket, String message) {
+        FlashSaleOrderRequestDto order = ticket.order();
+        flashSaleStore.release(order.getProductId(), order.getQuantity(), order.getUserId());
+        flashSaleStore.saveStatus(ticket.token(), FlashSaleStore.STATUS_FAILED, null, message);
+    }
+
+    // replayed = 這次交易之前就已經寫過 flash_sale_order
+    private record Outcome(Integer orderId, String message, boolean replayed) {
+        static Outcome failed(String message) {
+            return new Outcome(null, message, false);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.tw.shopping.main.service.flashsale;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.tw.shopping.main.config.FlashSaleProperties;
+import com.tw.shopping.main.dto.FlashSaleOrderRequestDto;
+import com.tw.shopping.main.dto.FlashSaleStatusDto;
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.exception.BusinessValidationException;
+import com.tw.shopping.main.exception.ResourceNotFoundException;
+import com.tw.shopping.main.repository.ProductRepository;
+
+/**
+ * 限時搶購
+ * 下單只做三件事就回應：Redis 原子扣庫存 → 寫本機日誌 (fsync) → 丟進背景佇列
+ * 真正的訂單由 FlashSaleOrderWorker 批次寫進 DB，前端拿 token 查詢 (或用 SSE 等) 訂單結果
+ */
+@Service
+public class FlashSaleService implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlashSaleService.class);
+
+    // SSE 多久查一次訂單狀態 (毫秒)
+    private static final long STREAM_POLL_MS = 300;
+
+    private final FlashSaleStore flashSaleStore;
+    private final FlashSaleJournal journal;
+    private final FlashSaleOrderWorker worker;
+    private final ProductRepository productRepository;
+    private final FlashSaleProperties properties;
+
+    // 所有 SSE 連線共用一條執行緒輪詢狀態，不佔住 request 執行緒
+    private final ScheduledExecutorService streamPoller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "flash-sale-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public FlashSaleService(
+            FlashSaleStore flashSaleStore,
+            FlashSaleJournal journal,
+            FlashSaleOrderWorker worker,
+            ProductRepository productRepository,
+            FlashSaleProperties properties) {
+
+        this.flashSaleStore = flashSaleStore;
+        this.journal = journal;
+        this.worker = worker;
+        this.productRepository = productRepository;
+        this.properties = properties;
+    }
+//  --------------------------------
+
+    public FlashSaleStatusDto placeOrder(FlashSaleOrderRequestDto request) {
+        if (request.getUserId() == null) {
+            throw new BusinessValidationException("請先登入");
+        }
+
+        // 1. Redis 原子扣庫存 (搶不到直接丟例外，不會碰到 DB)
+        flashSaleStore.reserve(request.getProductId(), request.getQuantity(), request.getUserId());
+
+        // 2. 寫進日誌才算接受，寫不進去就把庫存還回去
+        FlashSaleTicket ticket = new FlashSaleTicket(UUID.randomUUID().toString(), request, System.currentTimeMillis());
+        try {
+            journal.append(ticket);
+        } catch (IOException e) {
+            logger.error("搶購日誌寫入失敗: {}", e.getMessage());
+            flashSaleStore.release(request.getProductId(), request.getQuantity(), request.getUserId());
+            throw new RuntimeException("搶購人數眾多，請稍後再試");
+        }
+
+        // 3. 排隊寫 DB
+        flashSaleStore.saveStatus(ticket.token(), FlashSaleStore.STATUS_QUEUED, null, null);
+        worker.enqueue(ticket);
+
+        return new FlashSaleStatusDto(ticket.token(), FlashSaleStore.STATUS_QUEUED, null, null);
+    }
+
+    public FlashSaleStatusDto getStatus(String token) {
+        FlashSaleStatusDto status = flashSaleStore.findStatus(token);
+        if (status == null) {
+            throw new ResourceNotFoundException("找不到搶購訂單: " + token);
+        }
+        return status;
+    }
+
+    // 狀態一有結果 (CREATED / FAILED) 就推給前端並結束，逾時前端再改用查詢
+    public SseEmitter streamStatus(String token) {
+        FlashSaleStatusDto first = getStatus(token);
+
+        SseEmitter emitter = new SseEmitter(properties.getStreamTimeout().toMillis());
+        AtomicReference<ScheduledFuture<?>> poll = new AtomicReference<>();
+        Runnable stop = () -> {
+            ScheduledFuture<?> future = poll.get();
+            if (future != null) {
+                future.cancel(false);
+            }
+        };
+        emitter.onCompletion(stop);
+        emitter.onTimeout(stop);
+        emitter.onError(e -> stop.run());
+
+        AtomicReference<String> lastStatus = new AtomicReference<>();
+        Runnable check = () -> {
+            try {
+                FlashSaleStatusDto status = flashSaleStore.findStatus(token);
+                if (status == null) {
+                    emitter.complete();
+                    return;
+                }
+                if (!status.getStatus().equals(lastStatus.getAndSet(status.getStatus()))) {
+                    emitter.send(SseEmitter.event().name("status").data(status));
+                }
+                if (status.isFinished()) {
+                    emitter.complete();
+                }
+            } catch (IOException | RuntimeException e) {
+                emitter.completeWithError(e);
+            }
+        };
+
+        if (first.isFinished()) {
+            check.run();
+        } else {
+            poll.set(streamPoller.scheduleWithFixedDelay(check, 0, STREAM_POLL_MS, TimeUnit.MILLISECONDS));
+        }
+        return emitter;
+    }
+
+    // ---------------- 後台 ----------------
+
+    // 開始搶購：目前 DB 庫存全部放進 Redis 給搶購用
+    public int enable(Integer productId) {
+        ProductEntity product = productRepository.findById(productId)
+                .orElseThrow(() -> new ResourceNotFoundException("找不到商品 ID: " + productId));
+        int stock = product.getStock() != null ? product.getStock() : 0;
+        flashSaleStore.open(productId, stock);
+        logger.info("商品 {} 開始限時搶購，數量 {}", productId, stock);
+        return stock;
+    }
+
+    // 結束搶購，回傳 Redis 裡沒賣掉的數量 (DB 庫存本來就沒被預扣，不用回補)
+    public int disable(Integer productId) {
+        Integer remaining = flashSaleStore.close(productId);
+        if (remaining == null) {
+            throw new BusinessValidationException("此商品目前沒有限時搶購");
+        }
+        logger.info("商品 {} 結束限時搶購，剩餘 {}", productId, remaining);
+        return remaining;
+    }
+
+    @Override
+    public void destroy() {
+        streamPoller.shutdownNow();
+    }
+}
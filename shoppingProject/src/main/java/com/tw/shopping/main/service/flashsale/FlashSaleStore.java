@@ -0,0 +1,175 @@
+package com.tw.shopping.main.service.flashsale;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import com.tw.shopping.main.config.FlashSaleProperties;
+import com.tw.shopping.main.dto.FlashSaleStatusDto;
+import com.tw.shopping.main.exception.BusinessValidationException;
+import com.tw.shopping.main.exception.StockNotEnoughException;
+
+/**
+ * 限時搶購在 Redis 裡的資料
+ * - flashsale:stock          hash，field = productid，value = 還能賣的數量 (有 field 代表這個商品正在搶購)
+ * - flashsale:buyers:{pid}   set，已經搶到的 userid (每人限搶一次)
+ * - flashsale:order:{token}  hash，訂單狀態 (status / orderId / message)
+ */
+@Component
+public class FlashSaleStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlashSaleStore.class);
+
+    private static final String STOCK_KEY = "flashsale:stock";
+    private static final String BUYERS_KEY_PREFIX = "flashsale:buyers:";
+    private static final String ORDER_KEY_PREFIX = "flashsale:order:";
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_CREATED = "CREATED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    // 扣庫存：不在搶購回傳 -1、已經搶過回傳 -2、庫存不夠回傳 0、成功回傳 1
+    // KEYS: stock, buyers；ARGV: productid, 數量, userid
+    private static final DefaultRedisScript<Long> RESERVE = new DefaultRedisScript<>(
+            "local stock = redis.call('HGET', KEYS[1], ARGV[1]) "
+                    + "if not stock then return -1 end "
+                    + "if redis.call('SISMEMBER', KEYS[2], ARGV[3]) == 1 then return -2 end "
+                    + "if tonumber(stock) < tonumber(ARGV[2]) then return 0 end "
+                    + "redis.call('HINCRBY', KEYS[1], ARGV[1], -tonumber(ARGV[2])) "
+                    + "redis.call('SADD', KEYS[2], ARGV[3]) "
+                    + "return 1",
+            Long.class);
+
+    // 退回庫存 (訂單沒寫成)，搶購已經結束 (field 不在) 就只移除購買紀錄
+    // KEYS: stock, buyers；ARGV: productid, 數量, userid
+    private static final DefaultRedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then "
+                    + "redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) end "
+                    + "redis.call('SREM', KEYS[2], ARGV[3]) "
+                    + "return 1",
+            Long.class);
+
+    // 結束搶購：取出剩餘數量並移除 field，同一個腳本裡做，中間不會有人再扣到
+    // KEYS: stock；ARGV: productid；不在搶購回傳 nil
+    private static final DefaultRedisScript<String> CLOSE = new DefaultRedisScript<>(
+            "local stock = redis.call('HGET', KEYS[1], ARGV[1]) "
+                    + "if stock then redis.call('HDEL', KEYS[1], ARGV[1]) end "
+                    + "return stock",
+            String.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final FlashSaleProperties properties;
+
+    public FlashSaleStore(
+            StringRedisTemplate redisTemplate,
+            FlashSaleProperties properties) {
+
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+    }
+//  --------------------------------
+
+    // 在 Redis 原子扣庫存，扣不到直接丟例外
+    public void reserve(Integer productId, int quantity, Long userId) {
+        Long result = redisTemplate.execute(RESERVE, List.of(STOCK_KEY, buyersKey(productId)),
+                productId.toString(), String.valueOf(quantity), userId.toString());
+        if (result == null || result == -1L) {
+            throw new BusinessValidationException("此商品目前沒有限時搶購");
+        }
+        if (result == -2L) {
+            throw new BusinessValidationException("每人限搶購一次");
+        }
+        if (result == 0L) {
+            throw new StockNotEnoughException("商品已搶購一空");
+        }
+    }
+
+    public void release(Integer productId, int quantity, Long userId) {
+        try {
+            redisTemplate.execute(RELEASE, List.of(STOCK_KEY, buyersKey(productId)),
+                    productId.toString(), String.valueOf(quantity), userId.toString());
+        } catch (RuntimeException e) {
+            logger.warn("退回搶購庫存失敗: productid={}, quantity={}, {}", productId, quantity, e.getMessage());
+        }
+    }
+
+    // 開始搶購：放進可賣數量，清掉上一檔的購買紀錄
+    public void open(Integer productId, int stock) {
+        redisTemplate.delete(buyersKey(productId));
+        redisTemplate.opsForHash().put(STOCK_KEY, productId.toString(), String.valueOf(stock));
+    }
+
+    // 結束搶購，回傳剩下沒賣掉的數量 (不在搶購回傳 null)
+    public Integer close(Integer productId) {
+        String remaining = redisTemplate.execute(CLOSE, List.of(STOCK_KEY), productId.toString());
+        return remaining != null ? Integer.valueOf(remaining) : null;
+    }
+
+    // 剩餘數量，不在搶購回傳 null
+    public Integer remaining(Integer productId) {
+        Object remaining = redisTemplate.opsForHash().get(STOCK_KEY, productId.toString());
+        return remaining != null ? Integer.valueOf(remaining.toString()) : null;
+    }
+
+    // 這些商品裡有沒有正在搶購的 (一般結帳用來擋)
+    // Redis 掛掉時搶購本來就收不了單，這裡放行，不影響一般結帳
+    public boolean anyOnSale(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return false;
+        }
+        List<Object> fields = new ArrayList<>();
+        productIds.forEach(id -> fields.add(id.toString()));
+        try {
+            return redisTemplate.opsForHash().multiGet(STOCK_KEY, fields).stream().anyMatch(v -> v != null);
+        } catch (RuntimeException e) {
+            logger.warn("查詢限時搶購商品失敗: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // ---------------- 訂單狀態 ----------------
+
+    public void saveStatus(String token, String status, Integer orderId, String message) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", status);
+        if (orderId != null) {
+            fields.put("orderId", orderId.toString());
+        }
+        if (message != null) {
+            fields.put("message", message);
+        }
+        try {
+            String key = ORDER_KEY_PREFIX + token;
+            redisTemplate.opsForHash().putAll(key, fields);
+            redisTemplate.expire(key, properties.getStatusTtl());
+        } catch (RuntimeException e) {
+            // 狀態只是給前端查詢用，訂單本身不受影響
+            logger.warn("寫入搶購訂單狀態失敗: token={}, {}", token, e.getMessage());
+        }
+    }
+
+    // 查不到回傳 null
+    public FlashSaleStatusDto findStatus(String token) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(ORDER_KEY_PREFIX + token);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        Object orderId = fields.get("orderId");
+        return new FlashSaleStatusDto(token,
+                (String) fields.get("status"),
+                orderId != null ? Integer.valueOf(orderId.toString()) : null,
+                (String) fields.get("message"));
+    }
+
+    private static String buyersKey(Integer productId) {
+        return BUYERS_KEY_PREFIX + productId;
+    }
+}
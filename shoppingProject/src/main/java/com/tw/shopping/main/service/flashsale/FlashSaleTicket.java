@@ -0,0 +1,9 @@
+package com.tw.shopping.main.service.flashsale;
+
+import com.tw.shopping.main.dto.FlashSaleOrderRequestDto;
+
+/**
+ * 一筆已在 Redis 扣到庫存、等著寫進 DB 的搶購訂單 (日誌裡存的就是這個)
+ */
+public record FlashSaleTicket(String token, FlashSaleOrderRequestDto order, long acceptedAt) {
+}
@@ -0,0 +1,27 @@
+package com.tw.shopping.main.service.home;
+
+/**
+ * 算好的整包首頁回應：原始 JSON、gzip 壓縮後的 JSON、內容雜湊 (ETag)
+ * 建好之後不會再改，所有請求共用同一份 byte[]
+ */
+public record HomePayload(byte[] json, byte[] gzip, String etag) {
+
+    // If-None-Match 可能是一串 (逗號分隔) 或 *，W/ 前綴用弱比對忽略
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        String mine = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag) || mine.equals(stripWeak(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,143 @@
+package com.tw.shopping.main.service.home;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tw.shopping.main.cache.TwoLevelCacheManager;
+import com.tw.shopping.main.dto.HomeDataResponseDto;
+import com.tw.shopping.main.service.HomeService;
+
+/**
+ * 首頁回應 (/home) 的預先算好版本
+ * 整包 HomeDataResponseDto 只序列化一次，存成 JSON + gzip 兩份 byte[] 跟 ETag，每個請求直接回傳
+ *
+ * 重建時機：
+ * 1. 後台改到首頁上的商品 -> invalidateProducts 清掉首頁商品快取
+ * 2. 首頁的快取 (home_*) 被清掉或換新 (本機或其他節點) -> 丟掉目前這份，下個請求重建
+ * 各節點用同樣的資料算出同樣的 JSON，ETag 在節點之間是一致的
+ */
+@Component
+public class HomePayloadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HomePayloadService.class);
+
+    private final HomeService homeService;
+    private final TwoLevelCacheManager cacheManager;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicReference<Published> current = new AtomicReference<>();
+    // 每次失效 +1；發布的那份記下發布當下的 generation，對不上就是已經失效
+    private final AtomicLong generation = new AtomicLong();
+
+    public HomePayloadService(
+            HomeService homeService,
+            TwoLevelCacheManager cacheManager,
+            ObjectMapper objectMapper) {
+
+        this.homeService = homeService;
+        this.cacheManager = cacheManager;
+        this.objectMapper = objectMapper;
+        cacheManager.addInvalidationListener(this::onCacheInvalidated);
+    }
+//  --------------------------------
+
+    // 取得目前的首頁回應，沒有就現場建一份
+    public HomePayload getPayload() {
+        Published published = current.get();
+        if (published != null && published.generation() == generation.get()) {
+            return published.payload();
+        }
+        synchronized (this) {
+            published = current.get();
+            if (published != null && published.generation() == generation.get()) {
+                return published.payload();
+            }
+            // 開始建之前的 generation：建的途中來的失效 (後台改了首頁商品、其他節點清了 home_* 快取)
+            // 會讓這份一發布就對不上，下個請求重建，不會把舊的 JSON / ETag 一直用下去
+            long builtFor = generation.get();
+            HomePayload payload = build();
+            current.set(new Published(payload, builtFor));
+            return payload;
+        }
+    }
+
+    // 後台異動的商品有出現在首頁才清 (commit 之後呼叫)
+    public void invalidateProducts(Collection<Integer> productIds) {
+        Set<Integer> homeIds = homeService.getHomeProductIds();
+        if (Collections.disjoint(homeIds, productIds)) {
+            return;
+        }
+        for (String name : HomeService.PRODUCT_CACHE_NAMES) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+        // 快取清掉時 onCacheInvalidated 就會丟掉目前這份，這裡再保險一次
+        invalidate();
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        current.set(null);
+    }
+
+    private void onCacheInvalidated(String cacheName) {
+        if (HomeService.PRODUCT_CACHE_NAMES.contains(cacheName) || HomeService.CATEGORY_CACHE_NAME.equals(cacheName)) {
+            invalidate();
+        }
+    }
+
+    // 內容跟原本 Controller 組出來的一樣，只是序列化一次就重複使用
+    private HomePayload build() {
+        HomeDataResponseDto response = new HomeDataResponseDto();
+        response.setMainProducts(homeService.getSevenProduct());
+        response.setFeaturedProducts(homeService.getpdProduct());
+        response.setCategories(homeService.getCategory());
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(response);
+            HomePayload payload = new HomePayload(json, gzip(json), etag(json));
+            logger.info("首頁回應已重建: {} bytes (gzip {} bytes), ETag {}", json.length, payload.gzip().length, payload.etag());
+            return payload;
+        } catch (IOException e) {
+            throw new IllegalStateException("首頁回應序列化失敗", e);
+        }
+    }
+
+    private record Published(HomePayload payload, long generation) {
+    }
+
+    private static byte[] gzip(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        }
+        return out.toByteArray();
+    }
+
+    // JSON 跟 gzip 是同一份內容的兩種編碼，用弱 ETag
+    private static String etag(byte[] json) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json);
+            return "W/\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
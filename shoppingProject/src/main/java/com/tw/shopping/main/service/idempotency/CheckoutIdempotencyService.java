@@ -0,0 +1,247 @@
+package com.tw.shopping.main.service.idempotency;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tw.shopping.main.config.IdempotencyProperties;
+import com.tw.shopping.main.dto.CheckoutRequestDto;
+import com.tw.shopping.main.entity.OrderEntity;
+import com.tw.shopping.main.exception.BusinessValidationException;
+import com.tw.shopping.main.exception.ResourceNotFoundException;
+import com.tw.shopping.main.exception.StockNotEnoughException;
+import com.tw.shopping.main.repository.OrderRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 結帳的 Idempotency-Key
+ * Redis key idem:checkout:{userid}:{key}，值是 JSON (IdempotencyRecord)：
+ * 先 SET NX 一筆 PENDING 佔位 (inflight-ttl)，結帳完成後換成結果 (ttl)
+ * 結帳交易有逾時 (checkout-timeout-seconds)，而且一定比佔位短：佔位不會在結帳還在跑的時候過期
+ *
+ * - 同一個節點同時來的重送：等本機那一筆的結果 (不查 Redis)
+ * - 別的節點正在處理：輪詢 Redis 直到有結果
+ * - 已經有結果：訂單成立就回同一張訂單；庫存不足等業務錯誤就丟同樣的錯誤
+ * - 同一個 key 但請求內容不同 (收件資料改了)：拒絕
+ * 非預期的錯誤 (DB 斷線等) 不記結果，直接刪掉佔位，讓使用者用同一個 key 再試
+ *
+ * metrics：checkout.idempotency{result=miss|hit|inflight_wait|collision}
+ */
+@Service
+public class CheckoutIdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckoutIdempotencyService.class);
+
+    private static final String KEY_PREFIX = "idem:checkout:";
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final OrderRepository orderRepository;
+    private final IdempotencyProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    // 本機正在處理的 key -> 結果
+    private final Map<String, CompletableFuture<IdempotencyRecord>> inflight = new ConcurrentHashMap<>();
+
+    public CheckoutIdempotencyService(
+            StringRedisTemplate redisTemplate,
+            ObjectMapper objectMapper,
+            OrderRepository orderRepository,
+            IdempotencyProperties properties,
+            MeterRegistry meterRegistry) {
+
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.orderRepository = orderRepository;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        if (properties.getInflightTtl().toSeconds() <= properties.getCheckoutTimeoutSeconds()) {
+            throw new IllegalStateException("idempotency.inflight-ttl (" + properties.getInflightTtl()
+                    + ") 必須大於 idempotency.checkout-timeout-seconds (" + properties.getCheckoutTimeoutSeconds() + ")");
+        }
+    }
+//  --------------------------------
+
+    public OrderEntity checkout(String idempotencyKey, CheckoutRequestDto request, Supplier<OrderEntity> createOrder) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new BusinessValidationException("Idempotency-Key 長度須為 1~" + MAX_KEY_LENGTH + " 字元");
+        }
+        String key = KEY_PREFIX + request.getUserId() + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+
+        // 1. 本機已經有同一個 key 在跑：等它的結果
+        CompletableFuture<IdempotencyRecord> mine = new CompletableFuture<>();
+        CompletableFuture<IdempotencyRecord> running = inflight.putIfAbsent(key, mine);
+        if (running != null) {
+            count("inflight_wait");
+            return replay(awaitLocal(running), fingerprint);
+        }
+
+        try {
+            // 2. 搶 Redis 佔位，搶不到代表別的節點處理過 / 正在處理
+            Boolean claimed = claim(key, fingerprint);
+            if (Boolean.FALSE.equals(claimed)) {
+                IdempotencyRecord existing = awaitRemote(key);
+                mine.complete(existing);
+                count("hit");
+                return replay(existing, fingerprint);
+            }
+
+            // 3. 第一次：真的建立訂單，結果記起來
+            count("miss");
+            try {
+                OrderEntity order = createOrder.get();
+                IdempotencyRecord record = IdempotencyRecord.created(fingerprint, order.getOrderId());
+                save(key, record, claimed);
+                mine.complete(record);
+                return order;
+            } catch (StockNotEnoughException | BusinessValidationException | ResourceNotFoundException e) {
+                IdempotencyRecord record = IdempotencyRecord.rejected(fingerprint, e);
+                save(key, record, claimed);
+                mine.complete(record);
+                throw e;
+            } catch (RuntimeException e) {
+                release(key, claimed);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+        } finally {
+            // 等別的節點逾時等情況，本機在等的重送也一起結束
+            if (!mine.isDone()) {
+                mine.completeExceptionally(new BusinessValidationException("相同的結帳請求正在處理中，請稍後再試"));
+            }
+            inflight.remove(key, mine);
+        }
+    }
+
+    // 同一個 key 的結果：內容要一樣才回放
+    private OrderEntity replay(IdempotencyRecord record, String fingerprint) {
+        if (!record.fingerprint().equals(fingerprint)) {
+            count("collision");
+            throw new BusinessValidationException("此 Idempotency-Key 已用於內容不同的結帳請求");
+        }
+        if (record.orderId() != null) {
+            return orderRepository.findById(record.orderId())
+                    .orElseThrow(() -> new ResourceNotFoundException("找不到訂單: " + record.orderId()));
+        }
+        throw record.toException();
+    }
+
+    // SET NX 佔位；Redis 連不上回傳 null (照常結帳，只是沒有重送保護)
+    private Boolean claim(String key, String fingerprint) {
+        try {
+            return redisTemplate.opsForValue().setIfAbsent(key,
+                    write(IdempotencyRecord.pending(fingerprint)), properties.getInflightTtl());
+        } catch (RuntimeException e) {
+            logger.warn("Idempotency-Key 佔位失敗，本次結帳不做重送保護: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(String key, IdempotencyRecord record, Boolean claimed) {
+        if (claimed == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, write(record), properties.getTtl());
+        } catch (RuntimeException e) {
+            // 佔位過期後同一個 key 會再執行一次，跟沒帶 key 一樣
+            logger.warn("Idempotency-Key 結果寫入失敗: {}", e.getMessage());
+        }
+    }
+
+    private void release(String key, Boolean claimed) {
+        if (claimed == null) {
+            return;
+        }
+        try {
+            redisTemplate.delete(key);
+        } catch (RuntimeException e) {
+            logger.warn("Idempotency-Key 佔位刪除失敗: {}", e.getMessage());
+        }
+    }
+
+    private IdempotencyRecord awaitLocal(CompletableFuture<IdempotencyRecord> running) {
+        try {
+            return running.get(properties.getWaitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // 第一筆遇到非預期的錯誤，重送的也拿到同一個錯誤
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new BusinessValidationException("相同的結帳請求正在處理中，請稍後再試");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessValidationException("相同的結帳請求正在處理中，請稍後再試");
+        }
+    }
+
+    // 別的節點在處理：等到有結果，佔位消失 (那邊失敗) 或逾時就請使用者再試
+    private IdempotencyRecord awaitRemote(String key) {
+        long deadline = System.nanoTime() + properties.getWaitTimeout().toNanos();
+        while (true) {
+            String value = redisTemplate.opsForValue().get(key);
+            if (value == null) {
+                throw new BusinessValidationException("上一次的結帳請求失敗，請重新送出");
+            }
+            IdempotencyRecord record = read(value);
+            if (!record.isPending()) {
+                return record;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new BusinessValidationException("相同的結帳請求正在處理中，請稍後再試");
+            }
+            try {
+                Thread.sleep(properties.getPollInterval().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessValidationException("相同的結帳請求正在處理中，請稍後再試");
+            }
+        }
+    }
+
+    // 請求內容的 SHA-256，同一個 key 內容不同就是用錯 key
+    private String fingerprint(CheckoutRequestDto request) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String write(IdempotencyRecord record) {
+        try {
+            return objectMapper.writeValueAsString(record);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private IdempotencyRecord read(String value) {
+        try {
+            return objectMapper.readValue(value, IdempotencyRecord.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("checkout.idempotency", "result", result).increment();
+    }
+}
@@ -0,0 +1,45 @@
+package com.tw.shopping.main.service.idempotency;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.tw.shopping.main.exception.BusinessValidationException;
+import com.tw.shopping.main.exception.ResourceNotFoundException;
+import com.tw.shopping.main.exception.StockNotEnoughException;
+
+/**
+ * 一個 Idempotency-Key 在 Redis 裡的狀態
+ * orderId 跟 error 都沒有 = 處理中；有 orderId = 訂單已成立；有 error = 業務錯誤 (回放時丟同一種例外)
+ */
+public record IdempotencyRecord(String fingerprint, Integer orderId, String error, String message) {
+
+    private static final String STOCK = "STOCK";
+    private static final String NOT_FOUND = "NOT_FOUND";
+    private static final String VALIDATION = "VALIDATION";
+
+    static IdempotencyRecord pending(String fingerprint) {
+        return new IdempotencyRecord(fingerprint, null, null, null);
+    }
+
+    static IdempotencyRecord created(String fingerprint, Integer orderId) {
+        return new IdempotencyRecord(fingerprint, orderId, null, null);
+    }
+
+    static IdempotencyRecord rejected(String fingerprint, RuntimeException e) {
+        String error = e instanceof StockNotEnoughException ? STOCK
+                : e instanceof ResourceNotFoundException ? NOT_FOUND
+                : VALIDATION;
+        return new IdempotencyRecord(fingerprint, null, error, e.getMessage());
+    }
+
+    @JsonIgnore
+    public boolean isPending() {
+        return orderId == null && error == null;
+    }
+
+    RuntimeException toException() {
+        return switch (error) {
+            case STOCK -> new StockNotEnoughException(message);
+            case NOT_FOUND -> new ResourceNotFoundException(message);
+            default -> new BusinessValidationException(message);
+        };
+    }
+}
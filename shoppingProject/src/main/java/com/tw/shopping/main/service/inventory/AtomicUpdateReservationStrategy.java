@@ -0,0 +1,40 @@
+package com.tw.shopping.main.service.inventory;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+
+/**
+ * 預設：一句 UPDATE ... WHERE stock >= ? (整批一次 JDBC batch)
+ * 不用先讀，檢查跟扣減在同一句，鎖只在 UPDATE 到 commit 之間
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.strategy", havingValue = "atomic", matchIfMissing = true)
+public class AtomicUpdateReservationStrategy implements InventoryReservationStrategy {
+
+    private final ProductRepository productRepository;
+
+    public AtomicUpdateReservationStrategy(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+//  --------------------------------
+
+    @Override
+    public String name() {
+        return "atomic";
+    }
+
+    @Override
+    public boolean[] reserve(List<StockChange> changes) {
+        return productRepository.decreaseStockBatch(changes);
+    }
+
+    @Override
+    public void release(List<StockChange> changes) {
+        productRepository.increaseStock(changes);
+    }
+}
@@ -0,0 +1,35 @@
+package com.tw.shopping.main.service.inventory;
+
+import java.util.List;
+
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+
+/**
+ * 扣 / 還 DB 庫存的方式，用 inventory.strategy 選一個實作
+ * 結帳 (OrderService)、搶購寫入 (FlashSaleOrderWorker)、取消訂單 (OrderCommandService) 都透過這裡，
+ * 後台直接改庫存 (AdminProductService) 也要通知這裡
+ *
+ * 兩個方法都要在呼叫端的交易裡執行，交易回滾庫存就跟著回滾
+ * 呼叫端要先依 productid 排序，多筆交易同時扣才不會互相死鎖
+ */
+public interface InventoryReservationStrategy {
+
+    // inventory.strategy 的值，也用在 metrics 的 tag
+    String name();
+
+    /**
+     * 扣庫存，回傳每一筆是否扣成功 (false = 庫存不足或商品不存在)
+     * 同一個商品可以出現多次，依序扣
+     */
+    boolean[] reserve(List<StockChange> changes);
+
+    // 把庫存加回去 (取消 / 退貨)
+    void release(List<StockChange> changes);
+
+    /**
+     * 後台把庫存直接改成 stock (絕對值)，product.stock 由呼叫端自己更新
+     * 庫存另外存在別的地方的實作 (striped 的 bucket) 要跟著改，否則會被蓋回去
+     */
+    default void overwrite(Integer productId, int stock) {
+    }
+}
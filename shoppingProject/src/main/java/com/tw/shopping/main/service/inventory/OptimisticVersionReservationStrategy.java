@@ -0,0 +1,105 @@
+package com.tw.shopping.main.service.inventory;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.tw.shopping.main.config.InventoryProperties;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 樂觀鎖：讀 stock + stock_version，UPDATE 時比對版本 (db/02_inventory_strategies.sql)
+ * 讀取不上鎖，版本被別人改過就重讀重試，超過 inventory.optimistic-max-retries 次就放棄
+ * 只有這個策略會推進 stock_version，所以 UPDATE 一律是 stock = stock - ? 並檢查 stock >= ?，
+ * 版本沒變但庫存被別的路徑改過時也不會寫錯
+ *
+ * 重讀要看得到別人剛 commit 的版本，呼叫端的交易要用 READ COMMITTED
+ * (REPEATABLE READ 下同一個交易重讀還是舊快照，重試必定失敗)
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.strategy", havingValue = "optimistic")
+public class OptimisticVersionReservationStrategy implements InventoryReservationStrategy {
+
+    private static final String READ_SQL =
+            "SELECT stock, stock_version FROM product WHERE productid = ?";
+    // 用相對扣減 + stock >= ? 保護，不寫回讀到的絕對值：
+    // 後台改庫存、其他扣庫存 / 補庫存的 SQL 不會推進 stock_version，寫絕對值會把它們的修改蓋掉
+    private static final String COMPARE_AND_SET_SQL =
+            "UPDATE product SET stock = stock - ?, stock_version = stock_version + 1 "
+            + "WHERE productid = ? AND stock_version = ? AND stock >= ?";
+    private static final String INCREASE_STOCK_SQL =
+            "UPDATE product SET stock = stock + ?, stock_version = stock_version + 1 WHERE productid = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxRetries;
+    private final Counter retries;
+
+    public OptimisticVersionReservationStrategy(
+            JdbcTemplate jdbcTemplate,
+            InventoryProperties properties,
+            MeterRegistry meterRegistry) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxRetries = properties.getOptimisticMaxRetries();
+        this.retries = Counter.builder("inventory.reservation.retries")
+                .tag("strategy", name())
+                .description("版本衝突後重讀重試的次數")
+                .register(meterRegistry);
+    }
+//  --------------------------------
+
+    @Override
+    public String name() {
+        return "optimistic";
+    }
+
+    @Override
+    public boolean[] reserve(List<StockChange> changes) {
+        boolean[] succeeded = new boolean[changes.size()];
+        for (int i = 0; i < succeeded.length; i++) {
+            succeeded[i] = reserveOne(changes.get(i));
+        }
+        return succeeded;
+    }
+
+    @Override
+    public void release(List<StockChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // 加回去不用檢查，直接加並推進版本，讓正在讀舊版本的人重試
+        jdbcTemplate.batchUpdate(INCREASE_STOCK_SQL, changes, changes.size(), (ps, change) -> {
+            ps.setInt(1, change.quantity());
+            ps.setInt(2, change.productId());
+        });
+    }
+
+    private boolean reserveOne(StockChange change) {
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            List<int[]> rows = jdbcTemplate.query(READ_SQL,
+                    (rs, rowNum) -> new int[] { rs.getInt("stock"), rs.getInt("stock_version") },
+                    change.productId());
+            if (rows.isEmpty()) {
+                return false;
+            }
+            int stock = rows.get(0)[0];
+            int version = rows.get(0)[1];
+            if (stock < change.quantity()) {
+                return false;
+            }
+            int updated = jdbcTemplate.update(COMPARE_AND_SET_SQL,
+                    change.quantity(), change.productId(), version, change.quantity());
+            if (updated > 0) {
+                return true;
+            }
+            retries.increment();
+        }
+        throw new OptimisticLockingFailureException("商品購買人數眾多，請稍後再試");
+    }
+}
@@ -0,0 +1,96 @@
+package com.tw.shopping.main.service.inventory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+
+/**
+ * 先 SELECT ... FOR UPDATE 把這次用到的商品列全部鎖住 (依 productid 排序)，在記憶體算完再一次寫回
+ * 鎖從讀取開始一直握到 commit，競爭大時排隊最久，但不會有重試
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.strategy", havingValue = "pessimistic")
+public class PessimisticLockReservationStrategy implements InventoryReservationStrategy {
+
+    private static final String SET_STOCK_SQL =
+            "UPDATE product SET stock = ? WHERE productid = ?";
+
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public PessimisticLockReservationStrategy(
+            ProductRepository productRepository,
+            JdbcTemplate jdbcTemplate) {
+
+        this.productRepository = productRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+//  --------------------------------
+
+    @Override
+    public String name() {
+        return "pessimistic";
+    }
+
+    @Override
+    public boolean[] reserve(List<StockChange> changes) {
+        boolean[] succeeded = new boolean[changes.size()];
+        if (changes.isEmpty()) {
+            return succeeded;
+        }
+        Map<Integer, Integer> stocks = lockStocks(changes);
+
+        Map<Integer, Integer> updated = new HashMap<>();
+        for (int i = 0; i < succeeded.length; i++) {
+            StockChange change = changes.get(i);
+            Integer stock = stocks.get(change.productId());
+            if (stock != null && stock >= change.quantity()) {
+                stocks.put(change.productId(), stock - change.quantity());
+                updated.put(change.productId(), stock - change.quantity());
+                succeeded[i] = true;
+            }
+        }
+        writeStocks(updated);
+        return succeeded;
+    }
+
+    // 加回去不用檢查，直接在 DB 上加 (不用先鎖)
+    @Override
+    public void release(List<StockChange> changes) {
+        productRepository.increaseStock(changes);
+    }
+
+    // productid -> 目前庫存 (已上鎖)；商品不存在就不會在裡面
+    private Map<Integer, Integer> lockStocks(List<StockChange> changes) {
+        List<Integer> ids = new ArrayList<>(new TreeSet<>(changes.stream().map(StockChange::productId).toList()));
+        String sql = "SELECT productid, stock FROM product WHERE productid IN ("
+                + String.join(",", Collections.nCopies(ids.size(), "?"))
+                + ") ORDER BY productid FOR UPDATE";
+        Map<Integer, Integer> stocks = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            stocks.put(rs.getInt("productid"), rs.getInt("stock"));
+        }, ids.toArray());
+        return stocks;
+    }
+
+    private void writeStocks(Map<Integer, Integer> stocks) {
+        if (stocks.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Integer, Integer>> rows = new ArrayList<>(stocks.entrySet());
+        jdbcTemplate.batchUpdate(SET_STOCK_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.getValue());
+            ps.setInt(2, row.getKey());
+        });
+    }
+}
@@ -0,0 +1,231 @@
+package com.tw.shopping.main.service.inventory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.config.InventoryProperties;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 熱門商品的庫存拆成多個 bucket 列 (product_stock_bucket，db/02_inventory_strategies.sql)
+ * 每次從隨機一個 bucket 開始扣，同一個商品的並發結帳分散到不同列上，不再全部排隊等同一把鎖
+ * 單一 bucket 都不夠時才把該商品所有 bucket 依序鎖住一起扣
+ *
+ * 拆過的商品以 bucket 加總為準，product.stock 由排程定期回寫 (商品頁 / 加入購物車看的是這個值)
+ * 沒拆的商品照 atomic 方式扣 product 本身
+ * 後台改庫存時 (overwrite) 把新的數量重新平均拆進 bucket，回寫的加總就等於後台設定的值
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.strategy", havingValue = "striped")
+public class StripedBucketReservationStrategy implements InventoryReservationStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(StripedBucketReservationStrategy.class);
+
+    private static final String DECREASE_BUCKET_SQL =
+            "UPDATE product_stock_bucket SET stock = stock - ? WHERE productid = ? AND bucket = ? AND stock >= ?";
+    private static final String INCREASE_BUCKET_SQL =
+            "UPDATE product_stock_bucket SET stock = stock + ? WHERE productid = ? AND bucket = ?";
+    private static final String ROLLUP_SQL =
+            "UPDATE product p JOIN (SELECT productid, SUM(stock) AS total FROM product_stock_bucket GROUP BY productid) b "
+                    + "ON b.productid = p.productid SET p.stock = b.total WHERE p.stock <> b.total";
+
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final InventoryProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    // productid -> bucket 數 (有在裡面的才是拆過的商品)，排程回寫時重新讀取
+    private volatile Map<Integer, Integer> bucketCounts = Map.of();
+
+    public StripedBucketReservationStrategy(
+            ProductRepository productRepository,
+            JdbcTemplate jdbcTemplate,
+            InventoryProperties properties,
+            PlatformTransactionManager transactionManager) {
+
+        this.productRepository = productRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+//  --------------------------------
+
+    @PostConstruct
+    public void init() {
+        for (Integer productId : properties.getHotProducts()) {
+            transactionTemplate.executeWithoutResult(status -> stripe(productId, properties.getStripedBuckets()));
+        }
+        refreshBucketCounts();
+    }
+
+    @Override
+    public String name() {
+        return "striped";
+    }
+
+    @Override
+    public boolean[] reserve(List<StockChange> changes) {
+        boolean[] succeeded = new boolean[changes.size()];
+        Map<Integer, Integer> counts = bucketCounts;
+
+        // 依傳入順序 (productid) 處理：連續的一般商品併成一個 batch，遇到拆過的商品先送出
+        List<Integer> plainRun = new ArrayList<>();
+        for (int i = 0; i < changes.size(); i++) {
+            StockChange change = changes.get(i);
+            Integer buckets = counts.get(change.productId());
+            if (buckets == null) {
+                plainRun.add(i);
+                continue;
+            }
+            reservePlain(changes, plainRun, succeeded);
+            succeeded[i] = reserveFromBucket(change, buckets) || reserveAcrossBuckets(change);
+        }
+        reservePlain(changes, plainRun, succeeded);
+        return succeeded;
+    }
+
+    @Override
+    public void release(List<StockChange> changes) {
+        Map<Integer, Integer> counts = bucketCounts;
+        List<StockChange> plain = new ArrayList<>();
+        for (StockChange change : changes) {
+            Integer buckets = counts.get(change.productId());
+            if (buckets == null) {
+                plain.add(change);
+            } else {
+                jdbcTemplate.update(INCREASE_BUCKET_SQL, change.quantity(), change.productId(),
+                        ThreadLocalRandom.current().nextInt(buckets));
+            }
+        }
+        productRepository.increaseStock(plain);
+    }
+
+    // 後台改庫存：鎖住這個商品所有 bucket 再重新平均拆 (沒拆過的商品 product.stock 就是準的，不用動)
+    @Override
+    public void overwrite(Integer productId, int stock) {
+        List<Integer> buckets = jdbcTemplate.queryForList(
+                "SELECT bucket FROM product_stock_bucket WHERE productid = ? ORDER BY bucket FOR UPDATE",
+                Integer.class, productId);
+        if (buckets.isEmpty()) {
+            return;
+        }
+        List<Object[]> updates = new ArrayList<>();
+        for (int k = 0; k < buckets.size(); k++) {
+            updates.add(new Object[] { share(stock, buckets.size(), k), productId, buckets.get(k) });
+        }
+        jdbcTemplate.batchUpdate("UPDATE product_stock_bucket SET stock = ? WHERE productid = ? AND bucket = ?", updates);
+        logger.info("商品 {} 後台改庫存為 {}，重新拆進 {} 個 bucket", productId, stock, buckets.size());
+    }
+
+    // bucket 加總回寫 product.stock，順便更新哪些商品有拆
+    @Scheduled(fixedDelayString = "${inventory.rollup-interval-ms:1000}")
+    public void rollup() {
+        try {
+            jdbcTemplate.update(ROLLUP_SQL);
+            refreshBucketCounts();
+        } catch (RuntimeException e) {
+            logger.warn("bucket 庫存回寫 product.stock 失敗: {}", e.getMessage());
+        }
+    }
+
+    // 把商品目前的庫存平均拆進 bucket (已經拆過就不動)
+    void stripe(Integer productId, int buckets) {
+        List<Integer> stock = jdbcTemplate.queryForList(
+                "SELECT stock FROM product WHERE productid = ? FOR UPDATE", Integer.class, productId);
+        if (stock.isEmpty()) {
+            logger.warn("熱門商品 {} 不存在，略過拆 bucket", productId);
+            return;
+        }
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM product_stock_bucket WHERE productid = ?", Integer.class, productId);
+        if (existing != null && existing > 0) {
+            return;
+        }
+        int total = stock.get(0) != null ? stock.get(0) : 0;
+        List<Object[]> rows = new ArrayList<>();
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            rows.add(new Object[] { productId, bucket, share(total, buckets, bucket) });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO product_stock_bucket (productid, bucket, stock) VALUES (?, ?, ?)", rows);
+        logger.info("商品 {} 庫存 {} 拆成 {} 個 bucket", productId, total, buckets);
+    }
+
+    // 平均拆成 buckets 份時第 index 份的數量，除不盡的零頭放在前面幾份
+    private static int share(int total, int buckets, int index) {
+        return total / buckets + (index < total % buckets ? 1 : 0);
+    }
+
+    private void reservePlain(List<StockChange> changes, List<Integer> run, boolean[] succeeded) {
+        if (run.isEmpty()) {
+            return;
+        }
+        boolean[] result = productRepository.decreaseStockBatch(run.stream().map(changes::get).toList());
+        for (int k = 0; k < result.length; k++) {
+            succeeded[run.get(k)] = result[k];
+        }
+        run.clear();
+    }
+
+    // 從隨機一個 bucket 開始，找一個夠扣的
+    private boolean reserveFromBucket(StockChange change, int buckets) {
+        int start = ThreadLocalRandom.current().nextInt(buckets);
+        for (int k = 0; k < buckets; k++) {
+            int bucket = (start + k) % buckets;
+            int updated = jdbcTemplate.update(DECREASE_BUCKET_SQL,
+                    change.quantity(), change.productId(), bucket, change.quantity());
+            if (updated > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 每個 bucket 都不夠：依 bucket 順序全部鎖住，總數夠就從前面的 bucket 扣起
+    private boolean reserveAcrossBuckets(StockChange change) {
+        List<int[]> rows = jdbcTemplate.query(
+                "SELECT bucket, stock FROM product_stock_bucket WHERE productid = ? ORDER BY bucket FOR UPDATE",
+                (rs, rowNum) -> new int[] { rs.getInt("bucket"), rs.getInt("stock") },
+                change.productId());
+        int total = rows.stream().mapToInt(row -> row[1]).sum();
+        if (total < change.quantity()) {
+            return false;
+        }
+        int left = change.quantity();
+        List<Object[]> updates = new ArrayList<>();
+        for (int[] row : rows) {
+            if (left == 0) {
+                break;
+            }
+            int take = Math.min(left, row[1]);
+            if (take > 0) {
+                updates.add(new Object[] { row[1] - take, change.productId(), row[0] });
+                left -= take;
+            }
+        }
+        jdbcTemplate.batchUpdate("UPDATE product_stock_bucket SET stock = ? WHERE productid = ? AND bucket = ?", updates);
+        return true;
+    }
+
+    private void refreshBucketCounts() {
+        Map<Integer, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT productid, COUNT(*) AS buckets FROM product_stock_bucket GROUP BY productid", rs -> {
+            counts.put(rs.getInt("productid"), rs.getInt("buckets"));
+        });
+        bucketCounts = counts;
+    }
+}
@@ -0,0 +1,167 @@
+package com.tw.shopping.main.service.payment;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 綠界付款通知收件匣 (ecpay_callback_inbox，見 db/04_ecpay_callback_inbox.sql)
+ * 同一筆交易 (MerchantTradeNo + TradeNo) 有唯一索引，綠界重送用 INSERT IGNORE 直接忽略
+ *
+ * metrics：ecpay.callback.received{result=accepted|duplicate}
+ */
+@Component
+public class EcpayCallbackInbox {
+
+    static final String STATUS_PENDING = "PENDING";
+    static final String STATUS_DONE = "DONE";
+    static final String STATUS_FAILED = "FAILED";
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private static final String INSERT_SQL = """
+            INSERT IGNORE INTO ecpay_callback_inbox
+                (merchant_trade_no, trade_no, rtn_code, payload, status, received_at, next_attempt_at)
+            VALUES (?, ?, ?, ?, 'PENDING', ?, ?)
+            """;
+
+    // 多條 worker 同時撈，SKIP LOCKED 讓每條拿到不同的通知
+    private static final String CLAIM_SQL = """
+            SELECT id, merchant_trade_no, rtn_code, payload, attempts, received_at
+            FROM ecpay_callback_inbox
+            WHERE status = 'PENDING' AND next_attempt_at <= ?
+            ORDER BY next_attempt_at
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Counter accepted;
+    private final Counter duplicate;
+
+    public EcpayCallbackInbox(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.accepted = meterRegistry.counter("ecpay.callback.received", "result", "accepted");
+        this.duplicate = meterRegistry.counter("ecpay.callback.received", "result", "duplicate");
+    }
+//  --------------------------------
+
+    /**
+     * 收下一筆已驗過 CheckMacValue 的通知
+     * @return true = 新的通知；false = 重送 (已經收過)
+     */
+    public boolean append(Map<String, String> params) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(params);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("綠界通知無法序列化", e);
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int inserted = jdbcTemplate.update(INSERT_SQL,
+                params.get("MerchantTradeNo"),
+                params.getOrDefault("TradeNo", ""),
+                params.get("RtnCode"),
+                payload, now, now);
+
+        (inserted > 0 ? accepted : duplicate).increment();
+        return inserted > 0;
+    }
+
+    // 要在交易裡呼叫：鎖住一筆到期的待處理通知，交易結束前別的 worker 拿不到
+    Optional<InboxEntry> claimNext() {
+        List<InboxEntry> entries = jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new InboxEntry(
+                rs.getLong("id"),
+                rs.getString("merchant_trade_no"),
+                rs.getString("rtn_code"),
+                readPayload(rs.getString("payload")),
+                rs.getInt("attempts"),
+                rs.getTimestamp("received_at").toLocalDateTime()),
+                Timestamp.valueOf(LocalDateTime.now()));
+        return entries.stream().findFirst();
+    }
+
+    void markDone(long id) {
+        jdbcTemplate.update(
+                "UPDATE ecpay_callback_inbox SET status = 'DONE', attempts = attempts + 1, processed_at = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now()), id);
+    }
+
+    /**
+     * 要在新的交易裡呼叫 (處理失敗的那個交易已經回滾，鎖也放掉了)：
+     * 重新鎖住那一列，確認還是 PENDING、沒有別的 worker 正在處理 (SKIP LOCKED)、attempts 也還是當初撈到的值
+     * (別的 worker 沒有在這中間處理過)，才排下一次重試；retryAt 為 null 代表放棄
+     * @return false = 已經被別的 worker 接手，這次的失敗不記
+     */
+    boolean markFailed(long id, int claimedAttempts, String error, LocalDateTime retryAt) {
+        List<Integer> attempts = jdbcTemplate.queryForList(
+                "SELECT attempts FROM ecpay_callback_inbox WHERE id = ? AND status = 'PENDING' FOR UPDATE SKIP LOCKED",
+                Integer.class, id);
+        if (attempts.isEmpty() || attempts.get(0) != claimedAttempts) {
+            return false;
+        }
+        String message = error == null ? null
+                : error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        jdbcTemplate.update("""
+                UPDATE ecpay_callback_inbox
+                SET status = ?, attempts = attempts + 1, last_error = ?, next_attempt_at = COALESCE(?, next_attempt_at)
+                WHERE id = ?
+                """,
+                retryAt != null ? STATUS_PENDING : STATUS_FAILED,
+                message,
+                retryAt != null ? Timestamp.valueOf(retryAt) : null,
+                id);
+        return true;
+    }
+
+    // 還沒處理的筆數跟最早一筆的收件時間 (lag 指標用)
+    PendingSummary pendingSummary() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) AS cnt, MIN(received_at) AS oldest FROM ecpay_callback_inbox WHERE status = 'PENDING'",
+                (rs, rowNum) -> {
+                    Timestamp oldest = rs.getTimestamp("oldest");
+                    return new PendingSummary(rs.getLong("cnt"), oldest != null ? oldest.toLocalDateTime() : null);
+                });
+    }
+
+    // 刪掉處理完很久的 (FAILED 留著給人工處理)
+    int purgeDone(LocalDateTime before) {
+        return jdbcTemplate.update(
+                "DELETE FROM ecpay_callback_inbox WHERE status = 'DONE' AND processed_at < ?",
+                Timestamp.valueOf(before));
+    }
+
+    private Map<String, String> readPayload(String payload) {
+        try {
+            return objectMapper.readValue(payload, new TypeReference<Map<String, String>>() {});
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("綠界通知內容無法解析", e);
+        }
+    }
+
+    record InboxEntry(long id, String merchantTradeNo, String rtnCode, Map<String, String> params,
+            int attempts, LocalDateTime receivedAt) {
+    }
+
+    record PendingSummary(long count, LocalDateTime oldestReceivedAt) {
+    }
+}
@@ -0,0 +1,232 @@
+package com.tw.shopping.main.service.payment;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.config.EcpayCallbackProperties;
+import com.tw.shopping.main.service.EcpayService;
+import com.tw.shopping.main.service.payment.EcpayCallbackInbox.InboxEntry;
+import com.tw.shopping.main.service.payment.EcpayCallbackInbox.PendingSummary;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 背景處理收件匣裡的綠界付款通知 (worker pool，執行緒數見 ecpay-callback.worker-threads)
+ * 每筆一個交易：鎖住收件匣那一列 (SKIP LOCKED) → handlePaymentSuccess / handlePaymentFailure → 標記 DONE，
+ * 訂單更新跟標記完成一起 commit，當機重來也不會套用兩次
+ *
+ * 失敗就把 next_attempt_at 往後排 (每次加倍)，超過 max-attempts 標記 FAILED 等人工處理
+ * 收到新通知時 (wakeUp) 立刻開始處理，平常每 poll-interval-ms 也檢查一次 (別的節點收下的、要重試的)
+ *
+ * metrics：
+ * - ecpay.callback.inbox.lag：收到通知到訂單更新完成的時間
+ * - ecpay.callback.inbox.pending / ecpay.callback.inbox.oldest_seconds：還沒處理的筆數、最早一筆等了幾秒
+ * - ecpay.callback.processed{result=done|retry|failed}
+ */
+@Component
+public class EcpayCallbackProcessor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(EcpayCallbackProcessor.class);
+
+    private final EcpayCallbackInbox inbox;
+    private final EcpayService ecpayService;
+    private final EcpayCallbackProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService workers;
+
+    // 正在跑的 worker 數
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final Timer lag;
+    private final Counter done;
+    private final Counter retried;
+    private final Counter failed;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong oldestSeconds = new AtomicLong();
+
+    public EcpayCallbackProcessor(
+            EcpayCallbackInbox inbox,
+            EcpayService ecpayService,
+            EcpayCallbackProperties properties,
+            MeterRegistry meterRegistry,
+            PlatformTransactionManager transactionManager) {
+
+        this.inbox = inbox;
+        this.ecpayService = ecpayService;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // 跟逾時取消一樣用 READ COMMITTED (晚到的付款可能要重新扣庫存)
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+
+        AtomicInteger threadNo = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(properties.getWorkerThreads(), r -> {
+            Thread thread = new Thread(r, "ecpay-callback-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.lag = meterRegistry.timer("ecpay.callback.inbox.lag");
+        this.done = meterRegistry.counter("ecpay.callback.processed", "result", "done");
+        this.retried = meterRegistry.counter("ecpay.callback.processed", "result", "retry");
+        this.failed = meterRegistry.counter("ecpay.callback.processed", "result", "failed");
+        meterRegistry.gauge("ecpay.callback.inbox.pending", pending);
+        meterRegistry.gauge("ecpay.callback.inbox.oldest_seconds", oldestSeconds);
+    }
+//  --------------------------------
+
+    // 有新通知：還有空的 worker 就叫起來處理
+    public void wakeUp() {
+        int current;
+        while ((current = running.get()) < properties.getWorkerThreads()) {
+            if (running.compareAndSet(current, current + 1)) {
+                try {
+                    workers.execute(this::drain);
+                } catch (RuntimeException e) {
+                    // 關機中
+                    running.decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ecpay-callback.poll-interval-ms:1000}")
+    public void poll() {
+        try {
+            PendingSummary summary = inbox.pendingSummary();
+            pending.set(summary.count());
+            oldestSeconds.set(summary.oldestReceivedAt() == null ? 0
+                    : Math.max(0, Duration.between(summary.oldestReceivedAt(), LocalDateTime.now()).toSeconds()));
+            if (summary.count() == 0) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("綠界通知收件匣讀取失敗: {}", e.getMessage());
+            return;
+        }
+        // 待處理的通知可能很多，把 worker 全部叫起來
+        for (int i = 0; i < properties.getWorkerThreads(); i++) {
+            wakeUp();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ecpay-callback.purge-interval-ms:3600000}")
+    public void purge() {
+        try {
+            int purged = inbox.purgeDone(LocalDateTime.now().minus(properties.getRetention()));
+            if (purged > 0) {
+                logger.info("已清除 {} 筆處理完的綠界通知", purged);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("綠界通知收件匣清除失敗: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdown();
+    }
+
+    private void drain() {
+        try {
+            while (processOne()) {
+                // 一直處理到沒有到期的通知
+            }
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    // 處理一筆，回傳是否要繼續撈下一筆
+    private boolean processOne() {
+        AtomicReference<InboxEntry> claimed = new AtomicReference<>();
+        try {
+            InboxEntry entry = transactionTemplate.execute(status -> {
+                Optional<InboxEntry> next = inbox.claimNext();
+                if (next.isEmpty()) {
+                    return null;
+                }
+                claimed.set(next.get());
+                apply(next.get());
+                inbox.markDone(next.get().id());
+                return next.get();
+            });
+            if (entry == null) {
+                return false;
+            }
+            done.increment();
+            lag.record(Duration.between(entry.receivedAt(), LocalDateTime.now()));
+            return true;
+        } catch (RuntimeException e) {
+            InboxEntry entry = claimed.get();
+            if (entry == null) {
+                // 連收件匣都讀不到 (DB 問題)，等下一次 poll
+                logger.warn("綠界通知收件匣讀取失敗: {}", e.getMessage());
+                return false;
+            }
+            return recordFailure(entry, e);
+        }
+    }
+
+    private void apply(InboxEntry entry) {
+        if ("1".equals(entry.rtnCode())) {
+            ecpayService.handlePaymentSuccess(entry.merchantTradeNo(), entry.params());
+        } else {
+            ecpayService.handlePaymentFailure(entry.merchantTradeNo(), entry.params());
+        }
+    }
+
+    private boolean recordFailure(InboxEntry entry, RuntimeException error) {
+        int attempts = entry.attempts() + 1;
+        LocalDateTime retryAt = null;
+        if (attempts < properties.getMaxAttempts()) {
+            Duration backoff = properties.getRetryBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+            if (backoff.compareTo(properties.getMaxRetryBackoff()) > 0) {
+                backoff = properties.getMaxRetryBackoff();
+            }
+            retryAt = LocalDateTime.now().plus(backoff);
+        }
+
+        // 處理的交易回滾時 SKIP LOCKED 的鎖已經放掉，別的 worker 可能已經撈走這筆：另開交易重新鎖住確認過才記
+        final LocalDateTime nextAttempt = retryAt;
+        try {
+            Boolean recorded = transactionTemplate.execute(
+                    status -> inbox.markFailed(entry.id(), entry.attempts(), error.getMessage(), nextAttempt));
+            if (!Boolean.TRUE.equals(recorded)) {
+                logger.info("綠界通知 {} 已由其他 worker 接手，這次的失敗不記: {}", entry.id(), error.getMessage());
+                return true;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("綠界通知 {} 失敗狀態寫入失敗: {}", entry.id(), e.getMessage());
+            return false;
+        }
+
+        if (retryAt != null) {
+            retried.increment();
+            logger.warn("綠界通知處理失敗 (第 {} 次)，{} 重試: MerchantTradeNo={}, {}",
+                    attempts, retryAt, entry.merchantTradeNo(), error.getMessage());
+        } else {
+            failed.increment();
+            logger.error("綠界通知處理失敗 {} 次，放棄 (需人工處理): MerchantTradeNo={}, {}",
+                    attempts, entry.merchantTradeNo(), error.getMessage());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,101 @@
+package com.tw.shopping.main.service.payment;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.tw.shopping.main.config.PaymentTransactionProperties;
+
+/**
+ * 綠界 MerchantTradeNo 產生器 (不用查 DB、不用跟別台機器協調)
+ * 63 bits = 時間 (毫秒，41 bits，從 2024-01-01 起約 69 年) + 節點編號 (10 bits) + 序號 (12 bits)，
+ * 轉成固定 13 碼的 36 進位大寫，前面加 "TW"，共 15 碼 (綠界上限 20 碼英數字)
+ *
+ * 時間 + 序號放在同一個 AtomicLong 裡用 CAS 往前推 (不上鎖)：
+ * - 同一毫秒內序號 +1，用完 4096 個就直接借下一毫秒 (不等時鐘)；
+ *   持續每秒超過約 400 萬個才會比真實時間跑得快，重啟所需的時間遠大於這點差距，重啟後也不會撞到之前的號碼
+ * - 時鐘往回跳也只會繼續往前推，不會產生重複的號碼
+ * 不同節點編號的號碼不可能相同，所以多台機器各自產生不會撞號 (節點編號一定要設定，沒設不會啟動)
+ */
+@Component
+public class MerchantTradeNoGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MerchantTradeNoGenerator.class);
+
+    public static final String PREFIX = "TW";
+
+    // 2024-01-01T00:00:00Z
+    private static final long EPOCH_MS = 1_704_067_200_000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    // 36^13 > 2^63，13 碼放得下任何非負 long
+    private static final int BODY_LENGTH = 13;
+    private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private final long nodeBits;
+    private final LongSupplier clock;
+
+    // (毫秒 << SEQUENCE_BITS) | 序號
+    private final AtomicLong state = new AtomicLong();
+
+    @Autowired
+    public MerchantTradeNoGenerator(PaymentTransactionProperties properties) {
+        this(resolveNodeId(properties.getNodeId()), System::currentTimeMillis);
+    }
+
+    public MerchantTradeNoGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("節點編號要在 0~" + MAX_NODE_ID + " 之間: " + nodeId);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.clock = clock;
+    }
+//  --------------------------------
+
+    public String next() {
+        return format(nextId());
+    }
+
+    // 數字形式 (同一個節點內嚴格遞增)
+    public long nextId() {
+        long prev;
+        long next;
+        do {
+            prev = state.get();
+            long now = (clock.getAsLong() - EPOCH_MS) << SEQUENCE_BITS;
+            next = now > prev ? now : prev + 1;
+        } while (!state.compareAndSet(prev, next));
+
+        long millis = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+    }
+
+    // 固定長度，同一個節點產生的號碼照字串排序也是照時間
+    static String format(long id) {
+        char[] chars = new char[PREFIX.length() + BODY_LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        for (int i = chars.length - 1; i >= PREFIX.length(); i--) {
+            chars[i] = DIGITS[(int) (id % 36)];
+            id /= 36;
+        }
+        return new String(chars);
+    }
+
+    // 沒設定就不啟動：用主機名稱等算出來的編號在多台機器之間可能相同，相同編號的兩台會產生一樣的號碼
+    private static int resolveNodeId(Integer configured) {
+        if (configured == null) {
+            throw new IllegalStateException("沒有設定 payment.transaction.node-id (0~" + MAX_NODE_ID
+                    + ")，每台機器要設不同的值 (也可以用環境變數 PAYMENT_TRANSACTION_NODE_ID)");
+        }
+        logger.info("MerchantTradeNo 節點編號: {}", configured);
+        return configured;
+    }
+}
@@ -0,0 +1,104 @@
+package com.tw.shopping.main.service.payment;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tw.shopping.main.config.PaymentTransactionProperties;
+import com.tw.shopping.main.entity.PaymentTransactionEntity;
+import com.tw.shopping.main.repository.PaymentTransactionRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * 付款交易紀錄 (payment_transaction)
+ * 每次到綠界結帳記一筆 (MerchantTradeNo → 訂單)，付款通知用 MerchantTradeNo 找訂單：
+ * 先查本機快取 (最近產生的交易)，沒有再用唯一索引查一次，不再掃 order 表
+ * MerchantTradeNo → 訂單 id 的對應產生之後不會變，快取不用失效，只靠大小 / 時間淘汰
+ *
+ * metrics：payment.transaction.lookup{result=cache|db|miss}、cache.* {cache=payment_transaction}
+ */
+@Service
+public class PaymentTransactionService {
+
+    public static final String STATUS_CREATED = "CREATED";
+    public static final String STATUS_PAID = "PAID";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_REFUND_PENDING = "REFUND_PENDING";
+
+    private final PaymentTransactionRepository repository;
+    private final Cache<String, Integer> recent;
+
+    private final Counter cacheHit;
+    private final Counter dbHit;
+    private final Counter miss;
+
+    public PaymentTransactionService(
+            PaymentTransactionRepository repository,
+            PaymentTransactionProperties properties,
+            MeterRegistry meterRegistry) {
+
+        this.repository = repository;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(properties.getRecentCacheSize())
+                .expireAfterWrite(properties.getRecentCacheTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recent, "payment_transaction");
+
+        this.cacheHit = meterRegistry.counter("payment.transaction.lookup", "result", "cache");
+        this.dbHit = meterRegistry.counter("payment.transaction.lookup", "result", "db");
+        this.miss = meterRegistry.counter("payment.transaction.lookup", "result", "miss");
+    }
+//  --------------------------------
+
+    // 要在產生綠界表單的交易裡呼叫 (交易 rollback 的話快取裡多一筆用不到的對應，不影響)
+    public PaymentTransactionEntity start(Integer orderId, Integer amount, String merchantTradeNo) {
+        LocalDateTime now = LocalDateTime.now();
+        PaymentTransactionEntity tx = new PaymentTransactionEntity();
+        tx.setMerchantTradeNo(merchantTradeNo);
+        tx.setOrderId(orderId);
+        tx.setAmount(amount);
+        tx.setStatus(STATUS_CREATED);
+        tx.setCreatedAt(now);
+        tx.setUpdatedAt(now);
+        repository.save(tx);
+
+        recent.put(merchantTradeNo, orderId);
+        return tx;
+    }
+
+    // MerchantTradeNo 是哪張訂單的；找不到 (這張表建立之前的交易) 回傳 empty
+    public Optional<Integer> findOrderId(String merchantTradeNo) {
+        Integer orderId = recent.getIfPresent(merchantTradeNo);
+        if (orderId != null) {
+            cacheHit.increment();
+            return Optional.of(orderId);
+        }
+        Optional<Integer> found = repository.findByMerchantTradeNo(merchantTradeNo)
+                .map(PaymentTransactionEntity::getOrderId);
+        if (found.isPresent()) {
+            dbHit.increment();
+            recent.put(merchantTradeNo, found.get());
+        } else {
+            miss.increment();
+        }
+        return found;
+    }
+
+    // 記下綠界通知的結果，要在付款通知的交易裡 (訂單列已鎖) 呼叫
+    public void recordResult(String merchantTradeNo, String status, Map<String, String> ecpayResult) {
+        repository.updateResult(merchantTradeNo, status,
+                ecpayResult.get("TradeNo"),
+                ecpayResult.get("RtnCode"),
+                ecpayResult.get("RtnMsg"),
+                ecpayResult.get("PaymentType"),
+                LocalDateTime.now());
+    }
+}
@@ -0,0 +1,130 @@
+package com.tw.shopping.main.service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 商品搜尋用的斷詞器
+ * 中日韓文字 (繁中商品名) 切成相鄰兩字一組的 bigram，例如「不鏽鋼刀」-> 不鏽、鏽鋼、鋼刀、刀
+ * 英數字以單字為單位，建索引時另外展開成所有後綴，讓前綴查詢等同 LIKE %kw% 的子字串比對
+ */
+public final class CjkBigramTokenizer {
+
+    // 英數單字超過這個長度就不再展開後綴，避免型號之類的長字串灌爆索引
+    private static final int MAX_SUFFIX_WORD_LENGTH = 24;
+
+    private CjkBigramTokenizer() {
+    }
+
+    // 正規化：全形轉半形 (NFKC) + 小寫，建索引、查詢、比對都要走同一套
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 建索引用：回傳該欄位所有要寫進倒排索引的 term
+     * CJK 每段最後一個字會多收一個單字 term，讓單字查詢也能用前綴找到
+     */
+    public static Set<String> indexTerms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (Segment segment : segments(normalize(text))) {
+            String s = segment.text();
+            if (segment.cjk()) {
+                for (int i = 0; i < s.length(); ) {
+                    int first = s.codePointAt(i);
+                    int next = i + Character.charCount(first);
+                    if (next < s.length()) {
+                        int second = s.codePointAt(next);
+                        terms.add(s.substring(i, next + Character.charCount(second)));
+                    } else {
+                        terms.add(s.substring(i, next));
+                    }
+                    i = next;
+                }
+            } else {
+                if (s.length() > MAX_SUFFIX_WORD_LENGTH) {
+                    terms.add(s);
+                    continue;
+                }
+                for (int i = 0; i < s.length(); i = s.offsetByCodePoints(i, 1)) {
+                    terms.add(s.substring(i));
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 查詢用：回傳關鍵字的 term 清單
+     * exact = true 的 term 要完全相等 (CJK bigram)，false 的用前綴比對 (英數、單一中文字)
+     */
+    public static List<QueryTerm> queryTerms(String keyword) {
+        List<QueryTerm> terms = new ArrayList<>();
+        for (Segment segment : segments(normalize(keyword))) {
+            String s = segment.text();
+            if (segment.cjk() && s.codePointCount(0, s.length()) >= 2) {
+                for (int i = 0; ; ) {
+                    int next = s.offsetByCodePoints(i, 1);
+                    if (next >= s.length()) {
+                        break;
+                    }
+                    terms.add(new QueryTerm(s.substring(i, s.offsetByCodePoints(next, 1)), true));
+                    i = next;
+                }
+            } else {
+                terms.add(new QueryTerm(s, false));
+            }
+        }
+        return terms;
+    }
+
+    // 依字元類型切段：CJK 連續段、英數連續段，其餘字元 (空白、標點) 當分隔
+    private static List<Segment> segments(String text) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        Boolean currentCjk = null;
+
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+
+            Boolean type = isCjk(cp) ? Boolean.TRUE : Character.isLetterOrDigit(cp) ? Boolean.FALSE : null;
+            if (type == null || !type.equals(currentCjk)) {
+                if (current.length() > 0) {
+                    segments.add(new Segment(current.toString(), currentCjk));
+                    current.setLength(0);
+                }
+                currentCjk = type;
+            }
+            if (type != null) {
+                current.appendCodePoint(cp);
+            }
+        }
+        if (current.length() > 0) {
+            segments.add(new Segment(current.toString(), currentCjk));
+        }
+        return segments;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL
+                || script == Character.UnicodeScript.BOPOMOFO;
+    }
+
+    private record Segment(String text, boolean cjk) {
+    }
+
+    public record QueryTerm(String text, boolean exact) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.tw.shopping.main.service.search;
+
+import org.springframework.data.domain.Slice;
+
+import com.tw.shopping.main.entity.ProductEntity;
+
+/**
+ * 游標分頁的查詢結果
+ * nextCursor 為 null 代表已經到底；estimatedTotal 只有要求 withTotal 時才有值
+ */
+public record ProductScrollSlice(Slice<ProductEntity> slice, String nextCursor, Long estimatedTotal) {
+}
@@ -0,0 +1,13 @@
+package com.tw.shopping.main.service.search;
+
+/**
+ * 搜尋條件
+ * categoryId 是小分類、parentCategoryId 是大分類，兩個都 null 代表不篩分類
+ */
+public record ProductSearchCriteria(
+        String keyword,
+        Integer categoryId,
+        Integer parentCategoryId,
+        Integer minPrice,
+        Integer maxPrice) {
+}
@@ -0,0 +1,77 @@
+package com.tw.shopping.main.service.search;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.exception.BusinessValidationException;
+
+/**
+ * 游標分頁 (keyset / seek) 的續傳 token
+ * 內容是「上一頁最後一筆」的 (排序鍵, productid)，對前端來說是不透明字串
+ * 排序方式也一起編進去，避免換排序後拿舊游標續查
+ * 排序鍵是 NULL 的商品一律當成預設值 (價格、評分 0，建立時間 NULL_CREATED_AT)，索引跟 SQL 的 COALESCE 用同一組預設值
+ */
+public record ProductSearchCursor(ProductSearchSort sort, long sortKey, int productid) {
+
+    private static final String VERSION = "v1";
+
+    // 沒有建立時間的商品排在最舊
+    public static final LocalDateTime NULL_CREATED_AT = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    public String encode() {
+        String raw = VERSION + ":" + sort.name() + ":" + sortKey + ":" + productid;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductSearchCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 4 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException(raw);
+            }
+            return new ProductSearchCursor(
+                    ProductSearchSort.valueOf(parts[1]),
+                    Long.parseLong(parts[2]),
+                    Integer.parseInt(parts[3]));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessValidationException("無效的分頁游標!", e);
+        }
+    }
+
+    // 用這一頁的最後一筆商品產生下一頁的游標
+    public static ProductSearchCursor after(ProductEntity last, ProductSearchSort sort) {
+        return new ProductSearchCursor(sort, sortKeyOf(last, sort), last.getProductid());
+    }
+
+    // 各排序對應的排序鍵，LATEST 用建立時間的毫秒值
+    public static long sortKeyOf(ProductEntity product, ProductSearchSort sort) {
+        return switch (sort) {
+            case LATEST -> createdAtMillis(product.getCreatedAt());
+            case PRICE_ASC, PRICE_DESC -> product.getPrice() != null ? product.getPrice() : 0L;
+            case RATING_ASC, RATING_DESC -> product.getRating() != null ? product.getRating() : 0L;
+            case DEFAULT -> 0L;
+        };
+    }
+
+    public static long createdAtMillis(LocalDateTime createdAt) {
+        LocalDateTime value = createdAt != null ? createdAt : NULL_CREATED_AT;
+        return value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // LATEST 游標的排序鍵轉回建立時間
+    public LocalDateTime createdAt() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(sortKey), ZoneId.systemDefault());
+    }
+
+    // 降冪排序 (最新、價格高到低、評分高到低) 的 productid 也是降冪
+    public static boolean isDescending(ProductSearchSort sort) {
+        return sort == ProductSearchSort.LATEST
+                || sort == ProductSearchSort.PRICE_DESC
+                || sort == ProductSearchSort.RATING_DESC;
+    }
+}
@@ -0,0 +1,410 @@
+package com.tw.shopping.main.service.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.tw.shopping.main.entity.CategoryEntity;
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.repository.CategoryRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.service.search.CjkBigramTokenizer.QueryTerm;
+
+/**
+ * 商品關鍵字搜尋引擎 (記憶體倒排索引)
+ * 索引欄位：KEYWORD_FIELDS (pname、description、color、specification)
+ * 啟動時整批重建、之後定期重建，後台新增/修改/刪除商品時由 AdminProductService 在 commit 後做增量更新
+ * 分類、價格篩選跟排序也在記憶體完成，查詢只剩最後一頁的主鍵查詢會打 DB
+ */
+@Component
+public class ProductSearchEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchEngine.class);
+
+    // 關鍵字比對的欄位 (ProductEntity 的屬性名稱)，資料庫備援查詢也用同一份，兩條路徑的結果才會一樣
+    public static final List<String> KEYWORD_FIELDS = List.of("pname", "description", "color", "specification");
+
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 目前的索引，重建時整份換掉 (讀寫都在 lock 內)
+    private Index index = new Index();
+    // 重建途中的增量更新，換上新索引之前再套用一次；null 代表沒在重建 (write lock 保護)
+    private List<Consumer<Index>> replay;
+    private final Object rebuildLock = new Object();
+
+    private volatile boolean ready = false;
+
+    public ProductSearchEngine(ProductRepository productRepository, CategoryRepository categoryRepository) {
+        this.productRepository = productRepository;
+        this.categoryRepository = categoryRepository;
+    }
+
+    // 索引還沒建好 (或建失敗) 時，ProductService 會退回原本的 JPA 查詢
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 整批重建：啟動時一次，之後定期一次 (product-search.rebuild-interval-ms)，
+     * 其他節點的後台異動、直接改 DB 的資料在下一次重建時就會反映
+     * 新索引在 lock 外建好再整份換上；建的途中 index / remove 的商品，換上之前會在新索引上再套用一次
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${product-search.rebuild-interval-ms:300000}",
+            initialDelayString = "${product-search.rebuild-interval-ms:300000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            lock.writeLock().lock();
+            try {
+                replay = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                Index next = new Index();
+                categoryRepository.findAll().forEach(next::putCategory);
+                productRepository.findAll().forEach(next::add);
+
+                lock.writeLock().lock();
+                try {
+                    replay.forEach(update -> update.accept(next));
+                    index = next;
+                    ready = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                logger.info("商品搜尋索引建立完成：{} 筆商品、{} 個 term", next.documents.size(), next.postings.size());
+            } catch (RuntimeException e) {
+                // DB 沒起來也不要擋住啟動，搜尋會先走 JPA (已經建好的話繼續用舊的索引)
+                logger.error("商品搜尋索引建立失敗，暫時改用資料庫查詢", e);
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    replay = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    // 新增或修改商品後呼叫 (同一個 productid 會先移除舊的 term)
+    public void index(ProductEntity product) {
+        if (product == null || product.getProductid() == null) {
+            return;
+        }
+        // 啟動後才新增的分類不在記憶體裡，先從 DB 補進來，大分類篩選才找得到這筆商品
+        CategoryEntity missing = missingCategory(product);
+
+        update(target -> {
+            if (missing != null) {
+                target.putCategory(missing);
+            }
+            target.remove(product.getProductid());
+            target.add(product);
+        });
+    }
+
+    public void remove(Integer productId) {
+        update(target -> target.remove(productId));
+    }
+
+    // 套用到目前的索引；正在重建的話記下來，新索引換上之前再套用一次
+    private void update(Consumer<Index> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(index);
+            if (replay != null) {
+                replay.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private CategoryEntity missingCategory(ProductEntity product) {
+        Integer categoryid = product.getCategory() != null ? product.getCategory().getCategoryid() : null;
+        if (categoryid == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (index.categories.containsKey(categoryid)) {
+                return null;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return categoryRepository.findById(categoryid).orElse(null);
+    }
+
+    // 分類 code -> 分類 (大小分類共用)，記憶體找不到再問一次 DB
+    public CategoryEntity findCategoryByCode(String code) {
+        lock.readLock().lock();
+        try {
+            CategoryEntity cached = index.categoriesByCode.get(code);
+            if (cached != null) {
+                return cached;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        CategoryEntity loaded = categoryRepository.findByCode(code);
+        if (loaded != null) {
+            lock.writeLock().lock();
+            try {
+                index.putCategory(loaded);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 搜尋並回傳指定頁的 productid (已排序) 與總筆數
+     */
+    public SearchHits search(ProductSearchCriteria criteria, ProductSearchSort sort, int offset, int limit) {
+        List<IndexedProduct> matches = match(criteria, sort);
+
+        int from = Math.min(offset, matches.size());
+        int to = Math.min(from + limit, matches.size());
+        List<Integer> ids = new ArrayList<>(to - from);
+        for (IndexedProduct p : matches.subList(from, to)) {
+            ids.add(p.productid());
+        }
+        return new SearchHits(ids, matches.size());
+    }
+
+    /**
+     * 游標分頁：回傳排在 after 之後的 limit 筆 (after 為 null 代表第一頁)
+     * 命中清單已經排好序，用二分搜尋找起點，不需要 OFFSET
+     */
+    public SearchWindow searchAfter(ProductSearchCriteria criteria, ProductSearchSort sort, ProductSearchCursor after, int limit) {
+        List<IndexedProduct> matches = match(criteria, sort);
+
+        int from = 0;
+        if (after != null) {
+            int pos = Collections.binarySearch(matches, probe(after), comparator(sort));
+            // 找到同一筆就從下一筆開始；找不到 (該筆已被刪除或改價) 就從插入點開始
+            from = pos >= 0 ? pos + 1 : -(pos + 1);
+        }
+        int to = Math.min(from + limit, matches.size());
+
+        List<Integer> ids = new ArrayList<>(Math.max(0, to - from));
+        for (IndexedProduct p : matches.subList(Math.min(from, to), to)) {
+            ids.add(p.productid());
+        }
+        return new SearchWindow(ids, to < matches.size(), matches.size());
+    }
+
+    // 篩選 + 排序後的完整命中清單
+    private List<IndexedProduct> match(ProductSearchCriteria criteria, ProductSearchSort sort) {
+        String keyword = criteria.keyword();
+        String normalizedKeyword = StringUtils.hasText(keyword) ? CjkBigramTokenizer.normalize(keyword) : null;
+
+        List<IndexedProduct> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Iterable<Integer> candidates = normalizedKeyword == null
+                    ? index.documents.keySet()
+                    : candidates(keyword);
+
+            for (Integer id : candidates) {
+                IndexedProduct p = index.documents.get(id);
+                if (p != null && accept(p, criteria, normalizedKeyword)) {
+                    matches.add(p);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        matches.sort(comparator(sort));
+        return matches;
+    }
+
+    // 用倒排索引取交集，從最小的 posting 開始
+    private Set<Integer> candidates(String keyword) {
+        List<QueryTerm> terms = CjkBigramTokenizer.queryTerms(keyword);
+        if (terms.isEmpty()) {
+            // 關鍵字只有標點符號之類的，交給逐筆比對
+            return new HashSet<>(index.documents.keySet());
+        }
+
+        List<Set<Integer>> sets = new ArrayList<>(terms.size());
+        for (QueryTerm term : terms) {
+            Set<Integer> ids = lookup(term);
+            if (ids.isEmpty()) {
+                return Set.of();
+            }
+            sets.add(ids);
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+
+        Set<Integer> result = new HashSet<>(sets.get(0));
+        for (int i = 1; i < sets.size() && !result.isEmpty(); i++) {
+            result.retainAll(sets.get(i));
+        }
+        return result;
+    }
+
+    private Set<Integer> lookup(QueryTerm term) {
+        if (term.exact()) {
+            return index.postings.getOrDefault(term.text(), Set.of());
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Set<Integer> posting : index.postings.subMap(term.text(), true, term.text() + Character.MAX_VALUE, false).values()) {
+            ids.addAll(posting);
+        }
+        return ids;
+    }
+
+    // 分類、價格篩選；關鍵字最後用子字串再確認一次 (bigram 交集不保證字是連在一起的)
+    private boolean accept(IndexedProduct p, ProductSearchCriteria c, String normalizedKeyword) {
+        if (c.categoryId() != null && !c.categoryId().equals(p.categoryid())) {
+            return false;
+        }
+        if (c.parentCategoryId() != null && !c.parentCategoryId().equals(p.parentCategoryid())) {
+            return false;
+        }
+        if (c.minPrice() != null && (p.price() == null || p.price() < c.minPrice())) {
+            return false;
+        }
+        if (c.maxPrice() != null && (p.price() == null || p.price() > c.maxPrice())) {
+            return false;
+        }
+        if (normalizedKeyword != null) {
+            for (String field : p.fields()) {
+                if (field.contains(normalizedKeyword)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    // 排序一律是 (排序鍵, productid)，跟 ProductSearchCursor 的游標格式一致
+    private static Comparator<IndexedProduct> comparator(ProductSearchSort sort) {
+        Comparator<IndexedProduct> asc = Comparator.comparingLong((IndexedProduct p) -> sortKey(p, sort))
+                .thenComparing(IndexedProduct::productid);
+        return ProductSearchCursor.isDescending(sort) ? asc.reversed() : asc;
+    }
+
+    private static long sortKey(IndexedProduct p, ProductSearchSort sort) {
+        return switch (sort) {
+            case LATEST -> p.createdAt();
+            case PRICE_ASC, PRICE_DESC -> p.price() == null ? 0L : p.price();
+            case RATING_ASC, RATING_DESC -> p.rating() == null ? 0L : p.rating();
+            case DEFAULT -> 0L;
+        };
+    }
+
+    // 二分搜尋用的假文件，只填排序會用到的欄位
+    private static IndexedProduct probe(ProductSearchCursor cursor) {
+        long key = cursor.sortKey();
+        Integer asInt = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, key));
+        return new IndexedProduct(cursor.productid(), null, null, asInt, asInt, key, List.of(), Set.of());
+    }
+
+    /**
+     * 一份完整的索引 (倒排索引 + 文件 + 分類)
+     * 目前用的那份只能在 write lock 內修改；重建中的新索引只有重建的執行緒碰得到
+     */
+    private static final class Index {
+        // term -> productid 集合，用 TreeMap 才能做前綴查詢
+        final NavigableMap<String, Set<Integer>> postings = new TreeMap<>();
+        final Map<Integer, IndexedProduct> documents = new HashMap<>();
+        final Map<Integer, CategoryEntity> categories = new HashMap<>();
+        final Map<String, CategoryEntity> categoriesByCode = new HashMap<>();
+
+        void putCategory(CategoryEntity category) {
+            categories.put(category.getCategoryid(), category);
+            if (category.getCode() != null) {
+                categoriesByCode.put(category.getCode(), category);
+            }
+        }
+
+        void add(ProductEntity product) {
+            Integer categoryid = product.getCategory() != null ? product.getCategory().getCategoryid() : null;
+            // 後台送來的 category 只有 id，parentid 從分類表補
+            CategoryEntity category = categoryid != null ? categories.get(categoryid) : null;
+            Integer parentCategoryid = category != null ? category.getParentid() : null;
+
+            String[] rawFields = { product.getPname(), product.getDescription(), product.getColor(), product.getSpecification() };
+            List<String> fields = new ArrayList<>(rawFields.length);
+            Set<String> terms = new HashSet<>();
+            for (String raw : rawFields) {
+                if (raw == null) {
+                    continue;
+                }
+                fields.add(CjkBigramTokenizer.normalize(raw));
+                terms.addAll(CjkBigramTokenizer.indexTerms(raw));
+            }
+
+            long createdAt = ProductSearchCursor.createdAtMillis(product.getCreatedAt());
+
+            IndexedProduct doc = new IndexedProduct(product.getProductid(), categoryid, parentCategoryid,
+                    product.getPrice(), product.getRating(), createdAt, fields, terms);
+            documents.put(doc.productid(), doc);
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> new HashSet<>()).add(doc.productid());
+            }
+        }
+
+        void remove(Integer productId) {
+            IndexedProduct old = documents.remove(productId);
+            if (old == null) {
+                return;
+            }
+            for (String term : old.terms()) {
+                Set<Integer> posting = postings.get(term);
+                if (posting != null) {
+                    posting.remove(productId);
+                    if (posting.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+        }
+    }
+
+    // 索引內每筆商品只留搜尋、篩選、排序需要的欄位
+    private record IndexedProduct(
+            Integer productid,
+            Integer categoryid,
+            Integer parentCategoryid,
+            Integer price,
+            Integer rating,
+            long createdAt,
+            List<String> fields,
+            Set<String> terms) {
+    }
+
+    public record SearchHits(List<Integer> productIds, long total) {
+    }
+
+    public record SearchWindow(List<Integer> productIds, boolean hasNext, long total) {
+    }
+}
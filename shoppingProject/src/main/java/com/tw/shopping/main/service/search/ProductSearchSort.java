@@ -0,0 +1,42 @@
+package com.tw.shopping.main.service.search;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * 前台搜尋的排序選項 (對應 /api/products/search 的 sort 參數)
+ * 同分時一律用 productid 當第二排序鍵，確保順序是固定的
+ */
+public enum ProductSearchSort {
+
+    DEFAULT(Sort.unsorted()),
+    LATEST(Sort.by("createdAt").descending()),
+    PRICE_ASC(Sort.by("price").ascending()),
+    PRICE_DESC(Sort.by("price").descending()),
+    RATING_ASC(Sort.by("rating").ascending()),
+    RATING_DESC(Sort.by("rating").descending());
+
+    private final Sort sort;
+
+    ProductSearchSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    // 給 JPA 查詢用的 Sort
+    public Sort toSort() {
+        return sort;
+    }
+
+    public static ProductSearchSort fromParam(String sort) {
+        if (sort == null) {
+            return DEFAULT;
+        }
+        return switch (sort) {
+            case "latest" -> LATEST;
+            case "priceAsc" -> PRICE_ASC;
+            case "priceDesc" -> PRICE_DESC;
+            case "ratingAsc" -> RATING_ASC;
+            case "ratingDesc" -> RATING_DESC;
+            default -> DEFAULT;
+        };
+    }
+}
@@ -0,0 +1,355 @@
+package com.tw.shopping.main.service.stats;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.entity.OrderEntity;
+import com.tw.shopping.main.exception.BusinessValidationException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 每日銷售彙總 (sales_daily，一天一列)
+ * 後台首頁的總銷售額 / 總訂單數 / 銷售趨勢讀這張表，查詢成本跟天數成正比，不再跟訂單數成正比
+ *
+ * 累加方式：訂單成立 / 付款 / 取消 / 退款時，在同一個交易裡 INSERT 一列差額進 sales_daily_delta (db/08_sales_daily_delta.sql)，
+ * 定期把差額依日期加總，用 INSERT ... ON DUPLICATE KEY UPDATE 一天一句寫進 sales_daily 再刪掉
+ * - 不在下單的交易裡直接 UPDATE sales_daily：每筆結帳都要鎖「今天」那一列到 commit，結帳會全部排隊；差額表只新增，不會互鎖
+ * - 差額跟訂單一起 commit / rollback，節點當掉也不會少算
+ * - 寫回跟重算在所有節點間同時只有一個在跑 (MySQL GET_LOCK)，不會兩個節點把同一批差額各加一次
+ * - 重算在一個 REPEATABLE READ 快照裡讀訂單跟差額，只刪掉這個快照看得到的差額：
+ *   算進去的訂單，它的差額一定也在快照裡 (同一個交易寫的)，重算之後才 commit 的訂單差額留著，下一輪照常加上去
+ * 日期照訂單成立日 (orderdate) 算：付款、取消、退款都加在那張訂單成立的那一天，跟原本直接查 order 表的結果一樣
+ *
+ * metrics：sales.rollup.flushed (寫回的天數)、sales.rollup.flush_failed、sales.rollup.reconcile_failed
+ */
+@Service
+public class SalesDailyRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(SalesDailyRollup.class);
+
+    // 重算時一個交易最多處理幾天，避免長交易
+    private static final int REBUILD_CHUNK_DAYS = 31;
+    // 寫回時一個交易最多處理幾列差額
+    private static final int FLUSH_BATCH_SIZE = 1000;
+    // 跨節點的鎖 (GET_LOCK 是整個 MySQL 共用的名稱)；後台手動重算最多等幾秒
+    private static final String LOCK_NAME = "sales_daily_rollup";
+    private static final int REBUILD_LOCK_WAIT_SECONDS = 30;
+
+    private static final String DELTA_SQL =
+            "INSERT INTO sales_daily_delta (sales_date, paid_amount, paid_count, created_count, cancelled_count) "
+            + "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO sales_daily (sales_date, paid_amount, paid_count, created_count, cancelled_count, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, NOW(3)) ON DUPLICATE KEY UPDATE "
+            + "paid_amount = paid_amount + VALUES(paid_amount), "
+            + "paid_count = paid_count + VALUES(paid_count), "
+            + "created_count = created_count + VALUES(created_count), "
+            + "cancelled_count = cancelled_count + VALUES(cancelled_count), "
+            + "updated_at = VALUES(updated_at)";
+
+    // 只讀不鎖 (一般 SELECT 讀快照)；INSERT ... SELECT 會對訂單加共享鎖，擋住重算期間的付款、取消
+    private static final String REBUILD_SQL =
+            "SELECT DATE(orderdate), "
+            + "COALESCE(SUM(CASE WHEN payment_status = 'PAID' THEN totalamount END), 0), "
+            + "SUM(payment_status = 'PAID'), COUNT(*), SUM(status = 3) "
+            + "FROM `order` WHERE orderdate >= ? AND orderdate < ? GROUP BY DATE(orderdate)";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO sales_daily (sales_date, paid_amount, paid_count, created_count, cancelled_count, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, NOW(3))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // 重算用：訂單跟差額要在同一個快照裡讀
+    private final TransactionTemplate snapshotTemplate;
+    // 定期對帳重算最近幾天 (含今天)
+    private final int reconcileDays;
+
+    private final Counter flushed;
+    private final Counter flushFailed;
+    private final Counter reconcileFailed;
+
+    public SalesDailyRollup(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${sales-rollup.reconcile-days:3}") int reconcileDays) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.reconcileDays = reconcileDays;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        this.flushed = meterRegistry.counter("sales.rollup.flushed");
+        this.flushFailed = meterRegistry.counter("sales.rollup.flush_failed");
+        this.reconcileFailed = meterRegistry.counter("sales.rollup.reconcile_failed");
+    }
+//  --------------------------------
+
+    // 以下記差額的方法都要在訂單異動的交易裡呼叫，交易 rollback 差額就跟著消失
+
+    // 訂單成立
+    public void orderCreated(OrderEntity order) {
+        record(day(order), 0, 0, 1, 0);
+    }
+
+    // 一批訂單成立 (搶購批次寫入)，同一天的併成一列
+    public void ordersCreated(Collection<OrderEntity> orders) {
+        Map<LocalDate, Integer> countsByDay = new TreeMap<>();
+        orders.forEach(order -> countsByDay.merge(day(order), 1, Integer::sum));
+        jdbcTemplate.batchUpdate(DELTA_SQL, countsByDay.entrySet().stream()
+                .map(e -> new Object[] { Date.valueOf(e.getKey()), 0, 0, e.getValue(), 0 })
+                .toList());
+    }
+
+    // 訂單改成已付款
+    public void orderPaid(OrderEntity order) {
+        record(day(order), amount(order), 1, 0, 0);
+    }
+
+    // 已付款的訂單不再算已付款 (取消後等退款)
+    public void orderRefunded(OrderEntity order) {
+        record(day(order), -amount(order), -1, 0, 0);
+    }
+
+    // 訂單取消
+    public void orderCancelled(OrderEntity order) {
+        record(day(order), 0, 0, 0, 1);
+    }
+
+    // 已取消的訂單又成立 (逾時取消後才收到付款)
+    public void orderRevived(OrderEntity order) {
+        record(day(order), 0, 0, 0, -1);
+    }
+
+    // 一批訂單取消，key 是訂單成立日
+    public void ordersCancelled(Map<LocalDate, Integer> countsByDay) {
+        jdbcTemplate.batchUpdate(DELTA_SQL, countsByDay.entrySet().stream()
+                .map(e -> new Object[] { Date.valueOf(e.getKey()), 0, 0, 0, e.getValue() })
+                .toList());
+    }
+
+    /**
+     * 把差額寫回 sales_daily；別的節點正在寫回或重算就跳過這一輪
+     */
+    @Scheduled(fixedDelayString = "${sales-rollup.flush-interval-ms:5000}")
+    public void flush() {
+        try {
+            withLock(0, () -> {
+                int rows;
+                do {
+                    rows = flushBatch();
+                } while (rows == FLUSH_BATCH_SIZE);
+                return rows;
+            });
+        } catch (RuntimeException e) {
+            // 差額還在表裡，下一輪再寫
+            flushFailed.increment();
+            logger.warn("每日銷售彙總寫回失敗，下一輪再試: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期對帳：依 order 表重算最近 reconcileDays 天，修正不是透過程式改訂單 (直接下 SQL 等) 造成的誤差
+     * 別的節點正在寫回或重算就跳過這一輪
+     */
+    @Scheduled(fixedDelayString = "${sales-rollup.reconcile-interval-ms:600000}",
+            initialDelayString = "${sales-rollup.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        LocalDate today = LocalDate.now();
+        try {
+            Integer days = withLock(0, () -> rebuildLocked(today.minusDays(reconcileDays - 1L), today));
+            if (days == null) {
+                logger.debug("每日銷售彙總正由其他節點處理，略過這一輪對帳");
+            }
+        } catch (RuntimeException e) {
+            reconcileFailed.increment();
+            logger.warn("每日銷售彙總對帳失敗，下一輪再試: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 依 order 表重算 [from, to] 這幾天 (含頭尾)；from 沒給就從最早的訂單開始，to 沒給就到今天
+     * 每 REBUILD_CHUNK_DAYS 天一個交易：刪掉舊的列再整批算回來，回傳重算了幾天
+     * 重算時其他節點的寫回會等著 (跨節點鎖)，訂單照常可以成立、付款
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        if (from == null) {
+            Date first = jdbcTemplate.queryForObject("SELECT DATE(MIN(orderdate)) FROM `order`", Date.class);
+            if (first == null) {
+                return 0;
+            }
+            from = first.toLocalDate();
+        }
+        if (to == null) {
+            to = LocalDate.now();
+        }
+        if (to.isBefore(from)) {
+            return 0;
+        }
+        LocalDate rebuildFrom = from;
+        LocalDate rebuildTo = to;
+        Integer days = withLock(REBUILD_LOCK_WAIT_SECONDS, () -> rebuildLocked(rebuildFrom, rebuildTo));
+        if (days == null) {
+            throw new BusinessValidationException("每日銷售彙總正在重算，請稍後再試");
+        }
+        return days;
+    }
+
+    // 已經拿到跨節點鎖
+    private int rebuildLocked(LocalDate from, LocalDate to) {
+        int days = 0;
+        for (LocalDate start = from; !start.isAfter(to); start = start.plusDays(REBUILD_CHUNK_DAYS)) {
+            LocalDate end = start.plusDays(REBUILD_CHUNK_DAYS - 1);
+            Integer written = rebuildChunk(start, end.isAfter(to) ? to : end);
+            days += written != null ? written : 0;
+        }
+        logger.info("每日銷售彙總已重算 {} ~ {}，共 {} 天有訂單", from, to, days);
+        return days;
+    }
+
+    // 訂單跟差額在同一個快照裡讀 (REPEATABLE READ 的一般 SELECT)，只刪掉快照看得到的差額
+    private Integer rebuildChunk(LocalDate first, LocalDate last) {
+        return snapshotTemplate.execute(status -> {
+            List<Object[]> rows = jdbcTemplate.query(REBUILD_SQL,
+                    (rs, rowNum) -> new Object[] { rs.getDate(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5) },
+                    Timestamp.valueOf(first.atStartOfDay()), Timestamp.valueOf(last.plusDays(1).atStartOfDay()));
+            List<Long> counted = jdbcTemplate.queryForList(
+                    "SELECT id FROM sales_daily_delta WHERE sales_date BETWEEN ? AND ?", Long.class,
+                    Date.valueOf(first), Date.valueOf(last));
+
+            jdbcTemplate.update("DELETE FROM sales_daily WHERE sales_date BETWEEN ? AND ?",
+                    Date.valueOf(first), Date.valueOf(last));
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            deleteDeltas(counted);
+            return rows.size();
+        });
+    }
+
+    // 一個交易：讀一批差額、依日期加總寫進 sales_daily、刪掉讀到的那幾列，回傳讀到幾列
+    private int flushBatch() {
+        Integer rows = transactionTemplate.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            Map<LocalDate, long[]> sums = new TreeMap<>();
+            jdbcTemplate.query("SELECT id, sales_date, paid_amount, paid_count, created_count, cancelled_count "
+                    + "FROM sales_daily_delta ORDER BY id LIMIT ?", rs -> {
+                ids.add(rs.getLong(1));
+                long[] sum = sums.computeIfAbsent(rs.getDate(2).toLocalDate(), d -> new long[4]);
+                for (int k = 0; k < sum.length; k++) {
+                    sum[k] += rs.getLong(3 + k);
+                }
+            }, FLUSH_BATCH_SIZE);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            jdbcTemplate.batchUpdate(UPSERT_SQL, sums.entrySet().stream()
+                    .map(e -> new Object[] { Date.valueOf(e.getKey()), e.getValue()[0], e.getValue()[1], e.getValue()[2], e.getValue()[3] })
+                    .toList());
+            // 用讀到的 id 刪，不用 id 範圍：編號小的交易可能比較晚 commit，這一輪還沒讀到
+            deleteDeltas(ids);
+            flushed.increment(sums.size());
+            return ids.size();
+        });
+        return rows != null ? rows : 0;
+    }
+
+    private void deleteDeltas(List<Long> ids) {
+        for (int from = 0; from < ids.size(); from += FLUSH_BATCH_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + FLUSH_BATCH_SIZE, ids.size()));
+            jdbcTemplate.update("DELETE FROM sales_daily_delta WHERE id IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")", chunk.toArray());
+        }
+    }
+
+    /**
+     * 拿到跨節點鎖才執行 work，最多等 waitSeconds 秒，拿不到回傳 null
+     * GET_LOCK 綁在連線上：鎖用一條獨立的連線拿住，work 裡的交易用別的連線；節點當掉連線斷了鎖就自動放掉
+     */
+    private Integer withLock(int waitSeconds, Supplier<Integer> work) {
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            if (!getLock(connection, waitSeconds)) {
+                return null;
+            }
+            try {
+                return work.get();
+            } finally {
+                try (PreparedStatement release = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    release.setString(1, LOCK_NAME);
+                    release.executeQuery().close();
+                }
+            }
+        });
+    }
+
+    private static boolean getLock(Connection connection, int waitSeconds) throws SQLException {
+        try (PreparedStatement lock = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            lock.setString(1, LOCK_NAME);
+            lock.setInt(2, waitSeconds);
+            try (ResultSet rs = lock.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    // 全部加總 (後台首頁)
+    public SalesTotals totals() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(paid_amount), 0), COALESCE(SUM(paid_count), 0), COALESCE(SUM(created_count), 0) FROM sales_daily",
+                (rs, rowNum) -> new SalesTotals(rs.getLong(1), rs.getLong(2), rs.getLong(3)));
+    }
+
+    // 有已付款訂單的日子，依日期排序 (銷售趨勢)
+    public List<SalesDay> trend() {
+        return jdbcTemplate.query(
+                "SELECT sales_date, paid_amount FROM sales_daily WHERE paid_count > 0 ORDER BY sales_date",
+                (rs, rowNum) -> new SalesDay(rs.getDate(1).toLocalDate(), rs.getLong(2)));
+    }
+
+    private void record(LocalDate day, long paidAmount, long paidCount, long created, long cancelled) {
+        jdbcTemplate.update(DELTA_SQL, Date.valueOf(day), paidAmount, paidCount, created, cancelled);
+    }
+
+    private static LocalDate day(OrderEntity order) {
+        LocalDateTime orderDate = order.getOrderDate() != null ? order.getOrderDate() : LocalDateTime.now();
+        return orderDate.toLocalDate();
+    }
+
+    private static int amount(OrderEntity order) {
+        return order.getTotalAmount() != null ? order.getTotalAmount() : 0;
+    }
+
+    public record SalesTotals(long paidAmount, long paidCount, long createdCount) {
+    }
+
+    public record SalesDay(LocalDate date, long paidAmount) {
+    }
+}
@@ -0,0 +1,193 @@
+package com.tw.shopping.main.service.stock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.util.AfterCommit;
+
+/**
+ * 商品即時庫存的讀取模型 (Redis hash: product:stock，field = productid)
+ * 商品頁只讀這裡，不再每次回 DB 查整個系列的庫存
+ *
+ * 寫入規則：
+ * 1. 扣庫存 / 回補庫存 / 後台改庫存，都在 DB 交易 commit 之後才更新 (交易回滾就不動快取)
+ * 2. 增減只對「已經在快取裡」的商品做，沒有的等下次讀取時從 DB 補進來
+ * 3. Redis 失敗只記 log，不影響下單；差異由定期對帳修正
+ * 真正的庫存檢查仍然是 DB 的 UPDATE ... WHERE stock >= ?，這裡只負責顯示
+ */
+@Component
+public class ProductStockCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductStockCache.class);
+
+    private static final String STOCK_KEY = "product:stock";
+
+    // field 存在才增減，避免對不在快取裡的商品 HINCRBY 出一個錯誤的數字
+    private static final DefaultRedisScript<Long> INCREMENT_IF_PRESENT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then "
+                    + "return redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) end "
+                    + "return nil",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ProductRepository productRepository;
+
+    // 上一輪對帳發現的差異 (productid -> "快取值|DB值")，連續兩輪一樣才修正
+    private Map<String, String> suspectedDrift = Map.of();
+
+    public ProductStockCache(
+            StringRedisTemplate redisTemplate,
+            ProductRepository productRepository) {
+
+        this.redisTemplate = redisTemplate;
+        this.productRepository = productRepository;
+    }
+//  --------------------------------
+
+    /**
+     * 查多個商品的庫存，快取沒有的從 DB 補 (一次 IN 查詢) 並寫回快取
+     * Redis 掛掉時整批改查 DB
+     */
+    public Map<Integer, Integer> getStocks(Collection<Integer> productIds) {
+        List<Integer> ids = new ArrayList<>(new HashSet<>(productIds));
+        Map<Integer, Integer> stocks = new HashMap<>();
+        if (ids.isEmpty()) {
+            return stocks;
+        }
+
+        List<Integer> missing = new ArrayList<>();
+        try {
+            List<Object> values = redisTemplate.opsForHash().multiGet(STOCK_KEY, toFields(ids));
+            for (int i = 0; i < ids.size(); i++) {
+                Object value = values.get(i);
+                if (value != null) {
+                    stocks.put(ids.get(i), Integer.valueOf(value.toString()));
+                } else {
+                    missing.add(ids.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("讀取庫存快取失敗，改查 DB: {}", e.getMessage());
+            missing = ids;
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, String> loaded = new HashMap<>();
+            productRepository.findAllById(missing).forEach(p -> {
+                int stock = p.getStock() != null ? p.getStock() : 0;
+                stocks.put(p.getProductid(), stock);
+                loaded.put(String.valueOf(p.getProductid()), String.valueOf(stock));
+            });
+            runQuietly("補庫存快取", () -> loaded.forEach((field, value) ->
+                    redisTemplate.opsForHash().putIfAbsent(STOCK_KEY, field, value)));
+        }
+        return stocks;
+    }
+
+    // 扣庫存 (交易 commit 後才生效)
+    public void decreaseAfterCommit(Integer productId, int quantity) {
+        afterCommit("扣減庫存快取", () -> redisTemplate.execute(INCREMENT_IF_PRESENT,
+                List.of(STOCK_KEY), String.valueOf(productId), String.valueOf(-quantity)));
+    }
+
+    // 回補庫存 (交易 commit 後才生效)
+    public void increaseAfterCommit(Integer productId, int quantity) {
+        afterCommit("回補庫存快取", () -> redisTemplate.execute(INCREMENT_IF_PRESENT,
+                List.of(STOCK_KEY), String.valueOf(productId), String.valueOf(quantity)));
+    }
+
+    // 後台直接設定庫存 (交易 commit 後才生效)
+    public void setAfterCommit(Integer productId, Integer stock) {
+        afterCommit("設定庫存快取", () -> redisTemplate.opsForHash()
+                .put(STOCK_KEY, String.valueOf(productId), String.valueOf(stock != null ? stock : 0)));
+    }
+
+    // 商品刪除 (交易 commit 後才生效)
+    public void evictAfterCommit(Integer productId) {
+        afterCommit("移除庫存快取", () -> redisTemplate.opsForHash().delete(STOCK_KEY, String.valueOf(productId)));
+    }
+
+    /**
+     * 定期對帳：以 product.stock 為準，修正快取裡不一致的數字
+     * 下單 commit 到快取更新之間本來就會短暫不一致，所以同一筆差異要連續兩輪都出現才修正，
+     * 避免把「剛好在途中」的正確數字改錯；已刪除的商品順便清掉
+     */
+    @Scheduled(fixedDelayString = "${product.stock-cache.reconcile-interval-ms:300000}",
+            initialDelayString = "${product.stock-cache.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        Map<Object, Object> cached;
+        try {
+            cached = redisTemplate.opsForHash().entries(STOCK_KEY);
+        } catch (RuntimeException e) {
+            logger.warn("庫存快取對帳略過，Redis 無法連線: {}", e.getMessage());
+            return;
+        }
+        if (cached.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> dbStocks = new HashMap<>();
+        for (Object[] row : productRepository.findAllStock()) {
+            dbStocks.put(String.valueOf(row[0]), String.valueOf(row[1] != null ? row[1] : 0));
+        }
+
+        Map<String, String> drift = new HashMap<>();
+        Map<String, String> corrections = new HashMap<>();
+        Set<Object> removed = new HashSet<>();
+        cached.forEach((field, value) -> {
+            String dbValue = dbStocks.get(field.toString());
+            if (dbValue == null) {
+                removed.add(field);
+            } else if (!dbValue.equals(value.toString())) {
+                String observed = value + "|" + dbValue;
+                drift.put(field.toString(), observed);
+                if (observed.equals(suspectedDrift.get(field.toString()))) {
+                    corrections.put(field.toString(), dbValue);
+                }
+            }
+        });
+        drift.keySet().removeAll(corrections.keySet());
+        suspectedDrift = drift;
+
+        if (!corrections.isEmpty()) {
+            runQuietly("修正庫存快取", () -> redisTemplate.opsForHash().putAll(STOCK_KEY, corrections));
+            logger.warn("庫存快取對帳：修正 {} 筆與 DB 不一致的庫存 {}", corrections.size(), corrections.keySet());
+        }
+        if (!removed.isEmpty()) {
+            runQuietly("清除已刪除商品的庫存快取", () -> redisTemplate.opsForHash().delete(STOCK_KEY, removed.toArray()));
+        }
+    }
+
+    private void afterCommit(String action, Runnable task) {
+        AfterCommit.run(() -> runQuietly(action, task));
+    }
+
+    private void runQuietly(String action, Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.warn("{}失敗，等待對帳修正: {}", action, e.getMessage());
+        }
+    }
+
+    private static List<Object> toFields(List<Integer> ids) {
+        List<Object> fields = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            fields.add(String.valueOf(id));
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,182 @@
+package com.tw.shopping.main.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 綠界 CheckMacValue 計算 / 驗證
+ * 結果跟原本 URLEncoder.encode → toLowerCase → replaceAll → SHA-256 的做法逐位元組相同，但一次掃過就完成：
+ * 字元直接照綠界的編碼規則轉成小寫 percent-encoding，寫進每條執行緒重複使用的緩衝區，滿了就餵給 SHA-256
+ *
+ * 編碼規則 (UTF-8 的每個位元組)：
+ *   A-Z → 轉小寫；a-z 0-9 - _ . * ! ( ) → 原樣；空白 → +；其他 → %xx (小寫十六進位)
+ * 傳進來的 Map 不會被修改 (CheckMacValue 欄位直接略過)
+ */
+public final class EcpayCheckMacEncoder {
+
+    private static final String CHECK_MAC_KEY = "CheckMacValue";
+
+    private static final byte[] HEX_LOWER = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX_UPPER = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    // 0 = 要 percent-encoding；其他 = 輸出的位元組
+    private static final byte[] ASCII_MAP = new byte[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            ASCII_MAP[c] = (byte) c;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            ASCII_MAP[c] = (byte) (c + ('a' - 'A'));
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            ASCII_MAP[c] = (byte) c;
+        }
+        for (char c : "-_.*!()".toCharArray()) {
+            ASCII_MAP[c] = (byte) c;
+        }
+        ASCII_MAP[' '] = '+';
+    }
+
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private EcpayCheckMacEncoder() {
+    }
+
+    /**
+     * 計算 CheckMacValue (64 碼大寫十六進位)
+     */
+    public static String generate(Map<String, String> params, String hashKey, String hashIV) {
+        Workspace ws = WORKSPACE.get();
+        digest(ws, params, hashKey, hashIV);
+        return new String(ws.hex, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 驗證綠界回傳的 CheckMacValue (用固定時間比較，不會因為比對到第幾個字不同而洩漏時間差)
+     */
+    public static boolean verify(Map<String, String> params, String hashKey, String hashIV) {
+        String received = params.get(CHECK_MAC_KEY);
+        if (received == null) {
+            return false;
+        }
+        Workspace ws = WORKSPACE.get();
+        digest(ws, params, hashKey, hashIV);
+        return MessageDigest.isEqual(ws.hex, received.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // 算完的結果 (大寫十六進位) 放在 ws.hex
+    private static void digest(Workspace ws, Map<String, String> params, String hashKey, String hashIV) {
+        // 依 key 排序 (跟原本 Collections.sort 一樣是 String 自然順序)
+        String[] keys = params.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+
+        ws.reset();
+        ws.encode("HashKey=");
+        ws.encode(hashKey);
+        for (String key : keys) {
+            if (CHECK_MAC_KEY.equals(key)) {
+                continue;
+            }
+            // 分隔的 & 跟 = 也要編碼 (%26、%3d)，原本是整串一起 URLEncoder.encode
+            ws.encode("&");
+            ws.encode(key);
+            ws.encode("=");
+            ws.encode(params.get(key));
+        }
+        ws.encode("&HashIV=");
+        ws.encode(hashIV);
+
+        byte[] hash = ws.finish();
+        for (int i = 0; i < hash.length; i++) {
+            ws.hex[i * 2] = HEX_UPPER[(hash[i] >> 4) & 0x0f];
+            ws.hex[i * 2 + 1] = HEX_UPPER[hash[i] & 0x0f];
+        }
+    }
+
+    // 每條執行緒一份：SHA-256 + 編碼緩衝區 + 結果
+    private static final class Workspace {
+
+        private final MessageDigest sha256;
+        private final byte[] buffer = new byte[1024];
+        private final byte[] hex = new byte[64];
+        private int length;
+
+        Workspace() {
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("JVM 不支援 SHA-256", e);
+            }
+        }
+
+        void reset() {
+            sha256.reset();
+            length = 0;
+        }
+
+        // null 跟原本 StringBuilder.append(null) 一樣當成 "null"
+        void encode(String s) {
+            if (s == null) {
+                s = "null";
+            }
+            int n = s.length();
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    byte mapped = ASCII_MAP[c];
+                    if (mapped != 0) {
+                        put(mapped);
+                    } else {
+                        percent(c);
+                    }
+                } else if (c < 0x800) {
+                    percent(0xc0 | (c >> 6));
+                    percent(0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    percent(0xf0 | (cp >> 18));
+                    percent(0x80 | ((cp >> 12) & 0x3f));
+                    percent(0x80 | ((cp >> 6) & 0x3f));
+                    percent(0x80 | (cp & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    // 落單的 surrogate：UTF-8 編碼器會換成 '?'
+                    percent('?');
+                } else {
+                    percent(0xe0 | (c >> 12));
+                    percent(0x80 | ((c >> 6) & 0x3f));
+                    percent(0x80 | (c & 0x3f));
+                }
+            }
+        }
+
+        void put(byte b) {
+            if (length == buffer.length) {
+                flush();
+            }
+            buffer[length++] = b;
+        }
+
+        void percent(int b) {
+            if (length + 3 > buffer.length) {
+                flush();
+            }
+            buffer[length++] = '%';
+            buffer[length++] = HEX_LOWER[(b >> 4) & 0x0f];
+            buffer[length++] = HEX_LOWER[b & 0x0f];
+        }
+
+        byte[] finish() {
+            flush();
+            return sha256.digest();
+        }
+
+        private void flush() {
+            sha256.update(buffer, 0, length);
+            length = 0;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+-- ============================================================
+-- 商品系列 (series_id)
+-- 同一商品的不同顏色 / 規格以前是靠 pname + description 字串比對找出來，
+-- 這兩欄沒有索引，每次都是全表掃描。改成獨立的 series_id 欄位 + 索引。
+-- 系列 id 取該組商品中最小的 productid；之後由後台新增 / 修改商品時維護。
+-- 執行方式：手動在 shopping 資料庫執行一次
+-- ============================================================
+
+ALTER TABLE `product`
+  ADD COLUMN `series_id` int DEFAULT NULL COMMENT '商品系列編號 (同系列中最小的 productid)' AFTER `categoryid`;
+
+-- 回填：把 pname + description 相同的商品歸成同一個系列
+UPDATE `product` p
+  JOIN (
+    SELECT `pname`, `description`, MIN(`productid`) AS `series_id`
+    FROM `product`
+    GROUP BY `pname`, `description`
+  ) s ON p.`pname` = s.`pname` AND p.`description` = s.`description`
+SET p.`series_id` = s.`series_id`;
+
+-- 推薦商品是「同分類、不同系列」，所以 categoryid 放前面
+CREATE INDEX `idx_product_series_id` ON `product` (`series_id`);
+CREATE INDEX `idx_product_category_series` ON `product` (`categoryid`, `series_id`);
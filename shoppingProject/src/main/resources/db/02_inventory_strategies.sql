@@ -0,0 +1,18 @@
+-- ============================================================
+-- 扣庫存方式 (inventory.strategy) 需要的欄位 / 表
+-- 只有選 optimistic 或 striped 時才需要，atomic / pessimistic 不用
+-- 執行方式：手動在 shopping 資料庫執行一次
+-- ============================================================
+
+-- optimistic：每次改庫存版本 +1，UPDATE 時比對版本
+ALTER TABLE `product`
+  ADD COLUMN `stock_version` int NOT NULL DEFAULT 0 COMMENT '庫存版本 (optimistic 扣庫存用)' AFTER `stock`;
+
+-- striped：熱門商品的庫存拆成多列，分散鎖競爭；product.stock 由排程回寫加總
+CREATE TABLE `product_stock_bucket` (
+  `productid` int NOT NULL,
+  `bucket` int NOT NULL,
+  `stock` int NOT NULL DEFAULT 0,
+  PRIMARY KEY (`productid`, `bucket`),
+  CONSTRAINT `fk_stock_bucket_product` FOREIGN KEY (`productid`) REFERENCES `product` (`productid`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
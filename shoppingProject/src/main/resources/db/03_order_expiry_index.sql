@@ -0,0 +1,12 @@
+-- ============================================================
+-- 逾時未付款訂單的自動取消 (OrderExpiryService)
+-- 每次排程都要找「status = PENDING 且 orderdate 早於某時間」的訂單，
+-- 沒有索引時是全表掃描，而且 FOR UPDATE 會鎖到掃過的每一列。
+-- 執行方式：手動在 shopping 資料庫執行一次
+-- ============================================================
+
+CREATE INDEX `idx_order_status_orderdate` ON `order` (`status`, `orderdate`);
+
+-- 付款通知用 ecpay_trade_no 找訂單並鎖住 (findByEcpaytradenoForUpdate，避免跟逾時取消同時處理)，
+-- 沒有索引時是全表掃描，FOR UPDATE 還會鎖到掃過的列
+CREATE INDEX `idx_order_ecpay_trade_no` ON `order` (`ecpay_trade_no`);
@@ -0,0 +1,24 @@
+-- ============================================================
+-- 綠界付款通知收件匣 (EcpayCallbackInbox)
+-- 通知驗完 CheckMacValue 就 INSERT IGNORE 進來並回 1|OK，
+-- 同一筆交易 (MerchantTradeNo + TradeNo) 重送只會留一列。
+-- 背景 worker 用 (status, next_attempt_at) 找待處理的，FOR UPDATE SKIP LOCKED 分給多條執行緒。
+-- 執行方式：手動在 shopping 資料庫執行一次
+-- ============================================================
+
+CREATE TABLE `ecpay_callback_inbox` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `merchant_trade_no` varchar(20) NOT NULL,
+  `trade_no` varchar(20) NOT NULL DEFAULT '',
+  `rtn_code` varchar(10) DEFAULT NULL,
+  `payload` text NOT NULL COMMENT '綠界回傳的完整參數 (JSON)',
+  `status` varchar(10) NOT NULL DEFAULT 'PENDING' COMMENT 'PENDING / DONE / FAILED',
+  `attempts` int NOT NULL DEFAULT 0,
+  `last_error` varchar(500) DEFAULT NULL,
+  `received_at` datetime(3) NOT NULL,
+  `next_attempt_at` datetime(3) NOT NULL,
+  `processed_at` datetime(3) DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_ecpay_inbox_trade` (`merchant_trade_no`, `trade_no`),
+  KEY `idx_ecpay_inbox_status_next` (`status`, `next_attempt_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
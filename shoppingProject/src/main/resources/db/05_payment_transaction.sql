@@ -0,0 +1,31 @@
+-- ============================================================
+-- 付款交易紀錄 (PaymentTransactionService)
+-- 每次到綠界結帳 (prepareCheckoutForm) 產生一個 MerchantTradeNo 就記一列，付款通知用唯一索引直接找到訂單，
+-- 不再掃 order 表的 ecpay_trade_no；綠界的 TradeNo 記在這裡，不再蓋掉訂單上的 MerchantTradeNo。
+-- 執行方式：手動在 shopping 資料庫執行一次
+-- ============================================================
+
+CREATE TABLE `payment_transaction` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `merchant_trade_no` varchar(20) NOT NULL COMMENT '送給綠界的特店交易編號',
+  `orderid` int NOT NULL,
+  `amount` int NOT NULL,
+  `status` varchar(20) NOT NULL COMMENT 'CREATED / PAID / FAILED / REFUND_PENDING',
+  `ecpay_trade_no` varchar(20) DEFAULT NULL COMMENT '綠界的交易編號 (TradeNo)',
+  `rtn_code` varchar(10) DEFAULT NULL,
+  `rtn_msg` varchar(200) DEFAULT NULL,
+  `payment_type` varchar(50) DEFAULT NULL,
+  `created_at` datetime(3) NOT NULL,
+  `updated_at` datetime(3) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_payment_tx_merchant_trade_no` (`merchant_trade_no`),
+  KEY `idx_payment_tx_orderid` (`orderid`),
+  CONSTRAINT `fk_payment_tx_order` FOREIGN KEY (`orderid`) REFERENCES `order` (`orderid`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+-- 還在等付款的訂單：訂單上的 ecpay_trade_no 還是 MerchantTradeNo，補一筆交易紀錄，付款通知來了才找得到
+INSERT IGNORE INTO `payment_transaction`
+  (`merchant_trade_no`, `orderid`, `amount`, `status`, `created_at`, `updated_at`)
+SELECT `ecpay_trade_no`, `orderid`, `totalamount`, 'CREATED', NOW(3), NOW(3)
+FROM `order`
+WHERE `status` = 5 AND `ecpay_trade_no` IS NOT NULL;
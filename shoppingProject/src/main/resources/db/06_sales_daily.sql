@@ -0,0 +1,32 @@
+-- ============================================================
+-- 每日銷售彙總 (SalesDailyRollup)
+-- 後台首頁的總銷售額 / 總訂單數 / 銷售趨勢改讀這張表 (一天一列)，不再每次掃整張 order 表。
+-- 成立、付款、取消訂單時由程式累加；下面的 INSERT 是第一次建表時的回填，
+-- 之後要重算可以呼叫 POST /api/admin/stats/rebuild (可指定日期區間)。
+-- 日期照訂單成立日 (orderdate) 算，跟原本的統計一樣。
+-- 執行方式：手動在 shopping 資料庫執行一次
+-- ============================================================
+
+CREATE TABLE `sales_daily` (
+  `sales_date` date NOT NULL,
+  `paid_amount` bigint NOT NULL DEFAULT 0 COMMENT '已付款 (payment_status = PAID) 訂單金額合計',
+  `paid_count` int NOT NULL DEFAULT 0 COMMENT '已付款訂單數',
+  `created_count` int NOT NULL DEFAULT 0 COMMENT '成立的訂單數 (含未付款、已取消)',
+  `cancelled_count` int NOT NULL DEFAULT 0 COMMENT '已取消訂單數',
+  `updated_at` datetime(3) NOT NULL,
+  PRIMARY KEY (`sales_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+-- 依日期區間重算用
+CREATE INDEX `idx_order_orderdate` ON `order` (`orderdate`);
+
+INSERT INTO `sales_daily`
+  (`sales_date`, `paid_amount`, `paid_count`, `created_count`, `cancelled_count`, `updated_at`)
+SELECT DATE(`orderdate`),
+       COALESCE(SUM(CASE WHEN `payment_status` = 'PAID' THEN `totalamount` END), 0),
+       SUM(`payment_status` = 'PAID'),
+       COUNT(*),
+       SUM(`status` = 3),
+       NOW(3)
+FROM `order`
+GROUP BY DATE(`orderdate`);
@@ -0,0 +1,15 @@
+-- ============================================================
+-- 搶購訂單的處理紀錄 (FlashSaleOrderWorker)
+-- 每張搶購單 (token) 寫進 DB 時，跟訂單、扣庫存在同一個交易裡記一列，
+-- 日誌重播 (寫完 DB 後當機、Redis 狀態寫失敗或已過期) 時用 token 查這張表，寫過的不會再建第二張訂單、再扣一次庫存。
+-- orderid 是 NULL 代表這張搶購單在交易裡判定失敗 (例如 DB 庫存不足)。
+-- 執行方式：手動在 shopping 資料庫執行一次
+-- ============================================================
+
+CREATE TABLE `flash_sale_order` (
+  `token` char(36) NOT NULL COMMENT '搶購單 token',
+  `orderid` int DEFAULT NULL COMMENT '成立的訂單，NULL = 沒成立',
+  `message` varchar(200) DEFAULT NULL COMMENT '沒成立的原因',
+  `created_at` datetime(3) NOT NULL,
+  PRIMARY KEY (`token`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
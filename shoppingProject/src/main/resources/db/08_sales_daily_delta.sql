@@ -0,0 +1,18 @@
+-- ============================================================
+-- 每日銷售彙總的差額 (SalesDailyRollup，需要先有 db/06_sales_daily.sql)
+-- 訂單成立 / 付款 / 取消 / 退款時，跟訂單異動在同一個交易裡 INSERT 一列差額 (只新增，不鎖 sales_daily 的「今天」那一列)；
+-- 排程 (同時只有一個節點，MySQL GET_LOCK) 把差額加進 sales_daily 再刪掉。
+-- 差額跟訂單一起 commit / rollback，節點當機不會掉；重算時只刪掉跟訂單同一個快照裡看得到的差額，不會重複計算。
+-- 執行方式：手動在 shopping 資料庫執行一次
+-- ============================================================
+
+CREATE TABLE `sales_daily_delta` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `sales_date` date NOT NULL COMMENT '訂單成立日 (orderdate)',
+  `paid_amount` bigint NOT NULL DEFAULT 0,
+  `paid_count` int NOT NULL DEFAULT 0,
+  `created_count` int NOT NULL DEFAULT 0,
+  `cancelled_count` int NOT NULL DEFAULT 0,
+  PRIMARY KEY (`id`),
+  KEY `idx_sales_daily_delta_date` (`sales_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
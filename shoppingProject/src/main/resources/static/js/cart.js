@@ -436,10 +436,16 @@ $(document).ready(function () {
         const $btn = $(this);
         $btn.text('處理中...').prop('disabled', true);
 
+        // 每次按結帳一個新的 key，連線逾時被重送時後端只會建立一張訂單
+        const idempotencyKey = (window.crypto && crypto.randomUUID)
+            ? crypto.randomUUID()
+            : Date.now() + '-' + Math.random().toString(36).slice(2);
+
         // 呼叫後端建立訂單
         $.ajax({
             url: '/api/orders/checkout',
             method: 'POST',
+            headers: { 'Idempotency-Key': idempotencyKey },
             contentType: 'application/json',
             data: JSON.stringify(checkoutData),
             success: function (orderResponse) {
@@ -0,0 +1,139 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.tw.shopping.main.config.AdminExportProperties;
+import com.tw.shopping.main.service.export.AdminExportService;
+import com.tw.shopping.main.service.export.ExportFormat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 後台匯出走真的 JDBC 串流 (需要真實 DB，要先執行 db/01_product_series_id.sql)
+ * 先塞 100 萬筆訂單、100 萬個商品，再開一個 -Xmx64m 的子 JVM (main) 用 AdminExportService 匯出：
+ * 結果集要是被整個讀進記憶體 (fetchSize 沒設對) 就會 OutOfMemoryError
+ * 塞的資料在測試結束後刪掉
+ * 執行方式：mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class AdminExportStreamingTest {
+
+    private static final int ROWS = 1_000_000;
+    private static final String HEAP = "-Xmx64m";
+    private static final String PRODUCT_MARKER = "EXPORT-TEST-";
+
+    // 0~999999 的流水號 (6 個 0~9 交叉相乘)
+    private static final String DIGITS = "(SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4 "
+            + "UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9)";
+    private static final String SEQUENCE = "(SELECT d1.d + d2.d * 10 + d3.d * 100 + d4.d * 1000 + d5.d * 10000 + d6.d * 100000 AS n FROM "
+            + DIGITS + " d1 CROSS JOIN " + DIGITS + " d2 CROSS JOIN " + DIGITS + " d3 CROSS JOIN "
+            + DIGITS + " d4 CROSS JOIN " + DIGITS + " d5 CROSS JOIN " + DIGITS + " d6) seq";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private Environment environment;
+
+    // 塞資料之前最大的訂單編號，之後的都是這個測試塞的
+    private Integer maxOrderIdBefore;
+
+    @BeforeEach
+    public void setup() {
+        Long userId = jdbcTemplate.queryForObject("SELECT MIN(userid) FROM userinfo", Long.class);
+        Integer categoryId = jdbcTemplate.queryForObject("SELECT MIN(categoryid) FROM category", Integer.class);
+        assertNotNull(userId, "資料庫至少要有一個使用者");
+        assertNotNull(categoryId, "資料庫至少要有一個分類");
+
+        maxOrderIdBefore = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(orderid), 0) FROM `order`", Integer.class);
+        jdbcTemplate.update("INSERT INTO `order` (userid, orderdate, totalamount, status, paymentmethods, orderaddress, payment_status) "
+                + "SELECT ?, TIMESTAMP('2024-01-01') + INTERVAL n SECOND, n % 100000, n % 6, 'Credit', "
+                + "CONCAT('台北市信義區松高路 ', n, ' 號'), IF(n % 3 = 0, 'PAID', 'PENDING') FROM " + SEQUENCE, userId);
+        jdbcTemplate.update("INSERT INTO product (pname, description, price, categoryid, productimage, color, specification, "
+                + "rating, stock, createdat, updatedat) "
+                + "SELECT CONCAT(?, n), '', n % 5000, ?, '', '黑色', CONCAT('規格 \"', n % 7, '\"'), n % 5, n, NOW(), NOW() FROM "
+                + SEQUENCE, PRODUCT_MARKER, categoryId);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        jdbcTemplate.update("DELETE FROM `order` WHERE orderid > ?", maxOrderIdBefore);
+        jdbcTemplate.update("DELETE FROM product WHERE pname LIKE ?", PRODUCT_MARKER + "%");
+    }
+
+    // 訂單包含原本就有的資料 (地址可能有換行)，用一列一行的 NDJSON 數
+    @Test
+    public void streamsMillionOrdersUnderFixedHeap() throws Exception {
+        long expected = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `order`", Long.class);
+        assertTrue(expected >= ROWS);
+        assertEquals("rows=" + expected, runWithFixedHeap("order", ExportFormat.NDJSON, expected));
+    }
+
+    @Test
+    public void streamsMillionProductsUnderFixedHeap() throws Exception {
+        assertEquals("rows=" + ROWS, runWithFixedHeap("product", ExportFormat.CSV, ROWS));
+    }
+
+    // 子 JVM 跑 main，連線資訊跟主程式的設定一樣 (密碼用環境變數傳)，回傳它印出來的最後一行
+    private String runWithFixedHeap(String type, ExportFormat format, long expected) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, HEAP, "-XX:+UseSerialGC",
+                "-cp", System.getProperty("java.class.path"),
+                AdminExportStreamingTest.class.getName(), type, format.name(), String.valueOf(expected),
+                environment.getRequiredProperty("spring.datasource.url"),
+                environment.getRequiredProperty("spring.datasource.username"))
+                .redirectErrorStream(true);
+        builder.environment().put("EXPORT_TEST_DB_PASSWORD", environment.getProperty("spring.datasource.password", ""));
+        Process process = builder.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES), "匯出逾時");
+        assertEquals(0, process.exitValue(), output);
+        List<String> lines = output.lines().toList();
+        return lines.get(lines.size() - 1);
+    }
+
+    /**
+     * 子 JVM：不啟動 Spring，直接用 AdminExportService 匯出到只計算位元組的串流，確認筆數跟行數
+     * 參數：order|product、格式、預期筆數、JDBC URL、帳號
+     */
+    public static void main(String[] args) throws Exception {
+        String type = args[0];
+        ExportFormat format = ExportFormat.valueOf(args[1]);
+        long expected = Long.parseLong(args[2]);
+        DataSource dataSource = new DriverManagerDataSource(args[3], args[4], System.getenv("EXPORT_TEST_DB_PASSWORD"));
+
+        AdminExportService service = new AdminExportService(dataSource, new AdminExportProperties(), new SimpleMeterRegistry());
+        AdminExportWriterTest.CountingOutputStream out = new AdminExportWriterTest.CountingOutputStream();
+        long rows = "order".equals(type)
+                ? service.exportOrders(null, null, format, f -> out)
+                : service.exportProducts(PRODUCT_MARKER, null, format, f -> out);
+
+        // CSV 多一行欄位名稱
+        long expectedLines = format == ExportFormat.CSV ? expected + 1 : expected;
+        if (rows != expected || out.newlines != expectedLines) {
+            throw new IllegalStateException("筆數不對: " + rows + " 筆 / " + out.newlines + " 行 (應該是 " + expected + ")");
+        }
+        System.out.println("bytes=" + out.bytes);
+        System.out.println("rows=" + rows);
+    }
+}
@@ -0,0 +1,154 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tw.shopping.main.service.export.ExportFormat;
+import com.tw.shopping.main.service.export.ExportWriter;
+
+/**
+ * 後台匯出的 CSV / NDJSON 格式 (不需要 DB)
+ * 100 萬列的測試開一個 -Xmx32m 的子 JVM 來跑 (main)，整份資料大約 100MB，
+ * 要是有任何地方把資料留在記憶體裡就會 OutOfMemoryError
+ * 從 DB 串流讀出來的那一段見 AdminExportStreamingTest
+ */
+public class AdminExportWriterTest {
+
+    private static final String[] COLUMNS = { "orderId", "orderDate", "userId", "totalAmount", "status", "orderAddress" };
+    private static final int ROWS = 1_000_000;
+    private static final String HEAP = "-Xmx32m";
+
+    @Test
+    public void writesCsvWithEscaping() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportWriter writer = ExportFormat.CSV.open(out, COLUMNS);
+        writer.write(new Object[] { 1, LocalDateTime.of(2024, 5, 1, 12, 30, 45), 7L, 2680, "PAID", "台北市信義區, 101 號" });
+        writer.write(new Object[] { 2, null, 8L, 0, "PENDING", "他說 \"你好\"\n第二行" });
+        writer.write(new Object[] { 3, null, null, -5, "CANCELLED", "=HYPERLINK(\"http://x\")" });
+        writer.finish();
+
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertEquals("\uFEFF"
+                + "orderId,orderDate,userId,totalAmount,status,orderAddress\r\n"
+                + "1,2024-05-01 12:30:45,7,2680,PAID,\"台北市信義區, 101 號\"\r\n"
+                + "2,,8,0,PENDING,\"他說 \"\"你好\"\"\n第二行\"\r\n"
+                + "3,,,-5,CANCELLED,\"'=HYPERLINK(\"\"http://x\"\")\"\r\n", csv);
+    }
+
+    @Test
+    public void writesNdjsonOneObjectPerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportWriter writer = ExportFormat.NDJSON.open(out, COLUMNS);
+        writer.write(new Object[] { 1, LocalDateTime.of(2024, 5, 1, 12, 30, 45), 7L, 2680, "PAID", "台北市 \"101\"\n" });
+        writer.write(new Object[] { 2, null, null, 0, "PENDING", null });
+        writer.finish();
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(2, lines.size());
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode first = mapper.readTree(lines.get(0));
+        assertEquals(1, first.get("orderId").intValue());
+        assertEquals("2024-05-01T12:30:45", first.get("orderDate").textValue());
+        assertEquals(7L, first.get("userId").longValue());
+        assertEquals("台北市 \"101\"\n", first.get("orderAddress").textValue());
+
+        JsonNode second = mapper.readTree(lines.get(1));
+        assertTrue(second.get("orderDate").isNull());
+        assertTrue(second.get("orderAddress").isNull());
+        assertEquals("PENDING", second.get("status").textValue());
+    }
+
+    @Test
+    public void exportsMillionCsvRowsUnderFixedHeap() throws Exception {
+        assertEquals("rows=" + ROWS, runWithFixedHeap(ExportFormat.CSV));
+    }
+
+    @Test
+    public void exportsMillionNdjsonRowsUnderFixedHeap() throws Exception {
+        assertEquals("rows=" + ROWS, runWithFixedHeap(ExportFormat.NDJSON));
+    }
+
+    // 子 JVM 跑 main，回傳它印出來的最後一行
+    private String runWithFixedHeap(ExportFormat format) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, HEAP, "-XX:+UseSerialGC",
+                "-cp", System.getProperty("java.class.path"),
+                AdminExportWriterTest.class.getName(), format.name())
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(process.waitFor(2, TimeUnit.MINUTES), "匯出逾時");
+        assertEquals(0, process.exitValue(), output);
+        List<String> lines = output.lines().toList();
+        return lines.get(lines.size() - 1);
+    }
+
+    /**
+     * 子 JVM：產生 ROWS 列假資料 (每列都是新的字串 / 時間物件，跟從 ResultSet 讀出來一樣)，
+     * 寫到只計算位元組、不保留內容的串流，最後確認行數
+     */
+    public static void main(String[] args) throws IOException {
+        ExportFormat format = ExportFormat.valueOf(args[0]);
+        CountingOutputStream out = new CountingOutputStream();
+        ExportWriter writer = format.open(out, COLUMNS);
+
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        Object[] values = new Object[COLUMNS.length];
+        for (int i = 1; i <= ROWS; i++) {
+            values[0] = i;
+            values[1] = start.plusSeconds(i);
+            values[2] = (long) (i % 5000);
+            values[3] = (i * 37) % 100_000;
+            values[4] = i % 3 == 0 ? "PAID" : "PENDING";
+            values[5] = "台北市信義區松高路 " + i + " 號, " + (i % 20) + " 樓";
+            writer.write(values);
+        }
+        writer.finish();
+
+        // CSV 多一行欄位名稱
+        long expectedLines = format == ExportFormat.CSV ? ROWS + 1 : ROWS;
+        if (out.newlines != expectedLines) {
+            throw new IllegalStateException("行數不對: " + out.newlines + " (應該是 " + expectedLines + ")");
+        }
+        System.out.println("bytes=" + out.bytes);
+        System.out.println("rows=" + ROWS);
+    }
+
+    // AdminExportStreamingTest 也用
+    static final class CountingOutputStream extends OutputStream {
+        long bytes;
+        long newlines;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if (b == '\n') {
+                newlines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    newlines++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.tw.shopping.main.cache.CacheEnvelope;
+import com.tw.shopping.main.cache.CacheTypeRegistry;
+import com.tw.shopping.main.config.CacheConfig;
+import com.tw.shopping.main.dto.CategoryDto;
+import com.tw.shopping.main.dto.CategoryWithCountDto;
+import com.tw.shopping.main.dto.ProductDetailDto;
+import com.tw.shopping.main.dto.ProductDetailDto.ColorOption;
+import com.tw.shopping.main.dto.ProductDetailDto.Images;
+import com.tw.shopping.main.dto.ProductDetailDto.Options;
+import com.tw.shopping.main.dto.ProductDetailDto.RatingDto;
+import com.tw.shopping.main.dto.ProductDetailDto.RelatedProductDto;
+import com.tw.shopping.main.dto.ProductDto;
+import com.tw.shopping.main.entity.CategoryEntity;
+import com.tw.shopping.main.entity.ProductEntity;
+
+/**
+ * Redis 快取值格式的效能量測 (不需要 DB / Redis)
+ * 每個快取比較：原本的 JDK 序列化 vs 登記型別的 Smile，印出每筆大小與編碼 / 解碼時間
+ * 執行方式：mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class CacheSerializationBenchmarkTest {
+
+    private static final int WARMUP = 2_000;
+    private static final int ROUNDS = 20_000;
+
+    private final CacheTypeRegistry registry = new CacheConfig().cacheTypeRegistry();
+    private final JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+
+    @Test
+    public void compareJdkAndSmilePerCache() {
+        // 快取名稱 -> { 原本存進 Redis 的值 (JDK), 現在存的值 (Smile) }
+        // 首頁商品快取原本存的是 Entity，所以拿 Entity 當對照
+        Map<String, Object[]> samples = new LinkedHashMap<>();
+        ProductDetailDto detail = productDetail();
+        List<RelatedProductDto> related = relatedProducts();
+        List<CategoryDto> categories = categoryDtos(4);
+        List<CategoryWithCountDto> subCategories = subCategories(12);
+        samples.put("product_detail", new Object[] { detail, detail });
+        samples.put("related_products", new Object[] { related, related });
+        samples.put("home_all_products", new Object[] { productEntities(10), productDtos(10) });
+        samples.put("home_categories", new Object[] { categories, categories });
+        samples.put("subCategories", new Object[] { subCategories, subCategories });
+
+        System.out.println("==============================================================================");
+        System.out.printf("%-22s %-18s %8s %12s %12s%n", "cache", "format", "bytes", "encode(ns)", "decode(ns)");
+
+        samples.forEach((cacheName, pair) -> {
+            long loadedAt = System.currentTimeMillis();
+            Result jdkResult = measure(jdk, new CacheEnvelope(pair[0], loadedAt, 12L));
+            CacheEnvelope envelope = new CacheEnvelope(pair[1], loadedAt, 12L);
+            RedisSerializer<Object> smile = registry.serializerFor(cacheName);
+            Result smileResult = measure(smile, envelope);
+            print(cacheName, "jdk", jdkResult);
+            print(cacheName, "smile", smileResult);
+
+            // 解回來要跟原本一樣
+            CacheEnvelope decoded = (CacheEnvelope) smile.deserialize(smileResult.bytes());
+            assertEquals(pair[1], decoded.value(), cacheName + " 解碼後內容不一致");
+            assertEquals(loadedAt, decoded.loadedAt());
+            assertTrue(smileResult.size() < jdkResult.size(), cacheName + " 的 Smile 格式應該比 JDK 小");
+        });
+        System.out.println("==============================================================================");
+    }
+
+    private Result measure(RedisSerializer<Object> serializer, Object value) {
+        byte[] bytes = serializer.serialize(value);
+        for (int i = 0; i < WARMUP; i++) {
+            serializer.deserialize(serializer.serialize(value));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            bytes = serializer.serialize(value);
+        }
+        long encodeNanos = (System.nanoTime() - start) / ROUNDS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            serializer.deserialize(bytes);
+        }
+        long decodeNanos = (System.nanoTime() - start) / ROUNDS;
+
+        return new Result(bytes, encodeNanos, decodeNanos);
+    }
+
+    private void print(String cacheName, String format, Result result) {
+        System.out.printf("%-22s %-18s %8d %12d %12d%n", cacheName, format, result.size(), result.encodeNanos(), result.decodeNanos());
+    }
+
+    private record Result(byte[] bytes, long encodeNanos, long decodeNanos) {
+        int size() {
+            return bytes.length;
+        }
+    }
+
+    // ---------------- 測試資料 (大小接近實際商品資料) ----------------
+    // 每筆字串都要是不同內容：從 DB 讀出來的資料不會共用同一個 String，JDK 序列化的參照去重在實際上用不到
+
+    private ProductDetailDto productDetail() {
+        ProductDetailDto dto = new ProductDetailDto();
+        dto.setProductid(470);
+        dto.setSeriesId(468);
+        dto.setPname("日式手工不鏽鋼主廚刀");
+        dto.setDescription("職人手工鍛造，刀身採用三層複合鋼材，鋒利耐用，適合切肉、切菜與日常料理使用。");
+        dto.setSpecification("刀身長 21cm / 重量 180g");
+        dto.setProductimage("https://cdn.example.com/products/470/main.jpg");
+        dto.setColor("黑色");
+        dto.setShipping("<p>全店滿2000元宅配免運</p>");
+        dto.setPrice(1880);
+        dto.setStock(35);
+        dto.setCategoryid(12);
+        dto.setMainCategoryCode("kitchen");
+        dto.setMainCategoryName("廚房用品");
+        dto.setSubCategoryCode("knife");
+        dto.setSubCategoryName("刀具");
+        dto.setAverageRating(4.5);
+
+        String[] colors = { "黑色", "銀色", "木紋", "白色", "紅色" };
+        List<ColorOption> options = new ArrayList<>();
+        List<String> images = new ArrayList<>();
+        List<RatingDto> reviews = new ArrayList<>();
+        for (int i = 0; i < colors.length; i++) {
+            ColorOption option = new ColorOption();
+            option.setProductid(468 + i);
+            option.setValue(colors[i]);
+            option.setName(colors[i]);
+            option.setSpecification("刀身長 21cm / 重量 180g");
+            option.setPrice(1880);
+            option.setStock(10 + i);
+            options.add(option);
+            images.add("https://cdn.example.com/products/" + (468 + i) + "/main.jpg");
+
+            RatingDto rating = new RatingDto();
+            rating.setColor(colors[i]);
+            rating.setRating(4 + (i % 2));
+            reviews.add(rating);
+        }
+        Options opts = new Options();
+        opts.setColor(options);
+        dto.setOptions(opts);
+        Images imgs = new Images();
+        imgs.setMain(images);
+        imgs.setThumb(images);
+        dto.setImages(imgs);
+        dto.setReview(reviews);
+        dto.setReviewCount(reviews.size());
+        return dto;
+    }
+
+    private List<RelatedProductDto> relatedProducts() {
+        List<RelatedProductDto> list = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            list.add(new RelatedProductDto(500 + i, "同分類推薦商品 " + i + " 的描述文字，長度大約跟實際資料差不多。",
+                    "推薦商品 " + i, 990 + i * 10, "https://cdn.example.com/products/" + (500 + i) + "/main.jpg"));
+        }
+        return list;
+    }
+
+    private List<ProductDto> productDtos(int count) {
+        List<ProductDto> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ProductDto dto = new ProductDto();
+            dto.setProductid(1000 + i);
+            dto.setPname("首頁主打商品 " + i);
+            dto.setDescription("首頁主打商品 " + i + " 的描述文字，長度大約跟實際資料差不多。");
+            dto.setPrice(1200 + i);
+            dto.setColor("白色");
+            dto.setProductimage("https://cdn.example.com/products/" + (1000 + i) + "/main.jpg");
+            list.add(dto);
+        }
+        return list;
+    }
+
+    private List<ProductEntity> productEntities(int count) {
+        CategoryEntity category = new CategoryEntity();
+        category.setCategoryid(12);
+        category.setCode("knife");
+        category.setCname("刀具");
+        category.setParentid(1);
+
+        List<ProductEntity> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ProductEntity entity = new ProductEntity();
+            entity.setProductid(1000 + i);
+            entity.setPname("首頁主打商品 " + i);
+            entity.setDescription("首頁主打商品 " + i + " 的描述文字，長度大約跟實際資料差不多。");
+            entity.setPrice(1200 + i);
+            entity.setColor("白色");
+            entity.setSpecification("規格說明");
+            entity.setRating(4);
+            entity.setStock(20);
+            entity.setProductimage("https://cdn.example.com/products/" + (1000 + i) + "/main.jpg");
+            entity.setCreatedAt(LocalDateTime.now());
+            entity.setUpdatedAt(LocalDateTime.now());
+            entity.setCategory(category);
+            list.add(entity);
+        }
+        return list;
+    }
+
+    private List<CategoryDto> categoryDtos(int count) {
+        List<CategoryDto> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(new CategoryDto(i + 1, "大分類 " + i, "main" + i, "https://cdn.example.com/categories/" + i + ".jpg", null));
+        }
+        return list;
+    }
+
+    private List<CategoryWithCountDto> subCategories(int count) {
+        List<CategoryWithCountDto> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(new CategoryWithCountDto("sub" + i, "小分類 " + i, 40L + i));
+        }
+        return list;
+    }
+}
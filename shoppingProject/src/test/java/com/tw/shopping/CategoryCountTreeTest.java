@@ -0,0 +1,58 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.tw.shopping.main.entity.CategoryEntity;
+import com.tw.shopping.main.repository.CategoryRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.service.category.CategoryCountTree;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 分類商品數：重建途中 commit 的異動不能跟著舊的那棵一起丟掉 (不需要 DB)
+ */
+public class CategoryCountTreeTest {
+
+    @Test
+    public void adjustDuringRebuildSurvivesSwap() {
+        CategoryRepository categoryRepository = mock(CategoryRepository.class);
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(categoryRepository.findAll()).thenReturn(List.of(category(1, "men", null), category(10, "men-top", 1)));
+
+        CategoryCountTree tree = new CategoryCountTree(categoryRepository, productRepository, new SimpleMeterRegistry());
+
+        // 第一次載入：men-top 有 5 個商品
+        List<Object[]> initial = new ArrayList<>();
+        initial.add(new Object[] { 10, 5L });
+        when(productRepository.countProductsGroupByCategory()).thenReturn(initial);
+        assertEquals(5L, tree.totalCount(1));
+
+        // 重建時 GROUP BY 已經算完 (還是 5)，換上新的那棵之前又新增了一個商品
+        when(productRepository.countProductsGroupByCategory()).thenAnswer(invocation -> {
+            List<Object[]> rows = new ArrayList<>();
+            rows.add(new Object[] { 10, 5L });
+            tree.adjustAfterCommit(10, 1);
+            return rows;
+        });
+        tree.rebuild();
+
+        assertEquals(6L, tree.totalCount(10));
+        assertEquals(6L, tree.totalCount(1));
+    }
+
+    private static CategoryEntity category(int id, String code, Integer parentid) {
+        CategoryEntity c = new CategoryEntity();
+        c.setCategoryid(id);
+        c.setCode(code);
+        c.setParentid(parentid);
+        return c;
+    }
+}
@@ -0,0 +1,111 @@
+package com.tw.shopping;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.tw.shopping.main.util.EcpayCheckMacEncoder;
+
+/**
+ * CheckMacValue 計算的 JMH 微基準 (不需要 DB)
+ * 原本的 URLEncoder + replaceAll vs EcpayCheckMacEncoder，結帳表單 (含中文商品名稱) 跟付款通知驗證兩種參數
+ * 有開 GC profiler，結果的 gc.alloc.rate.norm 是每次呼叫配置的位元組數
+ * 執行方式：mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class EcpayCheckMacBenchmarkTest {
+
+    private static final String HASH_KEY = "pwFHCqoQZGmho4w6";
+    private static final String HASH_IV = "EkRm7iFT261dpevs";
+
+    private Map<String, String> checkoutParams;
+    private Map<String, String> callbackParams;
+
+    @Setup
+    public void setup() {
+        checkoutParams = new HashMap<>();
+        checkoutParams.put("MerchantID", "3002607");
+        checkoutParams.put("MerchantTradeNo", "TW10112345678");
+        checkoutParams.put("MerchantTradeDate", "2024/05/01 12:30:45");
+        checkoutParams.put("TotalAmount", "2680");
+        checkoutParams.put("ItemName", "經典白T x 2#修身牛仔褲 x 1#帆布托特包 x 1");
+        checkoutParams.put("TradeDesc", "線上購物結帳");
+        checkoutParams.put("ReturnURL", "https://abc.ngrok-free.app/api/ecpay/callback");
+        checkoutParams.put("ClientBackURL", "https://abc.ngrok-free.app/index.html");
+        checkoutParams.put("ChoosePayment", "ALL");
+        checkoutParams.put("PaymentType", "aio");
+        checkoutParams.put("EncryptType", "1");
+        checkoutParams.put("Language", "CHT");
+
+        callbackParams = new HashMap<>();
+        callbackParams.put("MerchantID", "3002607");
+        callbackParams.put("MerchantTradeNo", "TW10112345678");
+        callbackParams.put("RtnCode", "1");
+        callbackParams.put("RtnMsg", "交易成功");
+        callbackParams.put("TradeNo", "2405011230451234");
+        callbackParams.put("TradeAmt", "2680");
+        callbackParams.put("PaymentDate", "2024/05/01 12:31:10");
+        callbackParams.put("PaymentType", "Credit_CreditCard");
+        callbackParams.put("PaymentTypeChargeFee", "54");
+        callbackParams.put("TradeDate", "2024/05/01 12:30:45");
+        callbackParams.put("SimulatePaid", "0");
+        callbackParams.put("CheckMacValue", EcpayCheckMacEncoder.generate(callbackParams, HASH_KEY, HASH_IV));
+    }
+
+    @Benchmark
+    public String checkoutLegacy() {
+        // 原本的做法會改到傳進來的 Map，每次複製一份
+        return EcpayCheckMacEncoderTest.legacy(new HashMap<>(checkoutParams), HASH_KEY, HASH_IV);
+    }
+
+    @Benchmark
+    public String checkoutEncoder() {
+        return EcpayCheckMacEncoder.generate(checkoutParams, HASH_KEY, HASH_IV);
+    }
+
+    @Benchmark
+    public boolean verifyLegacy() {
+        Map<String, String> clean = new HashMap<>(callbackParams);
+        String received = clean.remove("CheckMacValue");
+        return EcpayCheckMacEncoderTest.legacy(clean, HASH_KEY, HASH_IV).equals(received);
+    }
+
+    @Benchmark
+    public boolean verifyEncoder() {
+        return EcpayCheckMacEncoder.verify(callbackParams, HASH_KEY, HASH_IV);
+    }
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(EcpayCheckMacBenchmarkTest.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
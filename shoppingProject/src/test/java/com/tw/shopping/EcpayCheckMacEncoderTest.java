@@ -0,0 +1,172 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+import com.tw.shopping.main.util.EcpayCheckMacEncoder;
+
+/**
+ * CheckMacValue 新舊算法比對 (不需要 DB)
+ * legacy() 是原本 EcpayUtil 的做法 (URLEncoder → toLowerCase → replaceAll → SHA-256)，
+ * 新的 encoder 對每組測資都要算出一模一樣的結果
+ */
+public class EcpayCheckMacEncoderTest {
+
+    private static final String HASH_KEY = "pwFHCqoQZGmho4w6";
+    private static final String HASH_IV = "EkRm7iFT261dpevs";
+
+    // 綠界文件的範例
+    @Test
+    public void matchesEcpayDocumentExample() {
+        Map<String, String> params = new HashMap<>();
+        params.put("ChoosePayment", "ALL");
+        params.put("EncryptType", "1");
+        params.put("ItemName", "Apple iphone 15");
+        params.put("MerchantID", "3002607");
+        params.put("MerchantTradeDate", "2023/03/12 15:30:23");
+        params.put("MerchantTradeNo", "ecpay20230312153023");
+        params.put("PaymentType", "aio");
+        params.put("ReturnURL", "https://www.ecpay.com.tw/receive.php");
+        params.put("TotalAmount", "30000");
+        params.put("TradeDesc", "促銷方案");
+
+        String expected = "6C51C9E6888DE861FD62FB1DD17029FC742634498FD813DC43D4243B5685B840";
+        assertEquals(expected, legacy(new HashMap<>(params), HASH_KEY, HASH_IV));
+        assertEquals(expected, EcpayCheckMacEncoder.generate(params, HASH_KEY, HASH_IV));
+    }
+
+    @Test
+    public void matchesLegacyForGoldenVectors() {
+        List<Map<String, String>> vectors = new ArrayList<>();
+        vectors.add(Map.of());
+        vectors.add(Map.of("ItemName", "經典白T x 2#牛仔褲 x 1", "TotalAmount", "1780", "TradeDesc", "線上購物結帳"));
+        vectors.add(Map.of("ReturnURL", "https://abc.ngrok-free.app/api/ecpay/callback?a=1&b=2#frag",
+                "ClientBackURL", "http://localhost:8080/index.html"));
+        vectors.add(Map.of("Symbols", " !\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~"));
+        vectors.add(Map.of("Mixed", "AbC xYz 019 -_.*!()", "lowercaseKey", "Z", "UPPER", "a"));
+        vectors.add(Map.of("Emoji", "😀 限量 🎁", "Accents", "café naïve ü"));
+        vectors.add(Map.of("Empty", "", "Space", " ", "Plus", "+", "Percent", "%2d%5f"));
+        vectors.add(Map.of("Lone", "a\uD800b\uDC00c"));
+
+        Map<String, String> withNull = new HashMap<>();
+        withNull.put("CustomField1", null);
+        withNull.put("MerchantTradeNo", "TW1011234");
+        vectors.add(withNull);
+
+        // 超過緩衝區 (1024 bytes) 好幾倍
+        vectors.add(Map.of("ItemName", "長商品名稱 Long item / ".repeat(300)));
+
+        for (Map<String, String> vector : vectors) {
+            assertSame(vector, HASH_KEY, HASH_IV);
+        }
+        assertSame(Map.of("A", "b"), "", "");
+        assertSame(Map.of("A", "b"), "key with space", "iv/with&symbols");
+    }
+
+    @Test
+    public void matchesLegacyForRandomParams() {
+        Random random = new Random(20240101L);
+        String alphabet = "abcXYZ0189 -_.*!()~'+/=&?%#@:;,\"<>中文測試éü😀";
+        int[] codePoints = alphabet.codePoints().toArray();
+
+        for (int round = 0; round < 2_000; round++) {
+            Map<String, String> params = new HashMap<>();
+            int fields = random.nextInt(12);
+            for (int f = 0; f < fields; f++) {
+                params.put(randomString(random, codePoints, 1 + random.nextInt(15)),
+                        randomString(random, codePoints, random.nextInt(60)));
+            }
+            assertSame(params, HASH_KEY, HASH_IV);
+        }
+    }
+
+    @Test
+    public void ignoresCheckMacValueWithoutMutatingParams() {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("MerchantTradeNo", "TW1011234");
+        params.put("RtnCode", "1");
+        String expected = EcpayCheckMacEncoder.generate(params, HASH_KEY, HASH_IV);
+
+        params.put("CheckMacValue", expected);
+        assertEquals(expected, EcpayCheckMacEncoder.generate(params, HASH_KEY, HASH_IV));
+        assertEquals(expected, params.get("CheckMacValue"));
+        assertEquals(3, params.size());
+    }
+
+    @Test
+    public void verifiesReceivedCheckMacValue() {
+        Map<String, String> params = new HashMap<>();
+        params.put("MerchantTradeNo", "TW1011234");
+        params.put("RtnCode", "1");
+        params.put("TradeNo", "2401011234567890");
+        assertFalse(EcpayCheckMacEncoder.verify(params, HASH_KEY, HASH_IV));
+
+        String mac = EcpayCheckMacEncoder.generate(params, HASH_KEY, HASH_IV);
+        params.put("CheckMacValue", mac);
+        assertTrue(EcpayCheckMacEncoder.verify(params, HASH_KEY, HASH_IV));
+
+        // 大小寫、長度、內容任何一點不同都不行
+        params.put("CheckMacValue", mac.toLowerCase());
+        assertFalse(EcpayCheckMacEncoder.verify(params, HASH_KEY, HASH_IV));
+        params.put("CheckMacValue", mac.substring(1));
+        assertFalse(EcpayCheckMacEncoder.verify(params, HASH_KEY, HASH_IV));
+        params.put("CheckMacValue", mac);
+        params.put("RtnCode", "0");
+        assertFalse(EcpayCheckMacEncoder.verify(params, HASH_KEY, HASH_IV));
+    }
+
+    private void assertSame(Map<String, String> params, String hashKey, String hashIV) {
+        String expected = legacy(new HashMap<>(params), hashKey, hashIV);
+        assertEquals(expected, EcpayCheckMacEncoder.generate(params, hashKey, hashIV), () -> "params: " + params);
+    }
+
+    private String randomString(Random random, int[] codePoints, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.appendCodePoint(codePoints[random.nextInt(codePoints.length)]);
+        }
+        return sb.toString();
+    }
+
+    // 原本 EcpayUtil.generateCheckMacValue 的實作 (對照組)
+    static String legacy(Map<String, String> params, String hashKey, String hashIV) {
+        params.remove("CheckMacValue");
+
+        List<String> keys = new ArrayList<>(params.keySet());
+        Collections.sort(keys);
+
+        StringBuilder data = new StringBuilder();
+        data.append("HashKey=").append(hashKey);
+        for (String key : keys) {
+            data.append("&").append(key).append("=").append(params.get(key));
+        }
+        data.append("&HashIV=").append(hashIV);
+
+        String encodedData = URLEncoder.encode(data.toString(), StandardCharsets.UTF_8)
+                .toLowerCase()
+                .replaceAll("%2d", "-")
+                .replaceAll("%5f", "_")
+                .replaceAll("%2e", ".")
+                .replaceAll("%21", "!")
+                .replaceAll("%2a", "*")
+                .replaceAll("%28", "(")
+                .replaceAll("%29", ")")
+                .replaceAll("%20", "+");
+
+        return DigestUtils.sha256Hex(encodedData).toUpperCase();
+    }
+}
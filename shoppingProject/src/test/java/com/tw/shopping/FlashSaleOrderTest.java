@@ -0,0 +1,262 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tw.shopping.main.config.FlashSaleProperties;
+import com.tw.shopping.main.dto.FlashSaleOrderRequestDto;
+import com.tw.shopping.main.dto.FlashSaleStatusDto;
+import com.tw.shopping.main.entity.OrderEntity;
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.entity.UserEntity;
+import com.tw.shopping.main.repository.OrderItemRepository;
+import com.tw.shopping.main.repository.OrderRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.UserRepository;
+import com.tw.shopping.main.service.OrderService;
+import com.tw.shopping.main.service.flashsale.FlashSaleJournal;
+import com.tw.shopping.main.service.flashsale.FlashSaleOrderWorker;
+import com.tw.shopping.main.service.flashsale.FlashSaleService;
+import com.tw.shopping.main.service.flashsale.FlashSaleStore;
+import com.tw.shopping.main.service.flashsale.FlashSaleTicket;
+import com.tw.shopping.main.service.inventory.InventoryReservationStrategy;
+import com.tw.shopping.main.service.stats.SalesDailyRollup;
+import com.tw.shopping.main.service.stock.ProductStockCache;
+
+/**
+ * 限時搶購下單路徑：Redis 扣庫存 → 日誌 → 背景寫 DB (不需要 DB / Redis)
+ * Redis、DB 都用 mock，日誌是真的檔案 (暫存目錄)，重啟用同一個目錄再開一次日誌模擬
+ */
+public class FlashSaleOrderTest {
+
+    private static final Long USER_ID = 7L;
+    private static final Integer PRODUCT_ID = 3;
+    private static final int PRICE = 250;
+
+    @TempDir
+    Path journalDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<FlashSaleJournal> journals = new ArrayList<>();
+
+    private FlashSaleProperties properties;
+    private FlashSaleStore store;
+    private OrderService orderService;
+    private OrderRepository orderRepository;
+    private UserRepository userRepository;
+    private ProductRepository productRepository;
+    private InventoryReservationStrategy inventoryStrategy;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        properties = new FlashSaleProperties();
+        properties.setJournalDir(journalDir.toString());
+
+        store = mock(FlashSaleStore.class);
+        orderService = mock(OrderService.class);
+        orderRepository = mock(OrderRepository.class);
+        userRepository = mock(UserRepository.class);
+        productRepository = mock(ProductRepository.class);
+        inventoryStrategy = mock(InventoryReservationStrategy.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+
+        UserEntity user = new UserEntity();
+        user.setUserid(USER_ID);
+        ProductEntity product = new ProductEntity();
+        product.setProductid(PRODUCT_ID);
+        product.setPrice(PRICE);
+        when(userRepository.findAllById(anyList())).thenReturn(List.of(user));
+        when(productRepository.findAllById(anyList())).thenReturn(List.of(product));
+        when(productRepository.findById(PRODUCT_ID)).thenReturn(Optional.of(product));
+        when(orderService.newOrder(any(), any(), anyInt())).thenAnswer(invocation -> {
+            OrderEntity order = new OrderEntity();
+            order.setTotalAmount(invocation.getArgument(2));
+            return order;
+        });
+        // saveAll 之後才有訂單編號
+        AtomicInteger orderIds = new AtomicInteger(1000);
+        when(orderRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<OrderEntity> orders = new ArrayList<>();
+            invocation.<Iterable<OrderEntity>>getArgument(0).forEach(orders::add);
+            orders.forEach(order -> order.setOrderId(orderIds.incrementAndGet()));
+            return orders;
+        });
+    }
+
+    @AfterEach
+    public void cleanup() throws Exception {
+        for (FlashSaleJournal journal : journals) {
+            journal.destroy();
+        }
+    }
+
+    @Test
+    public void acceptedOrderIsJournaledThenWrittenToDb() throws Exception {
+        when(inventoryStrategy.reserve(anyList())).thenReturn(new boolean[] { true });
+        FlashSaleJournal journal = openJournal();
+        FlashSaleOrderWorker worker = newWorker(journal);
+        FlashSaleService service = new FlashSaleService(store, journal, worker, productRepository, properties);
+
+        FlashSaleStatusDto queued = service.placeOrder(request(2));
+
+        // 回應之前已經扣了 Redis、寫進日誌、排進佇列
+        assertEquals(FlashSaleStore.STATUS_QUEUED, queued.getStatus());
+        verify(store).reserve(PRODUCT_ID, 2, USER_ID);
+        assertEquals(List.of(queued.getToken()), tokens(journal.pending()));
+        assertEquals(1, worker.backlog());
+
+        worker.drain();
+
+        verify(store).saveStatus(eq(queued.getToken()), eq(FlashSaleStore.STATUS_CREATED), eq(1001), isNull());
+        verify(store, never()).release(any(), anyInt(), any());
+        assertTrue(journal.pending().isEmpty());
+        assertEquals(0, worker.backlog());
+
+        // 重啟後日誌裡沒有要補寫的
+        journal.destroy();
+        assertTrue(openJournal().pending().isEmpty());
+    }
+
+    @Test
+    public void journalFailureReleasesRedisStock() throws Exception {
+        FlashSaleJournal journal = openJournal();
+        FlashSaleService service = new FlashSaleService(store, journal, newWorker(journal), productRepository, properties);
+        journal.destroy();
+
+        assertThrows(RuntimeException.class, () -> service.placeOrder(request(1)));
+        verify(store).release(PRODUCT_ID, 1, USER_ID);
+    }
+
+    @Test
+    public void dbStockShortFailsOrderAndReleasesRedisStock() throws Exception {
+        // 加總扣不下去、一筆一筆也扣不下去 (後台把 DB 庫存改少了)
+        when(inventoryStrategy.reserve(anyList())).thenReturn(new boolean[] { false });
+        FlashSaleJournal journal = openJournal();
+        FlashSaleOrderWorker worker = newWorker(journal);
+        FlashSaleService service = new FlashSaleService(store, journal, worker, productRepository, properties);
+
+        FlashSaleStatusDto queued = service.placeOrder(request(1));
+        worker.drain();
+
+        verify(store).release(PRODUCT_ID, 1, USER_ID);
+        verify(store).saveStatus(eq(queued.getToken()), eq(FlashSaleStore.STATUS_FAILED), isNull(), anyString());
+        verify(orderService, never()).newOrder(any(), any(), anyInt());
+        assertTrue(journal.pending().isEmpty());
+    }
+
+    @Test
+    public void replayAfterCrashDoesNotCreateOrderTwice() throws Exception {
+        // 上次寫進 DB 之後、標記日誌完成之前當機
+        FlashSaleJournal crashed = openJournal();
+        FlashSaleTicket ticket = new FlashSaleTicket("replayed-token", request(1), System.currentTimeMillis());
+        crashed.append(ticket);
+        crashed.destroy();
+
+        // flash_sale_order 裡已經有這張的結果
+        doAnswer(invocation -> {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getString("token")).thenReturn(ticket.token());
+            when(rs.getObject("orderid", Integer.class)).thenReturn(555);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(ticket.token()));
+
+        FlashSaleJournal journal = openJournal();
+        assertEquals(List.of(ticket.token()), tokens(journal.pending()));
+        FlashSaleOrderWorker worker = newWorker(journal);
+        assertEquals(1, worker.backlog());
+
+        worker.drain();
+
+        verify(inventoryStrategy, never()).reserve(anyList());
+        verify(orderService, never()).newOrder(any(), any(), anyInt());
+        verify(store).saveStatus(eq(ticket.token()), eq(FlashSaleStore.STATUS_CREATED), eq(555), isNull());
+        assertTrue(journal.pending().isEmpty());
+    }
+
+    // 同時很多人下單：每個 append 回來時都已經寫進檔案 (重開日誌全部都在)
+    @Test
+    public void concurrentAppendsAreAllDurable() throws Exception {
+        int orders = 200;
+        FlashSaleJournal journal = openJournal();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < orders; i++) {
+                String token = "token-" + i;
+                futures.add(pool.submit(() -> {
+                    journal.append(new FlashSaleTicket(token, request(1), System.currentTimeMillis()));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(orders, journal.pending().size());
+
+        journal.destroy();
+        assertEquals(orders, openJournal().pending().size());
+    }
+
+    private FlashSaleJournal openJournal() {
+        FlashSaleJournal journal = new FlashSaleJournal(objectMapper, properties);
+        journals.add(journal);
+        return journal;
+    }
+
+    private FlashSaleOrderWorker newWorker(FlashSaleJournal journal) {
+        return new FlashSaleOrderWorker(journal, store, properties, orderService, orderRepository,
+                mock(OrderItemRepository.class), userRepository, productRepository, mock(ProductStockCache.class),
+                inventoryStrategy, mock(SalesDailyRollup.class), jdbcTemplate, mock(PlatformTransactionManager.class));
+    }
+
+    private static FlashSaleOrderRequestDto request(int quantity) {
+        FlashSaleOrderRequestDto request = new FlashSaleOrderRequestDto();
+        request.setUserId(USER_ID);
+        request.setProductId(PRODUCT_ID);
+        request.setQuantity(quantity);
+        request.setAddress("台北市信義區");
+        request.setLogisticsType("HOME");
+        return request;
+    }
+
+    private static List<String> tokens(List<FlashSaleTicket> tickets) {
+        return tickets.stream().map(FlashSaleTicket::token).toList();
+    }
+}
@@ -0,0 +1,286 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.config.InventoryProperties;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+import com.tw.shopping.main.service.inventory.AtomicUpdateReservationStrategy;
+import com.tw.shopping.main.service.inventory.InventoryReservationStrategy;
+import com.tw.shopping.main.service.inventory.OptimisticVersionReservationStrategy;
+import com.tw.shopping.main.service.inventory.PessimisticLockReservationStrategy;
+import com.tw.shopping.main.service.inventory.StripedBucketReservationStrategy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 各種扣庫存方式 (inventory.strategy) 在並發下的效能量測，OversellTest 情境的擴充版 (需要真實 DB)
+ * 變化：執行緒數、熱門商品集中程度 (uniform / hot = 80% 買同一個)、每張訂單的商品數
+ * 印出每種組合的吞吐量、p99 延遲、死鎖 / 鎖等待逾時次數、樂觀鎖重試次數，並檢查庫存總數守恆 (沒有超扣)
+ * optimistic / striped 需要 db/02_inventory_strategies.sql，沒執行過就略過
+ * 執行方式：mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class InventoryStrategyBenchmarkTest {
+
+    private static final int PRODUCT_COUNT = 10;
+    private static final int INITIAL_STOCK = 1_000_000;
+    private static final int OPS_PER_RUN = 1_000;
+    private static final int[] THREADS = { 8, 32, 64 };
+    private static final String[] SKEWS = { "uniform", "hot" };
+    private static final int[] CART_SIZES = { 1, 3 };
+
+    // 死鎖被選為犧牲者時，整筆重來幾次 (模擬前端重送)
+    private static final int DEADLOCK_RETRIES = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private List<Integer> productIds;
+    private Map<Integer, Integer> originalStocks;
+
+    @BeforeEach
+    public void setup() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+
+        productIds = jdbcTemplate.queryForList(
+                "SELECT productid FROM product ORDER BY productid LIMIT " + PRODUCT_COUNT, Integer.class);
+        assertEquals(PRODUCT_COUNT, productIds.size(), "資料庫至少要有 " + PRODUCT_COUNT + " 個商品");
+
+        originalStocks = new HashMap<>();
+        for (Integer id : productIds) {
+            originalStocks.put(id, jdbcTemplate.queryForObject(
+                    "SELECT stock FROM product WHERE productid = ?", Integer.class, id));
+        }
+    }
+
+    @AfterEach
+    public void restore() {
+        if (hasBucketTable()) {
+            productIds.forEach(id -> jdbcTemplate.update("DELETE FROM product_stock_bucket WHERE productid = ?", id));
+        }
+        originalStocks.forEach((id, stock) -> jdbcTemplate.update("UPDATE product SET stock = ? WHERE productid = ?", stock, id));
+    }
+
+    @Test
+    public void compareStrategiesUnderContention() throws InterruptedException {
+        System.out.println("=====================================================================================================");
+        System.out.printf("%-12s %7s %-8s %4s %10s %9s %9s %9s %9s%n",
+                "strategy", "threads", "skew", "cart", "ops/s", "p99(ms)", "deadlock", "retries", "failed");
+
+        for (String strategyName : List.of("atomic", "pessimistic", "optimistic", "striped")) {
+            if (("optimistic".equals(strategyName) && !hasVersionColumn())
+                    || ("striped".equals(strategyName) && !hasBucketTable())) {
+                System.out.printf("%-12s 略過 (沒有執行 db/02_inventory_strategies.sql)%n", strategyName);
+                continue;
+            }
+            for (int threads : THREADS) {
+                for (String skew : SKEWS) {
+                    for (int cartSize : CART_SIZES) {
+                        run(strategyName, threads, skew, cartSize);
+                    }
+                }
+            }
+        }
+        System.out.println("=====================================================================================================");
+    }
+
+    private void run(String strategyName, int threads, String skew, int cartSize) throws InterruptedException {
+        resetStock();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        InventoryReservationStrategy strategy = create(strategyName, meterRegistry);
+
+        long[] latencies = new long[OPS_PER_RUN];
+        AtomicInteger nextOp = new AtomicInteger();
+        AtomicInteger deadlocks = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong reserved = new AtomicLong();
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch endLatch = new CountDownLatch(threads);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executorService.execute(() -> {
+                try {
+                    startLatch.await();
+                    int op;
+                    while ((op = nextOp.getAndIncrement()) < OPS_PER_RUN) {
+                        List<StockChange> cart = randomCart(skew, cartSize);
+                        long start = System.nanoTime();
+                        if (reserve(strategy, cart, deadlocks)) {
+                            reserved.addAndGet(cart.stream().mapToInt(StockChange::quantity).sum());
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                        latencies[op] = System.nanoTime() - start;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    endLatch.countDown();
+                }
+            });
+        }
+
+        long startedAt = System.nanoTime();
+        startLatch.countDown();
+        endLatch.await();
+        long elapsed = System.nanoTime() - startedAt;
+        executorService.shutdown();
+
+        Arrays.sort(latencies);
+        double retries = meterRegistry.find("inventory.reservation.retries").counters().stream()
+                .mapToDouble(c -> c.count()).sum();
+        System.out.printf("%-12s %7d %-8s %4d %10.0f %9.2f %9d %9.0f %9d%n",
+                strategyName, threads, skew, cartSize,
+                OPS_PER_RUN / (elapsed / 1e9),
+                latencies[(int) Math.ceil(OPS_PER_RUN * 0.99) - 1] / 1e6,
+                deadlocks.get(), retries, failed.get());
+
+        // 庫存不會憑空消失或多扣：剩下的 + 成功扣掉的 = 一開始的
+        assertEquals((long) INITIAL_STOCK * PRODUCT_COUNT, remainingStock() + reserved.get(),
+                strategyName + " 庫存總數不守恆");
+        if (strategy instanceof StripedBucketReservationStrategy striped) {
+            // 回寫之後 product.stock 要等於 bucket 加總
+            striped.rollup();
+            assertEquals((long) INITIAL_STOCK * PRODUCT_COUNT - reserved.get(), productStockSum());
+        }
+    }
+
+    // 一張訂單一個交易 (跟結帳一樣用 READ COMMITTED)；死鎖就整筆重來
+    private boolean reserve(InventoryReservationStrategy strategy, List<StockChange> cart, AtomicInteger deadlocks) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Boolean ok = transactionTemplate.execute(status -> {
+                    boolean[] result = strategy.reserve(cart);
+                    for (boolean b : result) {
+                        if (!b) {
+                            status.setRollbackOnly();
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+                return Boolean.TRUE.equals(ok);
+            } catch (PessimisticLockingFailureException e) {
+                deadlocks.incrementAndGet();
+                if (attempt >= DEADLOCK_RETRIES) {
+                    return false;
+                }
+            } catch (OptimisticLockingFailureException e) {
+                return false;
+            }
+        }
+    }
+
+    // 依 productid 排序、不重複的購物車，每項 1~2 件
+    private List<StockChange> randomCart(String skew, int cartSize) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        TreeSet<Integer> picked = new TreeSet<>();
+        while (picked.size() < cartSize) {
+            boolean hot = "hot".equals(skew) && random.nextInt(100) < 80;
+            picked.add(productIds.get(hot ? 0 : random.nextInt(PRODUCT_COUNT)));
+        }
+        List<StockChange> cart = new ArrayList<>();
+        for (Integer id : picked) {
+            cart.add(new StockChange(id, 1 + random.nextInt(2)));
+        }
+        return cart;
+    }
+
+    private InventoryReservationStrategy create(String name, SimpleMeterRegistry meterRegistry) {
+        InventoryProperties properties = new InventoryProperties();
+        properties.setHotProducts(List.of(productIds.get(0)));
+        return switch (name) {
+            case "pessimistic" -> new PessimisticLockReservationStrategy(productRepository, jdbcTemplate);
+            case "optimistic" -> new OptimisticVersionReservationStrategy(jdbcTemplate, properties, meterRegistry);
+            case "striped" -> {
+                StripedBucketReservationStrategy striped = new StripedBucketReservationStrategy(
+                        productRepository, jdbcTemplate, properties, transactionManager);
+                striped.init();
+                yield striped;
+            }
+            default -> new AtomicUpdateReservationStrategy(productRepository);
+        };
+    }
+
+    private void resetStock() {
+        if (hasBucketTable()) {
+            productIds.forEach(id -> jdbcTemplate.update("DELETE FROM product_stock_bucket WHERE productid = ?", id));
+        }
+        productIds.forEach(id -> jdbcTemplate.update("UPDATE product SET stock = ? WHERE productid = ?", INITIAL_STOCK, id));
+    }
+
+    // 拆過 bucket 的商品以 bucket 加總為準
+    private long remainingStock() {
+        long total = 0;
+        for (Integer id : productIds) {
+            Long buckets = hasBucketTable()
+                    ? jdbcTemplate.queryForObject("SELECT SUM(stock) FROM product_stock_bucket WHERE productid = ?", Long.class, id)
+                    : null;
+            total += buckets != null
+                    ? buckets
+                    : jdbcTemplate.queryForObject("SELECT stock FROM product WHERE productid = ?", Long.class, id);
+        }
+        assertTrue(total >= 0);
+        return total;
+    }
+
+    private long productStockSum() {
+        long total = 0;
+        for (Integer id : productIds) {
+            total += jdbcTemplate.queryForObject("SELECT stock FROM product WHERE productid = ?", Long.class, id);
+        }
+        return total;
+    }
+
+    private boolean hasVersionColumn() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() "
+                        + "AND table_name = 'product' AND column_name = 'stock_version'", Integer.class);
+        return count != null && count > 0;
+    }
+
+    private boolean hasBucketTable() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() "
+                        + "AND table_name = 'product_stock_bucket'", Integer.class);
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,59 @@
+package com.tw.shopping;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.tw.shopping.main.service.payment.MerchantTradeNoGenerator;
+
+/**
+ * MerchantTradeNo 產生器的 JMH 微基準 (不需要 DB)
+ * 每秒能產生幾個號碼，1 條 / 8 條執行緒搶同一個產生器
+ * 執行方式：mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MerchantTradeNoGeneratorBenchmarkTest {
+
+    private final MerchantTradeNoGenerator generator = new MerchantTradeNoGenerator(1, System::currentTimeMillis);
+
+    @Benchmark
+    public long nextId() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    public String next() {
+        return generator.next();
+    }
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        for (int threads : new int[] { 1, 8 }) {
+            Options options = new OptionsBuilder()
+                    .include(MerchantTradeNoGeneratorBenchmarkTest.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
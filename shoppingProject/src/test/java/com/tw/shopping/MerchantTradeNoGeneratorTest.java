@@ -0,0 +1,119 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.tw.shopping.main.config.PaymentTransactionProperties;
+import com.tw.shopping.main.service.payment.MerchantTradeNoGenerator;
+
+/**
+ * MerchantTradeNo 產生器 (不需要 DB)
+ * 多執行緒、多節點同時產生都不能重複，格式符合綠界 (20 碼以內英數字)
+ */
+public class MerchantTradeNoGeneratorTest {
+
+    private static final int THREADS = 16;
+    // 3 節點 x 16 條 x 5000 = 24 萬個，夠讓同一毫秒的序號用完、借下一毫秒，又不會佔太多記憶體
+    private static final int PER_THREAD = 5_000;
+
+    @Test
+    public void uniqueAcrossThreadsAndNodes() throws InterruptedException {
+        // 3 個節點共用同一個 (跑得很快的) 時鐘，每個節點 16 條執行緒
+        List<MerchantTradeNoGenerator> nodes = List.of(
+                new MerchantTradeNoGenerator(0, System::currentTimeMillis),
+                new MerchantTradeNoGenerator(1, System::currentTimeMillis),
+                new MerchantTradeNoGenerator(MerchantTradeNoGenerator.MAX_NODE_ID, System::currentTimeMillis));
+
+        Set<String> seen = ConcurrentHashMap.newKeySet(nodes.size() * THREADS * PER_THREAD);
+        List<String> invalid = new ArrayList<>();
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch endLatch = new CountDownLatch(nodes.size() * THREADS);
+        ExecutorService executorService = Executors.newFixedThreadPool(nodes.size() * THREADS);
+        for (MerchantTradeNoGenerator node : nodes) {
+            for (int t = 0; t < THREADS; t++) {
+                executorService.execute(() -> {
+                    try {
+                        startLatch.await();
+                        for (int i = 0; i < PER_THREAD; i++) {
+                            String tradeNo = node.next();
+                            if (!seen.add(tradeNo) || !tradeNo.matches("[0-9A-Za-z]{1,20}")) {
+                                synchronized (invalid) {
+                                    invalid.add(tradeNo);
+                                }
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        endLatch.countDown();
+                    }
+                });
+            }
+        }
+        startLatch.countDown();
+        endLatch.await();
+        executorService.shutdown();
+
+        assertEquals(List.of(), invalid);
+        assertEquals(nodes.size() * THREADS * PER_THREAD, seen.size());
+    }
+
+    @Test
+    public void frozenOrBackwardClockStillIncreases() {
+        // 時鐘停住：序號用完直接借下一毫秒；時鐘倒退：照樣往前推
+        AtomicLong now = new AtomicLong(1_720_000_000_000L);
+        MerchantTradeNoGenerator generator = new MerchantTradeNoGenerator(7, now::get);
+
+        long last = -1;
+        String lastText = "";
+        for (int i = 0; i < 20_000; i++) {
+            if (i == 10_000) {
+                now.addAndGet(-60_000);
+            }
+            long id = generator.nextId();
+            String text = generator.next();
+            assertTrue(id > last);
+            assertTrue(text.compareTo(lastText) > 0, "同一個節點的號碼要照順序");
+            last = id;
+            lastText = text;
+        }
+    }
+
+    @Test
+    public void fixedLengthWithPrefix() {
+        MerchantTradeNoGenerator generator = new MerchantTradeNoGenerator(0, System::currentTimeMillis);
+        String tradeNo = generator.next();
+        assertTrue(tradeNo.startsWith(MerchantTradeNoGenerator.PREFIX));
+        assertEquals(15, tradeNo.length());
+    }
+
+    @Test
+    public void rejectsOutOfRangeNodeId() {
+        assertThrows(IllegalArgumentException.class, () -> new MerchantTradeNoGenerator(-1, System::currentTimeMillis));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerchantTradeNoGenerator(MerchantTradeNoGenerator.MAX_NODE_ID + 1, System::currentTimeMillis));
+    }
+
+    @Test
+    public void requiresConfiguredNodeId() {
+        // 沒設節點編號不能啟動 (自己算的編號在多台機器之間可能相同)
+        assertThrows(IllegalStateException.class, () -> new MerchantTradeNoGenerator(new PaymentTransactionProperties()));
+
+        PaymentTransactionProperties properties = new PaymentTransactionProperties();
+        properties.setNodeId(3);
+        assertTrue(new MerchantTradeNoGenerator(properties).next().startsWith(MerchantTradeNoGenerator.PREFIX));
+    }
+}
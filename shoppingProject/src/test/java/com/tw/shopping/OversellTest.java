@@ -82,6 +82,7 @@ public class OversellTest {
         // 3. Mock 購物車
         List<CartEntity> mockCart = new ArrayList<>();
         CartEntity cartItem = new CartEntity();
+        cartItem.setCartid(1L);
         cartItem.setQuantity(1);
         
         ProductEntity productInCart = new ProductEntity();
@@ -91,7 +92,8 @@ public class OversellTest {
         cartItem.setProduct(productInCart);
         mockCart.add(cartItem);
 
-        when(cartRepository.findByUserWithProducts(any())).thenReturn(mockCart);
+        // 結帳透過 CartStore 讀購物車快照 (jpa 模式走 findByUserId)
+        when(cartRepository.findByUserId(any())).thenReturn(mockCart);
         
         // 4. Mock 訂單存檔 (確保使用 OrderEntity.class 匹配)
         when(orderRepository.save(any(OrderEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
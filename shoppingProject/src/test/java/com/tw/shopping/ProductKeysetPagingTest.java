@@ -0,0 +1,131 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tw.shopping.main.entity.CategoryEntity;
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.repository.CategoryRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.service.ProductService;
+import com.tw.shopping.main.service.search.ProductSearchCriteria;
+import com.tw.shopping.main.service.search.ProductSearchCursor;
+import com.tw.shopping.main.service.search.ProductSearchEngine;
+import com.tw.shopping.main.service.search.ProductSearchEngine.SearchWindow;
+import com.tw.shopping.main.service.search.ProductSearchSort;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * 游標分頁：同分 (排序鍵相同) 跟排序鍵是 NULL 的商品，一頁一頁往下捲不能漏也不能重複 (不需要 DB)
+ */
+public class ProductKeysetPagingTest {
+
+    private static final ProductSearchCriteria ALL = new ProductSearchCriteria(null, null, null, null, null);
+
+    @Test
+    public void pagesThroughTiesAndNullsWithoutGapsOrRepeats() {
+        List<ProductEntity> products = new ArrayList<>();
+        for (int id = 1; id <= 9; id++) {
+            ProductEntity p = new ProductEntity();
+            p.setProductid(id);
+            // 價格、評分只有三種值 + NULL，建立時間有三筆 NULL
+            p.setPrice(id % 4 == 0 ? null : (id % 3) * 100);
+            p.setRating(id % 5 == 0 ? null : id % 2);
+            p.setCreatedAt(id % 3 == 0 ? null : LocalDateTime.of(2024, 1, 1, 0, 0).plusDays(id % 2));
+            products.add(p);
+        }
+        Map<Integer, ProductEntity> byId = new HashMap<>();
+        products.forEach(p -> byId.put(p.getProductid(), p));
+
+        ProductRepository productRepository = mock(ProductRepository.class);
+        CategoryRepository categoryRepository = mock(CategoryRepository.class);
+        when(productRepository.findAll()).thenReturn(products);
+        when(categoryRepository.findAll()).thenReturn(List.<CategoryEntity>of());
+        ProductSearchEngine engine = new ProductSearchEngine(productRepository, categoryRepository);
+        engine.rebuild();
+
+        for (ProductSearchSort sort : ProductSearchSort.values()) {
+            List<Integer> expected = engine.search(ALL, sort, 0, 100).productIds();
+            assertEquals(9, expected.size(), sort.name());
+
+            // 每頁 2 筆，游標用上一頁最後一筆商品產生，並經過 encode / decode
+            List<Integer> paged = new ArrayList<>();
+            ProductSearchCursor cursor = null;
+            SearchWindow window;
+            do {
+                window = engine.searchAfter(ALL, sort, cursor, 2);
+                paged.addAll(window.productIds());
+                if (!window.productIds().isEmpty()) {
+                    ProductEntity last = byId.get(window.productIds().get(window.productIds().size() - 1));
+                    cursor = ProductSearchCursor.decode(ProductSearchCursor.after(last, sort).encode());
+                }
+            } while (window.hasNext());
+
+            assertEquals(expected, paged, sort.name());
+        }
+    }
+
+    @Test
+    public void nullSortKeyCursorMatchesCoalescedColumn() {
+        ProductEntity noPrice = new ProductEntity();
+        noPrice.setProductid(42);
+        ProductSearchCursor cursor = ProductSearchCursor.after(noPrice, ProductSearchSort.PRICE_DESC);
+        assertEquals(0L, cursor.sortKey());
+
+        ProductEntity noDate = new ProductEntity();
+        noDate.setProductid(43);
+        assertEquals(ProductSearchCursor.NULL_CREATED_AT,
+                ProductSearchCursor.after(noDate, ProductSearchSort.LATEST).createdAt());
+
+        ProductRepository productRepository = mock(ProductRepository.class);
+        ProductSearchEngine notReady = mock(ProductSearchEngine.class);
+        ProductService service = new ProductService();
+        ReflectionTestUtils.setField(service, "productRepository", productRepository);
+        ReflectionTestUtils.setField(service, "searchEngine", notReady);
+        when(productRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+
+        service.scrollProducts(null, null, null, null, null, cursor.encode(), 12, null, false);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Specification<ProductEntity>> spec = ArgumentCaptor.forClass(Specification.class);
+        verify(productRepository).findBy(spec.capture(), any());
+
+        @SuppressWarnings("unchecked")
+        Root<ProductEntity> root = mock(Root.class);
+        @SuppressWarnings("unchecked")
+        Path<Integer> price = mock(Path.class);
+        @SuppressWarnings("unchecked")
+        Expression<Integer> coalesced = mock(Expression.class);
+        CriteriaBuilder cb = mock(CriteriaBuilder.class);
+        CriteriaQuery<?> query = mock(CriteriaQuery.class);
+        when(root.<Integer>get("price")).thenReturn(price);
+        when(cb.coalesce(price, 0)).thenReturn(coalesced);
+
+        spec.getValue().toPredicate(root, query, cb);
+
+        // 排序跟 seek 都用 COALESCE(price, 0)，值是游標裡的 0
+        verify(cb).desc(coalesced);
+        verify(cb).lessThan(coalesced, 0);
+        verify(cb).equal(coalesced, 0);
+        verify(query).orderBy(any(List.class));
+    }
+}
@@ -0,0 +1,147 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tw.shopping.main.entity.CategoryEntity;
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.repository.CategoryRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.service.ProductService;
+import com.tw.shopping.main.service.search.ProductSearchCriteria;
+import com.tw.shopping.main.service.search.ProductSearchEngine;
+import com.tw.shopping.main.service.search.ProductSearchSort;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * 商品搜尋：倒排索引跟資料庫備援查詢的篩選條件要一致 (不需要 DB)
+ */
+public class ProductSearchEngineTest {
+
+    private ProductRepository productRepository;
+    private CategoryRepository categoryRepository;
+    private ProductSearchEngine engine;
+
+    @BeforeEach
+    public void setup() {
+        productRepository = mock(ProductRepository.class);
+        categoryRepository = mock(CategoryRepository.class);
+        engine = new ProductSearchEngine(productRepository, categoryRepository);
+
+        when(categoryRepository.findAll()).thenReturn(List.of(category(1, "men", null), category(10, "men-top", 1)));
+        when(productRepository.findAll()).thenReturn(List.of(
+                product(100, 10, "棉質襯衫", "Navy", "M"),
+                product(101, 10, "牛仔褲", "黑色", "XL 加大")));
+        engine.rebuild();
+    }
+
+    @Test
+    public void matchesKeywordInColorAndSpecification() {
+        assertEquals(List.of(100), ids(new ProductSearchCriteria("navy", null, null, null, null)));
+        assertEquals(List.of(101), ids(new ProductSearchCriteria("加大", null, null, null, null)));
+    }
+
+    @Test
+    public void resolvesParentOfCategoryCreatedAfterRebuild() {
+        // 後台新增商品時 category 只有 id
+        when(categoryRepository.findById(11)).thenReturn(Optional.of(category(11, "men-coat", 1)));
+        ProductEntity coat = product(102, 11, "羊毛大衣", "灰色", "L");
+        coat.setCategory(categoryRef(11));
+        engine.index(coat);
+
+        assertEquals(List.of(100, 101, 102), ids(new ProductSearchCriteria(null, null, 1, null, null)));
+        assertEquals(List.of(102), ids(new ProductSearchCriteria(null, 11, null, null, null)));
+    }
+
+    @Test
+    public void indexDuringRebuildSurvivesSwap() {
+        // 重建讀完商品表之後、換上新索引之前，後台新增了一個商品
+        ProductEntity added = product(102, 10, "羊毛大衣", "灰色", "L");
+        when(productRepository.findAll()).thenAnswer(invocation -> {
+            List<ProductEntity> loaded = List.of(product(100, 10, "棉質襯衫", "Navy", "M"), product(101, 10, "牛仔褲", "黑色", "XL 加大"));
+            engine.index(added);
+            return loaded;
+        });
+        engine.rebuild();
+
+        assertEquals(List.of(102), ids(new ProductSearchCriteria("大衣", null, null, null, null)));
+        assertEquals(List.of(100, 101, 102), ids(new ProductSearchCriteria(null, null, 1, null, null)));
+    }
+
+    @Test
+    public void databaseFallbackFiltersTheSameFields() {
+        ProductSearchEngine notReady = mock(ProductSearchEngine.class);
+        ProductService service = new ProductService();
+        ReflectionTestUtils.setField(service, "productRepository", productRepository);
+        ReflectionTestUtils.setField(service, "categoryRepository", categoryRepository);
+        ReflectionTestUtils.setField(service, "searchEngine", notReady);
+        when(productRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(Page.empty());
+
+        service.searchProducts(null, null, null, null, "navy", 0, 12, "priceDesc");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Specification<ProductEntity>> spec = ArgumentCaptor.forClass(Specification.class);
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(productRepository).findAll(spec.capture(), pageable.capture());
+
+        @SuppressWarnings("unchecked")
+        Root<ProductEntity> root = mock(Root.class);
+        spec.getValue().toPredicate(root, mock(CriteriaQuery.class), mock(CriteriaBuilder.class));
+        for (String field : ProductSearchEngine.KEYWORD_FIELDS) {
+            verify(root).get(field);
+        }
+
+        // 同價格時跟索引一樣用 productid 排
+        Sort sort = pageable.getValue().getSort();
+        assertEquals(List.of("price", "productid"), sort.stream().map(Sort.Order::getProperty).toList());
+        assertEquals(Sort.Direction.DESC, sort.getOrderFor("productid").getDirection());
+    }
+
+    private List<Integer> ids(ProductSearchCriteria criteria) {
+        return engine.search(criteria, ProductSearchSort.DEFAULT, 0, 100).productIds();
+    }
+
+    private static CategoryEntity category(int id, String code, Integer parentid) {
+        CategoryEntity c = categoryRef(id);
+        c.setCode(code);
+        c.setParentid(parentid);
+        return c;
+    }
+
+    private static CategoryEntity categoryRef(int id) {
+        CategoryEntity c = new CategoryEntity();
+        c.setCategoryid(id);
+        return c;
+    }
+
+    private static ProductEntity product(int id, int categoryid, String pname, String color, String specification) {
+        ProductEntity p = new ProductEntity();
+        p.setProductid(id);
+        p.setCategory(categoryRef(categoryid));
+        p.setPname(pname);
+        p.setColor(color);
+        p.setSpecification(specification);
+        p.setPrice(100);
+        p.setCreatedAt(LocalDateTime.of(2024, 1, 1, 0, 0).plusDays(id));
+        return p;
+    }
+}
@@ -0,0 +1,281 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.entity.CategoryEntity;
+import com.tw.shopping.main.entity.OrderEntity;
+import com.tw.shopping.main.entity.OrderItemEntity;
+import com.tw.shopping.main.entity.ProductEntity;
+import com.tw.shopping.main.entity.UserEntity;
+import com.tw.shopping.main.enums.OrderStatus;
+import com.tw.shopping.main.repository.CategoryRepository;
+import com.tw.shopping.main.repository.OrderItemRepository;
+import com.tw.shopping.main.repository.OrderRepository;
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.UserRepository;
+import com.tw.shopping.main.service.EcpayService;
+import com.tw.shopping.main.service.HomeService;
+import com.tw.shopping.main.service.ProductService;
+import com.tw.shopping.main.service.search.ProductSearchEngine;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * SQL 次數守門測試 (需要真實 DB，測試資料在每個測試的交易裡建立，結束後 rollback)
+ * 用 Hibernate Statistics 算每個讀取路徑實際送出的 SQL 數，超過上限就失敗，
+ * 避免有人又把關聯改回 EAGER 或在迴圈裡逐筆載入 (N+1)
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class QueryCountTest {
+
+    // 搜尋一頁：索引路徑只有 findAllById 一句；DB 備援路徑是 分頁查詢 + COUNT
+    private static final long SEARCH_PAGE_BUDGET = 2;
+    // 首頁：商品一句 + 分類一句 (量之前先清掉 home_* 快取，量的是快取沒命中時的載入)
+    private static final long HOME_BUDGET = 2;
+    // 訂單明細：明細 JOIN 商品一句
+    private static final long ORDER_ITEMS_BUDGET = 1;
+    // 綠界表單：訂單 + 明細 + 商品名稱一句、新增付款交易一句、更新交易編號一句
+    private static final long CHECKOUT_FORM_BUDGET = 3;
+
+    private static final String FIXTURE_NAME = "查詢次數測試";
+    private static final int FIXTURE_PRICE = 100;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private HomeService homeService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private ProductSearchEngine searchEngine;
+
+    @Autowired
+    private EcpayService ecpayService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    public void searchPage_staysWithinBudget() {
+        withFixture(fixture -> {
+            long count = countStatements(() -> {
+                Page<ProductEntity> page = productService.searchProducts(null, fixture.categoryCode(), null, null, null, 0, 12, "default");
+                assertEquals(fixture.productIds(), page.map(ProductEntity::getProductid).getContent());
+                // 前端會用到 categoryid，LAZY 代理取 id 不應該觸發查詢
+                page.forEach(ProductEntity::getCategoryidView);
+            });
+            assertWithinBudget("商品搜尋一頁", count, SEARCH_PAGE_BUDGET);
+        });
+    }
+
+    @Test
+    public void adminProductPage_staysWithinBudget() {
+        withFixture(fixture -> {
+            long count = countStatements(() -> {
+                Page<ProductEntity> page = productRepository.searchProducts(FIXTURE_NAME, fixture.categoryId(), PageRequest.of(0, 20));
+                assertEquals(fixture.productIds().size(), page.getNumberOfElements());
+                page.forEach(ProductEntity::getCategoryidView);
+            });
+            assertWithinBudget("後台商品列表一頁", count, SEARCH_PAGE_BUDGET);
+        });
+    }
+
+    @Test
+    public void homeLoad_staysWithinBudget() {
+        withFixture(fixture -> {
+            // 快取命中時一句 SQL 都不會送，先清掉才量得到真正的載入
+            clearHomeCaches();
+            try {
+                long count = countStatements(() -> {
+                    assertFalse(homeService.getAllProductsData().isEmpty());
+                    assertFalse(homeService.getCategory().isEmpty());
+                });
+                assertTrue(count > 0, "首頁資料沒有打到 DB，快取沒有清掉");
+                assertWithinBudget("首頁資料", count, HOME_BUDGET);
+            } finally {
+                // 剛剛載入的內容含有會 rollback 的測試資料，不能留在快取裡
+                clearHomeCaches();
+            }
+        });
+    }
+
+    @Test
+    public void orderItemsRead_staysWithinBudget() {
+        withFixture(fixture -> {
+            long count = countStatements(() -> {
+                List<OrderItemEntity> items = orderItemRepository.findByOrderIdFetchProduct(fixture.orderId());
+                assertEquals(fixture.productIds().size(), items.size());
+                for (OrderItemEntity item : items) {
+                    assertEquals(FIXTURE_NAME, item.getProduct().getPname());
+                    assertEquals(fixture.categoryId(), item.getProduct().getCategoryidView());
+                }
+            });
+            assertWithinBudget("訂單明細", count, ORDER_ITEMS_BUDGET);
+        });
+    }
+
+    @Test
+    public void checkoutForm_staysWithinBudget() {
+        // 會寫入付款交易、改訂單的交易編號，跟測試資料一起 rollback
+        withFixture(fixture -> {
+            long count = countStatements(() -> {
+                Map<String, String> form = ecpayService.prepareCheckoutForm(fixture.orderId());
+                assertEquals(String.valueOf(FIXTURE_PRICE * fixture.productIds().size()), form.get("TotalAmount"));
+            });
+            assertWithinBudget("綠界結帳表單", count, CHECKOUT_FORM_BUDGET);
+        });
+    }
+
+    private void clearHomeCaches() {
+        List<String> names = new ArrayList<>(HomeService.PRODUCT_CACHE_NAMES);
+        names.add(HomeService.CATEGORY_CACHE_NAME);
+        for (String name : names) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * 在一個最後會 rollback 的交易裡建好測試資料 (分類、商品、會員、訂單 + 明細)，
+     * flush + clear 之後才量，確保讀取真的打到 DB 而不是命中一級快取
+     */
+    private void withFixture(Consumer<Fixture> test) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Integer> indexed = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                status.setRollbackOnly();
+                String suffix = UUID.randomUUID().toString().substring(0, 8);
+
+                CategoryEntity category = new CategoryEntity();
+                category.setCname(FIXTURE_NAME);
+                category.setCode("qc-" + suffix);
+                category.setParentid(categoryRepository.findAll(PageRequest.of(0, 1)).getContent().stream()
+                        .map(CategoryEntity::getCategoryid).findFirst().orElse(null));
+                categoryRepository.save(category);
+
+                List<ProductEntity> products = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    ProductEntity product = new ProductEntity();
+                    product.setPname(FIXTURE_NAME);
+                    product.setDescription(FIXTURE_NAME);
+                    product.setColor("黑色");
+                    product.setProductimage("qc.png");
+                    product.setPrice(FIXTURE_PRICE);
+                    product.setRating(5);
+                    product.setStock(10);
+                    product.setCategory(category);
+                    products.add(productRepository.save(product));
+                }
+
+                UserEntity user = new UserEntity();
+                user.setName(FIXTURE_NAME);
+                user.setEmail("qc-" + suffix + "@example.com");
+                user.setPassword("x");
+                userRepository.save(user);
+
+                OrderEntity order = new OrderEntity();
+                order.setOrderDate(LocalDateTime.now());
+                order.setTotalAmount(FIXTURE_PRICE * products.size());
+                order.setOrderStatus(OrderStatus.PENDING);
+                order.setOrderAddress(FIXTURE_NAME);
+                order.setPaymentmethods("ECPAY");
+                order.setUserid(user);
+                orderRepository.save(order);
+
+                for (ProductEntity product : products) {
+                    OrderItemEntity item = new OrderItemEntity();
+                    item.setOrder(order);
+                    item.setProductId(product.getProductid().longValue());
+                    item.setQuantity(1);
+                    item.setUnitPrice(FIXTURE_PRICE);
+                    item.setDiscount(BigDecimal.ZERO);
+                    orderItemRepository.save(item);
+                }
+
+                entityManager.flush();
+                entityManager.clear();
+
+                // 搜尋走記憶體索引，測試商品也要放進去 (結束後移除)
+                products.forEach(searchEngine::index);
+                products.forEach(product -> indexed.add(product.getProductid()));
+
+                test.accept(new Fixture(category.getCategoryid(), category.getCode(), indexed, order.getOrderId()));
+            });
+        } finally {
+            indexed.forEach(searchEngine::remove);
+        }
+    }
+
+    private long countStatements(Runnable action) {
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static void assertWithinBudget(String path, long actual, long budget) {
+        assertTrue(actual <= budget, path + " 送出 " + actual + " 句 SQL，超過上限 " + budget + "，可能出現 N+1");
+    }
+
+    private record Fixture(Integer categoryId, String categoryCode, List<Integer> productIds, Integer orderId) {
+    }
+}
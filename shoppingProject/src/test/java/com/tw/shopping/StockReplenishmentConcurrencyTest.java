@@ -0,0 +1,160 @@
+package com.tw.shopping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tw.shopping.main.repository.ProductRepository;
+import com.tw.shopping.main.repository.ProductRepositoryCustom.StockChange;
+import com.tw.shopping.main.service.inventory.InventoryReservationStrategy;
+
+/**
+ * 回補庫存 (取消 / 退貨 / 逾時取消共用的 increaseStock) 的並發測試 (需要真實 DB)
+ * 結帳扣庫存跟取消加庫存同時大量進行，最後的庫存要剛好等於 初始 - 成功扣掉的 + 加回去的，沒有任何更新被蓋掉
+ */
+@SpringBootTest
+public class StockReplenishmentConcurrencyTest {
+
+    private static final int INITIAL_STOCK = 1_000;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private InventoryReservationStrategy inventoryStrategy;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private List<Integer> productIds;
+    private Map<Integer, Integer> originalStocks;
+
+    @BeforeEach
+    public void setup() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+
+        productIds = jdbcTemplate.queryForList("SELECT productid FROM product ORDER BY productid LIMIT 2", Integer.class);
+        assertEquals(2, productIds.size(), "資料庫至少要有 2 個商品");
+
+        originalStocks = new HashMap<>();
+        for (Integer id : productIds) {
+            originalStocks.put(id, stockOf(id));
+            jdbcTemplate.update("UPDATE product SET stock = ? WHERE productid = ?", INITIAL_STOCK, id);
+        }
+    }
+
+    @AfterEach
+    public void restore() {
+        originalStocks.forEach((id, stock) -> jdbcTemplate.update("UPDATE product SET stock = ? WHERE productid = ?", stock, id));
+    }
+
+    @Test
+    public void increaseStock_sumsDuplicatesInOneStatement() {
+        Integer first = productIds.get(0);
+        Integer second = productIds.get(1);
+
+        int updated = transactionTemplate.execute(status -> productRepository.increaseStock(List.of(
+                new StockChange(second, 2),
+                new StockChange(first, 3),
+                new StockChange(second, 5))));
+
+        assertEquals(2, updated);
+        assertEquals(INITIAL_STOCK + 3, stockOf(first));
+        assertEquals(INITIAL_STOCK + 7, stockOf(second));
+    }
+
+    @Test
+    public void mixedCheckoutAndCancel_noLostUpdates() throws InterruptedException {
+        int numberOfThreads = 40;
+        int opsPerThread = 25;
+        Integer first = productIds.get(0);
+        Integer second = productIds.get(1);
+
+        // 結帳：兩個商品各扣 1；取消：第一個加 1、第二個加 2
+        List<StockChange> checkout = List.of(new StockChange(first, 1), new StockChange(second, 1));
+        List<StockChange> cancel = List.of(new StockChange(first, 1), new StockChange(second, 2));
+
+        AtomicInteger checkouts = new AtomicInteger();
+        AtomicInteger cancels = new AtomicInteger();
+        List<Throwable> errors = new ArrayList<>();
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch endLatch = new CountDownLatch(numberOfThreads);
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            boolean isCancel = i % 2 == 1;
+            executorService.execute(() -> {
+                try {
+                    startLatch.await();
+                    for (int op = 0; op < opsPerThread; op++) {
+                        if (isCancel) {
+                            transactionTemplate.executeWithoutResult(status -> inventoryStrategy.release(cancel));
+                            cancels.incrementAndGet();
+                        } else {
+                            Boolean reserved = transactionTemplate.execute(status -> {
+                                boolean[] result = inventoryStrategy.reserve(checkout);
+                                if (!result[0] || !result[1]) {
+                                    status.setRollbackOnly();
+                                    return false;
+                                }
+                                return true;
+                            });
+                            if (Boolean.TRUE.equals(reserved)) {
+                                checkouts.incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                } finally {
+                    endLatch.countDown();
+                }
+            });
+        }
+
+        startLatch.countDown();
+        endLatch.await();
+        executorService.shutdown();
+
+        System.out.println("==============================================");
+        System.out.println("結帳 / 取消並發測試結果：");
+        System.out.println("成功結帳: " + checkouts.get());
+        System.out.println("取消回補: " + cancels.get());
+        System.out.println("商品 " + first + " 剩餘庫存: " + stockOf(first));
+        System.out.println("商品 " + second + " 剩餘庫存: " + stockOf(second));
+        System.out.println("==============================================");
+
+        assertEquals(List.of(), errors);
+        assertEquals(INITIAL_STOCK - checkouts.get() + cancels.get(), stockOf(first));
+        assertEquals(INITIAL_STOCK - checkouts.get() + cancels.get() * 2, stockOf(second));
+    }
+
+    private int stockOf(Integer productId) {
+        return jdbcTemplate.queryForObject("SELECT stock FROM product WHERE productid = ?", Integer.class, productId);
+    }
+}